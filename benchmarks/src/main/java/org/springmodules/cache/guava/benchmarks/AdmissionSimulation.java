@@ -0,0 +1,91 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.benchmarks;
+
+import com.google.common.cache.CacheBuilder;
+import org.springframework.cache.Cache;
+import org.springmodules.cache.guava.AdmittingGuavaCache;
+import org.springmodules.cache.guava.GuavaCache;
+import org.springmodules.cache.guava.admission.TinyLfuAdmissionPolicy;
+
+import java.util.Random;
+
+/**
+ * Replays synthetic access traces against a {@link GuavaCache} and an
+ * {@link AdmittingGuavaCache} with a {@link TinyLfuAdmissionPolicy} of the same maximum
+ * size, and reports their hit ratios.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar org.springmodules.cache.guava.benchmarks.AdmissionSimulation
+ * </pre>
+ * Every trace draws from a Zipf distribution of keys; the {@code scan} traces interleave
+ * it with keys requested only once, as a crawler walking every user profile does. On a miss,
+ * the value is put into the cache, as {@link org.springframework.cache.annotation.Cacheable}
+ * methods do.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public final class AdmissionSimulation {
+
+	private static final int KEY_SPACE = 100000;
+
+	private static final int TRACE_LENGTH = 2000000;
+
+	private static final int[] MAXIMUM_SIZES = {1000, 10000};
+
+	private static final int[] SCAN_PERCENTAGES = {0, 25, 50};
+
+	private AdmissionSimulation() {
+	}
+
+	public static void main(String[] args) {
+		ZipfKeys zipf = new ZipfKeys(KEY_SPACE, 0.9);
+		System.out.printf("%-8s %6s %12s %12s%n", "size", "scan", "guava", "tinyLfu");
+		for (int maximumSize : MAXIMUM_SIZES) {
+			for (int scanPercentage : SCAN_PERCENTAGES) {
+				Cache guava = new GuavaCache("guava", CacheBuilder.newBuilder().maximumSize(maximumSize), true);
+				Cache tinyLfu = new AdmittingGuavaCache("tinyLfu", CacheBuilder.newBuilder().maximumSize(maximumSize), true,
+						new TinyLfuAdmissionPolicy(maximumSize));
+				System.out.printf("%-8d %5d%% %11.2f%% %11.2f%%%n", maximumSize, scanPercentage,
+						hitRatio(guava, zipf, scanPercentage), hitRatio(tinyLfu, zipf, scanPercentage));
+			}
+		}
+	}
+
+	/**
+	 * Return the hit ratio of the given cache on the accesses to the Zipf distributed keys,
+	 * in percent.
+	 */
+	private static double hitRatio(Cache cache, ZipfKeys zipf, int scanPercentage) {
+		Random random = new Random(42);
+		int scanKey = KEY_SPACE;
+		long requests = 0;
+		long hits = 0;
+		for (int i = 0; i < TRACE_LENGTH; i++) {
+			boolean scan = random.nextInt(100) < scanPercentage;
+			Integer key = (scan ? scanKey++ : zipf.next(random));
+			boolean hit = (cache.get(key) != null);
+			if (!hit) {
+				cache.put(key, key);
+			}
+			if (!scan) {
+				requests++;
+				hits += (hit ? 1 : 0);
+			}
+		}
+		return 100.0d * hits / requests;
+	}
+
+}
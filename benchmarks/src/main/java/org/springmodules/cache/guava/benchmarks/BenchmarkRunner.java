@@ -0,0 +1,53 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks matching the given include pattern (all benchmarks by default)
+ * at 1, 4, 16 and 64 threads.
+ * <pre>
+ * mvn -pl benchmarks -am package
+ * java -cp benchmarks/target/benchmarks.jar org.springmodules.cache.guava.benchmarks.BenchmarkRunner CacheBenchmark
+ * </pre>
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public final class BenchmarkRunner {
+
+	static final int[] THREADS = {1, 4, 16, 64};
+
+	private BenchmarkRunner() {
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		String include = (args.length > 0 ? args[0] : ".*");
+		for (int threads : THREADS) {
+			ChainedOptionsBuilder options = new OptionsBuilder()
+					.include(include)
+					.threads(threads)
+					.result("jmh-result-" + threads + "-threads.json")
+					.resultFormat(ResultFormatType.JSON);
+			new Runner(options.build()).run();
+		}
+	}
+
+}
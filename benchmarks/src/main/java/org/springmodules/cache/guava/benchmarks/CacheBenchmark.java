@@ -0,0 +1,178 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.Cache;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput and latency of {@link Cache#get}, {@link Cache#put}, {@link Cache#evict} and
+ * {@link Cache#clear} for a given {@link com.google.common.cache.CacheBuilderSpec}, with a
+ * {@link org.springframework.cache.concurrent.ConcurrentMapCache} baseline.
+ * <p>Keys follow a Zipf distribution; the {@code mixed} benchmark interleaves reads and
+ * writes according to {@code readPercentage}, a parameter of its own state so that it does
+ * not multiply the runs of the other benchmarks. Use {@link BenchmarkRunner} to run it at
+ * 1, 4, 16 and 64 threads.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark {
+
+	private static final int SEQUENCE_LENGTH = 1 << 16;
+
+	private static final int SEQUENCE_MASK = SEQUENCE_LENGTH - 1;
+
+	@State(Scope.Benchmark)
+	public static class CacheState {
+
+		@Param({CacheFactory.GUAVA, CacheFactory.INSTRUMENTED_GUAVA, CacheFactory.CONCURRENT_MAP})
+		String implementation;
+
+		@Param({"", "maximumSize=10000", "maximumSize=10000;concurrencyLevel=16", "maximumSize=10000;expireAfterAccess=10m"})
+		String spec;
+
+		@Param({"100000"})
+		int keySpace;
+
+		@Param({"1.0"})
+		double zipfExponent;
+
+		Cache cache;
+
+		ZipfKeys zipf;
+
+		final AtomicLong seeds = new AtomicLong();
+
+		@Setup
+		public void setUp() {
+			cache = CacheFactory.newCache(implementation, spec);
+			zipf = new ZipfKeys(keySpace, zipfExponent);
+			// pre-populate with the hot part of the key space
+			for (Integer key : zipf.sequence(keySpace, 0)) {
+				cache.put(key, "value-" + key);
+			}
+		}
+
+	}
+
+	@State(Scope.Thread)
+	public static class ThreadState {
+
+		Integer[] keys;
+
+		long seed;
+
+		int index;
+
+		@Setup
+		public void setUp(CacheState cacheState) {
+			seed = cacheState.seeds.incrementAndGet();
+			keys = cacheState.zipf.sequence(SEQUENCE_LENGTH, seed);
+		}
+
+		int next() {
+			return (index++) & SEQUENCE_MASK;
+		}
+
+	}
+
+	@State(Scope.Thread)
+	public static class MixedState {
+
+		@Param({"100", "90", "50"})
+		int readPercentage;
+
+		boolean[] reads;
+
+		@Setup
+		public void setUp(ThreadState threadState) {
+			reads = new boolean[SEQUENCE_LENGTH];
+			Random random = new Random(threadState.seed);
+			for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+				reads[i] = random.nextInt(100) < readPercentage;
+			}
+		}
+
+	}
+
+	@State(Scope.Thread)
+	public static class PopulatedState {
+
+		Cache cache;
+
+		@Setup(Level.Invocation)
+		public void setUp(CacheState cacheState) {
+			cache = CacheFactory.newCache(cacheState.implementation, cacheState.spec);
+			for (int i = 0; i < 1000; i++) {
+				cache.put(i, "value-" + i);
+			}
+		}
+
+	}
+
+	@Benchmark
+	public Object get(CacheState cacheState, ThreadState threadState) {
+		return cacheState.cache.get(threadState.keys[threadState.next()]);
+	}
+
+	@Benchmark
+	public void put(CacheState cacheState, ThreadState threadState) {
+		Integer key = threadState.keys[threadState.next()];
+		cacheState.cache.put(key, key);
+	}
+
+	@Benchmark
+	public void evict(CacheState cacheState, ThreadState threadState) {
+		cacheState.cache.evict(threadState.keys[threadState.next()]);
+	}
+
+	@Benchmark
+	public Object mixed(CacheState cacheState, ThreadState threadState, MixedState mixedState) {
+		int i = threadState.next();
+		Integer key = threadState.keys[i];
+		if (mixedState.reads[i]) {
+			return cacheState.cache.get(key);
+		}
+		cacheState.cache.put(key, key);
+		return key;
+	}
+
+	@Benchmark
+	public void clear(PopulatedState populatedState) {
+		populatedState.cache.clear();
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.Cache;
+import org.springmodules.cache.guava.GuavaCacheManager;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Contention of dynamic cache creation in {@link GuavaCacheManager#getCache(String)}: every
+ * invocation asks a fresh manager for a cache name never requested before, so that each call
+ * creates (and registers) a new cache. Invocations run in batches of {@value #BATCH_SIZE} per
+ * thread to bound the number of caches a single manager accumulates.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, batchSize = CacheCreationBenchmark.BATCH_SIZE)
+@Measurement(iterations = 20, batchSize = CacheCreationBenchmark.BATCH_SIZE)
+@Fork(1)
+public class CacheCreationBenchmark {
+
+	static final int BATCH_SIZE = 1024;
+
+	@State(Scope.Benchmark)
+	public static class ManagerState {
+
+		@Param({"false", "true"})
+		boolean transactionAware;
+
+		volatile GuavaCacheManager cacheManager;
+
+		final AtomicInteger created = new AtomicInteger();
+
+		@Setup(Level.Iteration)
+		public void newCacheManager() {
+			GuavaCacheManager manager = new GuavaCacheManager();
+			manager.setTransactionAware(transactionAware);
+			manager.afterPropertiesSet();
+			cacheManager = manager;
+		}
+
+	}
+
+	@Benchmark
+	public Cache createCache(ManagerState managerState) {
+		return managerState.cacheManager.getCache("cache-" + managerState.created.incrementAndGet());
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.benchmarks;
+
+import com.google.common.cache.CacheBuilder;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springmodules.cache.guava.GuavaCache;
+import org.springmodules.cache.guava.InstrumentedCache;
+
+/**
+ * Builds the {@link Cache} implementations compared by the benchmarks.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+final class CacheFactory {
+
+	static final String GUAVA = "guava";
+
+	static final String INSTRUMENTED_GUAVA = "instrumentedGuava";
+
+	static final String CONCURRENT_MAP = "concurrentMap";
+
+	private CacheFactory() {
+	}
+
+	/**
+	 * Build a cache.
+	 * @param implementation one of {@value #GUAVA}, {@value #INSTRUMENTED_GUAVA} or {@value #CONCURRENT_MAP}
+	 * @param spec the {@link com.google.common.cache.CacheBuilderSpec} to use, with
+	 * {@code ';'} standing for {@code ','} so it can be passed as a JMH parameter
+	 * @return the cache
+	 */
+	static Cache newCache(String implementation, String spec) {
+		if (GUAVA.equals(implementation)) {
+			return new GuavaCache("benchmark", newCacheBuilder(spec), true);
+		}
+		if (INSTRUMENTED_GUAVA.equals(implementation)) {
+			return new InstrumentedCache(new GuavaCache("benchmark", newCacheBuilder(spec), true));
+		}
+		if (CONCURRENT_MAP.equals(implementation)) {
+			return new ConcurrentMapCache("benchmark");
+		}
+		throw new IllegalArgumentException("unknown cache implementation [" + implementation + "]");
+	}
+
+	static CacheBuilder<Object, Object> newCacheBuilder(String spec) {
+		String builderSpec = toBuilderSpec(spec);
+		return (builderSpec.isEmpty() ? CacheBuilder.newBuilder() : CacheBuilder.from(builderSpec));
+	}
+
+	static String toBuilderSpec(String spec) {
+		return spec.replace(';', ',').trim();
+	}
+
+}
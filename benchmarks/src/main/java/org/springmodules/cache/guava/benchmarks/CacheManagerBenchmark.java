@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.Cache;
+import org.springmodules.cache.guava.GuavaCacheManager;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput and latency of {@link GuavaCacheManager#getCache(String)} lookups of
+ * existing caches, with cache names following a Zipf distribution.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheManagerBenchmark {
+
+	private static final int SEQUENCE_LENGTH = 1 << 12;
+
+	private static final int SEQUENCE_MASK = SEQUENCE_LENGTH - 1;
+
+	@State(Scope.Benchmark)
+	public static class ManagerState {
+
+		@Param({"16", "256"})
+		int cacheCount;
+
+		GuavaCacheManager cacheManager;
+
+		ZipfKeys zipf;
+
+		final AtomicLong seeds = new AtomicLong();
+
+		@Setup
+		public void setUp() {
+			cacheManager = new GuavaCacheManager();
+			cacheManager.afterPropertiesSet();
+			zipf = new ZipfKeys(cacheCount, 1.0d);
+			for (int i = 0; i < cacheCount; i++) {
+				cacheManager.getCache("cache-" + i);
+			}
+		}
+
+	}
+
+	@State(Scope.Thread)
+	public static class ThreadState {
+
+		String[] names;
+
+		int index;
+
+		@Setup
+		public void setUp(ManagerState managerState) {
+			Integer[] keys = managerState.zipf.sequence(SEQUENCE_LENGTH, managerState.seeds.incrementAndGet());
+			names = new String[SEQUENCE_LENGTH];
+			for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+				names[i] = "cache-" + keys[i];
+			}
+		}
+
+	}
+
+	@Benchmark
+	public Cache getCache(ManagerState managerState, ThreadState threadState) {
+		return managerState.cacheManager.getCache(threadState.names[(threadState.index++) & SEQUENCE_MASK]);
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springmodules.cache.guava.codec.DeflatingCodec;
+import org.springmodules.cache.guava.codec.SerializationCodec;
+import org.springmodules.cache.guava.codec.ValueCodec;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding throughput of the {@link ValueCodec} implementations used to store
+ * values by value, on lists of posts. See {@link CodecFootprint} for the memory saved.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+	static final String SERIALIZATION = "serialization";
+
+	static final String DEFLATE = "deflate";
+
+	@Param({SERIALIZATION, DEFLATE})
+	String codec;
+
+	@Param({"1", "100"})
+	int postCount;
+
+	ValueCodec valueCodec;
+
+	List<SamplePost> value;
+
+	byte[] encoded;
+
+	@Setup
+	public void setUp() {
+		valueCodec = newCodec(codec);
+		value = SamplePost.newPosts(postCount, 42);
+		encoded = valueCodec.encode(value);
+	}
+
+	@Benchmark
+	public byte[] encode() {
+		return valueCodec.encode(value);
+	}
+
+	@Benchmark
+	public Object decode() {
+		return valueCodec.decode(encoded);
+	}
+
+	static ValueCodec newCodec(String codec) {
+		if (SERIALIZATION.equals(codec)) {
+			return new SerializationCodec();
+		}
+		if (DEFLATE.equals(codec)) {
+			return new DeflatingCodec();
+		}
+		throw new IllegalArgumentException("unknown codec [" + codec + "]");
+	}
+
+}
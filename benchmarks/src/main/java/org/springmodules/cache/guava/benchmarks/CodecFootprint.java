@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.benchmarks;
+
+import org.springmodules.cache.guava.codec.ValueCodec;
+
+/**
+ * Reports the heap retained by cached lists of posts, stored by reference and encoded by
+ * each {@link ValueCodec} benchmarked by {@link CodecBenchmark}.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar org.springmodules.cache.guava.benchmarks.CodecFootprint
+ * </pre>
+ * Retained sizes are measured as the growth of the used heap when holding many distinct
+ * values, hence are approximate; run with a fixed heap ({@code -Xms} = {@code -Xmx}).
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public final class CodecFootprint {
+
+	private static final int[] POST_COUNTS = {1, 100};
+
+	private static final int VALUE_COUNT = 10000;
+
+	private CodecFootprint() {
+	}
+
+	public static void main(String[] args) {
+		System.out.printf("%-15s %6s %15s %15s%n", "storage", "posts", "bytes/value", "saved");
+		for (int postCount : POST_COUNTS) {
+			long byReference = retainedBytes(null, postCount);
+			System.out.printf("%-15s %6d %15d %15s%n", "reference", postCount, byReference, "-");
+			for (String codec : new String[] {CodecBenchmark.SERIALIZATION, CodecBenchmark.DEFLATE}) {
+				long byValue = retainedBytes(CodecBenchmark.newCodec(codec), postCount);
+				System.out.printf("%-15s %6d %15d %14d%%%n", codec, postCount, byValue,
+						100 - (100 * byValue / byReference));
+			}
+		}
+	}
+
+	/**
+	 * Return the heap retained per value, holding {@value #VALUE_COUNT} distinct values.
+	 */
+	private static long retainedBytes(ValueCodec codec, int postCount) {
+		Object[] values = new Object[VALUE_COUNT];
+		if (codec != null) {
+			// warm up the codec before measuring
+			codec.encode(SamplePost.newPosts(postCount, -1));
+		}
+		long before = usedHeap();
+		for (int i = 0; i < VALUE_COUNT; i++) {
+			Object value = SamplePost.newPosts(postCount, i);
+			values[i] = (codec != null ? codec.encode(value) : value);
+		}
+		long after = usedHeap();
+		if (values[VALUE_COUNT - 1] == null) {
+			throw new IllegalStateException();
+		}
+		return (after - before) / VALUE_COUNT;
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.Cache;
+import org.springframework.cache.interceptor.DefaultKeyGenerator;
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springmodules.cache.guava.GuavaCache;
+import org.springmodules.cache.guava.interceptor.CompactKeyGenerator;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Key creation and cache lookup cost of {@link CompactKeyGenerator} against Spring's
+ * {@link DefaultKeyGenerator}, for calls with 1, 2 and 3 parameters.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyGeneratorBenchmark {
+
+	static final String DEFAULT = "default";
+
+	static final String COMPACT = "compact";
+
+	static final int KEY_COUNT = 1024;
+
+	@Param({DEFAULT, COMPACT})
+	String generator;
+
+	@Param({"1", "2", "3"})
+	int paramCount;
+
+	KeyGenerator keyGenerator;
+
+	Method method;
+
+	Object[][] params;
+
+	Cache cache;
+
+	int index;
+
+	@Setup
+	public void setUp() throws Exception {
+		keyGenerator = (COMPACT.equals(generator) ? new CompactKeyGenerator() : new DefaultKeyGenerator());
+		method = SamplePost.class.getMethod("toString");
+		params = new Object[KEY_COUNT][];
+		cache = new GuavaCache("keys");
+		for (int i = 0; i < KEY_COUNT; i++) {
+			params[i] = newParams(i);
+			cache.put(keyGenerator.generate(this, method, params[i]), i);
+		}
+	}
+
+	@Benchmark
+	public Object generate() {
+		return keyGenerator.generate(this, method, nextParams());
+	}
+
+	@Benchmark
+	public Object lookup() {
+		return cache.get(keyGenerator.generate(this, method, nextParams()));
+	}
+
+	private Object[] nextParams() {
+		index = (index + 1) & (KEY_COUNT - 1);
+		return params[index];
+	}
+
+	private Object[] newParams(int i) {
+		switch (paramCount) {
+			case 1:
+				return new Object[] {"user-" + i};
+			case 2:
+				return new Object[] {"user-" + i, i};
+			default:
+				return new Object[] {"user-" + i, i, (long) i * 31};
+		}
+	}
+
+}
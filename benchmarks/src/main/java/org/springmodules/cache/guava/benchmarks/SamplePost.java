@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.benchmarks;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Serializable bean shaped like the posts of the samples application, used as
+ * realistic cache values.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+class SamplePost implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String[] WORDS = {"cache", "guava", "spring", "post", "user", "value",
+			"entry", "eviction", "refresh", "load", "the", "a", "of", "and", "to", "is"};
+
+	private final String userName;
+
+	private final int id;
+
+	private final Date submitDate;
+
+	private final String content;
+
+	SamplePost(String userName, int id, Date submitDate, String content) {
+		this.userName = userName;
+		this.id = id;
+		this.submitDate = submitDate;
+		this.content = content;
+	}
+
+	/**
+	 * Create a list of posts of the same user, with random content of about 200 characters.
+	 * @param count the number of posts
+	 * @param seed the seed of the random content
+	 * @return the posts
+	 */
+	static List<SamplePost> newPosts(int count, long seed) {
+		Random random = new Random(seed);
+		String userName = "user" + random.nextInt(1000);
+		List<SamplePost> posts = new ArrayList<SamplePost>(count);
+		for (int i = 0; i < count; i++) {
+			StringBuilder content = new StringBuilder(220);
+			while (content.length() < 200) {
+				content.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+			}
+			posts.add(new SamplePost(userName, i, new Date(random.nextInt()), content.toString()));
+		}
+		return posts;
+	}
+
+	public String getUserName() {
+		return userName;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public Date getSubmitDate() {
+		return submitDate;
+	}
+
+	public String getContent() {
+		return content;
+	}
+
+}
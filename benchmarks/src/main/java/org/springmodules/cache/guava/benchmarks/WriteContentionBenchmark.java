@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.benchmarks;
+
+import com.google.common.cache.CacheBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.springframework.cache.Cache;
+import org.springmodules.cache.guava.GuavaCache;
+import org.springmodules.cache.guava.GuavaCaches;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write throughput of a size bounded {@link GuavaCache} by concurrency level: a single
+ * segment, Guava's default of {@value GuavaCaches#DEFAULT_CONCURRENCY_LEVEL}, and the level
+ * {@link GuavaCaches#concurrencyLevel(int) derived} from the benchmark threads and the
+ * available processors. Keys are uniformly distributed, so that writers contend on segment
+ * locks rather than on hot keys. Use {@link BenchmarkRunner} to run it at 1, 4, 16 and
+ * 64 threads.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteContentionBenchmark {
+
+	static final String DERIVED = "derived";
+
+	private static final int SEQUENCE_LENGTH = 1 << 16;
+
+	private static final int SEQUENCE_MASK = SEQUENCE_LENGTH - 1;
+
+	@State(Scope.Benchmark)
+	public static class CacheState {
+
+		@Param({"1", "4", DERIVED})
+		String concurrencyLevel;
+
+		@Param({"100000"})
+		int keySpace;
+
+		Cache cache;
+
+		final AtomicLong seeds = new AtomicLong();
+
+		@Setup
+		public void setUp(BenchmarkParams params) {
+			int level = (DERIVED.equals(concurrencyLevel) ?
+					GuavaCaches.concurrencyLevel(params.getThreads()) : Integer.parseInt(concurrencyLevel));
+			CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+					.maximumSize(keySpace / 2)
+					.concurrencyLevel(level);
+			cache = new GuavaCache("benchmark", builder, true);
+		}
+
+	}
+
+	@State(Scope.Thread)
+	public static class ThreadState {
+
+		Integer[] keys;
+
+		int index;
+
+		@Setup
+		public void setUp(CacheState cacheState) {
+			Random random = new Random(cacheState.seeds.incrementAndGet());
+			keys = new Integer[SEQUENCE_LENGTH];
+			for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+				keys[i] = random.nextInt(cacheState.keySpace);
+			}
+		}
+
+		Integer next() {
+			return keys[(index++) & SEQUENCE_MASK];
+		}
+
+	}
+
+	@Benchmark
+	public void put(CacheState cacheState, ThreadState threadState) {
+		Integer key = threadState.next();
+		cacheState.cache.put(key, key);
+	}
+
+	@Benchmark
+	public void evict(CacheState cacheState, ThreadState threadState) {
+		cacheState.cache.evict(threadState.next());
+	}
+
+}
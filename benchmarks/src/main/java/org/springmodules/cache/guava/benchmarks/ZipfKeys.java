@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates sequences of keys following a Zipf distribution, so that a few keys
+ * are very hot and most keys are rarely accessed.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public final class ZipfKeys {
+
+	private final double[] cumulativeProbabilities;
+
+	/**
+	 * Create a new ZipfKeys generator.
+	 * @param size the number of distinct keys
+	 * @param exponent the Zipf exponent, {@code 0} for a uniform distribution
+	 */
+	public ZipfKeys(int size, double exponent) {
+		this.cumulativeProbabilities = new double[size];
+		double sum = 0;
+		for (int rank = 1; rank <= size; rank++) {
+			sum += 1.0d / Math.pow(rank, exponent);
+			cumulativeProbabilities[rank - 1] = sum;
+		}
+		for (int i = 0; i < size; i++) {
+			cumulativeProbabilities[i] /= sum;
+		}
+	}
+
+	/**
+	 * Draw the next key index, in the range {@code [0, size)}.
+	 * @param random the source of randomness
+	 * @return the key index, {@code 0} being the hottest key
+	 */
+	public int next(Random random) {
+		int index = Arrays.binarySearch(cumulativeProbabilities, random.nextDouble());
+		return (index >= 0 ? index : Math.min(-index - 1, cumulativeProbabilities.length - 1));
+	}
+
+	/**
+	 * Precompute a sequence of keys so that benchmarks do not measure the generator.
+	 * @param length the length of the sequence
+	 * @param seed the random seed
+	 * @return the key sequence
+	 */
+	public Integer[] sequence(int length, long seed) {
+		Random random = new Random(seed);
+		Integer[] keys = new Integer[length];
+		for (int i = 0; i < length; i++) {
+			keys[i] = next(random);
+		}
+		return keys;
+	}
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import org.springmodules.cache.guava.admission.AdmissionPolicy;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link GuavaCache} filtering new entries through an {@link AdmissionPolicy}, so that keys
+ * accessed once do not evict frequently accessed entries.
+ * <p>Guava does not expose the entry its eviction policy would remove next: the key last
+ * evicted for size stands for it, the entries about to be evicted being as cold as the ones
+ * just evicted. The cache is considered at its size bound from an eviction for size until an
+ * entry is removed for any other cause, as on {@link #evict(Object) evict},
+ * {@link #clear() clear} or expiry: new entries are only filtered while the cache is at its
+ * bound, and entries replacing a cached value are always admitted. Values loaded through
+ * {@link #get(Object, Callable)} and stored by {@link #putIfAbsent(Object, Object)} are
+ * always admitted as well. The removal listener of the native cache being taken, an
+ * AdmittingGuavaCache cannot be tiered, tagged or expiring.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class AdmittingGuavaCache extends GuavaCache {
+
+	private final AdmissionPolicy admissionPolicy;
+
+	private final VictimRemovalListener victims;
+
+	/**
+	 * Create a new AdmittingGuavaCache with the specified name.
+	 * @param name the name of the cache
+	 * @param builder the CacheBuilder used to build the native cache, bounded by size
+	 * @param allowNullValues whether to accept and convert null values for this cache
+	 * @param admissionPolicy the policy admitting new entries
+	 */
+	public AdmittingGuavaCache(String name, CacheBuilder<Object, Object> builder, boolean allowNullValues,
+							   AdmissionPolicy admissionPolicy) {
+		this(name, builder, allowNullValues, admissionPolicy, new VictimRemovalListener());
+	}
+
+	private AdmittingGuavaCache(String name, CacheBuilder<Object, Object> builder, boolean allowNullValues,
+								AdmissionPolicy admissionPolicy, VictimRemovalListener victims) {
+		super(name, builder.removalListener(victims).build(), allowNullValues, false);
+		this.admissionPolicy = checkNotNull(admissionPolicy, "admissionPolicy is required");
+		this.victims = victims;
+	}
+
+	public AdmissionPolicy getAdmissionPolicy() {
+		return this.admissionPolicy;
+	}
+
+	@Override
+	public ValueWrapper get(Object key) {
+		this.admissionPolicy.record(key);
+		return super.get(key);
+	}
+
+	@Override
+	public <T> T get(Object key, Callable<T> valueLoader) {
+		this.admissionPolicy.record(key);
+		return super.get(key, valueLoader);
+	}
+
+	@Override
+	public BulkGetResult getAll(Iterable<?> keys) {
+		for (Object key : keys) {
+			this.admissionPolicy.record(key);
+		}
+		return super.getAll(keys);
+	}
+
+	@Override
+	public void put(Object key, Object value) {
+		if (admit(key)) {
+			super.put(key, value);
+		}
+	}
+
+	@Override
+	public void putAll(Map<?, ?> values) {
+		Map<Object, Object> admitted = new LinkedHashMap<Object, Object>(values.size() * 2);
+		for (Map.Entry<?, ?> entry : values.entrySet()) {
+			if (admit(entry.getKey())) {
+				admitted.put(entry.getKey(), entry.getValue());
+			}
+		}
+		super.putAll(admitted);
+	}
+
+	@Override
+	public void evictAll(Iterable<?> keys) {
+		super.evictAll(keys);
+		this.victims.lastVictimKey = null;
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		this.victims.lastVictimKey = null;
+	}
+
+	private boolean admit(Object key) {
+		Object victimKey = this.victims.lastVictimKey;
+		if (victimKey == null || victimKey.equals(key) || getNativeCache().asMap().containsKey(key)) {
+			return true;
+		}
+		return this.admissionPolicy.admit(key, victimKey);
+	}
+
+	/**
+	 * {@link RemovalListener} remembering the key of the last entry evicted for size, and
+	 * forgetting it once an entry is removed for another cause, making room in the cache.
+	 */
+	private static final class VictimRemovalListener implements RemovalListener<Object, Object> {
+
+		private volatile Object lastVictimKey;
+
+		@Override
+		public void onRemoval(RemovalNotification<Object, Object> notification) {
+			RemovalCause cause = notification.getCause();
+			if (cause == RemovalCause.SIZE && notification.getKey() != null) {
+				this.lastVictimKey = notification.getKey();
+			}
+			else if (cause != RemovalCause.REPLACED) {
+				this.lastVictimKey = null;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Result of a {@link GuavaCache#getAll(Iterable) bulk lookup}: the values found in the
+ * cache, and the keys that were not.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class BulkGetResult {
+
+	private final Map<Object, Object> hits;
+
+	private final Set<Object> missingKeys;
+
+	public BulkGetResult(Map<Object, Object> hits, Set<Object> missingKeys) {
+		this.hits = Collections.unmodifiableMap(hits);
+		this.missingKeys = Collections.unmodifiableSet(missingKeys);
+	}
+
+	/**
+	 * Return the cached values by key, in the order of the requested keys. Cached
+	 * {@code null} values are mapped to {@code null}.
+	 */
+	public Map<Object, Object> getHits() {
+		return hits;
+	}
+
+	/**
+	 * Return the keys without cached value, in the order of the requested keys.
+	 */
+	public Set<Object> getMissingKeys() {
+		return missingKeys;
+	}
+
+	/**
+	 * Return whether all the requested keys were found in the cache.
+	 */
+	public boolean isComplete() {
+		return missingKeys.isEmpty();
+	}
+
+}
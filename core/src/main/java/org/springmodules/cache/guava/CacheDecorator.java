@@ -0,0 +1,33 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import org.springframework.cache.Cache;
+
+/**
+ * {@link Cache} decorating another {@link Cache}, typically a {@link GuavaCache}.
+ * @author Omar Irbouh
+ * @since 1.0
+ * @see GuavaCaches#unwrap(Cache)
+ */
+public interface CacheDecorator extends Cache {
+
+	/**
+	 * Return the decorated cache.
+	 */
+	Cache getTargetCache();
+
+}
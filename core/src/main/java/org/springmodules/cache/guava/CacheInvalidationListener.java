@@ -0,0 +1,34 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+/**
+ * Listener notified by a {@link GuavaCache} after its entries are evicted, cleared or merged,
+ * whatever the caller: typically a {@link NearCache} invalidating the entries it keeps.
+ * @author Omar Irbouh
+ * @since 1.0
+ * @see GuavaCache#addInvalidationListener(CacheInvalidationListener)
+ */
+public interface CacheInvalidationListener {
+
+	/**
+	 * Notification that entries of the given cache were removed or replaced. Called on the
+	 * thread modifying the cache, once the entries are modified: implementations must be fast.
+	 * @param cache the modified cache
+	 */
+	void cacheInvalidated(GuavaCache cache);
+
+}
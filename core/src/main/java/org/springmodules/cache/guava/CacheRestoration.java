@@ -0,0 +1,92 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Restoration of entries into a {@link GuavaCache} in use, such as the entries of a
+ * {@link org.springmodules.cache.guava.snapshot.CacheSnapshot snapshot} restored in the
+ * background. Restored values never replace cached values, and the keys evicted from the
+ * cache since the restoration {@link GuavaCache#startRestoration() started} are not restored
+ * anymore, so that an entry evicted because its data changed does not come back with a stale
+ * value. Once the cache is cleared, nothing is restored.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class CacheRestoration {
+
+	private final GuavaCache cache;
+
+	private final Set<Object> evictedKeys = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+
+	private volatile boolean cleared;
+
+	CacheRestoration(GuavaCache cache) {
+		this.cache = checkNotNull(cache, "cache is required");
+	}
+
+	/**
+	 * Restore the given entry, unless the key is cached or was evicted since the restoration
+	 * started.
+	 * @param key the key of the entry
+	 * @param value the value of the entry
+	 * @return whether the entry was restored
+	 */
+	public boolean restore(Object key, Object value) {
+		if (isEvicted(key) || this.cache.putIfAbsent(key, value) != null) {
+			return false;
+		}
+		// an eviction recorded before the entry was restored did not see it: evict it again
+		if (isEvicted(key)) {
+			this.cache.evict(key);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Return whether the cache was cleared since the restoration started, in which case
+	 * nothing is restored anymore.
+	 */
+	public boolean isCleared() {
+		return this.cleared;
+	}
+
+	/**
+	 * End the restoration, so that evictions are not recorded for it anymore.
+	 */
+	public void close() {
+		this.cache.endRestoration(this);
+	}
+
+	void evicted(Object key) {
+		this.evictedKeys.add(key);
+	}
+
+	void cleared() {
+		this.cleared = true;
+	}
+
+	private boolean isEvicted(Object key) {
+		return (this.cleared || this.evictedKeys.contains(key));
+	}
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link Function} applying a single change to a cached collection, for use with
+ * {@link GuavaCache#merge(Object, Function)}: an element is added, replaced or removed
+ * without reloading the whole collection.
+ * <p>The cached collection is never modified: a copy is returned, a {@link LinkedHashSet}
+ * for sets and an {@link java.util.ArrayList} otherwise. The elements affected by the change
+ * are those matching a {@link Predicate}, by default those equal to the element. When the
+ * cached value is not a collection, or when no element matches a replacement, the cached
+ * value cannot be patched and the entry is evicted.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class CollectionPatch implements Function<Object, Object> {
+
+	/**
+	 * Change applied to the cached collection.
+	 */
+	public enum Operation {
+
+		/**
+		 * Add the element first, removing the matching elements.
+		 */
+		ADD_FIRST,
+
+		/**
+		 * Add the element last, removing the matching elements.
+		 */
+		ADD_LAST,
+
+		/**
+		 * Replace the matching elements with the element, in place.
+		 */
+		REPLACE,
+
+		/**
+		 * Remove the matching elements.
+		 */
+		REMOVE
+
+	}
+
+	private final Operation operation;
+
+	private final Object element;
+
+	private final Predicate<Object> matcher;
+
+	/**
+	 * Create a new CollectionPatch.
+	 * @param operation the change to apply
+	 * @param element the element to add or replace, ignored by {@link Operation#REMOVE}
+	 * @param matcher the predicate matching the cached elements replaced or removed
+	 */
+	public CollectionPatch(Operation operation, Object element, Predicate<Object> matcher) {
+		this.operation = checkNotNull(operation, "operation is required");
+		this.element = element;
+		this.matcher = checkNotNull(matcher, "matcher is required");
+	}
+
+	/**
+	 * Return a patch adding the given element first, in place of the equal elements.
+	 */
+	public static CollectionPatch addFirst(Object element) {
+		return new CollectionPatch(Operation.ADD_FIRST, element, Predicates.equalTo(element));
+	}
+
+	/**
+	 * Return a patch adding the given element last, in place of the equal elements.
+	 */
+	public static CollectionPatch addLast(Object element) {
+		return new CollectionPatch(Operation.ADD_LAST, element, Predicates.equalTo(element));
+	}
+
+	/**
+	 * Return a patch replacing the elements equal to the given element.
+	 */
+	public static CollectionPatch replace(Object element) {
+		return new CollectionPatch(Operation.REPLACE, element, Predicates.equalTo(element));
+	}
+
+	/**
+	 * Return a patch removing the elements equal to the given element.
+	 */
+	public static CollectionPatch remove(Object element) {
+		return new CollectionPatch(Operation.REMOVE, element, Predicates.equalTo(element));
+	}
+
+	public Operation getOperation() {
+		return this.operation;
+	}
+
+	public Object getElement() {
+		return this.element;
+	}
+
+	@Override
+	public Object apply(Object value) {
+		if (!(value instanceof Collection)) {
+			return null;
+		}
+		Collection<?> collection = (Collection<?>) value;
+		Collection<Object> patched = (collection instanceof Set ?
+				new LinkedHashSet<Object>(collection.size() * 2) : new ArrayList<Object>(collection.size() + 1));
+		if (this.operation == Operation.ADD_FIRST) {
+			patched.add(this.element);
+		}
+		boolean matched = false;
+		for (Object current : collection) {
+			if (this.matcher.apply(current)) {
+				matched = true;
+				if (this.operation == Operation.REPLACE) {
+					patched.add(this.element);
+				}
+			}
+			else {
+				patched.add(current);
+			}
+		}
+		if (this.operation == Operation.ADD_LAST) {
+			patched.add(this.element);
+		}
+		if (this.operation == Operation.REPLACE && !matched) {
+			return null;
+		}
+		return patched;
+	}
+
+	@Override
+	public String toString() {
+		return "CollectionPatch [" + this.operation + " " + this.element + "]";
+	}
+
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import com.google.common.base.Function;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import org.springmodules.cache.guava.expiry.Expiry;
+import org.springmodules.cache.guava.expiry.TimerWheel;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link GuavaCache} whose entries expire individually: the time to live of each entry is
+ * either computed by an {@link Expiry} from its key and value, or given to
+ * {@link #put(Object, Object, long, TimeUnit)}.
+ * <p>Expired entries are never returned, and are removed from the native cache as their time
+ * comes by a {@link TimerWheel}, advanced on writes and on {@link #cleanUp()}; the wheel is
+ * kept in sync with the native cache by a removal listener, so that entries evicted or
+ * replaced are descheduled. The removal listener of the native cache being taken, an
+ * ExpiringGuavaCache cannot be tiered or tagged.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class ExpiringGuavaCache extends GuavaCache {
+
+	/**
+	 * Time to live of the entries that never expire, about 146 years.
+	 */
+	private static final long MAXIMUM_TIME_TO_LIVE = Long.MAX_VALUE >> 1;
+
+	private final Expiry expiry;
+
+	private final ExpirationScheduler scheduler;
+
+	/**
+	 * Create a new ExpiringGuavaCache with the specified name.
+	 * @param name the name of the cache
+	 * @param builder the CacheBuilder used to build the native cache
+	 * @param allowNullValues whether to accept and convert null values for this cache
+	 * @param expiry the expiry of the entries stored without explicit time to live, or
+	 * {@code null} for these entries never to expire
+	 */
+	public ExpiringGuavaCache(String name, CacheBuilder<Object, Object> builder, boolean allowNullValues,
+							  Expiry expiry) {
+		this(name, builder, allowNullValues, expiry, Ticker.systemTicker());
+	}
+
+	/**
+	 * Create a new ExpiringGuavaCache with the specified name.
+	 * @param name the name of the cache
+	 * @param builder the CacheBuilder used to build the native cache
+	 * @param allowNullValues whether to accept and convert null values for this cache
+	 * @param expiry the expiry of the entries stored without explicit time to live, or
+	 * {@code null} for these entries never to expire
+	 * @param ticker the time source of the expiration times
+	 */
+	public ExpiringGuavaCache(String name, CacheBuilder<Object, Object> builder, boolean allowNullValues,
+							  Expiry expiry, Ticker ticker) {
+		this(name, builder, allowNullValues, expiry, new ExpirationScheduler(ticker));
+	}
+
+	private ExpiringGuavaCache(String name, CacheBuilder<Object, Object> builder, boolean allowNullValues,
+							   Expiry expiry, ExpirationScheduler scheduler) {
+		super(name, builder.removalListener(scheduler).build(), allowNullValues, false);
+		this.expiry = expiry;
+		this.scheduler = scheduler;
+		scheduler.store = getNativeCache();
+	}
+
+	public Expiry getExpiry() {
+		return this.expiry;
+	}
+
+	@Override
+	public ValueWrapper get(Object key) {
+		return getTimedValue(key);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T get(Object key, Callable<T> valueLoader) {
+		TimedValue timedValue = getTimedValue(key);
+		if (timedValue != null) {
+			return (T) timedValue.get();
+		}
+		T value = super.get(key, valueLoader);
+		this.scheduler.expireEntries(false);
+		return value;
+	}
+
+	@Override
+	public BulkGetResult getAll(Iterable<?> keys) {
+		Set<Object> requestedKeys = new LinkedHashSet<Object>();
+		for (Object key : keys) {
+			requestedKeys.add(key);
+		}
+		Map<Object, Object> present = getNativeCache().getAllPresent(requestedKeys);
+		Map<Object, Object> hits = new LinkedHashMap<Object, Object>(present.size() * 2);
+		Set<Object> missingKeys = new LinkedHashSet<Object>();
+		long now = this.scheduler.read();
+		for (Object key : requestedKeys) {
+			TimedValue timedValue = (TimedValue) present.get(key);
+			if (timedValue != null && !timedValue.isExpired(now)) {
+				hits.put(key, timedValue.get());
+			}
+			else {
+				if (timedValue != null) {
+					getNativeCache().asMap().remove(key, timedValue);
+				}
+				missingKeys.add(key);
+			}
+		}
+		return new BulkGetResult(hits, missingKeys);
+	}
+
+	@Override
+	public void put(Object key, Object value) {
+		put(key, value, timeToLive(key, value), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Associate the specified value with the specified key in this cache, the entry expiring
+	 * after the given time to live.
+	 * @param key the key with which the specified value is to be associated
+	 * @param value the value to be associated with the specified key
+	 * @param timeToLive the time to live of the entry
+	 * @param unit the unit of {@code timeToLive}
+	 */
+	public void put(Object key, Object value, long timeToLive, TimeUnit unit) {
+		checkNotNull(key, "key is required");
+		checkValue(value);
+		getNativeCache().put(key, newTimedValue(key, value, unit.toNanos(timeToLive)));
+		this.scheduler.expireEntries(false);
+	}
+
+	@Override
+	public ValueWrapper putIfAbsent(Object key, Object value) {
+		if (value == null && !isAllowNullValues()) {
+			return null;
+		}
+		TimedValue existing = getTimedValue(key);
+		if (existing != null) {
+			return existing;
+		}
+		TimedValue timedValue = newTimedValue(key, value, timeToLive(key, value));
+		existing = (TimedValue) getNativeCache().asMap().putIfAbsent(key, timedValue);
+		if (existing != null) {
+			this.scheduler.deschedule(timedValue);
+			return existing;
+		}
+		this.scheduler.expireEntries(false);
+		return null;
+	}
+
+	@Override
+	public void putAll(Map<?, ?> values) {
+		Map<Object, Object> timedValues = new LinkedHashMap<Object, Object>(values.size() * 2);
+		for (Map.Entry<?, ?> entry : values.entrySet()) {
+			Object key = checkNotNull(entry.getKey(), "key is required");
+			Object value = checkValue(entry.getValue());
+			timedValues.put(key, newTimedValue(key, value, timeToLive(key, value)));
+		}
+		getNativeCache().putAll(timedValues);
+		this.scheduler.expireEntries(false);
+	}
+
+	/**
+	 * Atomically replace the value cached for the given key with the result of the given
+	 * function, the time to live of the entry being computed again from the new value.
+	 * Expired entries are left absent.
+	 */
+	@Override
+	public ValueWrapper merge(Object key, Function<Object, ?> function) {
+		checkNotNull(key, "key is required");
+		checkNotNull(function, "function is required");
+		ConcurrentMap<Object, Object> map = getNativeCache().asMap();
+		while (true) {
+			TimedValue current = getTimedValue(key);
+			if (current == null) {
+				return null;
+			}
+			Object value = function.apply(current.get());
+			if (value == null) {
+				if (map.remove(key, current)) {
+					recordEviction(key);
+					invalidated();
+					return null;
+				}
+				continue;
+			}
+			TimedValue timedValue = newTimedValue(key, value, timeToLive(key, value));
+			if (map.replace(key, current, timedValue)) {
+				invalidated();
+				this.scheduler.expireEntries(false);
+				return timedValue;
+			}
+			this.scheduler.deschedule(timedValue);
+		}
+	}
+
+	/**
+	 * Remove the expired entries from the native cache, and perform its pending maintenance.
+	 */
+	public void cleanUp() {
+		this.scheduler.expireEntries(true);
+		getNativeCache().cleanUp();
+	}
+
+	/**
+	 * Return the number of entries scheduled to expire.
+	 */
+	public int getScheduledCount() {
+		return this.scheduler.size();
+	}
+
+	@Override
+	protected Object fromStoreValue(Object storeValue) {
+		if (storeValue instanceof TimedValue) {
+			return ((TimedValue) storeValue).get();
+		}
+		return super.fromStoreValue(storeValue);
+	}
+
+	@Override
+	protected Object toLoadedStoreValue(Object key, Object userValue, Callable<?> valueLoader) {
+		if (userValue == null && !isAllowNullValues()) {
+			return null;
+		}
+		return newTimedValue(key, userValue, timeToLive(key, userValue));
+	}
+
+	@Override
+	public ValueWrapper peek(Object key) {
+		Object value = getNativeCache().asMap().get(key);
+		if (value instanceof TimedValue && !((TimedValue) value).isExpired(this.scheduler.read())) {
+			return (TimedValue) value;
+		}
+		return null;
+	}
+
+	private TimedValue getTimedValue(Object key) {
+		TimedValue timedValue = (TimedValue) getNativeCache().getIfPresent(key);
+		if (timedValue != null && timedValue.isExpired(this.scheduler.read())) {
+			getNativeCache().asMap().remove(key, timedValue);
+			return null;
+		}
+		return timedValue;
+	}
+
+	private long timeToLive(Object key, Object value) {
+		return (this.expiry != null ? this.expiry.expireAfterWrite(key, value) : MAXIMUM_TIME_TO_LIVE);
+	}
+
+	private Object checkValue(Object value) {
+		return (isAllowNullValues() ? value : checkNotNull(value, "null values are not allowed"));
+	}
+
+	/**
+	 * Create the store value of the given entry, scheduling its expiration before it is
+	 * stored, so that the removal listener always finds it scheduled.
+	 */
+	private TimedValue newTimedValue(Object key, Object value, long timeToLive) {
+		long boundedTimeToLive = Math.max(0L, Math.min(timeToLive, MAXIMUM_TIME_TO_LIVE));
+		TimedValue timedValue = new TimedValue(key, value, this.scheduler.read() + boundedTimeToLive);
+		if (boundedTimeToLive < MAXIMUM_TIME_TO_LIVE) {
+			this.scheduler.schedule(timedValue);
+		}
+		return timedValue;
+	}
+
+	/**
+	 * Store value carrying its expiration time, scheduled in the timer wheel.
+	 */
+	private static final class TimedValue extends TimerWheel.Timer implements ValueWrapper {
+
+		private final Object key;
+
+		private final Object value;
+
+		TimedValue(Object key, Object value, long expirationTime) {
+			super(expirationTime);
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public Object get() {
+			return this.value;
+		}
+
+	}
+
+	/**
+	 * {@link RemovalListener} descheduling the entries removed from the native cache, and
+	 * removing the entries expired by the timer wheel. The wheel is guarded by a lock, only
+	 * tried on writes so that writers do not queue up behind an advance of the wheel.
+	 */
+	private static final class ExpirationScheduler implements RemovalListener<Object, Object> {
+
+		private final Ticker ticker;
+
+		private final TimerWheel<TimedValue> timerWheel;
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		private volatile com.google.common.cache.Cache<Object, Object> store;
+
+		ExpirationScheduler(Ticker ticker) {
+			this.ticker = checkNotNull(ticker, "ticker is required");
+			this.timerWheel = new TimerWheel<TimedValue>(ticker.read());
+		}
+
+		long read() {
+			return this.ticker.read();
+		}
+
+		int size() {
+			this.lock.lock();
+			try {
+				return this.timerWheel.size();
+			}
+			finally {
+				this.lock.unlock();
+			}
+		}
+
+		void schedule(TimedValue timedValue) {
+			this.lock.lock();
+			try {
+				this.timerWheel.schedule(timedValue);
+			}
+			finally {
+				this.lock.unlock();
+			}
+		}
+
+		void deschedule(TimedValue timedValue) {
+			this.lock.lock();
+			try {
+				this.timerWheel.deschedule(timedValue);
+			}
+			finally {
+				this.lock.unlock();
+			}
+		}
+
+		void expireEntries(boolean wait) {
+			if (wait) {
+				this.lock.lock();
+			}
+			else if (!this.lock.tryLock()) {
+				return;
+			}
+			List<TimedValue> expired;
+			try {
+				expired = this.timerWheel.advance(this.ticker.read());
+			}
+			finally {
+				this.lock.unlock();
+			}
+			for (TimedValue timedValue : expired) {
+				this.store.asMap().remove(timedValue.key, timedValue);
+			}
+		}
+
+		@Override
+		public void onRemoval(RemovalNotification<Object, Object> notification) {
+			if (notification.getValue() instanceof TimedValue) {
+				deschedule((TimedValue) notification.getValue());
+			}
+		}
+
+	}
+
+}
@@ -15,30 +15,59 @@
  */
 package org.springmodules.cache.guava;
 
+import com.google.common.base.Function;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheBuilderSpec;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.springframework.cache.Cache;
 import org.springframework.cache.support.SimpleValueWrapper;
+import org.springmodules.cache.guava.codec.ValueCodec;
 
 import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * Simple {@link Cache} implementation backed by {@link com.google.common.cache.Cache}.
+ * <p>Cached {@code null} values share the expiry and size bound of the other values, unless a
+ * separate {@link #getNullValueStore() null value store} is given: misses for nonexistent keys
+ * are then cached there, typically with a shorter expiry, and cannot evict actual values.
  * @author Omar Irbouh
  * @since 1.0
  */
 public class GuavaCache implements Cache {
 
-	private static final Object NULL_HOLDER = new NullHolder();
+	private static final NullHolder NULL_HOLDER = new NullHolder();
 
 	private final String name;
 
 	private final com.google.common.cache.Cache<Object, Object> store;
 
+	private final com.google.common.cache.Cache<Object, Object> nullValueStore;
+
 	private final boolean allowNullValues;
 
+	private final boolean storeValueWrappers;
+
+	private final ValueCodec valueCodec;
+
+	private final Set<CacheRestoration> restorations = new CopyOnWriteArraySet<CacheRestoration>();
+
+	private final Set<CacheInvalidationListener> invalidationListeners =
+			new CopyOnWriteArraySet<CacheInvalidationListener>();
+
 	/**
 	 * Create a new GuavaCache with the specified name.
 	 * @param name the name of the cache
@@ -71,9 +100,100 @@ public class GuavaCache implements Cache {
 	 * @param builder the cache builder to use to build the cache
 	 */
 	public GuavaCache(String name, CacheBuilder<Object, Object> builder, boolean allowNullValues) {
+		this(name, builder, allowNullValues, false);
+	}
+
+	/**
+	 * Create a new GuavaCache using the specified name and {@link CacheBuilderSpec specification}
+	 * <p>When {@code storeValueWrappers} is {@code true}, values are wrapped once at
+	 * {@link #put(Object, Object) put} time and the native cache holds {@link ValueWrapper}
+	 * instances, so that a cache hit does not allocate.
+	 * @param name the name of the cache
+	 * @param builder the cache builder to use to build the cache
+	 * @param allowNullValues whether to accept and convert null values for this cache
+	 * @param storeValueWrappers whether to store {@link ValueWrapper} instances in the native cache
+	 */
+	public GuavaCache(String name, CacheBuilder<Object, Object> builder, boolean allowNullValues,
+					  boolean storeValueWrappers) {
+		this(name, builder.build(), allowNullValues, storeValueWrappers);
+	}
+
+	/**
+	 * Create a new GuavaCache holding {@code null} values in a separate store built by the
+	 * given builder, apart from the size bound and expiry of the other values.
+	 * @param name the name of the cache
+	 * @param builder the cache builder to use to build the cache
+	 * @param nullValueBuilder the cache builder to use to build the null value store
+	 * @param storeValueWrappers whether to store {@link ValueWrapper} instances in the native cache
+	 */
+	public GuavaCache(String name, CacheBuilder<Object, Object> builder, CacheBuilder<Object, Object> nullValueBuilder,
+					  boolean storeValueWrappers) {
+		this(name, builder.build(), nullValueBuilder.build(), true, storeValueWrappers, null);
+	}
+
+	/**
+	 * Create a new GuavaCache storing values by value: values are encoded with the given
+	 * codec at {@link #put(Object, Object) put} time, and every read decodes a new copy.
+	 * Later changes to cached or returned objects therefore do not affect the cache, and
+	 * the native cache only retains the encoded bytes.
+	 * @param name the name of the cache
+	 * @param builder the cache builder to use to build the cache
+	 * @param allowNullValues whether to accept and convert null values for this cache
+	 * @param valueCodec the codec encoding values, or {@code null} to store values by reference
+	 */
+	public GuavaCache(String name, CacheBuilder<Object, Object> builder, boolean allowNullValues,
+					  ValueCodec valueCodec) {
+		this(name, builder.build(), allowNullValues, false, valueCodec);
+	}
+
+	/**
+	 * Create a new GuavaCache with the specified name, backed by the given native cache.
+	 * @param name the name of the cache
+	 * @param store the native cache
+	 * @param allowNullValues whether to accept and convert null values for this cache
+	 * @param storeValueWrappers whether to store {@link ValueWrapper} instances in the native cache
+	 */
+	protected GuavaCache(String name, com.google.common.cache.Cache<Object, Object> store,
+						 boolean allowNullValues, boolean storeValueWrappers) {
+		this(name, store, allowNullValues, storeValueWrappers, null);
+	}
+
+	/**
+	 * Create a new GuavaCache with the specified name, backed by the given native cache.
+	 * @param name the name of the cache
+	 * @param store the native cache
+	 * @param allowNullValues whether to accept and convert null values for this cache
+	 * @param storeValueWrappers whether to store {@link ValueWrapper} instances in the native cache
+	 * @param valueCodec the codec encoding values, or {@code null} to store values by reference
+	 */
+	protected GuavaCache(String name, com.google.common.cache.Cache<Object, Object> store,
+						 boolean allowNullValues, boolean storeValueWrappers, ValueCodec valueCodec) {
+		this(name, store, null, allowNullValues, storeValueWrappers, valueCodec);
+	}
+
+	/**
+	 * Create a new GuavaCache with the specified name, backed by the given native caches.
+	 * @param name the name of the cache
+	 * @param store the native cache
+	 * @param nullValueStore the native cache holding {@code null} values, or {@code null} to
+	 * hold them in {@code store}
+	 * @param allowNullValues whether to accept and convert null values for this cache
+	 * @param storeValueWrappers whether to store {@link ValueWrapper} instances in the native cache
+	 * @param valueCodec the codec encoding values, or {@code null} to store values by reference
+	 */
+	protected GuavaCache(String name, com.google.common.cache.Cache<Object, Object> store,
+						 com.google.common.cache.Cache<Object, Object> nullValueStore, boolean allowNullValues,
+						 boolean storeValueWrappers, ValueCodec valueCodec) {
+		checkArgument(!(storeValueWrappers && valueCodec != null),
+				"storeValueWrappers cannot be combined with a valueCodec");
+		checkArgument(nullValueStore == null || allowNullValues,
+				"a nullValueStore requires null values to be allowed");
 		this.name = checkNotNull(name, "name is required");
 		this.allowNullValues = allowNullValues;
-		this.store = builder.build();
+		this.storeValueWrappers = storeValueWrappers;
+		this.valueCodec = valueCodec;
+		this.store = checkNotNull(store, "store is required");
+		this.nullValueStore = nullValueStore;
 	}
 
 	@Override
@@ -85,35 +205,339 @@ public class GuavaCache implements Cache {
 		return allowNullValues;
 	}
 
+	public boolean isStoreValueWrappers() {
+		return storeValueWrappers;
+	}
+
+	/**
+	 * Return the codec encoding values, or {@code null} if values are stored by reference.
+	 */
+	public ValueCodec getValueCodec() {
+		return valueCodec;
+	}
+
 	@Override
 	public com.google.common.cache.Cache<Object, Object> getNativeCache() {
 		return this.store;
 	}
 
+	/**
+	 * Return the native cache holding {@code null} values apart from the other values, or
+	 * {@code null} if they are held by the {@link #getNativeCache() native cache}.
+	 */
+	public com.google.common.cache.Cache<Object, Object> getNullValueStore() {
+		return this.nullValueStore;
+	}
+
+	/**
+	 * Return the statistics of the native cache. Statistics are only recorded when the
+	 * cache is built with {@link CacheBuilder#recordStats() recordStats} (or the
+	 * {@code recordStats} spec); otherwise all counters are zero.
+	 * @return a snapshot of the cache statistics
+	 * @see org.springmodules.cache.guava.jmx.GuavaCacheStatistics
+	 */
+	public CacheStats getStats() {
+		return this.store.stats();
+	}
+
 	@Override
 	public ValueWrapper get(Object key) {
 		Object value = this.store.getIfPresent(key);
-		return (value != null ? new SimpleValueWrapper(fromStoreValue(value)) : null);
+		if (value != null) {
+			return toValueWrapper(value);
+		}
+		return (containsNullValue(key) ? NULL_HOLDER : null);
+	}
+
+	/**
+	 * Return the value to which this cache maps the specified key, obtaining that value
+	 * from {@code valueLoader} if necessary.
+	 * <p>Concurrent callers missing on the same key share a single invocation of
+	 * {@code valueLoader}: one thread loads the value while the others wait for it.
+	 * @param key the key whose associated value is to be returned
+	 * @param valueLoader the callable used to load the value on a cache miss
+	 * @return the cached or loaded value
+	 * @throws ValueRetrievalException if {@code valueLoader} throws an exception
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(final Object key, final Callable<T> valueLoader) {
+		if (containsNullValue(key)) {
+			return null;
+		}
+		try {
+			Object value = this.store.get(key, new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					T userValue = valueLoader.call();
+					if (userValue == null && nullValueStore != null) {
+						nullValueStore.put(key, NULL_HOLDER);
+						return null;
+					}
+					return toLoadedStoreValue(key, userValue, valueLoader);
+				}
+			});
+			return (T) fromStoredValue(value);
+		}
+		catch (InvalidCacheLoadException ex) {
+			// null value loaded while null values are not allowed, or held by the null
+			// value store: nothing to cache
+			return null;
+		}
+		catch (ExecutionException ex) {
+			throw new ValueRetrievalException(key, ex.getCause());
+		}
+		catch (UncheckedExecutionException ex) {
+			throw new ValueRetrievalException(key, ex.getCause());
+		}
+		catch (ExecutionError ex) {
+			throw new ValueRetrievalException(key, ex.getCause());
+		}
 	}
 
 	@Override
 	public void put(Object key, Object value) {
-		this.store.put(key, toStoreValue(value));
+		if (this.nullValueStore == null) {
+			this.store.put(key, toStoredValue(value));
+		}
+		else if (value == null) {
+			this.nullValueStore.put(key, NULL_HOLDER);
+			this.store.invalidate(key);
+		}
+		else {
+			this.store.put(key, toStoredValue(value));
+			this.nullValueStore.invalidate(key);
+		}
+	}
+
+	/**
+	 * Associate the specified value with the specified key in this cache, unless the key is
+	 * already mapped.
+	 * @param key the key with which the specified value is to be associated
+	 * @param value the value to be associated with the specified key
+	 * @return the value the key is already mapped to, or {@code null} if the value was cached
+	 */
+	public ValueWrapper putIfAbsent(Object key, Object value) {
+		if (this.nullValueStore != null) {
+			if (containsNullValue(key)) {
+				return NULL_HOLDER;
+			}
+			if (value == null) {
+				Object existing = this.store.getIfPresent(key);
+				if (existing != null) {
+					return toValueWrapper(existing);
+				}
+				return (this.nullValueStore.asMap().putIfAbsent(key, NULL_HOLDER) != null ? NULL_HOLDER : null);
+			}
+		}
+		Object storeValue = toStoredValue(value);
+		if (storeValue == null) {
+			return null;
+		}
+		Object existing = this.store.asMap().putIfAbsent(key, storeValue);
+		return (existing != null ? toValueWrapper(existing) : null);
+	}
+
+	/**
+	 * Atomically replace the value cached for the given key with the result of the given
+	 * function, typically a {@link CollectionPatch} applying a single change to a cached
+	 * collection. The function is applied to the current value, possibly {@code null}, and
+	 * applied again if the entry changed concurrently: it must not have side effects.
+	 * Entries that are not cached are left absent, so that a patch never caches a partial
+	 * value.
+	 * @param key the key of the entry to merge
+	 * @param function the function computing the new value from the cached one, returning
+	 * {@code null} to evict the entry
+	 * @return the new value, or {@code null} if the key is not cached or was evicted
+	 */
+	public ValueWrapper merge(Object key, Function<Object, ?> function) {
+		checkNotNull(key, "key is required");
+		checkNotNull(function, "function is required");
+		ConcurrentMap<Object, Object> map = this.store.asMap();
+		while (true) {
+			Object storeValue = map.get(key);
+			if (storeValue == null) {
+				return null;
+			}
+			Object value = function.apply(fromStoredValue(storeValue));
+			if (value == null) {
+				if (map.remove(key, storeValue)) {
+					recordEviction(key);
+					invalidated();
+					return null;
+				}
+			}
+			else if (map.replace(key, storeValue, toStoredValue(value))) {
+				invalidated();
+				return new SimpleValueWrapper(value);
+			}
+		}
+	}
+
+	/**
+	 * Look up the given keys in a single pass over the native cache.
+	 * @param keys the keys to look up
+	 * @return the cached values and the missing keys
+	 */
+	public BulkGetResult getAll(Iterable<?> keys) {
+		Set<Object> requestedKeys = new LinkedHashSet<Object>();
+		for (Object key : keys) {
+			requestedKeys.add(key);
+		}
+		Map<Object, Object> present = this.store.getAllPresent(requestedKeys);
+		Map<Object, Object> hits = new LinkedHashMap<Object, Object>(present.size() * 2);
+		Set<Object> missingKeys = new LinkedHashSet<Object>();
+		for (Object key : requestedKeys) {
+			Object storeValue = present.get(key);
+			if (storeValue != null) {
+				hits.put(key, fromStoredValue(storeValue));
+			}
+			else {
+				missingKeys.add(key);
+			}
+		}
+		if (this.nullValueStore != null && !missingKeys.isEmpty()) {
+			for (Object key : this.nullValueStore.getAllPresent(missingKeys).keySet()) {
+				hits.put(key, null);
+				missingKeys.remove(key);
+			}
+		}
+		return new BulkGetResult(hits, missingKeys);
+	}
+
+	/**
+	 * Associate all the given values with their keys in this cache.
+	 * @param values the values to cache, by key
+	 */
+	public void putAll(Map<?, ?> values) {
+		if (this.nullValueStore != null) {
+			putAllSeparatingNullValues(values);
+			return;
+		}
+		Map<Object, Object> storeValues = new LinkedHashMap<Object, Object>(values.size() * 2);
+		for (Map.Entry<?, ?> entry : values.entrySet()) {
+			storeValues.put(entry.getKey(), toStoredValue(entry.getValue()));
+		}
+		this.store.putAll(storeValues);
+	}
+
+	private void putAllSeparatingNullValues(Map<?, ?> values) {
+		Map<Object, Object> storeValues = new LinkedHashMap<Object, Object>(values.size() * 2);
+		Map<Object, Object> nullValues = new LinkedHashMap<Object, Object>();
+		for (Map.Entry<?, ?> entry : values.entrySet()) {
+			if (entry.getValue() == null) {
+				nullValues.put(entry.getKey(), NULL_HOLDER);
+			}
+			else {
+				storeValues.put(entry.getKey(), toStoredValue(entry.getValue()));
+			}
+		}
+		this.store.putAll(storeValues);
+		this.store.invalidateAll(nullValues.keySet());
+		this.nullValueStore.putAll(nullValues);
+		this.nullValueStore.invalidateAll(storeValues.keySet());
 	}
 
 	@Override
 	public void evict(Object key) {
+		recordEviction(key);
 		this.store.invalidate(key);
+		if (this.nullValueStore != null) {
+			this.nullValueStore.invalidate(key);
+		}
+		invalidated();
+	}
+
+	/**
+	 * Evict the mappings of all the given keys from this cache.
+	 * @param keys the keys to evict
+	 */
+	public void evictAll(Iterable<?> keys) {
+		if (!this.restorations.isEmpty()) {
+			for (Object key : keys) {
+				recordEviction(key);
+			}
+		}
+		this.store.invalidateAll(keys);
+		if (this.nullValueStore != null) {
+			this.nullValueStore.invalidateAll(keys);
+		}
+		invalidated();
 	}
 
 	@Override
 	public void clear() {
+		for (CacheRestoration restoration : this.restorations) {
+			restoration.cleared();
+		}
 		this.store.invalidateAll();
+		if (this.nullValueStore != null) {
+			this.nullValueStore.invalidateAll();
+		}
+		invalidated();
+	}
+
+	/**
+	 * Return the value cached for the given key, as {@link #get(Object)} does but without
+	 * side effects: no hit or miss is recorded, and the entry is neither refreshed nor
+	 * promoted from another tier.
+	 * @param key the key whose associated value is to be returned
+	 * @return the value wrapper, or {@code null} if the key is not cached
+	 */
+	public ValueWrapper peek(Object key) {
+		Object value = this.store.asMap().get(key);
+		if (value != null) {
+			return toValueWrapper(value);
+		}
+		return (this.nullValueStore != null && this.nullValueStore.asMap().containsKey(key) ? NULL_HOLDER : null);
+	}
+
+	/**
+	 * Start restoring entries into this cache while it is in use, recording the keys
+	 * evicted until the restoration is {@link CacheRestoration#close() closed}.
+	 * @return the restoration
+	 */
+	public CacheRestoration startRestoration() {
+		CacheRestoration restoration = new CacheRestoration(this);
+		this.restorations.add(restoration);
+		return restoration;
+	}
+
+	void endRestoration(CacheRestoration restoration) {
+		this.restorations.remove(restoration);
+	}
+
+	/**
+	 * Register a listener notified after every {@link #evict evict}, {@link #evictAll evictAll},
+	 * {@link #clear clear} and {@link #merge merge} of this cache.
+	 * @param listener the listener to register
+	 */
+	public void addInvalidationListener(CacheInvalidationListener listener) {
+		this.invalidationListeners.add(checkNotNull(listener, "listener is required"));
+	}
+
+	/**
+	 * Notify the invalidation listeners, after entries were removed or replaced.
+	 */
+	void invalidated() {
+		for (CacheInvalidationListener listener : this.invalidationListeners) {
+			listener.cacheInvalidated(this);
+		}
+	}
+
+	/**
+	 * Record the eviction of the given key in the restorations in progress, before the
+	 * entry is removed.
+	 */
+	void recordEviction(Object key) {
+		for (CacheRestoration restoration : this.restorations) {
+			restoration.evicted(key);
+		}
 	}
 
 	/**
 	 * Convert the given value from the internal store to a user value
-	 * returned from the get method (adapting {@code null}).
+	 * returned from the get method (adapting {@code null} and decoding values
+	 * stored by value).
 	 * @param storeValue the store value
 	 * @return the value to return to the user
 	 */
@@ -121,12 +545,16 @@ public class GuavaCache implements Cache {
 		if (this.allowNullValues && storeValue == NULL_HOLDER) {
 			return null;
 		}
+		if (this.valueCodec != null && storeValue instanceof byte[]) {
+			return this.valueCodec.decode((byte[]) storeValue);
+		}
 		return storeValue;
 	}
 
 	/**
 	 * Convert the given user value, as passed into the put method,
-	 * to a value in the internal store (adapting {@code null}).
+	 * to a value in the internal store (adapting {@code null} and encoding
+	 * values stored by value).
 	 * @param userValue the given user value
 	 * @return the value to store
 	 */
@@ -134,11 +562,116 @@ public class GuavaCache implements Cache {
 		if (this.allowNullValues && userValue == null) {
 			return NULL_HOLDER;
 		}
+		if (this.valueCodec != null && userValue != null) {
+			return this.valueCodec.encode(userValue);
+		}
 		return userValue;
 	}
 
+	/**
+	 * Convert the given user value, as passed into the put method,
+	 * to a {@link ValueWrapper} held by the internal store.
+	 * @param userValue the given user value
+	 * @return the wrapper to store
+	 */
+	protected Object toStoreValueWrapper(Object userValue) {
+		if (userValue == null) {
+			return toStoreValue(null);
+		}
+		return new StoreValueWrapper(userValue);
+	}
+
+	/**
+	 * Convert the given user value, as loaded by {@code valueLoader} in
+	 * {@link #get(Object, Callable)}, to a value in the internal store.
+	 * @param key the key of the loaded value
+	 * @param userValue the loaded user value
+	 * @param valueLoader the callable that loaded the value
+	 * @return the value to store
+	 */
+	protected Object toLoadedStoreValue(Object key, Object userValue, Callable<?> valueLoader) {
+		return toStoredValue(userValue);
+	}
+
+	private Object toStoredValue(Object userValue) {
+		return (this.storeValueWrappers ? toStoreValueWrapper(userValue) : toStoreValue(userValue));
+	}
+
+	private Object fromStoredValue(Object storeValue) {
+		if (this.storeValueWrappers && storeValue instanceof StoreValueWrapper) {
+			return ((StoreValueWrapper) storeValue).get();
+		}
+		return fromStoreValue(storeValue);
+	}
+
+	private boolean containsNullValue(Object key) {
+		return (this.nullValueStore != null && this.nullValueStore.getIfPresent(key) != null);
+	}
+
+	private ValueWrapper toValueWrapper(Object storeValue) {
+		if (this.allowNullValues && storeValue == NULL_HOLDER) {
+			return NULL_HOLDER;
+		}
+		if (this.storeValueWrappers && storeValue instanceof StoreValueWrapper) {
+			return (StoreValueWrapper) storeValue;
+		}
+		return new SimpleValueWrapper(fromStoreValue(storeValue));
+	}
+
+	/**
+	 * Exception thrown when the value loader passed to {@link #get(Object, Callable)}
+	 * fails; the original exception is available as the {@link #getCause() cause}.
+	 */
+	@SuppressWarnings("serial")
+	public static class ValueRetrievalException extends RuntimeException {
+
+		private final Object key;
+
+		public ValueRetrievalException(Object key, Throwable cause) {
+			super("value for key [" + key + "] could not be loaded", cause);
+			this.key = key;
+		}
+
+		public Object getKey() {
+			return this.key;
+		}
+
+	}
+
+	/**
+	 * Shared holder for {@code null} values, also returned as the {@link ValueWrapper}
+	 * of cached {@code null} values.
+	 */
+	@SuppressWarnings("serial")
+	private static class NullHolder implements ValueWrapper, Serializable {
+
+		@Override
+		public Object get() {
+			return null;
+		}
+
+		private Object readResolve() {
+			return NULL_HOLDER;
+		}
+
+	}
+
+	/**
+	 * Immutable {@link ValueWrapper} created once per {@link #put(Object, Object) put}.
+	 */
 	@SuppressWarnings("serial")
-	private static class NullHolder implements Serializable {
+	protected static class StoreValueWrapper implements ValueWrapper, Serializable {
+
+		private final Object value;
+
+		protected StoreValueWrapper(Object value) {
+			this.value = value;
+		}
+
+		@Override
+		public Object get() {
+			return this.value;
+		}
 
 	}
 
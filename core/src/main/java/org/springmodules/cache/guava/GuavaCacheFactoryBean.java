@@ -15,26 +15,89 @@
  */
 package org.springmodules.cache.guava;
 
+import com.google.common.base.Ticker;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
+import org.springmodules.cache.guava.admission.TinyLfuAdmissionPolicy;
+import org.springmodules.cache.guava.codec.ValueCodec;
+import org.springmodules.cache.guava.expiry.Expiry;
+import org.springmodules.cache.guava.jmx.GuavaCacheMBeanRegistrar;
+import org.springmodules.cache.guava.offheap.OffHeapStore;
+import org.springmodules.cache.guava.snapshot.CacheSnapshotStore;
+import org.springmodules.cache.guava.tag.EntryTagger;
+import org.springmodules.cache.guava.tag.ExpressionEntryTagger;
+import org.springmodules.cache.guava.weigher.Weighers;
+import org.springmodules.cache.guava.writer.CacheWriter;
+import org.springmodules.cache.guava.writer.WriteBehindQueue;
+
+import javax.management.MBeanServer;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * {@link FactoryBean} for easy configuration of a {@link GuavaCache}.
+ * <p>When a {@link #setSnapshotDirectory snapshot directory} is set, the cache is written to a
+ * snapshot file when the factory is destroyed, and restored from it in the background once
+ * created.
+ * <p>When a {@link #setCacheWriter cache writer} is set, the pending writes of the cache are
+ * written when the factory is destroyed.
  * @author Omar Irbouh
  * @since 1.0
  */
 public class GuavaCacheFactoryBean
-		implements FactoryBean<GuavaCache>, BeanNameAware, InitializingBean {
+		implements FactoryBean<GuavaCache>, BeanNameAware, InitializingBean, DisposableBean {
 
 	private String name = "";
 
 	private boolean allowNullValues = true;
 
+	private boolean storeValueWrappers = false;
+
 	private String spec;
 
+	private String nullValueSpec;
+
+	private Weigher<Object, Object> weigher;
+
+	private ExecutorService reloadExecutor;
+
+	private ValueCodec valueCodec;
+
+	private long offHeapCapacity = 0;
+
+	private EntryTagger entryTagger;
+
+	private Expiry expiry;
+
+	private boolean tinyLfuAdmission = false;
+
+	private CacheWriter cacheWriter;
+
+	private int writeBatchSize = 100;
+
+	private long writeDelay = 1000;
+
+	private int writeQueueCapacity = 10000;
+
+	private int writeRetries = 3;
+
+	private int expectedWriters = 0;
+
+	private boolean recordStats = false;
+
+	private final GuavaCacheMBeanRegistrar mbeanRegistrar = new GuavaCacheMBeanRegistrar();
+
+	private final CacheSnapshotStore snapshotStore = new CacheSnapshotStore();
+
 	private GuavaCache cache;
 
 	public void setName(String name) {
@@ -45,10 +108,188 @@ public class GuavaCacheFactoryBean
 		this.allowNullValues = allowNullValues;
 	}
 
+	public void setStoreValueWrappers(boolean storeValueWrappers) {
+		this.storeValueWrappers = storeValueWrappers;
+	}
+
 	public void setSpec(String spec) {
 		this.spec = spec;
 	}
 
+	/**
+	 * Set the {@link com.google.common.cache.CacheBuilderSpec} of a separate store holding
+	 * the {@code null} values of the cache, typically with a short {@code expireAfterWrite},
+	 * so that misses for nonexistent keys do not evict actual values. By default, {@code null}
+	 * values are held by the cache itself.
+	 * @see GuavaCache#getNullValueStore()
+	 */
+	public void setNullValueSpec(String nullValueSpec) {
+		this.nullValueSpec = nullValueSpec;
+	}
+
+	/**
+	 * Set the weigher of the cache entries, which requires a {@code maximumWeight} spec.
+	 */
+	public void setWeigher(Weigher<Object, Object> weigher) {
+		this.weigher = weigher;
+	}
+
+	/**
+	 * Set the weigher of the cache entries by name, which requires a {@code maximumWeight} spec.
+	 * @see Weighers#forName(String)
+	 */
+	public void setWeigherName(String weigherName) {
+		this.weigher = Weighers.forName(weigherName);
+	}
+
+	/**
+	 * Set the executor used to reload stale entries. When set, a {@link RefreshingGuavaCache}
+	 * is created, typically along with a {@code refreshAfterWrite} spec.
+	 */
+	public void setReloadExecutor(ExecutorService reloadExecutor) {
+		this.reloadExecutor = reloadExecutor;
+	}
+
+	/**
+	 * Set the codec used to store values by value. By default, values are stored by reference.
+	 * @see GuavaCache#GuavaCache(String, CacheBuilder, boolean, ValueCodec)
+	 */
+	public void setValueCodec(ValueCodec valueCodec) {
+		this.valueCodec = valueCodec;
+	}
+
+	/**
+	 * Set the capacity, in bytes, of the off-heap tier holding the entries evicted from the
+	 * cache. When set, a {@link TieredGuavaCache} is created, along with a {@code maximumSize}
+	 * or {@code maximumWeight} spec. Default is 0: no off-heap tier.
+	 */
+	public void setOffHeapCapacity(long offHeapCapacity) {
+		this.offHeapCapacity = offHeapCapacity;
+	}
+
+	/**
+	 * Set the tagger of the cache entries. When set, a {@link TaggedGuavaCache} is created.
+	 */
+	public void setEntryTagger(EntryTagger entryTagger) {
+		this.entryTagger = entryTagger;
+	}
+
+	/**
+	 * Set the SpEL expression computing the tags of the cache entries.
+	 * @see #setEntryTagger(EntryTagger)
+	 * @see ExpressionEntryTagger
+	 */
+	public void setTagExpression(String tagExpression) {
+		this.entryTagger = new ExpressionEntryTagger(tagExpression);
+	}
+
+	/**
+	 * Set the expiry computing the time to live of each entry. When set, an
+	 * {@link ExpiringGuavaCache} is created.
+	 */
+	public void setExpiry(Expiry expiry) {
+		this.expiry = expiry;
+	}
+
+	/**
+	 * Set whether new entries are filtered by a {@link TinyLfuAdmissionPolicy}, sized after the
+	 * {@code maximumSize} of the spec. When set, an {@link AdmittingGuavaCache} is created.
+	 */
+	public void setTinyLfuAdmission(boolean tinyLfuAdmission) {
+		this.tinyLfuAdmission = tinyLfuAdmission;
+	}
+
+	/**
+	 * Set the writer of the cache entries to the underlying store. When set, a
+	 * {@link WriteBehindGuavaCache} is created, and its pending writes are written when the
+	 * factory is destroyed.
+	 */
+	public void setCacheWriter(CacheWriter cacheWriter) {
+		this.cacheWriter = cacheWriter;
+	}
+
+	/**
+	 * Set the maximum number of entries handed to the cache writer at once. Default is 100.
+	 */
+	public void setWriteBatchSize(int writeBatchSize) {
+		this.writeBatchSize = writeBatchSize;
+	}
+
+	/**
+	 * Set the maximum time, in milliseconds, a write waits for its batch to fill before being
+	 * handed to the cache writer. Default is 1000.
+	 */
+	public void setWriteDelay(long writeDelay) {
+		this.writeDelay = writeDelay;
+	}
+
+	/**
+	 * Set the maximum number of pending writes; writers block while the queue is full.
+	 * Default is 10000.
+	 * @see WriteBehindQueue
+	 */
+	public void setWriteQueueCapacity(int writeQueueCapacity) {
+		this.writeQueueCapacity = writeQueueCapacity;
+	}
+
+	/**
+	 * Set the number of times a failed write is retried before being discarded. Default is 3.
+	 * @see WriteBehindQueue
+	 */
+	public void setWriteRetries(int writeRetries) {
+		this.writeRetries = writeRetries;
+	}
+
+	/**
+	 * Set the number of threads expected to write to the cache, deriving its concurrency level
+	 * when the spec does not set {@code concurrencyLevel}. Default is {@code 0}, meaning as
+	 * many writers as available processors.
+	 * @see GuavaCaches#concurrencyLevel(int)
+	 */
+	public void setExpectedWriters(int expectedWriters) {
+		this.expectedWriters = expectedWriters;
+	}
+
+	/**
+	 * Set whether the cache records {@link GuavaCache#getStats() statistics}, as well as its
+	 * {@link #setNullValueSpec null value store}.
+	 */
+	public void setRecordStats(boolean recordStats) {
+		this.recordStats = recordStats;
+	}
+
+	/**
+	 * Set the MBean server the statistics MBean of the cache is registered with.
+	 * By default, no MBean is registered.
+	 */
+	public void setMbeanServer(MBeanServer mbeanServer) {
+		this.mbeanRegistrar.setServer(mbeanServer);
+	}
+
+	/**
+	 * Set the JMX domain of the statistics MBean.
+	 * Default is {@value GuavaCacheMBeanRegistrar#DEFAULT_DOMAIN}.
+	 */
+	public void setMbeanDomain(String mbeanDomain) {
+		this.mbeanRegistrar.setDomain(mbeanDomain);
+	}
+
+	/**
+	 * Set the directory of the cache snapshot file. By default, the cache is not snapshotted.
+	 * @see org.springmodules.cache.guava.snapshot.CacheSnapshot
+	 */
+	public void setSnapshotDirectory(File snapshotDirectory) {
+		this.snapshotStore.setDirectory(snapshotDirectory);
+	}
+
+	/**
+	 * Set the maximum age, in seconds, of the snapshot to restore; an older snapshot is
+	 * discarded. Default is {@code 0}, meaning the snapshot is restored whatever its age.
+	 */
+	public void setSnapshotMaximumAge(long snapshotMaximumAge) {
+		this.snapshotStore.setMaximumAge(TimeUnit.SECONDS.toMillis(snapshotMaximumAge));
+	}
+
 	@Override
 	public void setBeanName(String name) {
 		if (!StringUtils.hasLength(this.name)) {
@@ -58,12 +299,114 @@ public class GuavaCacheFactoryBean
 
 	@Override
 	public void afterPropertiesSet() throws Exception {
-		if (StringUtils.hasText(this.spec)) {
-			this.cache = new GuavaCache(this.name, CacheBuilder.from(spec), allowNullValues);
+		checkStoreOptions();
+		CacheBuilder<Object, Object> builder = StringUtils.hasText(this.spec) ?
+				CacheBuilder.from(spec) : CacheBuilder.newBuilder();
+		if (this.weigher != null && GuavaCaches.hasOption(this.spec, "maximumWeight")) {
+			builder = builder.weigher(this.weigher);
+		}
+		if (!GuavaCaches.hasOption(this.spec, "concurrencyLevel")) {
+			builder.concurrencyLevel(GuavaCaches.concurrencyLevel(this.expectedWriters));
+		}
+		if (this.recordStats) {
+			builder.recordStats();
+		}
+		CacheBuilder<Object, Object> nullValueBuilder = StringUtils.hasText(this.nullValueSpec) ?
+				CacheBuilder.from(this.nullValueSpec) : null;
+		if (this.recordStats && nullValueBuilder != null) {
+			nullValueBuilder.recordStats();
+		}
+		if (this.reloadExecutor != null && nullValueBuilder != null) {
+			this.cache = new RefreshingGuavaCache(this.name, builder, nullValueBuilder, reloadExecutor);
+		}
+		else if (this.reloadExecutor != null) {
+			this.cache = new RefreshingGuavaCache(this.name, builder, allowNullValues, reloadExecutor);
+		}
+		else if (this.entryTagger != null) {
+			this.cache = new TaggedGuavaCache(this.name, builder, allowNullValues, entryTagger);
+		}
+		else if (this.expiry != null) {
+			this.cache = new ExpiringGuavaCache(this.name, builder, allowNullValues, expiry);
+		}
+		else if (this.tinyLfuAdmission) {
+			this.cache = new AdmittingGuavaCache(this.name, builder, allowNullValues, new TinyLfuAdmissionPolicy(
+					Long.parseLong(GuavaCaches.getOption(this.spec, "maximumSize"))));
+		}
+		else if (this.cacheWriter != null) {
+			this.cache = new WriteBehindGuavaCache(this.name, builder, allowNullValues, new WriteBehindQueue(
+					this.name, cacheWriter, writeBatchSize, writeDelay, TimeUnit.MILLISECONDS, writeQueueCapacity,
+					writeRetries));
+		}
+		else if (this.offHeapCapacity > 0) {
+			this.cache = new TieredGuavaCache(this.name, builder, allowNullValues,
+					new OffHeapStore(offHeapCapacity), valueCodec,
+					GuavaCaches.getDurationNanos(this.spec, "expireAfterWrite"),
+					GuavaCaches.getDurationNanos(this.spec, "expireAfterAccess"), Ticker.systemTicker());
+		}
+		else if (nullValueBuilder != null) {
+			this.cache = new GuavaCache(this.name, builder.build(), nullValueBuilder.build(), true,
+					storeValueWrappers, valueCodec);
+		}
+		else if (this.valueCodec != null) {
+			this.cache = new GuavaCache(this.name, builder, allowNullValues, valueCodec);
 		}
 		else {
-			this.cache = new GuavaCache(this.name, allowNullValues);
+			this.cache = new GuavaCache(this.name, builder, allowNullValues, storeValueWrappers);
+		}
+		if (this.mbeanRegistrar.getServer() != null) {
+			this.mbeanRegistrar.registerCache(this.cache);
+		}
+		this.snapshotStore.restore(this.cache);
+	}
+
+	/**
+	 * Reject the combinations of options that no cache implementation supports, rather
+	 * than silently dropping one of them: reloading, tagging, expiry, admission, write-behind
+	 * and the off-heap tier each select their own implementation and exclude each other.
+	 */
+	private void checkStoreOptions() {
+		List<String> stores = new ArrayList<String>();
+		if (this.reloadExecutor != null) {
+			stores.add("reloadExecutor");
+		}
+		if (this.entryTagger != null) {
+			stores.add("entryTagger");
+		}
+		if (this.expiry != null) {
+			stores.add("expiry");
+		}
+		if (this.tinyLfuAdmission) {
+			stores.add("tinyLfuAdmission");
+		}
+		if (this.cacheWriter != null) {
+			stores.add("cacheWriter");
+		}
+		if (this.offHeapCapacity > 0) {
+			stores.add("offHeapCapacity");
+		}
+		Assert.isTrue(stores.size() <= 1, "Options " + stores + " cannot be combined");
+		String store = (stores.isEmpty() ? null : stores.get(0));
+		Assert.isTrue(this.valueCodec == null || store == null || "offHeapCapacity".equals(store),
+				"valueCodec cannot be combined with " + store);
+		Assert.isTrue(this.nullValueSpec == null || store == null || "reloadExecutor".equals(store),
+				"nullValueSpec cannot be combined with " + store);
+		Assert.isTrue(this.nullValueSpec == null || this.allowNullValues, "nullValueSpec requires allowNullValues");
+		Assert.isTrue(!this.storeValueWrappers || store == null, "storeValueWrappers cannot be combined with " + store);
+		Assert.isTrue(!this.storeValueWrappers || this.valueCodec == null,
+				"storeValueWrappers cannot be combined with valueCodec");
+		Assert.isTrue(!this.tinyLfuAdmission || GuavaCaches.hasOption(this.spec, "maximumSize"),
+				"tinyLfuAdmission requires a maximumSize spec");
+		Assert.isTrue(this.weigher == null || GuavaCaches.hasOption(this.spec, "maximumWeight"),
+				"weigher requires a maximumWeight spec");
+	}
+
+	@Override
+	public void destroy() {
+		this.mbeanRegistrar.unregisterCaches();
+		if (this.cache instanceof WriteBehindGuavaCache) {
+			((WriteBehindGuavaCache) this.cache).close();
 		}
+		this.snapshotStore.write(this.cache);
 	}
 
 	@Override
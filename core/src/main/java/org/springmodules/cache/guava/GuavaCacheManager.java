@@ -16,29 +16,94 @@
 package org.springmodules.cache.guava;
 
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.transaction.AbstractTransactionSupportingCacheManager;
+import org.springframework.util.Assert;
+import org.springframework.util.PatternMatchUtils;
 import org.springframework.util.StringUtils;
+import org.springmodules.cache.guava.admission.TinyLfuAdmissionPolicy;
+import org.springmodules.cache.guava.codec.ValueCodec;
+import org.springmodules.cache.guava.expiry.Expiry;
+import org.springmodules.cache.guava.jmx.GuavaCacheMBeanRegistrar;
+import org.springmodules.cache.guava.snapshot.CacheSnapshotStore;
+import org.springmodules.cache.guava.tag.EntryTagger;
+import org.springmodules.cache.guava.tag.ExpressionEntryTagger;
+import org.springmodules.cache.guava.weigher.Weighers;
 
+import javax.management.MBeanServer;
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * {@link CacheManager} implementation backed by {@link GuavaCache}.
+ * <p>When an {@link #setMbeanServer MBean server} is set, the statistics of every cache,
+ * including the caches created on demand by {@link #getCache(String)}, are exposed as
+ * {@link org.springmodules.cache.guava.jmx.GuavaCacheStatisticsMBean MBeans}, along with
+ * their latencies when {@link #setRecordLatency recordLatency} is set.
+ * <p>Caches are decorated, innermost first, with a {@link NearCache} when a
+ * {@link #setNearCacheSize nearCacheSize} is set, then with a {@link TransactionAwareGuavaCache}
+ * when transaction aware, and finally with an {@link InstrumentedCache} when recording latencies.
+ * <p>When a {@link #setSnapshotDirectory snapshot directory} is set, every cache is written to
+ * a snapshot file when the manager is destroyed, and restored from it in the background once
+ * created. The pending writes of {@link WriteBehindGuavaCache} instances are written first.
  * @author Omar Irbouh
  * @since 1.0
  */
-public class GuavaCacheManager extends AbstractTransactionSupportingCacheManager {
+public class GuavaCacheManager extends AbstractTransactionSupportingCacheManager implements DisposableBean {
 
 	private Collection<GuavaCache> caches;
 
 	private String spec;
 
-	private volatile CacheBuilder<Object, Object> cacheBuilder;
+	private Map<String, String> specs = Collections.emptyMap();
+
+	private String nullValueSpec;
+
+	private Weigher<Object, Object> weigher;
+
+	private final ConcurrentMap<String, CacheBuilder<Object, Object>> cacheBuilders =
+			new ConcurrentHashMap<String, CacheBuilder<Object, Object>>();
+
+	private final ConcurrentMap<String, Cache> cacheMap = new ConcurrentHashMap<String, Cache>(16);
 
 	private boolean allowNullValues = true;
 
+	private boolean storeValueWrappers = false;
+
+	private ExecutorService reloadExecutor;
+
+	private ValueCodec valueCodec;
+
+	private EntryTagger entryTagger;
+
+	private Expiry expiry;
+
+	private boolean tinyLfuAdmission = false;
+
+	private int expectedWriters = 0;
+
+	private boolean recordStats = false;
+
+	private boolean recordLatency = false;
+
+	private int nearCacheSize = 0;
+
+	private final GuavaCacheMBeanRegistrar mbeanRegistrar = new GuavaCacheMBeanRegistrar();
+
+	private final CacheSnapshotStore snapshotStore = new CacheSnapshotStore();
+
 	public GuavaCacheManager() {
 	}
 
@@ -54,6 +119,74 @@ public class GuavaCacheManager extends AbstractTransactionSupportingCacheManager
 		return spec;
 	}
 
+	/**
+	 * Set the specs of dynamically created caches, keyed by cache name. Keys may also be
+	 * simple patterns such as {@code "posts-*"}; exact names win over patterns, and patterns
+	 * are matched in iteration order. Caches matching no key use the default {@link #setSpec spec}.
+	 * @see PatternMatchUtils#simpleMatch(String, String)
+	 */
+	public void setSpecs(Map<String, String> specs) {
+		this.specs = (specs != null ? new LinkedHashMap<String, String>(specs) : Collections.<String, String>emptyMap());
+	}
+
+	public Map<String, String> getSpecs() {
+		return Collections.unmodifiableMap(specs);
+	}
+
+	/**
+	 * Return the spec used to create the cache with the given name.
+	 * @param name the name of the cache
+	 * @return the spec of the cache, or {@code null} if it uses the default cache builder
+	 */
+	public String resolveSpec(String name) {
+		String cacheSpec = specs.get(name);
+		if (cacheSpec != null) {
+			return cacheSpec;
+		}
+		for (Map.Entry<String, String> entry : specs.entrySet()) {
+			if (PatternMatchUtils.simpleMatch(entry.getKey(), name)) {
+				return entry.getValue();
+			}
+		}
+		return spec;
+	}
+
+	/**
+	 * Set the {@link com.google.common.cache.CacheBuilderSpec} of the separate stores holding
+	 * the {@code null} values of dynamically created caches, typically with a short
+	 * {@code expireAfterWrite}, so that misses for nonexistent keys do not evict actual
+	 * values. By default, {@code null} values are held by the caches themselves.
+	 * @see GuavaCache#getNullValueStore()
+	 */
+	public void setNullValueSpec(String nullValueSpec) {
+		this.nullValueSpec = nullValueSpec;
+	}
+
+	public String getNullValueSpec() {
+		return nullValueSpec;
+	}
+
+	/**
+	 * Set the weigher of the entries of dynamically created caches whose spec sets a
+	 * {@code maximumWeight}; caches bounded otherwise are not weighed.
+	 */
+	public void setWeigher(Weigher<Object, Object> weigher) {
+		this.weigher = weigher;
+	}
+
+	public Weigher<Object, Object> getWeigher() {
+		return weigher;
+	}
+
+	/**
+	 * Set the weigher of the entries of dynamically created caches by name.
+	 * @see #setWeigher(Weigher)
+	 * @see Weighers#forName(String)
+	 */
+	public void setWeigherName(String weigherName) {
+		this.weigher = Weighers.forName(weigherName);
+	}
+
 	public void setAllowNullValues(boolean allowNullValues) {
 		this.allowNullValues = allowNullValues;
 	}
@@ -62,45 +195,367 @@ public class GuavaCacheManager extends AbstractTransactionSupportingCacheManager
 		return allowNullValues;
 	}
 
+	public void setStoreValueWrappers(boolean storeValueWrappers) {
+		this.storeValueWrappers = storeValueWrappers;
+	}
+
+	public boolean isStoreValueWrappers() {
+		return storeValueWrappers;
+	}
+
+	/**
+	 * Set the executor used to reload stale entries of dynamically created caches. When set,
+	 * {@link RefreshingGuavaCache} instances are created, typically along with a
+	 * {@code refreshAfterWrite} spec.
+	 */
+	public void setReloadExecutor(ExecutorService reloadExecutor) {
+		this.reloadExecutor = reloadExecutor;
+	}
+
+	public ExecutorService getReloadExecutor() {
+		return reloadExecutor;
+	}
+
+	/**
+	 * Set the codec used by dynamically created caches to store values by value. By default,
+	 * values are stored by reference. Cannot be combined with a {@link #setReloadExecutor reloadExecutor}.
+	 * @see GuavaCache#GuavaCache(String, CacheBuilder, boolean, ValueCodec)
+	 */
+	public void setValueCodec(ValueCodec valueCodec) {
+		this.valueCodec = valueCodec;
+	}
+
+	public ValueCodec getValueCodec() {
+		return valueCodec;
+	}
+
+	/**
+	 * Set the tagger of the entries of dynamically created caches. When set,
+	 * {@link TaggedGuavaCache} instances are created. Cannot be combined with a
+	 * {@link #setReloadExecutor reloadExecutor} or a {@link #setValueCodec valueCodec}.
+	 * @see #evictByTag(String)
+	 */
+	public void setEntryTagger(EntryTagger entryTagger) {
+		this.entryTagger = entryTagger;
+	}
+
+	public EntryTagger getEntryTagger() {
+		return entryTagger;
+	}
+
+	/**
+	 * Set the SpEL expression computing the tags of the entries of dynamically created caches.
+	 * @see #setEntryTagger(EntryTagger)
+	 * @see ExpressionEntryTagger
+	 */
+	public void setTagExpression(String tagExpression) {
+		this.entryTagger = new ExpressionEntryTagger(tagExpression);
+	}
+
+	/**
+	 * Set the expiry computing the time to live of each entry of dynamically created caches.
+	 * When set, {@link ExpiringGuavaCache} instances are created.
+	 */
+	public void setExpiry(Expiry expiry) {
+		this.expiry = expiry;
+	}
+
+	public Expiry getExpiry() {
+		return expiry;
+	}
+
+	/**
+	 * Set whether new entries of dynamically created caches are filtered by a
+	 * {@link TinyLfuAdmissionPolicy}, sized after the {@code maximumSize} of their spec. When
+	 * set, {@link AdmittingGuavaCache} instances are created for the caches bounded by size.
+	 */
+	public void setTinyLfuAdmission(boolean tinyLfuAdmission) {
+		this.tinyLfuAdmission = tinyLfuAdmission;
+	}
+
+	public boolean isTinyLfuAdmission() {
+		return tinyLfuAdmission;
+	}
+
+	/**
+	 * Set the number of threads expected to write to each cache, deriving the concurrency level
+	 * of dynamically created caches whose spec does not set {@code concurrencyLevel}. Default is {@code 0}, meaning
+	 * as many writers as available processors.
+	 * @see GuavaCaches#concurrencyLevel(int)
+	 */
+	public void setExpectedWriters(int expectedWriters) {
+		this.expectedWriters = expectedWriters;
+	}
+
+	public int getExpectedWriters() {
+		return expectedWriters;
+	}
+
+	/**
+	 * Set whether dynamically created caches record {@link GuavaCache#getStats() statistics},
+	 * as well as their {@link #setNullValueSpec null value stores}.
+	 */
+	public void setRecordStats(boolean recordStats) {
+		this.recordStats = recordStats;
+	}
+
+	public boolean isRecordStats() {
+		return recordStats;
+	}
+
+	/**
+	 * Set whether caches are decorated with an {@link InstrumentedCache}, recording the
+	 * latency of their operations. Transaction aware caches are instrumented as a whole: within
+	 * a transaction, put and evict latencies only cover deferring the operation.
+	 */
+	public void setRecordLatency(boolean recordLatency) {
+		this.recordLatency = recordLatency;
+	}
+
+	public boolean isRecordLatency() {
+		return recordLatency;
+	}
+
+	/**
+	 * Set the maximum number of entries each thread keeps in a {@link NearCache} in front of
+	 * every cache. Default is {@code 0}, meaning caches are not decorated with a near cache.
+	 * @see NearCache#clearLocal()
+	 * @see org.springmodules.cache.guava.interceptor.NearCacheScopeInterceptor
+	 */
+	public void setNearCacheSize(int nearCacheSize) {
+		this.nearCacheSize = nearCacheSize;
+	}
+
+	public int getNearCacheSize() {
+		return nearCacheSize;
+	}
+
+	/**
+	 * Set the MBean server the statistics MBeans of the caches are registered with.
+	 * By default, no MBean is registered.
+	 */
+	public void setMbeanServer(MBeanServer mbeanServer) {
+		this.mbeanRegistrar.setServer(mbeanServer);
+	}
+
+	/**
+	 * Set the JMX domain of the statistics MBeans.
+	 * Default is {@value GuavaCacheMBeanRegistrar#DEFAULT_DOMAIN}.
+	 */
+	public void setMbeanDomain(String mbeanDomain) {
+		this.mbeanRegistrar.setDomain(mbeanDomain);
+	}
+
+	/**
+	 * Set the directory of the cache snapshot files. By default, caches are not snapshotted.
+	 * @see org.springmodules.cache.guava.snapshot.CacheSnapshot
+	 */
+	public void setSnapshotDirectory(File snapshotDirectory) {
+		this.snapshotStore.setDirectory(snapshotDirectory);
+	}
+
+	/**
+	 * Set the maximum age, in seconds, of the snapshots to restore; older snapshots are
+	 * discarded. Default is {@code 0}, meaning snapshots are restored whatever their age.
+	 */
+	public void setSnapshotMaximumAge(long snapshotMaximumAge) {
+		this.snapshotStore.setMaximumAge(TimeUnit.SECONDS.toMillis(snapshotMaximumAge));
+	}
+
 	@Override
 	protected Collection<? extends Cache> loadCaches() {
 		return (caches != null) ? caches : Collections.<GuavaCache>emptyList();
 	}
 
+	/**
+	 * Return the cache with the given name, creating it if necessary. Lookups of existing
+	 * caches take no lock; concurrent first calls for the same name all get the same cache.
+	 */
 	@Override
 	public Cache getCache(String name) {
-		Cache cache = super.getCache(name);
+		Cache cache = cacheMap.get(name);
 		if (cache == null) {
-			// create a new cache
-			cache = createGuavaCache(name);
-
-			// add to collection of available caches
-			addCache(cache);
+			// create a new cache, first one to be added wins
+			Cache newCache = decorateCache(createGuavaCache(name));
+			cache = cacheMap.putIfAbsent(name, newCache);
+			if (cache == null) {
+				cache = newCache;
+				registerMBean(cache);
+				restoreSnapshot(cache);
+			}
 		}
 		return cache;
 	}
 
+	@Override
+	public Collection<String> getCacheNames() {
+		return Collections.unmodifiableSet(cacheMap.keySet());
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		checkStoreOptions();
+		super.afterPropertiesSet();
+
+		// static caches, as decorated by the super class
+		mbeanRegistrar.unregisterCaches();
+		cacheMap.clear();
+		for (String name : super.getCacheNames()) {
+			Cache cache = super.getCache(name);
+			cacheMap.put(name, cache);
+			registerMBean(cache);
+			restoreSnapshot(cache);
+		}
+	}
+
+	/**
+	 * Evict the entries tagged with the given tag from every {@link TaggedGuavaCache} of this
+	 * manager. Evictions are immediate, even for transaction aware caches.
+	 * @param tag the tag of the entries to evict
+	 */
+	public void evictByTag(String tag) {
+		for (Cache cache : cacheMap.values()) {
+			GuavaCache guavaCache = GuavaCaches.unwrap(cache);
+			if (guavaCache instanceof TaggedGuavaCache) {
+				((TaggedGuavaCache) guavaCache).evictByTag(tag);
+			}
+		}
+	}
+
+	@Override
+	public void destroy() {
+		mbeanRegistrar.unregisterCaches();
+		for (Cache cache : cacheMap.values()) {
+			GuavaCache guavaCache = GuavaCaches.unwrap(cache);
+			if (guavaCache instanceof WriteBehindGuavaCache) {
+				((WriteBehindGuavaCache) guavaCache).close();
+			}
+			if (guavaCache != null) {
+				snapshotStore.write(guavaCache);
+			}
+		}
+	}
+
+	@Override
+	protected Cache decorateCache(Cache cache) {
+		Cache decorated = (nearCacheSize > 0 ? new NearCache(cache, nearCacheSize) : cache);
+		decorated = (isTransactionAware() && GuavaCaches.unwrap(decorated) != null) ?
+				new TransactionAwareGuavaCache(decorated) : super.decorateCache(decorated);
+		return (recordLatency ? new InstrumentedCache(decorated) : decorated);
+	}
+
+	/**
+	 * Reject the combinations of options that no cache implementation supports, rather
+	 * than silently dropping one of them: reloading, tagging, expiry and admission each
+	 * select their own implementation and exclude each other.
+	 */
+	private void checkStoreOptions() {
+		List<String> stores = new ArrayList<String>();
+		if (reloadExecutor != null) {
+			stores.add("reloadExecutor");
+		}
+		if (entryTagger != null) {
+			stores.add("entryTagger");
+		}
+		if (expiry != null) {
+			stores.add("expiry");
+		}
+		if (tinyLfuAdmission) {
+			stores.add("tinyLfuAdmission");
+		}
+		Assert.isTrue(stores.size() <= 1, "Options " + stores + " cannot be combined");
+		String store = (stores.isEmpty() ? null : stores.get(0));
+		Assert.isTrue(valueCodec == null || store == null, "valueCodec cannot be combined with " + store);
+		Assert.isTrue(nullValueSpec == null || store == null || "reloadExecutor".equals(store),
+				"nullValueSpec cannot be combined with " + store);
+		Assert.isTrue(nullValueSpec == null || allowNullValues, "nullValueSpec requires allowNullValues");
+		Assert.isTrue(!storeValueWrappers || store == null, "storeValueWrappers cannot be combined with " + store);
+		Assert.isTrue(!storeValueWrappers || valueCodec == null, "storeValueWrappers cannot be combined with valueCodec");
+	}
+
+	private void registerMBean(Cache cache) {
+		if (mbeanRegistrar.getServer() == null) {
+			return;
+		}
+		GuavaCache guavaCache = GuavaCaches.unwrap(cache);
+		if (guavaCache != null) {
+			mbeanRegistrar.registerCache(guavaCache);
+		}
+		if (cache instanceof InstrumentedCache) {
+			mbeanRegistrar.registerLatency((InstrumentedCache) cache);
+		}
+	}
+
+	private void restoreSnapshot(Cache cache) {
+		GuavaCache guavaCache = GuavaCaches.unwrap(cache);
+		if (guavaCache != null) {
+			snapshotStore.restore(guavaCache);
+		}
+	}
+
 	private GuavaCache createGuavaCache(String name) {
+		// tagged, expiring and admitting caches set the removal listener of their builder: they cannot share it
+		if (entryTagger != null) {
+			return new TaggedGuavaCache(name, newCacheBuilder(resolveSpec(name)), allowNullValues, entryTagger);
+		}
+		if (expiry != null) {
+			return new ExpiringGuavaCache(name, newCacheBuilder(resolveSpec(name)), allowNullValues, expiry);
+		}
+		String maximumSize = GuavaCaches.getOption(resolveSpec(name), "maximumSize");
+		if (tinyLfuAdmission && maximumSize != null) {
+			return new AdmittingGuavaCache(name, newCacheBuilder(resolveSpec(name)), allowNullValues,
+					new TinyLfuAdmissionPolicy(Long.parseLong(maximumSize)));
+		}
+
 		// create GuavaCache
-		return new GuavaCache(name, getCacheBuilder(), allowNullValues);
-	}
-
-	private CacheBuilder<Object, Object> getCacheBuilder() {
-		if (cacheBuilder == null) {
-			synchronized (this) {
-				if (cacheBuilder == null) {
-					if (StringUtils.hasText(spec)) {
-						cacheBuilder = CacheBuilder.from(spec);
-					}
-					else {
-						cacheBuilder = CacheBuilder.newBuilder();
-					}
-				}
-				notify();
+		CacheBuilder<Object, Object> builder = getCacheBuilder(name);
+		if (StringUtils.hasText(nullValueSpec)) {
+			CacheBuilder<Object, Object> nullValueBuilder = CacheBuilder.from(nullValueSpec);
+			if (recordStats) {
+				nullValueBuilder.recordStats();
 			}
+			if (reloadExecutor != null) {
+				return new RefreshingGuavaCache(name, builder, nullValueBuilder, reloadExecutor);
+			}
+			return new GuavaCache(name, builder.build(), nullValueBuilder.build(), true, storeValueWrappers, valueCodec);
+		}
+		if (reloadExecutor != null) {
+			return new RefreshingGuavaCache(name, builder, allowNullValues, reloadExecutor);
 		}
+		if (valueCodec != null) {
+			return new GuavaCache(name, builder, allowNullValues, valueCodec);
+		}
+		return new GuavaCache(name, builder, allowNullValues, storeValueWrappers);
+	}
 
-		return cacheBuilder;
+	private CacheBuilder<Object, Object> getCacheBuilder(String name) {
+		String cacheSpec = resolveSpec(name);
+		String key = (cacheSpec != null ? cacheSpec : "");
+
+		CacheBuilder<Object, Object> builder = cacheBuilders.get(key);
+		if (builder == null) {
+			builder = newCacheBuilder(key);
+			CacheBuilder<Object, Object> existing = cacheBuilders.putIfAbsent(key, builder);
+			if (existing != null) {
+				builder = existing;
+			}
+		}
+		return builder;
+	}
+
+	private CacheBuilder<Object, Object> newCacheBuilder(String cacheSpec) {
+		CacheBuilder<Object, Object> builder = StringUtils.hasText(cacheSpec) ?
+				CacheBuilder.from(cacheSpec) : CacheBuilder.newBuilder();
+		if (weigher != null && GuavaCaches.hasOption(cacheSpec, "maximumWeight")) {
+			builder = builder.weigher(weigher);
+		}
+		if (!GuavaCaches.hasOption(cacheSpec, "concurrencyLevel")) {
+			builder.concurrencyLevel(GuavaCaches.concurrencyLevel(expectedWriters));
+		}
+		if (recordStats) {
+			builder.recordStats();
+		}
+		return builder;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import org.springframework.cache.Cache;
+import org.springframework.util.StringUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Static utility methods pertaining to {@link GuavaCache} instances.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public abstract class GuavaCaches {
+
+	/**
+	 * Concurrency level of the caches built by Guava when none is set.
+	 */
+	public static final int DEFAULT_CONCURRENCY_LEVEL = 4;
+
+	/**
+	 * Return the {@link GuavaCache} backing the given cache, unwrapping
+	 * {@link CacheDecorator decorators}.
+	 * @param cache the cache, possibly decorated
+	 * @return the backing {@link GuavaCache}, or {@code null} if the given cache is not backed by one
+	 */
+	public static GuavaCache unwrap(Cache cache) {
+		Cache current = cache;
+		while (current instanceof CacheDecorator) {
+			current = ((CacheDecorator) current).getTargetCache();
+		}
+		return (current instanceof GuavaCache ? (GuavaCache) current : null);
+	}
+
+	/**
+	 * Return the concurrency level of caches written by the given number of threads: the
+	 * number of writers that can actually run at once, given the available processors, and
+	 * no less than {@link #DEFAULT_CONCURRENCY_LEVEL}. Guava caps the number of segments of
+	 * small caches bounded by size, so that each segment keeps enough entries to evict from.
+	 * @param expectedWriters the number of threads writing to the cache, or {@code 0} for as
+	 * many as the available processors
+	 * @return the concurrency level to build the cache with
+	 */
+	public static int concurrencyLevel(int expectedWriters) {
+		int processors = Runtime.getRuntime().availableProcessors();
+		int writers = (expectedWriters > 0 ? Math.min(expectedWriters, processors) : processors);
+		return Math.max(DEFAULT_CONCURRENCY_LEVEL, writers);
+	}
+
+	/**
+	 * Return whether the given {@link com.google.common.cache.CacheBuilderSpec} sets the
+	 * given option.
+	 */
+	static boolean hasOption(String spec, String option) {
+		return (getOption(spec, option) != null);
+	}
+
+	/**
+	 * Return the duration set by the given option of the given
+	 * {@link com.google.common.cache.CacheBuilderSpec}, such as {@code expireAfterWrite=10m},
+	 * in nanoseconds, or {@code 0} if the spec does not set the option.
+	 */
+	static long getDurationNanos(String spec, String option) {
+		String value = getOption(spec, option);
+		if (!StringUtils.hasLength(value)) {
+			return 0;
+		}
+		long duration = Long.parseLong(value.substring(0, value.length() - 1));
+		switch (value.charAt(value.length() - 1)) {
+			case 'd':
+				return TimeUnit.DAYS.toNanos(duration);
+			case 'h':
+				return TimeUnit.HOURS.toNanos(duration);
+			case 'm':
+				return TimeUnit.MINUTES.toNanos(duration);
+			case 's':
+				return TimeUnit.SECONDS.toNanos(duration);
+			default:
+				throw new IllegalArgumentException("invalid duration [" + value + "] of option [" + option + "]");
+		}
+	}
+
+	/**
+	 * Return the value of the given option of the given
+	 * {@link com.google.common.cache.CacheBuilderSpec}, an empty string for options without
+	 * value such as {@code softValues}, or {@code null} if the spec does not set the option.
+	 */
+	static String getOption(String spec, String option) {
+		if (spec == null) {
+			return null;
+		}
+		for (String keyAndValue : StringUtils.commaDelimitedListToStringArray(spec)) {
+			String[] split = StringUtils.split(keyAndValue, "=");
+			String key = (split != null ? split[0] : keyAndValue);
+			if (option.equals(key.trim())) {
+				return (split != null ? split[1].trim() : "");
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import org.springframework.cache.Cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link CacheDecorator} keeping the most recently read entries of the decorated cache in a
+ * small per-thread map, so that repeated lookups of the same keys by a thread do not go
+ * through the shared cache.
+ * <p>Local entries are invalidated as a whole by a generation counter, incremented after
+ * every {@link #put put} replacing a value, {@link #evict evict}, {@link #clear clear} and
+ * bulk operation going through this decorator; a thread notices the change on its next
+ * lookup. Puts of absent keys leave local entries valid, suspending local caching while they
+ * run instead. When backed by a {@link GuavaCache}, its evictions, clears and merges
+ * increment the generation as well, even when made on the {@link GuavaCache} directly, such
+ * as tag evictions or invalidations through JMX. Other modifications made to the decorated
+ * cache directly, such as puts or refreshes, and entries expiring are not noticed: local
+ * entries should be short-lived, typically released at the end of each request with
+ * {@link #clearLocal()} or a
+ * {@link org.springmodules.cache.guava.interceptor.NearCacheScopeInterceptor}.
+ * <p>When combined with a transaction aware decorator, the near cache must be decorated by
+ * it, so that the generation changes when deferred operations are actually performed.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class NearCache implements CacheDecorator {
+
+	private final Cache targetCache;
+
+	private final AtomicLong generation = new AtomicLong();
+
+	private final AtomicInteger insertions = new AtomicInteger();
+
+	private final ThreadLocal<LocalEntries> localEntries;
+
+	/**
+	 * Create a new NearCache for the given target cache.
+	 * @param targetCache the target cache to decorate
+	 * @param maximumSize the maximum number of entries kept by each thread
+	 */
+	public NearCache(Cache targetCache, final int maximumSize) {
+		checkArgument(maximumSize > 0, "maximumSize must be positive");
+		this.targetCache = checkNotNull(targetCache, "targetCache is required");
+		this.localEntries = new ThreadLocal<LocalEntries>() {
+			@Override
+			protected LocalEntries initialValue() {
+				return new LocalEntries(maximumSize);
+			}
+		};
+		GuavaCache guavaCache = GuavaCaches.unwrap(targetCache);
+		if (guavaCache != null) {
+			guavaCache.addInvalidationListener(new CacheInvalidationListener() {
+				@Override
+				public void cacheInvalidated(GuavaCache cache) {
+					generation.incrementAndGet();
+				}
+			});
+		}
+	}
+
+	@Override
+	public Cache getTargetCache() {
+		return this.targetCache;
+	}
+
+	@Override
+	public String getName() {
+		return this.targetCache.getName();
+	}
+
+	@Override
+	public Object getNativeCache() {
+		return this.targetCache.getNativeCache();
+	}
+
+	@Override
+	public ValueWrapper get(Object key) {
+		LocalEntries entries = this.localEntries.get();
+		// read the generation before the target cache, so that values read concurrently
+		// with a modification are discarded on the next lookup
+		long current = this.generation.get();
+		if (entries.generation != current) {
+			entries.clear();
+			entries.generation = current;
+		}
+		ValueWrapper wrapper = entries.get(key);
+		if (wrapper == null) {
+			wrapper = this.targetCache.get(key);
+			// a value read while absent keys are put may be replaced without invalidation
+			if (wrapper != null && this.insertions.get() == 0) {
+				entries.put(key, wrapper);
+			}
+		}
+		return wrapper;
+	}
+
+	@Override
+	public void put(Object key, Object value) {
+		this.insertions.incrementAndGet();
+		try {
+			boolean replacing = (peek(key) != null);
+			this.targetCache.put(key, value);
+			if (replacing) {
+				this.generation.incrementAndGet();
+			}
+		}
+		finally {
+			this.insertions.decrementAndGet();
+		}
+	}
+
+	@Override
+	public void evict(Object key) {
+		this.targetCache.evict(key);
+		this.generation.incrementAndGet();
+	}
+
+	@Override
+	public void clear() {
+		this.targetCache.clear();
+		this.generation.incrementAndGet();
+	}
+
+	/**
+	 * Associate all the given values with their keys in the decorated cache, with a single
+	 * bulk operation when backed by a {@link GuavaCache}.
+	 * @param values the values to cache, by key
+	 */
+	public void putAll(Map<?, ?> values) {
+		GuavaCache guavaCache = GuavaCaches.unwrap(this.targetCache);
+		if (guavaCache != null) {
+			guavaCache.putAll(values);
+		}
+		else {
+			for (Map.Entry<?, ?> entry : values.entrySet()) {
+				this.targetCache.put(entry.getKey(), entry.getValue());
+			}
+		}
+		this.generation.incrementAndGet();
+	}
+
+	/**
+	 * Evict the mappings of all the given keys from the decorated cache, with a single bulk
+	 * operation when backed by a {@link GuavaCache}.
+	 * @param keys the keys to evict
+	 */
+	public void evictAll(Iterable<?> keys) {
+		GuavaCache guavaCache = GuavaCaches.unwrap(this.targetCache);
+		if (guavaCache != null) {
+			guavaCache.evictAll(keys);
+		}
+		else {
+			for (Object key : keys) {
+				this.targetCache.evict(key);
+			}
+		}
+		this.generation.incrementAndGet();
+	}
+
+	/**
+	 * Look up the given key in the decorated cache, without side effects when backed by a
+	 * {@link GuavaCache}.
+	 */
+	private ValueWrapper peek(Object key) {
+		GuavaCache guavaCache = GuavaCaches.unwrap(this.targetCache);
+		return (guavaCache != null ? guavaCache.peek(key) : this.targetCache.get(key));
+	}
+
+	/**
+	 * Release the entries kept by the current thread.
+	 */
+	public void clearLocal() {
+		this.localEntries.remove();
+	}
+
+	/**
+	 * Per-thread entries, least recently read first.
+	 */
+	@SuppressWarnings("serial")
+	private static class LocalEntries extends LinkedHashMap<Object, ValueWrapper> {
+
+		private final int maximumSize;
+
+		private long generation;
+
+		LocalEntries(int maximumSize) {
+			super(16, 0.75f, true);
+			this.maximumSize = maximumSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Object, ValueWrapper> eldest) {
+			return size() > this.maximumSize;
+		}
+
+	}
+
+}
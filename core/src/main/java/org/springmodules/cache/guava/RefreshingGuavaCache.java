@@ -0,0 +1,236 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link GuavaCache} backed by a {@link com.google.common.cache.LoadingCache}, refreshing
+ * entries asynchronously when the cache builder is configured with {@code refreshAfterWrite}.
+ * <p>Entries loaded through {@link #get(Object, Callable)} remember their value loader (e.g. the
+ * invocation of a {@link org.springmodules.cache.guava.annotation.SynchronizedLoad @SynchronizedLoad}
+ * method); once stale, the first read triggers a reload on the reload executor while the old value
+ * keeps being served until the reload completes. Entries added through {@link #put(Object, Object)}
+ * have no loader and are kept as is.
+ * <p>While a value loader runs, its key is absent and read-only for the loading thread: advice
+ * invoked by the loader, such as a {@link org.springframework.cache.interceptor.CacheInterceptor}
+ * nested in the loaded invocation, neither serves the value being refreshed nor replaces the
+ * entry with one that has no loader.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class RefreshingGuavaCache extends GuavaCache {
+
+	private final ThreadLocal<Set<Object>> loadingKeys = new ThreadLocal<Set<Object>>();
+
+	/**
+	 * Create a new RefreshingGuavaCache.
+	 * @param name the name of the cache
+	 * @param builder the cache builder to use to build the cache, typically with {@code refreshAfterWrite}
+	 * @param allowNullValues whether to accept and convert null values for this cache
+	 * @param reloadExecutor the executor reloading stale entries
+	 */
+	public RefreshingGuavaCache(String name, CacheBuilder<Object, Object> builder, boolean allowNullValues,
+								ExecutorService reloadExecutor) {
+		super(name, builder.build(new ReloadingCacheLoader(reloadExecutor, allowNullValues)), allowNullValues, true);
+	}
+
+	/**
+	 * Create a new RefreshingGuavaCache holding {@code null} values in a separate store built
+	 * by the given builder. {@code null} values are not refreshed: they expire as configured
+	 * by {@code nullValueBuilder}.
+	 * @param name the name of the cache
+	 * @param builder the cache builder to use to build the cache, typically with {@code refreshAfterWrite}
+	 * @param nullValueBuilder the cache builder to use to build the null value store
+	 * @param reloadExecutor the executor reloading stale entries
+	 */
+	public RefreshingGuavaCache(String name, CacheBuilder<Object, Object> builder,
+								CacheBuilder<Object, Object> nullValueBuilder, ExecutorService reloadExecutor) {
+		super(name, builder.build(new ReloadingCacheLoader(reloadExecutor, true)), nullValueBuilder.build(),
+				true, true, null);
+	}
+
+	/**
+	 * Return the value to which this cache maps the specified key, or {@code null} while the
+	 * current thread loads the key.
+	 */
+	@Override
+	public ValueWrapper get(Object key) {
+		if (isLoading(key)) {
+			return null;
+		}
+		return super.get(key);
+	}
+
+	@Override
+	public <T> T get(Object key, Callable<T> valueLoader) {
+		return super.get(key, new KeyLoader<T>(key, valueLoader));
+	}
+
+	/**
+	 * Associate the specified value with the specified key in this cache. Putting the very
+	 * value just loaded through {@link #get(Object, Callable)}, as
+	 * {@link org.springframework.cache.interceptor.CacheInterceptor} does after the method
+	 * invocation, keeps the entry and its value loader. Puts of the key made by its loader
+	 * are ignored, the loaded value being stored once the loader returns.
+	 */
+	@Override
+	public void put(Object key, Object value) {
+		if (isLoading(key)) {
+			return;
+		}
+		Object current = getNativeCache().getIfPresent(key);
+		if (current instanceof RefreshableValue && ((RefreshableValue) current).valueLoader != null
+				&& ((RefreshableValue) current).get() == value) {
+			return;
+		}
+		super.put(key, value);
+	}
+
+	/**
+	 * Associate all the given values with their keys in this cache, keeping the value loader
+	 * of the entries whose value is unchanged, as {@link #put(Object, Object)} does.
+	 */
+	@Override
+	public void putAll(Map<?, ?> values) {
+		for (Map.Entry<?, ?> entry : values.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	protected Object toStoreValueWrapper(Object userValue) {
+		return toRefreshableValue(userValue, null);
+	}
+
+	@Override
+	protected Object toLoadedStoreValue(Object key, Object userValue, Callable<?> valueLoader) {
+		return toRefreshableValue(userValue, valueLoader);
+	}
+
+	private Object toRefreshableValue(Object userValue, Callable<?> valueLoader) {
+		if (userValue == null && !isAllowNullValues()) {
+			return null;
+		}
+		return new RefreshableValue(userValue, valueLoader);
+	}
+
+	private boolean isLoading(Object key) {
+		Set<Object> keys = this.loadingKeys.get();
+		return (keys != null && keys.contains(key));
+	}
+
+	/**
+	 * Value loader recording its key as loaded by the current thread while it runs.
+	 */
+	private final class KeyLoader<T> implements Callable<T> {
+
+		private final Object key;
+
+		private final Callable<T> valueLoader;
+
+		KeyLoader(Object key, Callable<T> valueLoader) {
+			this.key = key;
+			this.valueLoader = valueLoader;
+		}
+
+		@Override
+		public T call() throws Exception {
+			Set<Object> keys = loadingKeys.get();
+			if (keys == null) {
+				keys = new HashSet<Object>();
+				loadingKeys.set(keys);
+			}
+			keys.add(this.key);
+			try {
+				return this.valueLoader.call();
+			}
+			finally {
+				keys.remove(this.key);
+				if (keys.isEmpty()) {
+					loadingKeys.remove();
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Store value remembering the callable that loaded it.
+	 */
+	@SuppressWarnings("serial")
+	private static final class RefreshableValue extends StoreValueWrapper {
+
+		private final transient Callable<?> valueLoader;
+
+		RefreshableValue(Object value, Callable<?> valueLoader) {
+			super(value);
+			this.valueLoader = valueLoader;
+		}
+
+	}
+
+	/**
+	 * {@link CacheLoader} reloading entries by re-invoking their value loader.
+	 */
+	private static final class ReloadingCacheLoader extends CacheLoader<Object, Object> {
+
+		private final ListeningExecutorService executor;
+
+		private final boolean allowNullValues;
+
+		ReloadingCacheLoader(ExecutorService executor, boolean allowNullValues) {
+			this.executor = MoreExecutors.listeningDecorator(checkNotNull(executor, "reloadExecutor is required"));
+			this.allowNullValues = allowNullValues;
+		}
+
+		@Override
+		public Object load(Object key) {
+			throw new UnsupportedOperationException("entries are loaded through GuavaCache.get(key, valueLoader)");
+		}
+
+		@Override
+		public ListenableFuture<Object> reload(Object key, final Object oldValue) {
+			if (!(oldValue instanceof RefreshableValue) || ((RefreshableValue) oldValue).valueLoader == null) {
+				return Futures.immediateFuture(oldValue);
+			}
+			final Callable<?> valueLoader = ((RefreshableValue) oldValue).valueLoader;
+			return this.executor.submit(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					Object value = valueLoader.call();
+					// a null result fails the reload and keeps the old value
+					return (value != null || allowNullValues ? new RefreshableValue(value, valueLoader) : null);
+				}
+			});
+		}
+
+	}
+
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import com.google.common.base.Function;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.Multiset;
+import org.springmodules.cache.guava.tag.EntryTagger;
+import org.springmodules.cache.guava.tag.TagIndex;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * {@link GuavaCache} whose entries carry tags, such as {@code "user:alice"}, so that groups
+ * of entries can be {@link #evictByTag evicted} at once without clearing the whole cache.
+ * <p>Tags are either given explicitly to {@link #put(Object, Object, Collection)}, or
+ * computed by an {@link EntryTagger} for every entry stored through the regular cache
+ * operations. A {@link TagIndex} from tag to keys is maintained by a removal listener of the
+ * native cache, so that entries evicted or expiring leave the index as well; their keys are
+ * unindexed by the next write to this cache. The removal listener of the native cache being
+ * taken, a TaggedGuavaCache cannot be tiered.
+ * <p>Each write indexes its key under the {@link TagIndex#getLock lock} of the key once the
+ * entry is stored, provided the entry still holds the written value, so that concurrent
+ * writes and removals of a key leave it indexed with the tags of its cached value.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class TaggedGuavaCache extends GuavaCache {
+
+	private final TagIndex tagIndex;
+
+	private final EntryTagger entryTagger;
+
+	private final Multiset<Object> pendingKeys;
+
+	private final Queue<Object> removedKeys;
+
+	/**
+	 * Create a new TaggedGuavaCache with the specified name.
+	 * @param name the name of the cache
+	 * @param builder the CacheBuilder used to build the native cache
+	 * @param allowNullValues whether to accept and convert null values for this cache
+	 * @param entryTagger the tagger of the entries stored without explicit tags, or
+	 * {@code null} to only tag entries explicitly
+	 */
+	public TaggedGuavaCache(String name, CacheBuilder<Object, Object> builder, boolean allowNullValues,
+							EntryTagger entryTagger) {
+		this(name, builder, allowNullValues, entryTagger, new QueuingRemovalListener());
+	}
+
+	private TaggedGuavaCache(String name, CacheBuilder<Object, Object> builder, boolean allowNullValues,
+							 EntryTagger entryTagger, QueuingRemovalListener removalListener) {
+		super(name, builder.removalListener(removalListener).build(), allowNullValues, false);
+		this.tagIndex = new TagIndex();
+		this.entryTagger = entryTagger;
+		this.pendingKeys = ConcurrentHashMultiset.create();
+		this.removedKeys = removalListener.removedKeys;
+	}
+
+	public TagIndex getTagIndex() {
+		return this.tagIndex;
+	}
+
+	public EntryTagger getEntryTagger() {
+		return this.entryTagger;
+	}
+
+	@Override
+	public <T> T get(Object key, Callable<T> valueLoader) {
+		T value = super.get(key, valueLoader);
+		if (this.entryTagger != null) {
+			indexStored(key, value, this.entryTagger.getTags(key, value));
+		}
+		unindexRemovedKeys();
+		return value;
+	}
+
+	@Override
+	public void put(Object key, Object value) {
+		put(key, value, getTags(key, value));
+	}
+
+	/**
+	 * Associate the specified value with the specified key in this cache, tagging the entry
+	 * with the given tags.
+	 * @param key the key with which the specified value is to be associated
+	 * @param value the value to be associated with the specified key
+	 * @param tags the tags of the entry
+	 */
+	public void put(Object key, Object value, Collection<String> tags) {
+		// indexed first, so that concurrent evictions by tag do not miss the entry
+		indexPending(key, tags);
+		try {
+			super.put(key, value);
+		}
+		finally {
+			this.pendingKeys.remove(key);
+			indexStored(key, value, tags);
+			unindexRemovedKeys();
+		}
+	}
+
+	@Override
+	public ValueWrapper putIfAbsent(Object key, Object value) {
+		ValueWrapper existing = super.putIfAbsent(key, value);
+		if (existing == null) {
+			indexStored(key, value, getTags(key, value));
+		}
+		unindexRemovedKeys();
+		return existing;
+	}
+
+	@Override
+	public void putAll(Map<?, ?> values) {
+		Map<Object, Collection<String>> tagsByKey = new LinkedHashMap<Object, Collection<String>>(values.size() * 2);
+		for (Map.Entry<?, ?> entry : values.entrySet()) {
+			Collection<String> tags = getTags(entry.getKey(), entry.getValue());
+			tagsByKey.put(entry.getKey(), tags);
+			indexPending(entry.getKey(), tags);
+		}
+		try {
+			super.putAll(values);
+		}
+		finally {
+			for (Map.Entry<?, ?> entry : values.entrySet()) {
+				this.pendingKeys.remove(entry.getKey());
+				indexStored(entry.getKey(), entry.getValue(), tagsByKey.get(entry.getKey()));
+			}
+			unindexRemovedKeys();
+		}
+	}
+
+	/**
+	 * Atomically replace the value cached for the given key with the result of the given
+	 * function, tagging the entry with the tags of the new value.
+	 */
+	@Override
+	public ValueWrapper merge(Object key, Function<Object, ?> function) {
+		ValueWrapper merged = super.merge(key, function);
+		if (merged != null) {
+			indexStored(key, merged.get(), getTags(key, merged.get()));
+		}
+		unindexRemovedKeys();
+		return merged;
+	}
+
+	@Override
+	public void evict(Object key) {
+		super.evict(key);
+		unindexRemovedKeys();
+	}
+
+	@Override
+	public void evictAll(Iterable<?> keys) {
+		super.evictAll(keys);
+		unindexRemovedKeys();
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		unindexRemovedKeys();
+	}
+
+	/**
+	 * Evict all the entries tagged with the given tag from this cache.
+	 * @param tag the tag of the entries to evict
+	 */
+	public void evictByTag(String tag) {
+		evictAll(this.tagIndex.getKeys(tag));
+	}
+
+	private Collection<String> getTags(Object key, Object value) {
+		return (this.entryTagger != null ? this.entryTagger.getTags(key, value) : Collections.<String>emptyList());
+	}
+
+	/**
+	 * Index the given key ahead of storing its entry, keeping it indexed until the write
+	 * completes.
+	 */
+	private void indexPending(Object key, Collection<String> tags) {
+		Lock lock = this.tagIndex.getLock(key);
+		lock.lock();
+		try {
+			this.pendingKeys.add(key);
+			this.tagIndex.index(key, tags);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Index the given key with the given tags if its entry holds the given value, or
+	 * unindex it if the key is neither cached nor being written.
+	 */
+	private void indexStored(Object key, Object value, Collection<String> tags) {
+		Lock lock = this.tagIndex.getLock(key);
+		lock.lock();
+		try {
+			ValueWrapper current = peek(key);
+			if (current != null && current.get() == value) {
+				this.tagIndex.index(key, tags);
+			}
+			else if (current == null && !this.pendingKeys.contains(key)) {
+				this.tagIndex.unindex(key);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Unindex the keys removed from the native cache, unless they were stored again or are
+	 * being written.
+	 */
+	private void unindexRemovedKeys() {
+		Object key;
+		while ((key = this.removedKeys.poll()) != null) {
+			Lock lock = this.tagIndex.getLock(key);
+			lock.lock();
+			try {
+				if (!this.pendingKeys.contains(key) && !getNativeCache().asMap().containsKey(key)) {
+					this.tagIndex.unindex(key);
+				}
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * {@link RemovalListener} queuing the keys of the entries removed from the native cache.
+	 * Notifications being delivered by the thread of any cache operation, possibly while it
+	 * holds the lock of another key, the keys are unindexed later by {@link #unindexRemovedKeys()}.
+	 */
+	private static final class QueuingRemovalListener implements RemovalListener<Object, Object> {
+
+		private final Queue<Object> removedKeys = new ConcurrentLinkedQueue<Object>();
+
+		@Override
+		public void onRemoval(RemovalNotification<Object, Object> notification) {
+			Object key = notification.getKey();
+			if (key != null && notification.getCause() != RemovalCause.REPLACED) {
+				this.removedKeys.add(key);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,471 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import com.google.common.base.Function;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.Striped;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.core.serializer.support.SerializationFailedException;
+import org.springmodules.cache.guava.codec.SerializationCodec;
+import org.springmodules.cache.guava.codec.ValueCodec;
+import org.springmodules.cache.guava.offheap.OffHeapStore;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Two-tier {@link GuavaCache}: entries evicted from the native cache because of its size
+ * limit are serialized into an {@link OffHeapStore}, and moved back to the native cache
+ * when read again.
+ * <p>The native cache must be bounded ({@code maximumSize} or {@code maximumWeight}) for
+ * entries to reach the off-heap tier. Demotion happens in the removal listener of the native
+ * cache, hence on the thread causing the eviction, possibly after a concurrent
+ * {@link #evict(Object) evict}, {@link #clear() clear} or {@link #put(Object, Object) put}
+ * of the key: values carry a write stamp, and are only demoted if newer than the last
+ * eviction of their key and than the last clear, and if the native cache holds no newer value.
+ * Values that cannot be serialized are dropped. Promotion applies the same stamps: a value
+ * evicted or cleared while being promoted is removed again from the native cache.
+ * <p>The off-heap tier is bounded by its capacity. When the native cache expires entries
+ * after write or after access, demoted entries carry their deadline, computed at demotion
+ * from their write time and, for access based expiry, from the time of their demotion:
+ * expired entries are dropped instead of being promoted. A promoted entry then expires as
+ * a new entry of the native cache, unless evicted again for size.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class TieredGuavaCache extends GuavaCache {
+
+	private static final Log logger = LogFactory.getLog(TieredGuavaCache.class);
+
+	private final DemotingRemovalListener demoter;
+
+	/**
+	 * Create a new TieredGuavaCache.
+	 * @param name the name of the cache
+	 * @param builder the cache builder to use to build the native cache, without removal listener
+	 * @param allowNullValues whether to accept and convert null values for this cache
+	 * @param offHeapStore the store holding evicted entries
+	 */
+	public TieredGuavaCache(String name, CacheBuilder<Object, Object> builder, boolean allowNullValues,
+							OffHeapStore offHeapStore) {
+		this(name, builder, allowNullValues, offHeapStore, null);
+	}
+
+	/**
+	 * Create a new TieredGuavaCache.
+	 * @param name the name of the cache
+	 * @param builder the cache builder to use to build the native cache, without removal listener
+	 * @param allowNullValues whether to accept and convert null values for this cache
+	 * @param offHeapStore the store holding evicted entries
+	 * @param valueCodec the codec encoding values stored by value, or {@code null} to store values by reference
+	 * @see GuavaCache#GuavaCache(String, CacheBuilder, boolean, ValueCodec)
+	 */
+	public TieredGuavaCache(String name, CacheBuilder<Object, Object> builder, boolean allowNullValues,
+							OffHeapStore offHeapStore, ValueCodec valueCodec) {
+		this(name, builder, allowNullValues, offHeapStore, valueCodec, 0, 0, Ticker.systemTicker());
+	}
+
+	/**
+	 * Create a new TieredGuavaCache whose native cache expires entries.
+	 * @param name the name of the cache
+	 * @param builder the cache builder to use to build the native cache, without removal listener
+	 * @param allowNullValues whether to accept and convert null values for this cache
+	 * @param offHeapStore the store holding evicted entries
+	 * @param valueCodec the codec encoding values stored by value, or {@code null} to store values by reference
+	 * @param expireAfterWriteNanos the {@code expireAfterWrite} of the native cache, in nanoseconds, or {@code 0}
+	 * @param expireAfterAccessNanos the {@code expireAfterAccess} of the native cache, in nanoseconds, or {@code 0}
+	 * @param ticker the time source of the native cache
+	 */
+	public TieredGuavaCache(String name, CacheBuilder<Object, Object> builder, boolean allowNullValues,
+							OffHeapStore offHeapStore, ValueCodec valueCodec, long expireAfterWriteNanos,
+							long expireAfterAccessNanos, Ticker ticker) {
+		this(name, builder, allowNullValues, valueCodec, new DemotingRemovalListener(offHeapStore,
+				new SerializationCodec(), expireAfterWriteNanos, expireAfterAccessNanos, ticker));
+	}
+
+	private TieredGuavaCache(String name, CacheBuilder<Object, Object> builder, boolean allowNullValues,
+							 ValueCodec valueCodec, DemotingRemovalListener demoter) {
+		super(name, builder.removalListener(demoter).build(), allowNullValues, false, valueCodec);
+		this.demoter = demoter;
+		demoter.nativeCache = getNativeCache();
+	}
+
+	public OffHeapStore getOffHeapStore() {
+		return this.demoter.offHeapStore;
+	}
+
+	@Override
+	public ValueWrapper get(Object key) {
+		ValueWrapper wrapper = super.get(key);
+		if (wrapper == null && promote(key) != null) {
+			wrapper = super.get(key);
+		}
+		return wrapper;
+	}
+
+	@Override
+	public <T> T get(Object key, Callable<T> valueLoader) {
+		if (getNativeCache().getIfPresent(key) == null) {
+			promote(key);
+		}
+		return super.get(key, valueLoader);
+	}
+
+	@Override
+	public ValueWrapper merge(Object key, Function<Object, ?> function) {
+		if (getNativeCache().getIfPresent(key) == null) {
+			promote(key);
+		}
+		return super.merge(key, function);
+	}
+
+	@Override
+	public BulkGetResult getAll(Iterable<?> keys) {
+		Set<Object> requestedKeys = new LinkedHashSet<Object>();
+		for (Object key : keys) {
+			requestedKeys.add(key);
+		}
+		BulkGetResult result = super.getAll(requestedKeys);
+		if (result.isComplete()) {
+			return result;
+		}
+		Map<Object, Object> hits = new LinkedHashMap<Object, Object>(requestedKeys.size() * 2);
+		Set<Object> missingKeys = new LinkedHashSet<Object>();
+		for (Object key : requestedKeys) {
+			if (result.getHits().containsKey(key)) {
+				hits.put(key, result.getHits().get(key));
+				continue;
+			}
+			Object storeValue = promote(key);
+			if (storeValue != null) {
+				hits.put(key, fromStoreValue(storeValue));
+			}
+			else {
+				missingKeys.add(key);
+			}
+		}
+		return new BulkGetResult(hits, missingKeys);
+	}
+
+	@Override
+	public void put(Object key, Object value) {
+		super.put(key, value);
+		this.demoter.removeOffHeap(key);
+	}
+
+	@Override
+	public ValueWrapper putIfAbsent(Object key, Object value) {
+		ValueWrapper existing = super.putIfAbsent(key, value);
+		if (existing == null) {
+			this.demoter.removeOffHeap(key);
+		}
+		return existing;
+	}
+
+	@Override
+	public void putAll(Map<?, ?> values) {
+		super.putAll(values);
+		for (Object key : values.keySet()) {
+			this.demoter.removeOffHeap(key);
+		}
+	}
+
+	@Override
+	public void evict(Object key) {
+		this.demoter.tombstone(key);
+		super.evict(key);
+		this.demoter.removeOffHeap(key);
+	}
+
+	@Override
+	public void evictAll(Iterable<?> keys) {
+		for (Object key : keys) {
+			this.demoter.tombstone(key);
+		}
+		super.evictAll(keys);
+		for (Object key : keys) {
+			this.demoter.removeOffHeap(key);
+		}
+	}
+
+	@Override
+	public void clear() {
+		this.demoter.tombstoneAll();
+		super.clear();
+		this.demoter.clearOffHeap();
+	}
+
+	@Override
+	protected Object fromStoreValue(Object storeValue) {
+		if (storeValue instanceof TieredValue) {
+			return super.fromStoreValue(((TieredValue) storeValue).value);
+		}
+		return super.fromStoreValue(storeValue);
+	}
+
+	@Override
+	protected Object toStoreValue(Object userValue) {
+		Object storeValue = super.toStoreValue(userValue);
+		if (storeValue == null) {
+			return null;
+		}
+		return new TieredValue(storeValue, this.demoter.nextStamp(), this.demoter.ticker.read(), Long.MAX_VALUE);
+	}
+
+	/**
+	 * Move the entry with the given key from the off-heap tier back to the native cache,
+	 * unless it expired or the native cache got a value for the key in the meantime.
+	 * @return the store value found in the off-heap tier, or {@code null} if none
+	 */
+	private Object promote(Object key) {
+		TieredValue storeValue = this.demoter.takeOffHeap(key);
+		if (storeValue == null || storeValue.isExpired(this.demoter.ticker.read())) {
+			return null;
+		}
+		// the native cache is written outside of the key lock: the write may demote another
+		// entry, whose key lock the removal listener takes on this thread
+		boolean promoted = (getNativeCache().asMap().putIfAbsent(key, storeValue) == null);
+		if (this.demoter.isInvalidated(key, storeValue)) {
+			if (promoted) {
+				getNativeCache().asMap().remove(key, storeValue);
+			}
+			return null;
+		}
+		return storeValue;
+	}
+
+	/**
+	 * Store value carrying its write stamp and time, and its expiration time once demoted.
+	 */
+	private static final class TieredValue implements ValueWrapper, Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Object value;
+
+		private final long stamp;
+
+		private final long writeTime;
+
+		private final long expirationTime;
+
+		TieredValue(Object value, long stamp, long writeTime, long expirationTime) {
+			this.value = value;
+			this.stamp = stamp;
+			this.writeTime = writeTime;
+			this.expirationTime = expirationTime;
+		}
+
+		@Override
+		public Object get() {
+			return this.value;
+		}
+
+		boolean isExpired(long now) {
+			return (this.expirationTime != Long.MAX_VALUE && this.expirationTime - now <= 0);
+		}
+
+	}
+
+	/**
+	 * {@link RemovalListener} moving entries evicted for size to the off-heap tier, and
+	 * dropping the off-heap copy of entries removed for any other reason.
+	 * <p>Demotions and removals of the off-heap copy of a key are serialized by a lock
+	 * striped by key, so that a demotion either sees the eviction of its key, or happens
+	 * before the eviction removes the off-heap copy. Evictions are remembered for a minute,
+	 * well beyond the delivery of the notifications of the native cache.
+	 */
+	private static final class DemotingRemovalListener implements RemovalListener<Object, Object> {
+
+		private static final long TOMBSTONE_RETENTION_SECONDS = 60;
+
+		private final OffHeapStore offHeapStore;
+
+		private final ValueCodec offHeapCodec;
+
+		private final long expireAfterWriteNanos;
+
+		private final long expireAfterAccessNanos;
+
+		private final Ticker ticker;
+
+		private final AtomicLong stamps = new AtomicLong();
+
+		private final Cache<Object, Long> tombstones = CacheBuilder.newBuilder()
+				.expireAfterWrite(TOMBSTONE_RETENTION_SECONDS, TimeUnit.SECONDS).build();
+
+		private final Striped<Lock> locks = Striped.lock(64);
+
+		private volatile long clearStamp;
+
+		private volatile Cache<Object, Object> nativeCache;
+
+		DemotingRemovalListener(OffHeapStore offHeapStore, ValueCodec offHeapCodec, long expireAfterWriteNanos,
+								long expireAfterAccessNanos, Ticker ticker) {
+			this.offHeapStore = checkNotNull(offHeapStore, "offHeapStore is required");
+			this.offHeapCodec = offHeapCodec;
+			this.expireAfterWriteNanos = expireAfterWriteNanos;
+			this.expireAfterAccessNanos = expireAfterAccessNanos;
+			this.ticker = checkNotNull(ticker, "ticker is required");
+		}
+
+		long nextStamp() {
+			return this.stamps.incrementAndGet();
+		}
+
+		void tombstone(Object key) {
+			this.tombstones.put(key, nextStamp());
+		}
+
+		void tombstoneAll() {
+			this.clearStamp = nextStamp();
+		}
+
+		void removeOffHeap(Object key) {
+			Lock lock = this.locks.get(key);
+			lock.lock();
+			try {
+				this.offHeapStore.remove(key);
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Remove the off-heap copy of the given key, and return it unless it was written before
+		 * the last clear or eviction of its key.
+		 */
+		TieredValue takeOffHeap(Object key) {
+			Lock lock = this.locks.get(key);
+			lock.lock();
+			try {
+				byte[] bytes = this.offHeapStore.remove(key);
+				if (bytes == null) {
+					return null;
+				}
+				TieredValue value = (TieredValue) this.offHeapCodec.decode(bytes);
+				return (isInvalidated(key, value) ? null : value);
+			}
+			catch (SerializationFailedException ex) {
+				logger.debug("Unable to deserialize off-heap value for key [" + key + "], dropping it", ex);
+				return null;
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+
+		void clearOffHeap() {
+			for (int i = 0; i < this.locks.size(); i++) {
+				this.locks.getAt(i).lock();
+			}
+			try {
+				this.offHeapStore.clear();
+			}
+			finally {
+				for (int i = 0; i < this.locks.size(); i++) {
+					this.locks.getAt(i).unlock();
+				}
+			}
+		}
+
+		@Override
+		public void onRemoval(RemovalNotification<Object, Object> notification) {
+			Object key = notification.getKey();
+			if (notification.getCause() != RemovalCause.SIZE) {
+				removeOffHeap(key);
+				return;
+			}
+			if (!(notification.getValue() instanceof TieredValue)) {
+				return;
+			}
+			TieredValue evicted = (TieredValue) notification.getValue();
+			long now = this.ticker.read();
+			TieredValue value = new TieredValue(evicted.value, evicted.stamp, evicted.writeTime,
+					expirationTime(evicted, now));
+			if (value.isExpired(now)) {
+				return;
+			}
+			Lock lock = this.locks.get(key);
+			lock.lock();
+			try {
+				if (isStale(key, value)) {
+					return;
+				}
+				this.offHeapStore.put(key, this.offHeapCodec.encode(value));
+			}
+			catch (SerializationFailedException ex) {
+				logger.debug("Unable to serialize value for key [" + key + "], dropping it", ex);
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+
+		private long expirationTime(TieredValue value, long now) {
+			long expirationTime = value.expirationTime;
+			if (this.expireAfterWriteNanos > 0) {
+				expirationTime = Math.min(expirationTime, value.writeTime + this.expireAfterWriteNanos);
+			}
+			if (this.expireAfterAccessNanos > 0) {
+				expirationTime = Math.min(expirationTime, now + this.expireAfterAccessNanos);
+			}
+			return expirationTime;
+		}
+
+		/**
+		 * Return whether the given value, evicted for size, was written before the last clear
+		 * or eviction of its key, or replaced since in the native cache.
+		 */
+		private boolean isStale(Object key, TieredValue value) {
+			if (isInvalidated(key, value)) {
+				return true;
+			}
+			Object current = this.nativeCache.asMap().get(key);
+			return (current instanceof TieredValue && ((TieredValue) current).stamp > value.stamp);
+		}
+
+		/**
+		 * Return whether the given value was written before the last clear or eviction of its key.
+		 */
+		boolean isInvalidated(Object key, TieredValue value) {
+			if (value.stamp <= this.clearStamp) {
+				return true;
+			}
+			Long tombstone = this.tombstones.getIfPresent(key);
+			return (tombstone != null && value.stamp <= tombstone);
+		}
+
+	}
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import org.springframework.cache.Cache;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Transaction aware decorator for {@link GuavaCache}, exposing the decorated cache so that
+ * Guava specific operations remain reachable. The decorated cache is either a
+ * {@link GuavaCache} or another decorator of one, such as a {@link NearCache}.
+ * <p>As {@link org.springframework.cache.transaction.TransactionAwareCacheDecorator} does,
+ * puts and evictions are deferred until after the commit of the current transaction, if any,
+ * and {@link #clear() clear} is performed immediately. Instead of one transaction
+ * synchronization per operation, the operations of a transaction are collected per key, the
+ * last one winning, and applied at commit with one bulk eviction and one bulk put.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class TransactionAwareGuavaCache implements CacheDecorator {
+
+	private static final Object EVICTED = new Object();
+
+	private final Cache targetCache;
+
+	/**
+	 * Create a new TransactionAwareGuavaCache for the given target cache.
+	 * @param targetCache the target cache to decorate
+	 */
+	public TransactionAwareGuavaCache(Cache targetCache) {
+		this.targetCache = checkNotNull(targetCache, "targetCache is required");
+	}
+
+	@Override
+	public Cache getTargetCache() {
+		return this.targetCache;
+	}
+
+	@Override
+	public String getName() {
+		return this.targetCache.getName();
+	}
+
+	@Override
+	public Object getNativeCache() {
+		return this.targetCache.getNativeCache();
+	}
+
+	@Override
+	public ValueWrapper get(Object key) {
+		return this.targetCache.get(key);
+	}
+
+	@Override
+	public void put(Object key, Object value) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			getPendingOperations().put(key, value);
+		}
+		else {
+			this.targetCache.put(key, value);
+		}
+	}
+
+	@Override
+	public void evict(Object key) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			getPendingOperations().put(key, EVICTED);
+		}
+		else {
+			this.targetCache.evict(key);
+		}
+	}
+
+	@Override
+	public void clear() {
+		this.targetCache.clear();
+	}
+
+	/**
+	 * Return the operations deferred by the current transaction, registering the
+	 * synchronization applying them on the first call of the transaction.
+	 * <p>The synchronization is bound as a transaction resource keyed by this cache, and
+	 * unbinds itself when its transaction is suspended, so that an inner
+	 * {@code REQUIRES_NEW} transaction collects and applies its own operations.
+	 */
+	private Map<Object, Object> getPendingOperations() {
+		PendingOperationsSynchronization synchronization =
+				(PendingOperationsSynchronization) TransactionSynchronizationManager.getResource(this);
+		if (synchronization == null) {
+			synchronization = new PendingOperationsSynchronization();
+			TransactionSynchronizationManager.registerSynchronization(synchronization);
+			TransactionSynchronizationManager.bindResource(this, synchronization);
+		}
+		return synchronization.operations;
+	}
+
+	private void apply(Map<Object, Object> operations) {
+		List<Object> evictedKeys = new ArrayList<Object>();
+		Map<Object, Object> values = new LinkedHashMap<Object, Object>();
+		for (Map.Entry<Object, Object> operation : operations.entrySet()) {
+			if (operation.getValue() == EVICTED) {
+				evictedKeys.add(operation.getKey());
+			}
+			else {
+				values.put(operation.getKey(), operation.getValue());
+			}
+		}
+		if (!evictedKeys.isEmpty()) {
+			evictAll(evictedKeys);
+		}
+		if (!values.isEmpty()) {
+			putAll(values);
+		}
+	}
+
+	private void evictAll(List<Object> keys) {
+		if (this.targetCache instanceof GuavaCache) {
+			((GuavaCache) this.targetCache).evictAll(keys);
+		}
+		else if (this.targetCache instanceof NearCache) {
+			((NearCache) this.targetCache).evictAll(keys);
+		}
+		else {
+			for (Object key : keys) {
+				this.targetCache.evict(key);
+			}
+		}
+	}
+
+	private void putAll(Map<Object, Object> values) {
+		if (this.targetCache instanceof GuavaCache) {
+			((GuavaCache) this.targetCache).putAll(values);
+		}
+		else if (this.targetCache instanceof NearCache) {
+			((NearCache) this.targetCache).putAll(values);
+		}
+		else {
+			for (Map.Entry<Object, Object> entry : values.entrySet()) {
+				this.targetCache.put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Synchronization applying the operations deferred by a transaction after its commit.
+	 */
+	private final class PendingOperationsSynchronization extends TransactionSynchronizationAdapter {
+
+		private final Map<Object, Object> operations = new LinkedHashMap<Object, Object>();
+
+		@Override
+		public void suspend() {
+			TransactionSynchronizationManager.unbindResource(TransactionAwareGuavaCache.this);
+		}
+
+		@Override
+		public void resume() {
+			TransactionSynchronizationManager.bindResource(TransactionAwareGuavaCache.this, this);
+		}
+
+		@Override
+		public void afterCommit() {
+			apply(this.operations);
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(TransactionAwareGuavaCache.this);
+		}
+
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import com.google.common.cache.CacheBuilder;
+import org.springmodules.cache.guava.writer.CacheWriter;
+import org.springmodules.cache.guava.writer.WriteBehindQueue;
+
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link GuavaCache} writing its entries behind to the underlying store: puts and evictions
+ * update the cache immediately, and are queued to a {@link WriteBehindQueue} handing them in
+ * batches to a {@link CacheWriter}.
+ * <p>Only {@link #put(Object, Object) put}, {@link #putAll(Map) putAll},
+ * {@link #evict(Object) evict} and {@link #evictAll(Iterable) evictAll} are written. Values
+ * read from the store, whether loaded through {@link #get(Object, java.util.concurrent.Callable)}
+ * or restored through {@link #putIfAbsent(Object, Object)}, are not written back, and
+ * {@link #clear() clear} leaves the store untouched. A WriteBehindGuavaCache is therefore
+ * populated by {@link org.springframework.cache.annotation.CachePut @CachePut} methods rather
+ * than {@link org.springframework.cache.annotation.Cacheable @Cacheable} ones, whose misses
+ * would be written back.
+ * <p>{@link #close() Closing} the cache writes the pending writes; later writes are rejected.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class WriteBehindGuavaCache extends GuavaCache {
+
+	private final WriteBehindQueue writeBehindQueue;
+
+	/**
+	 * Create a new WriteBehindGuavaCache with the specified name.
+	 * @param name the name of the cache
+	 * @param builder the CacheBuilder used to build the native cache
+	 * @param allowNullValues whether to accept and convert null values for this cache
+	 * @param writeBehindQueue the queue of the writes to the store
+	 */
+	public WriteBehindGuavaCache(String name, CacheBuilder<Object, Object> builder, boolean allowNullValues,
+								 WriteBehindQueue writeBehindQueue) {
+		super(name, builder, allowNullValues);
+		this.writeBehindQueue = checkNotNull(writeBehindQueue, "writeBehindQueue is required");
+	}
+
+	public WriteBehindQueue getWriteBehindQueue() {
+		return this.writeBehindQueue;
+	}
+
+	@Override
+	public void put(Object key, Object value) {
+		super.put(key, value);
+		this.writeBehindQueue.write(key, value);
+	}
+
+	@Override
+	public void putAll(Map<?, ?> values) {
+		super.putAll(values);
+		for (Map.Entry<?, ?> entry : values.entrySet()) {
+			this.writeBehindQueue.write(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public void evict(Object key) {
+		super.evict(key);
+		this.writeBehindQueue.delete(key);
+	}
+
+	@Override
+	public void evictAll(Iterable<?> keys) {
+		super.evictAll(keys);
+		for (Object key : keys) {
+			this.writeBehindQueue.delete(key);
+		}
+	}
+
+	/**
+	 * Write the pending writes, blocking until the store has received them.
+	 */
+	public void flush() {
+		this.writeBehindQueue.flush();
+	}
+
+	/**
+	 * Write the pending writes and stop writing behind.
+	 */
+	public void close() {
+		this.writeBehindQueue.close();
+	}
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.admission;
+
+/**
+ * Policy deciding whether a new entry is worth storing in a full
+ * {@link org.springmodules.cache.guava.AdmittingGuavaCache AdmittingGuavaCache}, at the
+ * expense of the entry its eviction would remove.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public interface AdmissionPolicy {
+
+	/**
+	 * Record an access to the given key, whether it hits or misses.
+	 * @param key the accessed key
+	 */
+	void record(Object key);
+
+	/**
+	 * Return whether the entry with the given key should be stored, evicting the victim.
+	 * @param candidateKey the key of the new entry
+	 * @param victimKey the key of the entry expected to be evicted
+	 * @return {@code true} to store the new entry, {@code false} to drop it
+	 */
+	boolean admit(Object candidateKey, Object victimKey);
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Count-min sketch estimating the access frequency of keys in a few bytes per cached entry.
+ * <p>Each key maps to four 4-bit counters, sixteen of which are packed per {@code long};
+ * the estimated frequency of a key is the minimum of its counters, hence saturates at 15.
+ * Once the number of recorded accesses reaches the sample size, all counters are halved,
+ * so that the sketch follows changes in popularity instead of accumulating history.
+ * <p>Counters are updated atomically, but increments concurrent with aging may be lost,
+ * which only makes the estimates slightly lower.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class FrequencySketch {
+
+	private static final long[] SEEDS = {
+			0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	private static final long ONE_MASK = 0x1111111111111111L;
+
+	private final AtomicLongArray table;
+
+	private final int tableMask;
+
+	private final int sampleSize;
+
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * Create a new FrequencySketch.
+	 * @param maximumSize the maximum number of entries of the cache
+	 */
+	public FrequencySketch(long maximumSize) {
+		checkArgument(maximumSize > 0, "maximumSize must be positive");
+		int length = ceilingPowerOfTwo((int) Math.min(Math.max(maximumSize, 8), 1 << 30));
+		this.table = new AtomicLongArray(length);
+		this.tableMask = length - 1;
+		this.sampleSize = (int) Math.min(10L * maximumSize, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Return the estimated number of accesses to the given key, up to 15.
+	 */
+	public int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int frequency = Integer.MAX_VALUE;
+		for (int i = 0; i < SEEDS.length; i++) {
+			int shift = offsetOf(hash, i) << 2;
+			frequency = Math.min(frequency, (int) ((this.table.get(indexOf(hash, i)) >>> shift) & 0xfL));
+		}
+		return frequency;
+	}
+
+	/**
+	 * Record an access to the given key, aging the sketch once the sample size is reached.
+	 */
+	public void increment(Object key) {
+		int hash = spread(key.hashCode());
+		boolean added = false;
+		for (int i = 0; i < SEEDS.length; i++) {
+			added |= incrementAt(indexOf(hash, i), offsetOf(hash, i));
+		}
+		if (added && this.size.incrementAndGet() == this.sampleSize) {
+			reset();
+		}
+	}
+
+	private boolean incrementAt(int index, int offset) {
+		int shift = offset << 2;
+		long mask = 0xfL << shift;
+		while (true) {
+			long current = this.table.get(index);
+			if ((current & mask) == mask) {
+				return false;
+			}
+			if (this.table.compareAndSet(index, current, current + (1L << shift))) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Halve all the counters, and the number of recorded accesses accordingly.
+	 */
+	private void reset() {
+		int odd = 0;
+		for (int i = 0; i < this.table.length(); i++) {
+			long current;
+			do {
+				current = this.table.get(i);
+			}
+			while (!this.table.compareAndSet(i, current, (current >>> 1) & RESET_MASK));
+			odd += Long.bitCount(current & ONE_MASK);
+		}
+		this.size.set((this.sampleSize >>> 1) - (odd >>> 2));
+	}
+
+	private int indexOf(int hash, int i) {
+		long h = (hash + SEEDS[i]) * SEEDS[i];
+		h += (h >>> 32);
+		return ((int) h) & this.tableMask;
+	}
+
+	private static int offsetOf(int hash, int i) {
+		return (hash >>> (i << 3)) & 0xf;
+	}
+
+	private static int spread(int x) {
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+
+	private static int ceilingPowerOfTwo(int x) {
+		return 1 << (Integer.SIZE - Integer.numberOfLeadingZeros(x - 1));
+	}
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.admission;
+
+/**
+ * TinyLFU {@link AdmissionPolicy}: a new entry is admitted only if its key was accessed more
+ * often than the key of the victim, as estimated by a {@link FrequencySketch}. One-off keys,
+ * such as those of a scan, therefore do not push out frequently accessed entries.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class TinyLfuAdmissionPolicy implements AdmissionPolicy {
+
+	private final FrequencySketch sketch;
+
+	/**
+	 * Create a new TinyLfuAdmissionPolicy.
+	 * @param maximumSize the maximum number of entries of the cache, sizing the sketch
+	 */
+	public TinyLfuAdmissionPolicy(long maximumSize) {
+		this.sketch = new FrequencySketch(maximumSize);
+	}
+
+	public FrequencySketch getSketch() {
+		return this.sketch;
+	}
+
+	@Override
+	public void record(Object key) {
+		this.sketch.increment(key);
+	}
+
+	@Override
+	public boolean admit(Object candidateKey, Object victimKey) {
+		return (this.sketch.frequency(candidateKey) > this.sketch.frequency(victimKey));
+	}
+
+}
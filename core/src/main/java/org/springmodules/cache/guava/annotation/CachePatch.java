@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.annotation;
+
+import org.springmodules.cache.guava.CollectionPatch;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates that a method changes a single element of a cached collection, such as
+ * {@code void createPost(Post post)} for a cache of the posts of each user: once the method
+ * returns, the change is applied to the cached collection instead of evicting it, so that
+ * the next lookup does not reload the whole collection.
+ * <p>Collections that are not cached are left absent. Caches backed by a
+ * {@link org.springmodules.cache.guava.GuavaCache} are patched atomically with
+ * {@link org.springmodules.cache.guava.GuavaCache#merge merge}, after the commit of the
+ * current transaction when transaction aware; entries of other caches, and of caches
+ * decorated by a {@link org.springmodules.cache.guava.NearCache}, are evicted instead.
+ * Enable processing of this annotation by registering {@link GuavaCachingConfiguration}.
+ * @author Omar Irbouh
+ * @since 1.0
+ * @see CollectionPatch
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface CachePatch {
+
+	/**
+	 * Names of the caches to patch.
+	 */
+	String[] value();
+
+	/**
+	 * SpEL expression computing the key of the cached collection. Default is {@code ""},
+	 * meaning the key is generated from all the method arguments.
+	 */
+	String key() default "";
+
+	/**
+	 * Change applied to the cached collection.
+	 */
+	CollectionPatch.Operation operation();
+
+	/**
+	 * SpEL expression computing the element to add or replace, such as {@code "#post"};
+	 * the method result is available as {@code #result}. Required unless removing elements
+	 * by {@link #match()}.
+	 */
+	String element() default "";
+
+	/**
+	 * SpEL expression selecting the cached elements to replace or remove, evaluated for each
+	 * of them, available as {@code #element}; e.g. {@code "#element.id == #id"}. Default is
+	 * {@code ""}, meaning the elements equal to the {@link #element()}.
+	 */
+	String match() default "";
+
+	/**
+	 * SpEL expression used for making the patch conditional; evaluated after the invocation.
+	 * Default is {@code ""}, meaning the cache is always patched.
+	 */
+	String condition() default "";
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates that a method looking up several elements at once, such as
+ * {@code Collection<User> findByUserNames(Collection<String> userNames)}, can be cached per
+ * element: the elements of the first {@link java.util.Collection} argument are looked up in
+ * the cache in one pass, the method is invoked once with the missing elements only, and each
+ * returned value is cached under the key of its element.
+ * <p>The method must return either a {@link java.util.Map} keyed by element, or a
+ * {@link java.util.Collection} of values along with a {@link #resultKey()} expression. The
+ * result holds the cached and loaded values in the order of the argument; elements without
+ * value are omitted, and are not cached. Enable processing of this annotation by registering
+ * {@link GuavaCachingConfiguration}.
+ * @author Omar Irbouh
+ * @since 1.0
+ * @see org.springmodules.cache.guava.GuavaCache#getAll(Iterable)
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface CacheableAll {
+
+	/**
+	 * Names of the caches; values are looked up in and stored into the first one.
+	 */
+	String[] value();
+
+	/**
+	 * SpEL expression computing the cache key of an element, available as {@code #element}
+	 * along with the method arguments. Default is the element itself, so that entries are
+	 * shared with single-key {@link org.springframework.cache.annotation.Cacheable @Cacheable}
+	 * methods taking the element as their only argument.
+	 */
+	String key() default "";
+
+	/**
+	 * SpEL expression computing, from a value returned in a collection (available as
+	 * {@code #result}), the element it was loaded for; e.g. {@code "#result.userName"}.
+	 * Required for methods returning a collection.
+	 */
+	String resultKey() default "";
+
+	/**
+	 * SpEL expression used for making the caching conditional; evaluated once, before the
+	 * invocation. Default is {@code ""}, meaning the method is always cached.
+	 */
+	String condition() default "";
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.annotation;
+
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springmodules.cache.guava.interceptor.CachePatchInterceptor;
+import org.springmodules.cache.guava.interceptor.CacheableAllInterceptor;
+import org.springmodules.cache.guava.interceptor.SynchronizedLoadInterceptor;
+
+/**
+ * {@code @Configuration} class registering the infrastructure beans that process the
+ * Guava cache annotations, to be used along with
+ * {@link org.springframework.cache.annotation.EnableCaching @EnableCaching} or
+ * {@code <cache:annotation-driven/>}. The interceptors use the {@code CacheManager} bean
+ * of the context.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+@Configuration
+public class GuavaCachingConfiguration {
+
+	@Autowired(required = false)
+	private KeyGenerator keyGenerator;
+
+	@Bean
+	@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+	public Advisor synchronizedLoadAdvisor() {
+		return new DefaultPointcutAdvisor(
+				AnnotationMatchingPointcut.forMethodAnnotation(SynchronizedLoad.class),
+				synchronizedLoadInterceptor());
+	}
+
+	@Bean
+	@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+	public SynchronizedLoadInterceptor synchronizedLoadInterceptor() {
+		SynchronizedLoadInterceptor interceptor = new SynchronizedLoadInterceptor();
+		if (this.keyGenerator != null) {
+			interceptor.setKeyGenerator(this.keyGenerator);
+		}
+		return interceptor;
+	}
+
+	@Bean
+	@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+	public Advisor cacheableAllAdvisor() {
+		return new DefaultPointcutAdvisor(
+				AnnotationMatchingPointcut.forMethodAnnotation(CacheableAll.class),
+				cacheableAllInterceptor());
+	}
+
+	@Bean
+	@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+	public CacheableAllInterceptor cacheableAllInterceptor() {
+		CacheableAllInterceptor interceptor = new CacheableAllInterceptor();
+		if (this.keyGenerator != null) {
+			interceptor.setKeyGenerator(this.keyGenerator);
+		}
+		return interceptor;
+	}
+
+	@Bean
+	@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+	public Advisor cachePatchAdvisor() {
+		return new DefaultPointcutAdvisor(
+				AnnotationMatchingPointcut.forMethodAnnotation(CachePatch.class),
+				cachePatchInterceptor());
+	}
+
+	@Bean
+	@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+	public CachePatchInterceptor cachePatchInterceptor() {
+		CachePatchInterceptor interceptor = new CachePatchInterceptor();
+		if (this.keyGenerator != null) {
+			interceptor.setKeyGenerator(this.keyGenerator);
+		}
+		return interceptor;
+	}
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates that concurrent cache misses of a
+ * {@link org.springframework.cache.annotation.Cacheable @Cacheable} method should share a
+ * single invocation of the method: the first caller loads the value while the others wait
+ * for it, instead of all of them invoking the method.
+ * <p>The cache name, key, condition and unless expressions are taken from the
+ * {@code @Cacheable} annotation; the cache must be backed by a
+ * {@link org.springmodules.cache.guava.GuavaCache}. Enable processing of this annotation
+ * by registering {@link GuavaCachingConfiguration}.
+ * @author Omar Irbouh
+ * @since 1.0
+ * @see org.springmodules.cache.guava.GuavaCache#get(Object, java.util.concurrent.Callable)
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface SynchronizedLoad {
+
+}
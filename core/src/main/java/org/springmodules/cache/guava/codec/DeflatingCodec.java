@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.codec;
+
+import org.springframework.core.serializer.support.SerializationFailedException;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link ValueCodec} compressing the output of another codec with the DEFLATE algorithm,
+ * trading CPU for a smaller footprint of large values.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class DeflatingCodec implements ValueCodec {
+
+	private final ValueCodec delegate;
+
+	private final int level;
+
+	/**
+	 * Create a new DeflatingCodec compressing Java serialized values for speed.
+	 */
+	public DeflatingCodec() {
+		this(new SerializationCodec(), Deflater.BEST_SPEED);
+	}
+
+	/**
+	 * Create a new DeflatingCodec.
+	 * @param delegate the codec encoding values before compression
+	 * @param level the compression level, as defined by {@link Deflater}
+	 */
+	public DeflatingCodec(ValueCodec delegate, int level) {
+		this.delegate = checkNotNull(delegate, "delegate is required");
+		this.level = level;
+	}
+
+	@Override
+	public byte[] encode(Object value) {
+		byte[] bytes = this.delegate.encode(value);
+		Deflater deflater = new Deflater(this.level);
+		try {
+			deflater.setInput(bytes);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, bytes.length / 2));
+			byte[] buffer = new byte[1024];
+			while (!deflater.finished()) {
+				out.write(buffer, 0, deflater.deflate(buffer));
+			}
+			return out.toByteArray();
+		}
+		finally {
+			deflater.end();
+		}
+	}
+
+	@Override
+	public Object decode(byte[] bytes) {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(bytes);
+			ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+			byte[] buffer = new byte[1024];
+			while (!inflater.finished()) {
+				int count = inflater.inflate(buffer);
+				if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new SerializationFailedException("Unable to inflate value: truncated input");
+				}
+				out.write(buffer, 0, count);
+			}
+			return this.delegate.decode(out.toByteArray());
+		}
+		catch (DataFormatException ex) {
+			throw new SerializationFailedException("Unable to inflate value", ex);
+		}
+		finally {
+			inflater.end();
+		}
+	}
+
+}
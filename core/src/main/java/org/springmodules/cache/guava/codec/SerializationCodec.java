@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.codec;
+
+import org.springframework.core.ConfigurableObjectInputStream;
+import org.springframework.core.serializer.support.SerializationFailedException;
+import org.springframework.util.ClassUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * {@link ValueCodec} using Java serialization; values must be {@link java.io.Serializable}.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class SerializationCodec implements ValueCodec {
+
+	private final ClassLoader classLoader;
+
+	/**
+	 * Create a new SerializationCodec resolving classes with the default class loader.
+	 */
+	public SerializationCodec() {
+		this(ClassUtils.getDefaultClassLoader());
+	}
+
+	/**
+	 * Create a new SerializationCodec.
+	 * @param classLoader the class loader used to resolve the classes of decoded values
+	 */
+	public SerializationCodec(ClassLoader classLoader) {
+		this.classLoader = classLoader;
+	}
+
+	@Override
+	public byte[] encode(Object value) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(value);
+			out.close();
+			return bytes.toByteArray();
+		}
+		catch (IOException ex) {
+			throw new SerializationFailedException("Unable to serialize value of type [" + value.getClass().getName() + "]", ex);
+		}
+	}
+
+	@Override
+	public Object decode(byte[] bytes) {
+		try {
+			ObjectInputStream in = new ConfigurableObjectInputStream(new ByteArrayInputStream(bytes), this.classLoader);
+			try {
+				return in.readObject();
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException ex) {
+			throw new SerializationFailedException("Unable to deserialize value", ex);
+		}
+		catch (ClassNotFoundException ex) {
+			throw new SerializationFailedException("Unable to deserialize value", ex);
+		}
+	}
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.codec;
+
+import org.springframework.core.serializer.support.SerializationFailedException;
+
+/**
+ * Strategy encoding cache values to compact binary representations, and back.
+ * <p>Implementations must be thread-safe.
+ * @author Omar Irbouh
+ * @since 1.0
+ * @see org.springmodules.cache.guava.GuavaCache#GuavaCache(String, com.google.common.cache.CacheBuilder, boolean, ValueCodec)
+ */
+public interface ValueCodec {
+
+	/**
+	 * Encode the given value.
+	 * @param value the value, never {@code null}
+	 * @return the encoded value
+	 * @throws SerializationFailedException if the value cannot be encoded
+	 */
+	byte[] encode(Object value);
+
+	/**
+	 * Decode the given bytes, as returned by {@link #encode(Object)}, to a new value.
+	 * @param bytes the encoded value
+	 * @return the decoded value
+	 * @throws SerializationFailedException if the bytes cannot be decoded
+	 */
+	Object decode(byte[] bytes);
+
+}
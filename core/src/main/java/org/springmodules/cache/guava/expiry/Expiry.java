@@ -0,0 +1,36 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.expiry;
+
+/**
+ * Strategy computing the time to live of the entries of an
+ * {@link org.springmodules.cache.guava.ExpiringGuavaCache ExpiringGuavaCache}, from their key
+ * and value, each time they are written.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public interface Expiry {
+
+	/**
+	 * Return the time to live of the given entry, in nanoseconds.
+	 * @param key the key of the entry
+	 * @param value the value of the entry, possibly {@code null}
+	 * @return the time to live of the entry, {@code 0} or less for entries expiring
+	 * immediately, or {@link Long#MAX_VALUE} for entries that never expire
+	 */
+	long expireAfterWrite(Object key, Object value);
+
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.expiry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hierarchical timing wheel, scheduling timers in O(1) and finding the expired ones without
+ * scanning the timers that are not due.
+ * <p>Timers are linked into the buckets of five wheels of increasing resolution: about one
+ * second, one minute, one hour and one day per bucket, plus an overflow bucket for timers due
+ * in more than six days. {@link #advance Advancing} the time only visits the buckets whose
+ * time has passed; their timers are either expired, or cascaded to a finer wheel.
+ * <p>Not thread-safe: callers guard the wheel with a lock.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class TimerWheel<T extends TimerWheel.Timer> {
+
+	static final int[] BUCKETS = {64, 64, 32, 4, 1};
+
+	static final long[] SPANS = {
+			ceilingPowerOfTwo(TimeUnit.SECONDS.toNanos(1)), // 1.07s
+			ceilingPowerOfTwo(TimeUnit.MINUTES.toNanos(1)), // 1.14m
+			ceilingPowerOfTwo(TimeUnit.HOURS.toNanos(1)), // 1.22h
+			ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)), // 1.63d
+			BUCKETS[3] * ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)), // 6.5d
+			BUCKETS[3] * ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)) // 6.5d
+	};
+
+	static final int[] SHIFTS = {
+			Long.numberOfTrailingZeros(SPANS[0]),
+			Long.numberOfTrailingZeros(SPANS[1]),
+			Long.numberOfTrailingZeros(SPANS[2]),
+			Long.numberOfTrailingZeros(SPANS[3]),
+			Long.numberOfTrailingZeros(SPANS[4])
+	};
+
+	private final Timer[][] wheels;
+
+	private long nanos;
+
+	private int size;
+
+	/**
+	 * Create a new TimerWheel.
+	 * @param nanos the current time, as read from the ticker the timers are scheduled with
+	 */
+	public TimerWheel(long nanos) {
+		this.nanos = nanos;
+		this.wheels = new Timer[BUCKETS.length][];
+		for (int i = 0; i < BUCKETS.length; i++) {
+			this.wheels[i] = new Timer[BUCKETS[i]];
+			for (int j = 0; j < BUCKETS[i]; j++) {
+				this.wheels[i][j] = new Timer(0);
+			}
+		}
+	}
+
+	/**
+	 * Return the number of scheduled timers.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Schedule the given timer, unless already scheduled.
+	 */
+	public void schedule(T timer) {
+		if (timer.isScheduled()) {
+			return;
+		}
+		link(findBucket(timer.getExpirationTime()), timer);
+		this.size++;
+	}
+
+	/**
+	 * Cancel the given timer, if scheduled.
+	 */
+	public void deschedule(T timer) {
+		if (!timer.isScheduled()) {
+			return;
+		}
+		unlink(timer);
+		this.size--;
+	}
+
+	/**
+	 * Advance the wheel to the given time.
+	 * @param currentNanos the current time
+	 * @return the timers expired by then, no longer scheduled
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> advance(long currentNanos) {
+		long previousNanos = this.nanos;
+		this.nanos = currentNanos;
+		List<T> expired = null;
+		for (int i = 0; i < SHIFTS.length; i++) {
+			long previousTicks = previousNanos >>> SHIFTS[i];
+			long currentTicks = currentNanos >>> SHIFTS[i];
+			if (currentTicks - previousTicks <= 0L) {
+				break;
+			}
+			expired = expire(i, previousTicks, currentTicks - previousTicks, expired);
+		}
+		return (expired != null ? expired : Collections.<T>emptyList());
+	}
+
+	/**
+	 * Empty the buckets of the given wheel whose time has passed, collecting the expired
+	 * timers and rescheduling the others.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<T> expire(int index, long previousTicks, long delta, List<T> expired) {
+		Timer[] wheel = this.wheels[index];
+		int mask = wheel.length - 1;
+		int steps = (int) Math.min(1 + delta, wheel.length);
+		int start = (int) (previousTicks & mask);
+		for (int i = start; i < start + steps; i++) {
+			Timer sentinel = wheel[i & mask];
+			Timer timer = sentinel.next;
+			sentinel.previous = sentinel;
+			sentinel.next = sentinel;
+			while (timer != sentinel) {
+				Timer next = timer.next;
+				timer.previous = null;
+				timer.next = null;
+				if (timer.expirationTime - this.nanos <= 0L) {
+					if (expired == null) {
+						expired = new ArrayList<T>();
+					}
+					expired.add((T) timer);
+					this.size--;
+				}
+				else {
+					link(findBucket(timer.expirationTime), timer);
+				}
+				timer = next;
+			}
+		}
+		return expired;
+	}
+
+	/**
+	 * Return the sentinel of the bucket of the given expiration time; timers already due go
+	 * to the bucket of the current time, visited by the next advance.
+	 */
+	private Timer findBucket(long expirationTime) {
+		long duration = expirationTime - this.nanos;
+		long time = (duration > 0L ? expirationTime : this.nanos);
+		int length = this.wheels.length - 1;
+		for (int i = 0; i < length; i++) {
+			if (duration < SPANS[i + 1]) {
+				long ticks = time >>> SHIFTS[i];
+				int index = (int) (ticks & (this.wheels[i].length - 1));
+				return this.wheels[i][index];
+			}
+		}
+		return this.wheels[length][0];
+	}
+
+	private static void link(Timer sentinel, Timer timer) {
+		timer.previous = sentinel.previous;
+		timer.next = sentinel;
+		sentinel.previous.next = timer;
+		sentinel.previous = timer;
+	}
+
+	private static void unlink(Timer timer) {
+		timer.previous.next = timer.next;
+		timer.next.previous = timer.previous;
+		timer.previous = null;
+		timer.next = null;
+	}
+
+	private static long ceilingPowerOfTwo(long x) {
+		return 1L << (Long.SIZE - Long.numberOfLeadingZeros(x - 1));
+	}
+
+	/**
+	 * Timer scheduled in a {@link TimerWheel}, at most in one wheel at a time.
+	 */
+	public static class Timer {
+
+		private final long expirationTime;
+
+		private Timer previous;
+
+		private Timer next;
+
+		/**
+		 * Create a new Timer.
+		 * @param expirationTime the time the timer expires at, as read from the ticker of the wheel
+		 */
+		public Timer(long expirationTime) {
+			this.expirationTime = expirationTime;
+			this.previous = this;
+			this.next = this;
+		}
+
+		public long getExpirationTime() {
+			return this.expirationTime;
+		}
+
+		/**
+		 * Return whether this timer is expired at the given time.
+		 */
+		public boolean isExpired(long nanos) {
+			return (nanos - this.expirationTime >= 0L);
+		}
+
+		boolean isScheduled() {
+			return (this.next != null && this.next != this);
+		}
+
+	}
+
+}
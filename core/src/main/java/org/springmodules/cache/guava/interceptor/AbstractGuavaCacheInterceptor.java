@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.interceptor;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.DefaultKeyGenerator;
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Base class for the interceptors processing the Guava cache annotations, providing cache
+ * resolution, key generation and expression evaluation.
+ * <p>When no {@link #setCacheManager cache manager} is set, the {@link CacheManager} bean of
+ * the containing bean factory is looked up on first use, so that interceptors can be created
+ * while the cache manager itself is being created.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public abstract class AbstractGuavaCacheInterceptor implements MethodInterceptor, BeanFactoryAware, InitializingBean {
+
+	/**
+	 * Marker for {@link #createEvaluationContext} calls made before the invocation.
+	 */
+	protected static final Object NO_RESULT = CacheOperationExpressionEvaluator.NO_RESULT;
+
+	private final CacheOperationExpressionEvaluator evaluator = new CacheOperationExpressionEvaluator();
+
+	private volatile CacheManager cacheManager;
+
+	private BeanFactory beanFactory;
+
+	private KeyGenerator keyGenerator = new DefaultKeyGenerator();
+
+	public void setCacheManager(CacheManager cacheManager) {
+		this.cacheManager = cacheManager;
+	}
+
+	public CacheManager getCacheManager() {
+		if (this.cacheManager == null && this.beanFactory != null) {
+			this.cacheManager = this.beanFactory.getBean(CacheManager.class);
+		}
+		return this.cacheManager;
+	}
+
+	public void setKeyGenerator(KeyGenerator keyGenerator) {
+		this.keyGenerator = keyGenerator;
+	}
+
+	public KeyGenerator getKeyGenerator() {
+		return this.keyGenerator;
+	}
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) {
+		this.beanFactory = beanFactory;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		Assert.isTrue(this.cacheManager != null || this.beanFactory != null, "'cacheManager' is required");
+		Assert.notNull(this.keyGenerator, "'keyGenerator' is required");
+	}
+
+	/**
+	 * Return the user class of the target of the given invocation.
+	 */
+	protected Class<?> getTargetClass(MethodInvocation invocation) {
+		Object target = invocation.getThis();
+		return (target != null ? AopProxyUtils.ultimateTargetClass(target) : invocation.getMethod().getDeclaringClass());
+	}
+
+	/**
+	 * Resolve the caches with the given names.
+	 * @throws IllegalArgumentException if one of the caches does not exist
+	 */
+	protected Collection<Cache> getCaches(Collection<String> cacheNames) {
+		Collection<Cache> caches = new ArrayList<Cache>(cacheNames.size());
+		for (String cacheName : cacheNames) {
+			Cache cache = getCacheManager().getCache(cacheName);
+			if (cache == null) {
+				throw new IllegalArgumentException("Cannot find cache named [" + cacheName + "]");
+			}
+			caches.add(cache);
+		}
+		return caches;
+	}
+
+	/**
+	 * Create the evaluation context of the given invocation.
+	 * @param result the invocation result, or {@link #NO_RESULT} if not available yet
+	 */
+	protected EvaluationContext createEvaluationContext(Collection<Cache> caches, MethodInvocation invocation,
+														Object result) {
+		return this.evaluator.createEvaluationContext(caches, invocation.getMethod(), invocation.getArguments(),
+				invocation.getThis(), getTargetClass(invocation), result);
+	}
+
+	/**
+	 * Evaluate a condition expression; an empty expression always passes.
+	 */
+	protected boolean isConditionPassing(String condition, EvaluationContext context) {
+		return (!StringUtils.hasText(condition) || this.evaluator.isTrue(condition, context));
+	}
+
+	/**
+	 * Evaluate an {@code unless} expression; an empty expression never vetoes.
+	 */
+	protected boolean isVetoed(String unless, EvaluationContext context) {
+		return (StringUtils.hasText(unless) && this.evaluator.isTrue(unless, context));
+	}
+
+	/**
+	 * Evaluate the given expression.
+	 */
+	protected Object evaluate(String expression, EvaluationContext context) {
+		return this.evaluator.value(expression, context);
+	}
+
+	/**
+	 * Compute the cache key of the given invocation, using the key expression if any,
+	 * the {@link KeyGenerator} otherwise.
+	 */
+	protected Object generateKey(String keyExpression, EvaluationContext context, MethodInvocation invocation) {
+		if (StringUtils.hasText(keyExpression)) {
+			return this.evaluator.value(keyExpression, context);
+		}
+		return this.keyGenerator.generate(invocation.getThis(), invocation.getMethod(), invocation.getArguments());
+	}
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.interceptor;
+
+import org.springframework.aop.support.AopUtils;
+import org.springframework.cache.Cache;
+import org.springframework.core.LocalVariableTableParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Evaluates the SpEL expressions of cache operations, mirroring the variables available to
+ * {@link org.springframework.cache.interceptor.CacheInterceptor}: the root object, the
+ * method arguments as {@code #p0}/{@code #a0} or by name, and {@code #result}.
+ * <p>Parsed expressions and parameter names are cached.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+class CacheOperationExpressionEvaluator {
+
+	static final Object NO_RESULT = new Object();
+
+	private static final String[] NO_PARAMETER_NAMES = new String[0];
+
+	private final SpelExpressionParser parser = new SpelExpressionParser();
+
+	private final ParameterNameDiscoverer parameterNameDiscoverer = new LocalVariableTableParameterNameDiscoverer();
+
+	private final ConcurrentMap<String, Expression> expressionCache = new ConcurrentHashMap<String, Expression>(64);
+
+	private final ConcurrentMap<Method, String[]> parameterNamesCache = new ConcurrentHashMap<Method, String[]>(64);
+
+	EvaluationContext createEvaluationContext(Collection<Cache> caches, Method method, Object[] args,
+											  Object target, Class<?> targetClass, Object result) {
+		StandardEvaluationContext context = new StandardEvaluationContext(
+				new CacheOperationRootObject(caches, method, args, target, targetClass));
+		String[] parameterNames = getParameterNames(AopUtils.getMostSpecificMethod(method, targetClass));
+		for (int i = 0; i < args.length; i++) {
+			context.setVariable("a" + i, args[i]);
+			context.setVariable("p" + i, args[i]);
+			if (i < parameterNames.length) {
+				context.setVariable(parameterNames[i], args[i]);
+			}
+		}
+		if (result != NO_RESULT) {
+			context.setVariable("result", result);
+		}
+		return context;
+	}
+
+	Object value(String expression, EvaluationContext context) {
+		return getExpression(expression).getValue(context);
+	}
+
+	boolean isTrue(String expression, EvaluationContext context) {
+		return Boolean.TRUE.equals(getExpression(expression).getValue(context, Boolean.class));
+	}
+
+	private Expression getExpression(String expression) {
+		Expression parsed = this.expressionCache.get(expression);
+		if (parsed == null) {
+			parsed = this.parser.parseExpression(expression);
+			this.expressionCache.putIfAbsent(expression, parsed);
+		}
+		return parsed;
+	}
+
+	private String[] getParameterNames(Method method) {
+		String[] parameterNames = this.parameterNamesCache.get(method);
+		if (parameterNames == null) {
+			parameterNames = this.parameterNameDiscoverer.getParameterNames(method);
+			if (parameterNames == null) {
+				parameterNames = NO_PARAMETER_NAMES;
+			}
+			this.parameterNamesCache.putIfAbsent(method, parameterNames);
+		}
+		return parameterNames;
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.interceptor;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.cache.Cache;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springmodules.cache.guava.CacheDecorator;
+import org.springmodules.cache.guava.CollectionPatch;
+import org.springmodules.cache.guava.GuavaCache;
+import org.springmodules.cache.guava.GuavaCaches;
+import org.springmodules.cache.guava.NearCache;
+import org.springmodules.cache.guava.TransactionAwareGuavaCache;
+import org.springmodules.cache.guava.annotation.CachePatch;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Interceptor for {@link CachePatch @CachePatch} methods: once the method returns, the
+ * change it made is applied to the cached collections with a {@link CollectionPatch}.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class CachePatchInterceptor extends AbstractGuavaCacheInterceptor {
+
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		Method method = AopUtils.getMostSpecificMethod(invocation.getMethod(), getTargetClass(invocation));
+		CachePatch annotation = AnnotationUtils.findAnnotation(method, CachePatch.class);
+		Object result = invocation.proceed();
+		if (annotation == null) {
+			return result;
+		}
+
+		Collection<Cache> caches = getCaches(Arrays.asList(annotation.value()));
+		EvaluationContext context = createEvaluationContext(caches, invocation, result);
+		if (!isConditionPassing(annotation.condition(), context)) {
+			return result;
+		}
+		Object key = generateKey(annotation.key(), context, invocation);
+		CollectionPatch patch = createPatch(annotation, context);
+		for (Cache cache : caches) {
+			patch(cache, key, patch);
+		}
+		return result;
+	}
+
+	private CollectionPatch createPatch(CachePatch annotation, final EvaluationContext context) {
+		Object element = null;
+		if (StringUtils.hasText(annotation.element())) {
+			element = evaluate(annotation.element(), context);
+		}
+		else {
+			Assert.isTrue(annotation.operation() == CollectionPatch.Operation.REMOVE && StringUtils.hasText(annotation.match()),
+					"@CachePatch requires an element, unless removing elements by match");
+		}
+		Predicate<Object> matcher;
+		if (StringUtils.hasText(annotation.match())) {
+			final String match = annotation.match();
+			matcher = new Predicate<Object>() {
+				@Override
+				public boolean apply(Object input) {
+					context.setVariable("element", input);
+					return isConditionPassing(match, context);
+				}
+			};
+		}
+		else {
+			matcher = Predicates.equalTo(element);
+		}
+		return new CollectionPatch(annotation.operation(), element, matcher);
+	}
+
+	/**
+	 * Patch the collection cached for the given key, after the commit of the current
+	 * transaction if the cache is transaction aware, or evict it if it cannot be patched.
+	 */
+	private void patch(Cache cache, final Object key, final CollectionPatch patch) {
+		final GuavaCache guavaCache = GuavaCaches.unwrap(cache);
+		if (guavaCache == null || isDecoratedBy(cache, NearCache.class)) {
+			cache.evict(key);
+		}
+		else if (isDecoratedBy(cache, TransactionAwareGuavaCache.class)
+				&& TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					guavaCache.merge(key, patch);
+				}
+			});
+		}
+		else {
+			guavaCache.merge(key, patch);
+		}
+	}
+
+	private static boolean isDecoratedBy(Cache cache, Class<? extends CacheDecorator> decoratorType) {
+		Cache current = cache;
+		while (current instanceof CacheDecorator) {
+			if (decoratorType.isInstance(current)) {
+				return true;
+			}
+			current = ((CacheDecorator) current).getTargetCache();
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.interceptor;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.cache.Cache;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springmodules.cache.guava.BulkGetResult;
+import org.springmodules.cache.guava.GuavaCache;
+import org.springmodules.cache.guava.NearCache;
+import org.springmodules.cache.guava.annotation.CacheableAll;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Interceptor for {@link CacheableAll @CacheableAll} methods: cached elements are served
+ * from the cache, and the method is invoked once with the missing elements only.
+ * <p>A {@link GuavaCache} is accessed with its bulk operations, and values are stored in a
+ * {@link NearCache} with a single bulk operation. Other caches, including the ones decorated
+ * with an {@link org.springmodules.cache.guava.InstrumentedCache InstrumentedCache} or a
+ * {@link org.springmodules.cache.guava.TransactionAwareGuavaCache TransactionAwareGuavaCache},
+ * are accessed one key at a time through their decorators: the values loaded within a
+ * transaction are then stored after its commit.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class CacheableAllInterceptor extends AbstractGuavaCacheInterceptor {
+
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		Method method = AopUtils.getMostSpecificMethod(invocation.getMethod(), getTargetClass(invocation));
+		CacheableAll annotation = AnnotationUtils.findAnnotation(method, CacheableAll.class);
+		int argumentIndex = findCollectionArgument(invocation);
+		if (annotation == null || argumentIndex < 0) {
+			return invocation.proceed();
+		}
+
+		Collection<Cache> caches = getCaches(Arrays.asList(annotation.value()));
+		Cache cache = caches.iterator().next();
+		EvaluationContext context = createEvaluationContext(caches, invocation, NO_RESULT);
+		if (!isConditionPassing(annotation.condition(), context)) {
+			return invocation.proceed();
+		}
+
+		// cache keys of the requested elements
+		Collection<?> elements = (Collection<?>) invocation.getArguments()[argumentIndex];
+		Map<Object, Object> keys = new LinkedHashMap<Object, Object>(elements.size() * 2);
+		for (Object element : elements) {
+			keys.put(element, elementKey(annotation.key(), element, context));
+		}
+
+		Map<Object, Object> values = lookup(cache, keys);
+		if (values.size() < keys.size()) {
+			Map<Object, Object> loaded = load(invocation, argumentIndex, missingElements(keys, values), annotation, context);
+			store(cache, keys, loaded);
+			values.putAll(loaded);
+		}
+		return toResult(invocation.getMethod().getReturnType(), keys.keySet(), values);
+	}
+
+	private int findCollectionArgument(MethodInvocation invocation) {
+		Object[] arguments = invocation.getArguments();
+		for (int i = 0; i < arguments.length; i++) {
+			if (arguments[i] instanceof Collection) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private Object elementKey(String keyExpression, Object element, EvaluationContext context) {
+		if (!StringUtils.hasText(keyExpression)) {
+			return element;
+		}
+		context.setVariable("element", element);
+		return evaluate(keyExpression, context);
+	}
+
+	/**
+	 * Return the cached values by element.
+	 */
+	private Map<Object, Object> lookup(Cache cache, Map<Object, Object> keys) {
+		Map<Object, Object> values = new LinkedHashMap<Object, Object>(keys.size() * 2);
+		if (cache instanceof GuavaCache) {
+			BulkGetResult result = ((GuavaCache) cache).getAll(keys.values());
+			for (Map.Entry<Object, Object> entry : keys.entrySet()) {
+				if (result.getHits().containsKey(entry.getValue())) {
+					values.put(entry.getKey(), result.getHits().get(entry.getValue()));
+				}
+			}
+		}
+		else {
+			for (Map.Entry<Object, Object> entry : keys.entrySet()) {
+				Cache.ValueWrapper wrapper = cache.get(entry.getValue());
+				if (wrapper != null) {
+					values.put(entry.getKey(), wrapper.get());
+				}
+			}
+		}
+		return values;
+	}
+
+	private Collection<Object> missingElements(Map<Object, Object> keys, Map<Object, Object> values) {
+		Collection<Object> missing = new ArrayList<Object>(keys.size() - values.size());
+		for (Object element : keys.keySet()) {
+			if (!values.containsKey(element)) {
+				missing.add(element);
+			}
+		}
+		return missing;
+	}
+
+	/**
+	 * Invoke the method with the given elements, returning the loaded values by element.
+	 */
+	private Map<Object, Object> load(MethodInvocation invocation, int argumentIndex, Collection<Object> missing,
+									 CacheableAll annotation, EvaluationContext context) throws Throwable {
+		Object[] arguments = invocation.getArguments();
+		Object original = arguments[argumentIndex];
+		arguments[argumentIndex] = (original instanceof Set ? new LinkedHashSet<Object>(missing) : missing);
+		Object result;
+		try {
+			result = invocation.proceed();
+		}
+		finally {
+			arguments[argumentIndex] = original;
+		}
+
+		Map<Object, Object> loaded = new LinkedHashMap<Object, Object>(missing.size() * 2);
+		if (result instanceof Map) {
+			loaded.putAll((Map<?, ?>) result);
+		}
+		else if (result instanceof Collection) {
+			Assert.hasText(annotation.resultKey(), "@CacheableAll methods returning a collection require a resultKey");
+			for (Object value : (Collection<?>) result) {
+				context.setVariable("result", value);
+				loaded.put(evaluate(annotation.resultKey(), context), value);
+			}
+		}
+		else if (result != null) {
+			throw new IllegalStateException("@CacheableAll method [" + invocation.getMethod()
+					+ "] must return a Map or a Collection");
+		}
+		// ignore values of elements that were not requested
+		loaded.keySet().retainAll(missing);
+		return loaded;
+	}
+
+	private void store(Cache cache, Map<Object, Object> keys, Map<Object, Object> loaded) {
+		Map<Object, Object> entries = new LinkedHashMap<Object, Object>(loaded.size() * 2);
+		for (Map.Entry<Object, Object> entry : loaded.entrySet()) {
+			entries.put(keys.get(entry.getKey()), entry.getValue());
+		}
+		if (cache instanceof GuavaCache) {
+			((GuavaCache) cache).putAll(entries);
+		}
+		else if (cache instanceof NearCache) {
+			((NearCache) cache).putAll(entries);
+		}
+		else {
+			for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+				cache.put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	private Object toResult(Class<?> returnType, Collection<Object> elements, Map<Object, Object> values) {
+		if (Map.class.isAssignableFrom(returnType)) {
+			Map<Object, Object> result = new LinkedHashMap<Object, Object>(values.size() * 2);
+			for (Object element : elements) {
+				if (values.containsKey(element)) {
+					result.put(element, values.get(element));
+				}
+			}
+			return result;
+		}
+		Collection<Object> result = (Set.class.isAssignableFrom(returnType) ?
+				new LinkedHashSet<Object>() : new ArrayList<Object>(values.size()));
+		for (Object element : elements) {
+			Object value = values.get(element);
+			if (value != null) {
+				result.add(value);
+			}
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.interceptor;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Immutable composite cache key, comparing parameters by equality and caching its hash code,
+ * as generated by {@link CompactKeyGenerator}. Specialized for two parameters; any other
+ * number of parameters is held in a copied array, compared deeply. Hash codes are computed
+ * again on deserialization, as those of the parameters may differ between virtual machines.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public abstract class CompactKey implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Key of the calls of methods without parameters.
+	 */
+	public static final CompactKey EMPTY = new ArrayKey(new Object[0]);
+
+	/**
+	 * Key of the calls of methods with a single {@code null} parameter.
+	 */
+	public static final CompactKey NULL = new ArrayKey(new Object[] {null});
+
+	private final int hashCode;
+
+	CompactKey(int hashCode) {
+		this.hashCode = hashCode;
+	}
+
+	/**
+	 * Return the key of the given parameters.
+	 */
+	public static CompactKey of(Object first, Object second) {
+		if (isArray(first) || isArray(second)) {
+			return new ArrayKey(new Object[] {first, second});
+		}
+		return new PairKey(first, second);
+	}
+
+	/**
+	 * Return the key of the given parameters.
+	 */
+	public static CompactKey of(Object... params) {
+		if (params.length == 0) {
+			return EMPTY;
+		}
+		if (params.length == 2) {
+			return of(params[0], params[1]);
+		}
+		return new ArrayKey(params.clone());
+	}
+
+	@Override
+	public final int hashCode() {
+		return this.hashCode;
+	}
+
+	static boolean isArray(Object param) {
+		return (param != null && param.getClass().isArray());
+	}
+
+	static int hash(Object param) {
+		return (param != null ? param.hashCode() : 0);
+	}
+
+	static boolean equal(Object param, Object otherParam) {
+		return (param == otherParam || (param != null && param.equals(otherParam)));
+	}
+
+	/**
+	 * Key of two non-array parameters.
+	 */
+	private static final class PairKey extends CompactKey {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Object first;
+
+		private final Object second;
+
+		PairKey(Object first, Object second) {
+			super(31 * hash(first) + hash(second));
+			this.first = first;
+			this.second = second;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof PairKey)) {
+				return false;
+			}
+			PairKey otherKey = (PairKey) other;
+			return hashCode() == otherKey.hashCode() && equal(this.first, otherKey.first)
+					&& equal(this.second, otherKey.second);
+		}
+
+		@Override
+		public String toString() {
+			return "[" + this.first + ", " + this.second + "]";
+		}
+
+		private Object readResolve() {
+			return new PairKey(this.first, this.second);
+		}
+
+	}
+
+	/**
+	 * Key of any number of parameters, possibly arrays.
+	 */
+	private static final class ArrayKey extends CompactKey {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Object[] params;
+
+		ArrayKey(Object[] params) {
+			super(hashParams(params));
+			this.params = params;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof ArrayKey)) {
+				return false;
+			}
+			ArrayKey otherKey = (ArrayKey) other;
+			if (hashCode() != otherKey.hashCode() || this.params.length != otherKey.params.length) {
+				return false;
+			}
+			for (int i = 0; i < this.params.length; i++) {
+				if (!paramEqual(this.params[i], otherKey.params[i])) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return Arrays.deepToString(this.params);
+		}
+
+		private Object readResolve() {
+			return (this.params.length == 0 ? EMPTY : new ArrayKey(this.params));
+		}
+
+		private static int hashParams(Object[] params) {
+			int hash = 1;
+			for (Object param : params) {
+				hash = 31 * hash + (isArray(param) ? Arrays.deepHashCode(new Object[] {param}) : hash(param));
+			}
+			return hash;
+		}
+
+		private static boolean paramEqual(Object param, Object otherParam) {
+			if (isArray(param) && isArray(otherParam)) {
+				return Arrays.deepEquals(new Object[] {param}, new Object[] {otherParam});
+			}
+			return equal(param, otherParam);
+		}
+
+	}
+
+}
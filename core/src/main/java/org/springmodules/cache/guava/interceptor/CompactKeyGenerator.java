@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.interceptor;
+
+import org.springframework.cache.interceptor.KeyGenerator;
+
+import java.lang.reflect.Method;
+
+/**
+ * {@link KeyGenerator} generating {@link CompactKey} instances.
+ * <p>Like {@link org.springframework.cache.interceptor.DefaultKeyGenerator}, a single
+ * non-array parameter is its own key, so that cache entries are shared with callers looking
+ * keys up directly. Unlike it, keys of several parameters hold the parameters rather than
+ * a combination of their hash codes: distinct parameters never share an entry, and the hash
+ * code of the key is computed once, when generated.
+ * <p>Parameters of intercepted calls are boxed before reaching the generator; primitive
+ * parameters are held as is, without further conversion.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class CompactKeyGenerator implements KeyGenerator {
+
+	@Override
+	public Object generate(Object target, Method method, Object... params) {
+		switch (params.length) {
+			case 0:
+				return CompactKey.EMPTY;
+			case 1:
+				Object param = params[0];
+				if (param == null) {
+					return CompactKey.NULL;
+				}
+				return (param.getClass().isArray() ? CompactKey.of(params) : param);
+			case 2:
+				return CompactKey.of(params[0], params[1]);
+			default:
+				return CompactKey.of(params);
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.interceptor;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.util.Assert;
+import org.springmodules.cache.guava.CacheDecorator;
+import org.springmodules.cache.guava.NearCache;
+
+/**
+ * Interceptor scoping the local entries of {@link NearCache near caches} to an invocation,
+ * typically applied to the entry points of a request such as controllers, message listeners
+ * or service facades: when the outermost intercepted invocation of a thread returns, the
+ * thread releases its local entries in every near cache of the cache manager.
+ * <p>When no {@link #setCacheManager cache manager} is set, the {@link CacheManager} bean of
+ * the containing bean factory is looked up on first use.
+ * @author Omar Irbouh
+ * @since 1.0
+ * @see NearCache#clearLocal()
+ */
+public class NearCacheScopeInterceptor implements MethodInterceptor, BeanFactoryAware, InitializingBean {
+
+	private final ThreadLocal<Boolean> inScope = new ThreadLocal<Boolean>();
+
+	private volatile CacheManager cacheManager;
+
+	private BeanFactory beanFactory;
+
+	public void setCacheManager(CacheManager cacheManager) {
+		this.cacheManager = cacheManager;
+	}
+
+	public CacheManager getCacheManager() {
+		if (this.cacheManager == null && this.beanFactory != null) {
+			this.cacheManager = this.beanFactory.getBean(CacheManager.class);
+		}
+		return this.cacheManager;
+	}
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) {
+		this.beanFactory = beanFactory;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		Assert.isTrue(this.cacheManager != null || this.beanFactory != null, "'cacheManager' is required");
+	}
+
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		if (this.inScope.get() != null) {
+			return invocation.proceed();
+		}
+		this.inScope.set(Boolean.TRUE);
+		try {
+			return invocation.proceed();
+		}
+		finally {
+			this.inScope.remove();
+			clearLocal();
+		}
+	}
+
+	/**
+	 * Release the local entries of the current thread in every near cache.
+	 */
+	private void clearLocal() {
+		CacheManager cacheManager = getCacheManager();
+		for (String cacheName : cacheManager.getCacheNames()) {
+			Cache cache = cacheManager.getCache(cacheName);
+			while (cache instanceof CacheDecorator) {
+				if (cache instanceof NearCache) {
+					((NearCache) cache).clearLocal();
+				}
+				cache = ((CacheDecorator) cache).getTargetCache();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.interceptor;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.cache.Cache;
+import org.springframework.cache.annotation.AnnotationCacheOperationSource;
+import org.springframework.cache.interceptor.CacheOperation;
+import org.springframework.cache.interceptor.CacheOperationSource;
+import org.springframework.cache.interceptor.CacheableOperation;
+import org.springframework.expression.EvaluationContext;
+import org.springmodules.cache.guava.GuavaCache;
+import org.springmodules.cache.guava.GuavaCaches;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+
+/**
+ * Interceptor for {@link org.springmodules.cache.guava.annotation.SynchronizedLoad @SynchronizedLoad}
+ * methods: the {@link CacheableOperation} of the method is served through
+ * {@link GuavaCache#get(Object, Callable)}, so that concurrent misses on the same key share a
+ * single invocation.
+ * <p>Works alongside the standard {@link org.springframework.cache.interceptor.CacheInterceptor},
+ * in any order: when the cache interceptor is nested in this one,
+ * {@link org.springmodules.cache.guava.RefreshingGuavaCache refreshing caches} hide the key from
+ * it while the value loads, so that it neither serves the stale value nor drops the value loader.
+ * Methods whose first cache is not backed by a {@link GuavaCache} are invoked
+ * directly. Values loaded through this interceptor are stored immediately, even when the cache
+ * is transaction aware.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class SynchronizedLoadInterceptor extends AbstractGuavaCacheInterceptor {
+
+	private CacheOperationSource cacheOperationSource = new AnnotationCacheOperationSource();
+
+	public void setCacheOperationSource(CacheOperationSource cacheOperationSource) {
+		this.cacheOperationSource = cacheOperationSource;
+	}
+
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		CacheableOperation operation = findCacheableOperation(invocation);
+		if (operation == null) {
+			return invocation.proceed();
+		}
+
+		Collection<Cache> caches = getCaches(operation.getCacheNames());
+		GuavaCache cache = GuavaCaches.unwrap(caches.iterator().next());
+		if (cache == null) {
+			return invocation.proceed();
+		}
+
+		EvaluationContext context = createEvaluationContext(caches, invocation, NO_RESULT);
+		if (!isConditionPassing(operation.getCondition(), context)) {
+			return invocation.proceed();
+		}
+
+		Object key = generateKey(operation.getKey(), context, invocation);
+		Object result;
+		try {
+			result = cache.get(key, new InvocationValueLoader(invocation));
+		}
+		catch (GuavaCache.ValueRetrievalException ex) {
+			Throwable cause = ex.getCause();
+			throw (cause instanceof ThrowableWrapper ? cause.getCause() : cause);
+		}
+
+		if (isVetoed(operation.getUnless(), createEvaluationContext(caches, invocation, result))) {
+			cache.evict(key);
+		}
+		return result;
+	}
+
+	private CacheableOperation findCacheableOperation(MethodInvocation invocation) {
+		Collection<CacheOperation> operations =
+				this.cacheOperationSource.getCacheOperations(invocation.getMethod(), getTargetClass(invocation));
+		if (operations != null) {
+			for (CacheOperation operation : operations) {
+				if (operation instanceof CacheableOperation) {
+					return (CacheableOperation) operation;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Value loader proceeding with the intercepted invocation. Subsequent calls, made by
+	 * {@link org.springmodules.cache.guava.RefreshingGuavaCache refreshing caches}, proceed
+	 * with a fresh copy of the invocation.
+	 */
+	private static final class InvocationValueLoader implements Callable<Object> {
+
+		private final MethodInvocation invocation;
+
+		private volatile ProxyMethodInvocation template;
+
+		InvocationValueLoader(MethodInvocation invocation) {
+			this.invocation = invocation;
+		}
+
+		@Override
+		public Object call() throws Exception {
+			try {
+				if (this.template != null) {
+					return this.template.invocableClone().proceed();
+				}
+				if (this.invocation instanceof ProxyMethodInvocation) {
+					this.template = (ProxyMethodInvocation) ((ProxyMethodInvocation) this.invocation).invocableClone();
+				}
+				return this.invocation.proceed();
+			}
+			catch (Exception ex) {
+				throw ex;
+			}
+			catch (Error err) {
+				throw err;
+			}
+			catch (Throwable ex) {
+				throw new ThrowableWrapper(ex);
+			}
+		}
+
+	}
+
+	@SuppressWarnings("serial")
+	private static class ThrowableWrapper extends Exception {
+
+		ThrowableWrapper(Throwable original) {
+			super(original);
+		}
+
+	}
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.jmx;
+
+import org.springmodules.cache.guava.InstrumentedCache;
+import org.springmodules.cache.guava.metrics.LatencyHistogram;
+import org.springmodules.cache.guava.metrics.LatencySnapshot;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Standard MBean exposing the latencies recorded by an {@link InstrumentedCache}.
+ * <p>Each attribute read takes a new snapshot of the underlying histogram; read the
+ * {@link #getSnapshot() Snapshot} attribute to get all the latencies of an operation from a
+ * single snapshot.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class CacheLatency implements CacheLatencyMBean {
+
+	private static final String[] LATENCY_ITEMS = {"count", "mean", "p50", "p99", "p999", "max"};
+
+	private static final String[] OPERATION_ITEMS = {"get", "put", "evict"};
+
+	private static final CompositeType LATENCY_TYPE;
+
+	private static final CompositeType SNAPSHOT_TYPE;
+
+	static {
+		try {
+			LATENCY_TYPE = new CompositeType("Latency", "Latencies of a cache operation, in nanoseconds",
+					LATENCY_ITEMS, LATENCY_ITEMS, new OpenType<?>[] {SimpleType.LONG, SimpleType.DOUBLE,
+							SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG});
+			SNAPSHOT_TYPE = new CompositeType("LatencySnapshot", "Latencies of the cache operations",
+					OPERATION_ITEMS, OPERATION_ITEMS, new OpenType<?>[] {LATENCY_TYPE, LATENCY_TYPE, LATENCY_TYPE});
+		}
+		catch (OpenDataException ex) {
+			throw new IllegalStateException("Invalid latency snapshot type", ex);
+		}
+	}
+
+	private final InstrumentedCache cache;
+
+	public CacheLatency(InstrumentedCache cache) {
+		this.cache = checkNotNull(cache, "cache is required");
+	}
+
+	@Override
+	public String getName() {
+		return cache.getName();
+	}
+
+	@Override
+	public long getGetCount() {
+		return cache.getGetLatency().snapshot().getCount();
+	}
+
+	@Override
+	public double getGetMean() {
+		return cache.getGetLatency().snapshot().getMean();
+	}
+
+	@Override
+	public long getGetP50() {
+		return cache.getGetLatency().snapshot().getP50();
+	}
+
+	@Override
+	public long getGetP99() {
+		return cache.getGetLatency().snapshot().getP99();
+	}
+
+	@Override
+	public long getGetP999() {
+		return cache.getGetLatency().snapshot().getP999();
+	}
+
+	@Override
+	public long getGetMax() {
+		return cache.getGetLatency().snapshot().getMax();
+	}
+
+	@Override
+	public long getPutCount() {
+		return cache.getPutLatency().snapshot().getCount();
+	}
+
+	@Override
+	public double getPutMean() {
+		return cache.getPutLatency().snapshot().getMean();
+	}
+
+	@Override
+	public long getPutP50() {
+		return cache.getPutLatency().snapshot().getP50();
+	}
+
+	@Override
+	public long getPutP99() {
+		return cache.getPutLatency().snapshot().getP99();
+	}
+
+	@Override
+	public long getPutP999() {
+		return cache.getPutLatency().snapshot().getP999();
+	}
+
+	@Override
+	public long getPutMax() {
+		return cache.getPutLatency().snapshot().getMax();
+	}
+
+	@Override
+	public long getEvictCount() {
+		return cache.getEvictLatency().snapshot().getCount();
+	}
+
+	@Override
+	public double getEvictMean() {
+		return cache.getEvictLatency().snapshot().getMean();
+	}
+
+	@Override
+	public long getEvictP50() {
+		return cache.getEvictLatency().snapshot().getP50();
+	}
+
+	@Override
+	public long getEvictP99() {
+		return cache.getEvictLatency().snapshot().getP99();
+	}
+
+	@Override
+	public long getEvictP999() {
+		return cache.getEvictLatency().snapshot().getP999();
+	}
+
+	@Override
+	public long getEvictMax() {
+		return cache.getEvictLatency().snapshot().getMax();
+	}
+
+	@Override
+	public CompositeData getSnapshot() {
+		try {
+			return new CompositeDataSupport(SNAPSHOT_TYPE, OPERATION_ITEMS, new Object[] {
+					toCompositeData(cache.getGetLatency()), toCompositeData(cache.getPutLatency()),
+					toCompositeData(cache.getEvictLatency())});
+		}
+		catch (OpenDataException ex) {
+			throw new IllegalStateException("Unable to build the latency snapshot of cache [" + getName() + "]", ex);
+		}
+	}
+
+	@Override
+	public void reset() {
+		cache.resetLatencies();
+	}
+
+	private static CompositeData toCompositeData(LatencyHistogram histogram) throws OpenDataException {
+		LatencySnapshot snapshot = histogram.snapshot();
+		return new CompositeDataSupport(LATENCY_TYPE, LATENCY_ITEMS, new Object[] {snapshot.getCount(),
+				snapshot.getMean(), snapshot.getP50(), snapshot.getP99(), snapshot.getP999(), snapshot.getMax()});
+	}
+
+}
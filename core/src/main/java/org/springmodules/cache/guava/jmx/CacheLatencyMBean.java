@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.jmx;
+
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Management interface of an {@link org.springmodules.cache.guava.InstrumentedCache},
+ * exposing the latency percentiles of its operations, in nanoseconds.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public interface CacheLatencyMBean {
+
+	String getName();
+
+	long getGetCount();
+
+	double getGetMean();
+
+	long getGetP50();
+
+	long getGetP99();
+
+	long getGetP999();
+
+	long getGetMax();
+
+	long getPutCount();
+
+	double getPutMean();
+
+	long getPutP50();
+
+	long getPutP99();
+
+	long getPutP999();
+
+	long getPutMax();
+
+	long getEvictCount();
+
+	double getEvictMean();
+
+	long getEvictP50();
+
+	long getEvictP99();
+
+	long getEvictP999();
+
+	long getEvictMax();
+
+	/**
+	 * Return the count, mean, p50, p99, p999 and max latencies of the {@code get},
+	 * {@code put} and {@code evict} operations, each operation being read from a single
+	 * snapshot of its histogram.
+	 */
+	CompositeData getSnapshot();
+
+	/**
+	 * Discard the latencies recorded so far.
+	 */
+	void reset();
+
+}
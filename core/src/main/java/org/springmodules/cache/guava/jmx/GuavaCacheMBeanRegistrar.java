@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.jmx;
+
+import org.springframework.jmx.export.MBeanExportException;
+import org.springframework.jmx.support.MBeanRegistrationSupport;
+import org.springframework.jmx.support.ObjectNameManager;
+import org.springframework.util.Assert;
+import org.springmodules.cache.guava.GuavaCache;
+import org.springmodules.cache.guava.InstrumentedCache;
+
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.Hashtable;
+
+/**
+ * Registers a {@link GuavaCacheStatistics} MBean per {@link GuavaCache} with an
+ * {@link javax.management.MBeanServer}, under
+ * {@code <domain>:type=GuavaCache,name=<cache name>}, and a {@link CacheLatency} MBean per
+ * {@link InstrumentedCache}, under {@code <domain>:type=CacheLatency,name=<cache name>}.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class GuavaCacheMBeanRegistrar extends MBeanRegistrationSupport {
+
+	public static final String DEFAULT_DOMAIN = "org.springmodules.cache.guava";
+
+	private String domain = DEFAULT_DOMAIN;
+
+	public void setDomain(String domain) {
+		Assert.hasText(domain, "domain is required");
+		this.domain = domain;
+	}
+
+	public String getDomain() {
+		return domain;
+	}
+
+	/**
+	 * Register the statistics MBean of the given cache.
+	 * @param cache the cache to expose
+	 * @return the name of the registered MBean
+	 * @throws MBeanExportException if the MBean could not be registered
+	 */
+	public ObjectName registerCache(GuavaCache cache) {
+		return register(new GuavaCacheStatistics(cache), "GuavaCache", cache.getName());
+	}
+
+	/**
+	 * Register the latency MBean of the given cache.
+	 * @param cache the cache to expose
+	 * @return the name of the registered MBean
+	 * @throws MBeanExportException if the MBean could not be registered
+	 */
+	public ObjectName registerLatency(InstrumentedCache cache) {
+		return register(new CacheLatency(cache), "CacheLatency", cache.getName());
+	}
+
+	/**
+	 * Unregister all the MBeans registered by this registrar.
+	 */
+	public void unregisterCaches() {
+		unregisterBeans();
+	}
+
+	/**
+	 * Return the name of the MBean of the cache with the given name.
+	 * @param cacheName the name of the cache
+	 * @return the MBean name
+	 */
+	public ObjectName getObjectName(String cacheName) throws MalformedObjectNameException {
+		return getObjectName("GuavaCache", cacheName);
+	}
+
+	/**
+	 * Return the name of the MBean of the given type for the cache with the given name.
+	 * @param type the MBean type, such as {@code GuavaCache} or {@code CacheLatency}
+	 * @param cacheName the name of the cache
+	 * @return the MBean name
+	 */
+	public ObjectName getObjectName(String type, String cacheName) throws MalformedObjectNameException {
+		Hashtable<String, String> properties = new Hashtable<String, String>();
+		properties.put("type", type);
+		properties.put("name", ObjectName.quote(cacheName));
+		return ObjectNameManager.getInstance(domain, properties);
+	}
+
+	private ObjectName register(Object mbean, String type, String cacheName) {
+		Assert.notNull(getServer(), "server is required");
+		ObjectName objectName = null;
+		try {
+			objectName = getObjectName(type, cacheName);
+			doRegister(mbean, objectName);
+			return objectName;
+		}
+		catch (JMException ex) {
+			throw new MBeanExportException("Unable to register MBean [" + objectName + "] of cache ["
+					+ cacheName + "]", ex);
+		}
+	}
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.jmx;
+
+import com.google.common.cache.CacheStats;
+import org.springmodules.cache.guava.GuavaCache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Standard MBean exposing the statistics of a {@link GuavaCache}.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class GuavaCacheStatistics implements GuavaCacheStatisticsMBean {
+
+	private static final CacheStats EMPTY_STATS = new CacheStats(0, 0, 0, 0, 0, 0);
+
+	private final GuavaCache cache;
+
+	public GuavaCacheStatistics(GuavaCache cache) {
+		this.cache = checkNotNull(cache, "cache is required");
+	}
+
+	@Override
+	public String getName() {
+		return cache.getName();
+	}
+
+	@Override
+	public long getEstimatedSize() {
+		return cache.getNativeCache().size();
+	}
+
+	@Override
+	public long getRequestCount() {
+		return stats().requestCount();
+	}
+
+	@Override
+	public long getHitCount() {
+		return stats().hitCount();
+	}
+
+	@Override
+	public double getHitRate() {
+		return stats().hitRate();
+	}
+
+	@Override
+	public long getMissCount() {
+		return stats().missCount();
+	}
+
+	@Override
+	public double getMissRate() {
+		return stats().missRate();
+	}
+
+	@Override
+	public long getLoadCount() {
+		return stats().loadCount();
+	}
+
+	@Override
+	public long getLoadSuccessCount() {
+		return stats().loadSuccessCount();
+	}
+
+	@Override
+	public long getLoadExceptionCount() {
+		return stats().loadExceptionCount();
+	}
+
+	@Override
+	public long getTotalLoadTime() {
+		return stats().totalLoadTime();
+	}
+
+	@Override
+	public double getAverageLoadPenalty() {
+		return stats().averageLoadPenalty();
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return stats().evictionCount();
+	}
+
+	@Override
+	public long getNullValueEstimatedSize() {
+		com.google.common.cache.Cache<Object, Object> nullValueStore = cache.getNullValueStore();
+		return (nullValueStore != null ? nullValueStore.size() : 0);
+	}
+
+	@Override
+	public long getNullValueHitCount() {
+		return nullValueStats().hitCount();
+	}
+
+	@Override
+	public long getNullValueMissCount() {
+		return nullValueStats().missCount();
+	}
+
+	@Override
+	public long getNullValueEvictionCount() {
+		return nullValueStats().evictionCount();
+	}
+
+	@Override
+	public void cleanUp() {
+		cache.getNativeCache().cleanUp();
+		com.google.common.cache.Cache<Object, Object> nullValueStore = cache.getNullValueStore();
+		if (nullValueStore != null) {
+			nullValueStore.cleanUp();
+		}
+	}
+
+	@Override
+	public void invalidateAll() {
+		cache.clear();
+	}
+
+	private CacheStats stats() {
+		return cache.getStats();
+	}
+
+	private CacheStats nullValueStats() {
+		com.google.common.cache.Cache<Object, Object> nullValueStore = cache.getNullValueStore();
+		return (nullValueStore != null ? nullValueStore.stats() : EMPTY_STATS);
+	}
+
+}
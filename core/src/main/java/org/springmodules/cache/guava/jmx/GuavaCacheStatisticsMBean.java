@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.jmx;
+
+/**
+ * Management interface of a {@link org.springmodules.cache.guava.GuavaCache}, exposing the
+ * {@link com.google.common.cache.CacheStats statistics} of its native cache.
+ * <p>Statistics are only recorded by native caches built with
+ * {@link com.google.common.cache.CacheBuilder#recordStats() recordStats}; otherwise all
+ * counters stay at zero.
+ * <p>The counters cover the value store of the cache only. When the cache holds its
+ * {@code null} values in a separate {@link org.springmodules.cache.guava.GuavaCache#getNullValueStore()
+ * null value store}, a request answered with a cached {@code null} is counted as a
+ * {@link #getNullValueHitCount() null value hit}, and may also be counted as a miss of the value
+ * store; the {@code NullValue} attributes expose the statistics of the null value store, and stay
+ * at zero for caches without one.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public interface GuavaCacheStatisticsMBean {
+
+	String getName();
+
+	long getEstimatedSize();
+
+	long getRequestCount();
+
+	long getHitCount();
+
+	double getHitRate();
+
+	long getMissCount();
+
+	double getMissRate();
+
+	long getLoadCount();
+
+	long getLoadSuccessCount();
+
+	long getLoadExceptionCount();
+
+	long getTotalLoadTime();
+
+	/**
+	 * Return the average time spent loading new values, in nanoseconds.
+	 */
+	double getAverageLoadPenalty();
+
+	long getEvictionCount();
+
+	long getNullValueEstimatedSize();
+
+	long getNullValueHitCount();
+
+	long getNullValueMissCount();
+
+	long getNullValueEvictionCount();
+
+	/**
+	 * Perform any pending maintenance operations needed by the native cache.
+	 */
+	void cleanUp();
+
+	/**
+	 * Discard all entries of the cache.
+	 */
+	void invalidateAll();
+
+}
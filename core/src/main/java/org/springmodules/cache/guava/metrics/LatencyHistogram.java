@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent histogram of latencies, in nanoseconds, with lock-free recording.
+ * <p>Values are counted in log-linear buckets: each power of two is split into
+ * {@value #SUB_BUCKET_COUNT} sub-buckets, bounding the relative error of the reported
+ * percentiles to 12.5%. Recording threads are spread over several stripes, each holding its
+ * own counters, so that concurrent recording does not contend on a single counter; stripes
+ * are only merged when a {@link #snapshot() snapshot} is taken.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class LatencyHistogram {
+
+	static final int SUB_BUCKET_BITS = 3;
+
+	static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+	private static final int MAX_STRIPES = 64;
+
+	private final Stripe[] stripes;
+
+	private final int stripeMask;
+
+	/**
+	 * Create a new LatencyHistogram with one stripe per available processor.
+	 */
+	public LatencyHistogram() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create a new LatencyHistogram.
+	 * @param stripes the number of stripes, rounded up to a power of two
+	 */
+	public LatencyHistogram(int stripes) {
+		int count = 1;
+		while (count < stripes && count < MAX_STRIPES) {
+			count <<= 1;
+		}
+		this.stripes = new Stripe[count];
+		for (int i = 0; i < count; i++) {
+			this.stripes[i] = new Stripe();
+		}
+		this.stripeMask = count - 1;
+	}
+
+	/**
+	 * Record the given latency.
+	 * @param nanos the latency in nanoseconds, negative values being recorded as zero
+	 */
+	public void record(long nanos) {
+		long value = (nanos < 0 ? 0 : nanos);
+		stripes[stripeIndex()].record(value);
+	}
+
+	/**
+	 * Return a snapshot of the latencies recorded so far.
+	 */
+	public LatencySnapshot snapshot() {
+		long[] counts = new long[BUCKET_COUNT];
+		long count = 0;
+		long total = 0;
+		long max = 0;
+		for (Stripe stripe : stripes) {
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				long bucketCount = stripe.counts.get(i);
+				counts[i] += bucketCount;
+				count += bucketCount;
+			}
+			total += stripe.total.get();
+			max = Math.max(max, stripe.max.get());
+		}
+		return new LatencySnapshot(counts, count, total, max);
+	}
+
+	/**
+	 * Discard the latencies recorded so far. Latencies recorded concurrently may be
+	 * partially discarded.
+	 */
+	public void reset() {
+		for (Stripe stripe : stripes) {
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				stripe.counts.set(i, 0);
+			}
+			stripe.total.set(0);
+			stripe.max.set(0);
+		}
+	}
+
+	private int stripeIndex() {
+		long id = Thread.currentThread().getId();
+		int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & stripeMask;
+	}
+
+	/**
+	 * Return the index of the bucket counting the given non-negative value.
+	 */
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+		return ((shift + 1) << SUB_BUCKET_BITS) + subBucket;
+	}
+
+	/**
+	 * Return the highest value counted by the bucket with the given index.
+	 */
+	static long highestValue(int bucketIndex) {
+		if (bucketIndex < SUB_BUCKET_COUNT) {
+			return bucketIndex;
+		}
+		int shift = (bucketIndex >>> SUB_BUCKET_BITS) - 1;
+		long subBucket = SUB_BUCKET_COUNT + (bucketIndex & (SUB_BUCKET_COUNT - 1));
+		long highest = ((subBucket + 1) << shift) - 1;
+		return (highest < 0 ? Long.MAX_VALUE : highest);
+	}
+
+	/**
+	 * Counters of the threads recording into one stripe.
+	 */
+	private static final class Stripe {
+
+		final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+		final AtomicLong total = new AtomicLong();
+
+		final AtomicLong max = new AtomicLong();
+
+		void record(long value) {
+			counts.incrementAndGet(bucketIndex(value));
+			total.addAndGet(value);
+			long currentMax = max.get();
+			while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+				currentMax = max.get();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.metrics;
+
+import org.springframework.util.Assert;
+
+/**
+ * Immutable snapshot of a {@link LatencyHistogram}. All values are in nanoseconds.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class LatencySnapshot {
+
+	private final long[] counts;
+
+	private final long count;
+
+	private final long total;
+
+	private final long max;
+
+	LatencySnapshot(long[] counts, long count, long total, long max) {
+		this.counts = counts;
+		this.count = count;
+		this.total = total;
+		this.max = max;
+	}
+
+	/**
+	 * Return the number of recorded latencies.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Return the highest recorded latency, or zero if none was recorded.
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * Return the mean of the recorded latencies, or zero if none was recorded.
+	 */
+	public double getMean() {
+		return (count == 0 ? 0.0 : (double) total / count);
+	}
+
+	/**
+	 * Return the latency at the given percentile: at least {@code percentile} percent of the
+	 * recorded latencies are lower than or equal to the returned value, up to the precision
+	 * of the histogram.
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the latency at the percentile, or zero if none was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		Assert.isTrue(percentile >= 0.0 && percentile <= 100.0, "percentile must be between 0 and 100");
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+		long cumulative = 0;
+		for (int i = 0; i < counts.length; i++) {
+			cumulative += counts[i];
+			if (cumulative >= rank) {
+				return Math.min(LatencyHistogram.highestValue(i), max);
+			}
+		}
+		return max;
+	}
+
+	public long getP50() {
+		return getValueAtPercentile(50.0);
+	}
+
+	public long getP99() {
+		return getValueAtPercentile(99.0);
+	}
+
+	public long getP999() {
+		return getValueAtPercentile(99.9);
+	}
+
+	@Override
+	public String toString() {
+		return "LatencySnapshot[count=" + count + ", mean=" + getMean() + ", p50=" + getP50()
+				+ ", p99=" + getP99() + ", p99.9=" + getP999() + ", max=" + max + "]";
+	}
+
+}
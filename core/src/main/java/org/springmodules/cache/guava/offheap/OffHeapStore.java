@@ -0,0 +1,317 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.offheap;
+
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded store of binary values held outside the Java heap, in direct {@link ByteBuffer}
+ * slabs.
+ * <p>Slabs are allocated on demand, up to the capacity of the store, and divided into
+ * fixed-size blocks; each value occupies as many blocks as needed. Keys and the block
+ * indexes of their values stay on the heap, in an index ordered by access: when the store
+ * is full, least recently used values are evicted to make room for new ones.
+ * <p>All operations are guarded by a single lock.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class OffHeapStore {
+
+	public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+	public static final int DEFAULT_SLAB_SIZE = 16 * 1024 * 1024;
+
+	private final int blockSize;
+
+	private final int blocksPerSlab;
+
+	private final int maxBlocks;
+
+	private final ByteBuffer[] slabs;
+
+	private final LinkedHashMap<Object, Slot> index = new LinkedHashMap<Object, Slot>(16, 0.75f, true);
+
+	private final Lock lock = new ReentrantLock();
+
+	/**
+	 * Free blocks, as a stack of block numbers.
+	 */
+	private int[] freeBlocks = new int[16];
+
+	private int freeBlockCount = 0;
+
+	/**
+	 * Number of blocks handed out at least once; blocks above are not allocated yet.
+	 */
+	private int allocatedBlocks = 0;
+
+	private int usedBlocks = 0;
+
+	private long evictionCount = 0;
+
+	/**
+	 * Create a new OffHeapStore with the default block and slab sizes.
+	 * @param capacity the maximum number of bytes held by the store
+	 */
+	public OffHeapStore(long capacity) {
+		this(capacity, DEFAULT_BLOCK_SIZE, DEFAULT_SLAB_SIZE);
+	}
+
+	/**
+	 * Create a new OffHeapStore.
+	 * @param capacity the maximum number of bytes held by the store
+	 * @param blockSize the size of the blocks values are stored in
+	 * @param slabSize the size of the direct buffers allocated by the store, a multiple of {@code blockSize}
+	 */
+	public OffHeapStore(long capacity, int blockSize, int slabSize) {
+		Assert.isTrue(blockSize > 0, "blockSize must be positive");
+		Assert.isTrue(slabSize >= blockSize && slabSize % blockSize == 0, "slabSize must be a multiple of blockSize");
+		Assert.isTrue(capacity >= blockSize, "capacity must hold at least one block");
+		long blocks = capacity / blockSize;
+		Assert.isTrue(blocks <= Integer.MAX_VALUE, "capacity is too large for blockSize");
+		this.blockSize = blockSize;
+		this.blocksPerSlab = slabSize / blockSize;
+		this.maxBlocks = (int) blocks;
+		this.slabs = new ByteBuffer[(int) ((blocks + blocksPerSlab - 1) / blocksPerSlab)];
+	}
+
+	/**
+	 * Store the given value, replacing the value previously stored for the key and evicting
+	 * least recently used values if needed.
+	 * @param key the key
+	 * @param value the value
+	 * @return {@code true} if the value was stored, {@code false} if it is larger than the store
+	 */
+	public boolean put(Object key, byte[] value) {
+		int blockCount = Math.max(1, (value.length + blockSize - 1) / blockSize);
+		lock.lock();
+		try {
+			release(index.remove(key));
+			if (blockCount > maxBlocks) {
+				return false;
+			}
+			while (maxBlocks - usedBlocks < blockCount) {
+				evictEldest();
+			}
+			Slot slot = new Slot(new int[blockCount], value.length);
+			int offset = 0;
+			for (int i = 0; i < blockCount; i++) {
+				int block = allocateBlock();
+				slot.blocks[i] = block;
+				int length = Math.min(blockSize, value.length - offset);
+				ByteBuffer slab = slabs[block / blocksPerSlab];
+				slab.position((block % blocksPerSlab) * blockSize);
+				slab.put(value, offset, length);
+				offset += length;
+			}
+			usedBlocks += blockCount;
+			index.put(key, slot);
+			return true;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Return the value stored for the given key, marking it as recently used.
+	 * @param key the key
+	 * @return a copy of the value, or {@code null} if none is stored
+	 */
+	public byte[] get(Object key) {
+		lock.lock();
+		try {
+			Slot slot = index.get(key);
+			return (slot != null ? read(slot) : null);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Remove the value stored for the given key.
+	 * @param key the key
+	 * @return the removed value, or {@code null} if none was stored
+	 */
+	public byte[] remove(Object key) {
+		lock.lock();
+		try {
+			Slot slot = index.remove(key);
+			if (slot == null) {
+				return null;
+			}
+			byte[] value = read(slot);
+			release(slot);
+			return value;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Remove all the values of the store. Allocated slabs are kept for reuse.
+	 */
+	public void clear() {
+		lock.lock();
+		try {
+			for (Slot slot : index.values()) {
+				release(slot);
+			}
+			index.clear();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Return the number of values held by the store.
+	 */
+	public int size() {
+		lock.lock();
+		try {
+			return index.size();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Return the number of bytes held by the blocks in use.
+	 */
+	public long getUsedBytes() {
+		lock.lock();
+		try {
+			return (long) usedBlocks * blockSize;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Return the number of bytes of the slabs allocated so far.
+	 */
+	public long getAllocatedBytes() {
+		lock.lock();
+		try {
+			long bytes = 0;
+			for (ByteBuffer slab : slabs) {
+				bytes += (slab != null ? slab.capacity() : 0);
+			}
+			return bytes;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Return the maximum number of bytes held by the store.
+	 */
+	public long getCapacity() {
+		return (long) maxBlocks * blockSize;
+	}
+
+	/**
+	 * Return the number of values evicted to make room for new ones.
+	 */
+	public long getEvictionCount() {
+		lock.lock();
+		try {
+			return evictionCount;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private void evictEldest() {
+		Iterator<Map.Entry<Object, Slot>> entries = index.entrySet().iterator();
+		Slot eldest = entries.next().getValue();
+		entries.remove();
+		release(eldest);
+		evictionCount++;
+	}
+
+	private int allocateBlock() {
+		if (freeBlockCount > 0) {
+			return freeBlocks[--freeBlockCount];
+		}
+		int block = allocatedBlocks++;
+		int slab = block / blocksPerSlab;
+		if (slabs[slab] == null) {
+			int blocks = Math.min(blocksPerSlab, maxBlocks - slab * blocksPerSlab);
+			slabs[slab] = ByteBuffer.allocateDirect(blocks * blockSize);
+		}
+		return block;
+	}
+
+	private void release(Slot slot) {
+		if (slot == null) {
+			return;
+		}
+		for (int block : slot.blocks) {
+			if (freeBlockCount == freeBlocks.length) {
+				int[] grown = new int[freeBlocks.length * 2];
+				System.arraycopy(freeBlocks, 0, grown, 0, freeBlockCount);
+				freeBlocks = grown;
+			}
+			freeBlocks[freeBlockCount++] = block;
+		}
+		usedBlocks -= slot.blocks.length;
+	}
+
+	private byte[] read(Slot slot) {
+		byte[] value = new byte[slot.length];
+		int offset = 0;
+		for (int block : slot.blocks) {
+			int length = Math.min(blockSize, slot.length - offset);
+			ByteBuffer slab = slabs[block / blocksPerSlab];
+			slab.position((block % blocksPerSlab) * blockSize);
+			slab.get(value, offset, length);
+			offset += length;
+		}
+		return value;
+	}
+
+	/**
+	 * Blocks holding a value.
+	 */
+	private static final class Slot {
+
+		final int[] blocks;
+
+		final int length;
+
+		Slot(int[] blocks, int length) {
+			this.blocks = blocks;
+			this.length = length;
+		}
+
+	}
+
+}
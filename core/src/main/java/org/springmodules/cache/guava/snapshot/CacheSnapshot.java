@@ -0,0 +1,292 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.snapshot;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.cache.Cache;
+import org.springframework.core.serializer.support.SerializationFailedException;
+import org.springmodules.cache.guava.CacheRestoration;
+import org.springmodules.cache.guava.GuavaCache;
+import org.springmodules.cache.guava.codec.SerializationCodec;
+import org.springmodules.cache.guava.codec.ValueCodec;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Snapshot file of the contents of a {@link GuavaCache}, written when the application shuts
+ * down and restored on the next start so that caches do not start empty.
+ * <p>Keys and values are encoded with a {@link ValueCodec}; entries that cannot be encoded
+ * are skipped. Entries are read from the native cache map, without recording hits nor
+ * triggering refreshes. Restoring reads the file through a memory mapping, as a
+ * {@link CacheRestoration}, so that it can run in the background while the cache is in use:
+ * entries whose key is cached, or was evicted since the restore started, are not restored.
+ * The snapshot file is deleted once restored.
+ * <p>Guava does not expose the age of the cache entries: restored entries expire as if
+ * written at restore time. Snapshots older than the {@link #setMaximumAge maximum age} are
+ * discarded instead of restored.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class CacheSnapshot {
+
+	/**
+	 * Extension of the snapshot files created by {@link #forCache(File, String)}.
+	 */
+	public static final String FILE_EXTENSION = ".snapshot";
+
+	private static final int MAGIC = 0x47435331;
+
+	private static final int END_OF_ENTRIES = -1;
+
+	private static final int NULL_VALUE = -1;
+
+	private static final Log logger = LogFactory.getLog(CacheSnapshot.class);
+
+	private final File file;
+
+	private ValueCodec codec = new SerializationCodec();
+
+	private long maximumAge = 0;
+
+	/**
+	 * Create a new CacheSnapshot stored in the given file.
+	 * @param file the snapshot file
+	 */
+	public CacheSnapshot(File file) {
+		this.file = checkNotNull(file, "file is required");
+	}
+
+	/**
+	 * Return the snapshot of the cache with the given name, stored in the given directory.
+	 * @param directory the directory of the snapshot files
+	 * @param cacheName the name of the cache
+	 */
+	public static CacheSnapshot forCache(File directory, String cacheName) {
+		return new CacheSnapshot(new File(directory, cacheName.replaceAll("[^\\w.-]", "_") + FILE_EXTENSION));
+	}
+
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * Set the codec encoding the keys and values. Default is a {@link SerializationCodec}.
+	 */
+	public void setCodec(ValueCodec codec) {
+		this.codec = checkNotNull(codec, "codec is required");
+	}
+
+	/**
+	 * Set the maximum age, in milliseconds, of the snapshots to restore; older snapshots are
+	 * discarded. Default is {@code 0}, meaning snapshots are restored whatever their age.
+	 */
+	public void setMaximumAge(long maximumAge) {
+		this.maximumAge = maximumAge;
+	}
+
+	public long getMaximumAge() {
+		return this.maximumAge;
+	}
+
+	/**
+	 * Write the entries of the given cache to the snapshot file, replacing any previous
+	 * snapshot.
+	 * @param cache the cache to write
+	 * @return the number of entries written
+	 * @throws IOException if the snapshot file cannot be written
+	 */
+	public int write(GuavaCache cache) throws IOException {
+		File directory = this.file.getAbsoluteFile().getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create snapshot directory [" + directory + "]");
+		}
+		File tempFile = new File(directory, this.file.getName() + ".tmp");
+		int count = 0;
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeLong(System.currentTimeMillis());
+			for (Object key : cache.getNativeCache().asMap().keySet()) {
+				Cache.ValueWrapper wrapper = cache.peek(key);
+				if (wrapper != null && writeEntry(out, key, wrapper.get())) {
+					count++;
+				}
+			}
+			out.writeInt(END_OF_ENTRIES);
+		}
+		finally {
+			out.close();
+		}
+		if (!tempFile.renameTo(this.file) && !(this.file.delete() && tempFile.renameTo(this.file))) {
+			tempFile.delete();
+			throw new IOException("Unable to rename snapshot file [" + tempFile + "] to [" + this.file + "]");
+		}
+		return count;
+	}
+
+	/**
+	 * Add the entries of the snapshot file to the given cache, keeping the values already
+	 * cached and skipping the keys evicted meanwhile, then delete the snapshot file.
+	 * @param cache the cache to restore
+	 * @return the number of entries added, {@code 0} if there is no snapshot
+	 * @throws IOException if the snapshot file cannot be read
+	 */
+	public int restore(GuavaCache cache) throws IOException {
+		if (!this.file.isFile()) {
+			return 0;
+		}
+		try {
+			return restore(cache, map());
+		}
+		finally {
+			if (!this.file.delete()) {
+				logger.debug("Unable to delete snapshot file [" + this.file + "]");
+			}
+		}
+	}
+
+	/**
+	 * Restore the given cache using the given executor, logging failures.
+	 * @param cache the cache to restore
+	 * @param executor the executor running the restore
+	 * @see #restore(GuavaCache)
+	 */
+	public void restoreInBackground(final GuavaCache cache, Executor executor) {
+		if (!this.file.isFile()) {
+			return;
+		}
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					int count = restore(cache);
+					if (logger.isDebugEnabled()) {
+						logger.debug("Restored " + count + " entries of cache [" + cache.getName() + "] from snapshot ["
+								+ file + "]");
+					}
+				}
+				catch (IOException ex) {
+					logger.warn("Unable to restore cache [" + cache.getName() + "] from snapshot [" + file + "]", ex);
+				}
+			}
+		});
+	}
+
+	private boolean writeEntry(DataOutputStream out, Object key, Object value) throws IOException {
+		byte[] keyBytes;
+		byte[] valueBytes;
+		try {
+			keyBytes = this.codec.encode(key);
+			valueBytes = (value != null ? this.codec.encode(value) : null);
+		}
+		catch (SerializationFailedException ex) {
+			logger.debug("Skipping entry [" + key + "] of snapshot [" + this.file + "]", ex);
+			return false;
+		}
+		out.writeInt(keyBytes.length);
+		out.write(keyBytes);
+		if (valueBytes != null) {
+			out.writeInt(valueBytes.length);
+			out.write(valueBytes);
+		}
+		else {
+			out.writeInt(NULL_VALUE);
+		}
+		return true;
+	}
+
+	private ByteBuffer map() throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(this.file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Snapshot file [" + this.file + "] is too large");
+			}
+			// the mapping remains valid once the channel is closed
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally {
+			randomAccessFile.close();
+		}
+	}
+
+	private int restore(GuavaCache cache, ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < 12 || buffer.getInt() != MAGIC) {
+			throw new IOException("Invalid snapshot file [" + this.file + "]");
+		}
+		long timestamp = buffer.getLong();
+		if (this.maximumAge > 0 && System.currentTimeMillis() - timestamp > this.maximumAge) {
+			logger.debug("Discarding expired snapshot [" + this.file + "]");
+			return 0;
+		}
+		CacheRestoration restoration = cache.startRestoration();
+		try {
+			return restore(restoration, buffer);
+		}
+		finally {
+			restoration.close();
+		}
+	}
+
+	private int restore(CacheRestoration restoration, ByteBuffer buffer) throws IOException {
+		int count = 0;
+		while (buffer.remaining() >= 4 && !restoration.isCleared()) {
+			int keyLength = buffer.getInt();
+			if (keyLength == END_OF_ENTRIES) {
+				return count;
+			}
+			byte[] keyBytes = read(buffer, keyLength);
+			int valueLength = buffer.getInt();
+			byte[] valueBytes = (valueLength != NULL_VALUE ? read(buffer, valueLength) : null);
+			try {
+				Object key = this.codec.decode(keyBytes);
+				Object value = (valueBytes != null ? this.codec.decode(valueBytes) : null);
+				if (restoration.restore(key, value)) {
+					count++;
+				}
+			}
+			catch (SerializationFailedException ex) {
+				logger.debug("Skipping undecodable entry of snapshot [" + this.file + "]", ex);
+			}
+		}
+		if (restoration.isCleared()) {
+			logger.debug("Stopping the restore of snapshot [" + this.file + "]: cache was cleared");
+			return count;
+		}
+		throw new IOException("Truncated snapshot file [" + this.file + "]");
+	}
+
+	private byte[] read(ByteBuffer buffer, int length) throws IOException {
+		if (length < 0 || length > buffer.remaining()) {
+			throw new IOException("Truncated snapshot file [" + this.file + "]");
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+}
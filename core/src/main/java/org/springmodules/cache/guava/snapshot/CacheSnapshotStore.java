@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.snapshot;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springmodules.cache.guava.GuavaCache;
+import org.springmodules.cache.guava.codec.SerializationCodec;
+import org.springmodules.cache.guava.codec.ValueCodec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+/**
+ * Directory of {@link CacheSnapshot cache snapshots}, one file per cache, used by the
+ * cache factories to write their caches on shutdown and restore them in the background on
+ * startup. Failures are logged rather than thrown: a missing snapshot only means a cold cache.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class CacheSnapshotStore {
+
+	private static final Log logger = LogFactory.getLog(CacheSnapshotStore.class);
+
+	private File directory;
+
+	private long maximumAge = 0;
+
+	private ValueCodec codec = new SerializationCodec();
+
+	private Executor restoreExecutor;
+
+	public CacheSnapshotStore() {
+		SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("guava-cache-snapshot-");
+		executor.setDaemon(true);
+		this.restoreExecutor = executor;
+	}
+
+	/**
+	 * Set the directory of the snapshot files. By default, caches are not snapshotted.
+	 */
+	public void setDirectory(File directory) {
+		this.directory = directory;
+	}
+
+	public File getDirectory() {
+		return this.directory;
+	}
+
+	/**
+	 * Set the maximum age, in milliseconds, of the snapshots to restore.
+	 * @see CacheSnapshot#setMaximumAge(long)
+	 */
+	public void setMaximumAge(long maximumAge) {
+		this.maximumAge = maximumAge;
+	}
+
+	/**
+	 * Set the codec encoding the keys and values. Default is a {@link SerializationCodec}.
+	 */
+	public void setCodec(ValueCodec codec) {
+		this.codec = codec;
+	}
+
+	/**
+	 * Set the executor restoring the snapshots. Default is a daemon thread per snapshot.
+	 */
+	public void setRestoreExecutor(Executor restoreExecutor) {
+		this.restoreExecutor = restoreExecutor;
+	}
+
+	/**
+	 * Return the snapshot of the given cache.
+	 */
+	public CacheSnapshot getSnapshot(GuavaCache cache) {
+		CacheSnapshot snapshot = CacheSnapshot.forCache(this.directory, cache.getName());
+		snapshot.setCodec(this.codec);
+		snapshot.setMaximumAge(this.maximumAge);
+		return snapshot;
+	}
+
+	/**
+	 * Restore the given cache from its snapshot, if any, in the background.
+	 */
+	public void restore(GuavaCache cache) {
+		if (this.directory != null) {
+			getSnapshot(cache).restoreInBackground(cache, this.restoreExecutor);
+		}
+	}
+
+	/**
+	 * Write the snapshot of the given cache.
+	 */
+	public void write(GuavaCache cache) {
+		if (this.directory == null) {
+			return;
+		}
+		CacheSnapshot snapshot = getSnapshot(cache);
+		try {
+			int count = snapshot.write(cache);
+			if (logger.isDebugEnabled()) {
+				logger.debug("Wrote " + count + " entries of cache [" + cache.getName() + "] to snapshot ["
+						+ snapshot.getFile() + "]");
+			}
+		}
+		catch (IOException ex) {
+			logger.warn("Unable to write snapshot [" + snapshot.getFile() + "] of cache [" + cache.getName() + "]", ex);
+		}
+	}
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.tag;
+
+import java.util.Collection;
+
+/**
+ * Strategy computing the tags of the entries put into a
+ * {@link org.springmodules.cache.guava.TaggedGuavaCache}.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public interface EntryTagger {
+
+	/**
+	 * Return the tags of the given entry, such as {@code "user:alice"}.
+	 * @param key the key of the entry
+	 * @param value the value of the entry, possibly {@code null}
+	 * @return the tags of the entry, possibly empty
+	 */
+	Collection<String> getTags(Object key, Object value);
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.tag;
+
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * {@link EntryTagger} evaluating a SpEL expression, with the entry available as the
+ * {@code #key} and {@code #value} variables; e.g. {@code "'user:' + #key"}. The expression
+ * evaluates to a tag, a collection of tags or {@code null}.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class ExpressionEntryTagger implements EntryTagger {
+
+	private final Expression expression;
+
+	/**
+	 * Create a new ExpressionEntryTagger for the given expression.
+	 * @param expression the SpEL expression computing the tags of an entry
+	 */
+	public ExpressionEntryTagger(String expression) {
+		this.expression = new SpelExpressionParser().parseExpression(expression);
+	}
+
+	@Override
+	public Collection<String> getTags(Object key, Object value) {
+		StandardEvaluationContext context = new StandardEvaluationContext();
+		context.setVariable("key", key);
+		context.setVariable("value", value);
+		Object tags = this.expression.getValue(context);
+		if (tags == null) {
+			return Collections.emptyList();
+		}
+		if (tags instanceof Collection) {
+			Collection<String> result = new ArrayList<String>(((Collection<?>) tags).size());
+			for (Object tag : (Collection<?>) tags) {
+				result.add(String.valueOf(tag));
+			}
+			return result;
+		}
+		return Collections.singletonList(String.valueOf(tags));
+	}
+
+}
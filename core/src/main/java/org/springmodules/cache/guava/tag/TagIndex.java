@@ -0,0 +1,165 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.tag;
+
+import com.google.common.util.concurrent.Striped;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Concurrent secondary index of the keys of a cache by tag. The keys of a tag are guarded by
+ * their set, which is dropped from the index once empty. Indexing and unindexing a key are
+ * serialized by a {@link #getLock lock} striped by key, so that the tags of a key and the
+ * key sets of those tags stay consistent.
+ * <p>Keys are {@link #index indexed} before their entry is stored, and
+ * {@link #unindex unindexed} once their entry is removed, so that the index only holds the
+ * keys of cached entries, plus the keys of entries being stored concurrently.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class TagIndex {
+
+	private final ConcurrentMap<String, Set<Object>> keysByTag = new ConcurrentHashMap<String, Set<Object>>();
+
+	private final ConcurrentMap<Object, Set<String>> tagsByKey = new ConcurrentHashMap<Object, Set<String>>();
+
+	private final Striped<Lock> locks = Striped.lock(64);
+
+	/**
+	 * Associate the given key with the given tags, replacing its previous tags.
+	 */
+	public void index(Object key, Collection<String> tags) {
+		Set<String> newTags = new HashSet<String>(tags);
+		Lock lock = getLock(key);
+		lock.lock();
+		try {
+			Set<String> previousTags = (newTags.isEmpty() ? this.tagsByKey.remove(key) :
+					this.tagsByKey.put(key, Collections.unmodifiableSet(newTags)));
+			if (previousTags != null) {
+				for (String tag : previousTags) {
+					if (!newTags.contains(tag)) {
+						removeKey(tag, key);
+					}
+				}
+			}
+			for (String tag : newTags) {
+				addKey(tag, key);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Remove the given key from the index.
+	 */
+	public void unindex(Object key) {
+		Lock lock = getLock(key);
+		lock.lock();
+		try {
+			Set<String> tags = this.tagsByKey.remove(key);
+			if (tags != null) {
+				for (String tag : tags) {
+					removeKey(tag, key);
+				}
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Return the reentrant lock serializing the indexing of the given key, to be held by
+	 * callers indexing or unindexing the key depending on the state of its cache entry.
+	 */
+	public Lock getLock(Object key) {
+		return this.locks.get(key);
+	}
+
+	/**
+	 * Return the keys associated with the given tag.
+	 */
+	public Set<Object> getKeys(String tag) {
+		Set<Object> keys = this.keysByTag.get(tag);
+		if (keys == null) {
+			return Collections.emptySet();
+		}
+		synchronized (keys) {
+			return Collections.unmodifiableSet(new HashSet<Object>(keys));
+		}
+	}
+
+	/**
+	 * Return the tags associated with the given key.
+	 */
+	public Set<String> getTags(Object key) {
+		Set<String> tags = this.tagsByKey.get(key);
+		return (tags != null ? tags : Collections.<String>emptySet());
+	}
+
+	/**
+	 * Return the number of tags in the index.
+	 */
+	public int size() {
+		return this.keysByTag.size();
+	}
+
+	public void clear() {
+		this.keysByTag.clear();
+		this.tagsByKey.clear();
+	}
+
+	private void addKey(String tag, Object key) {
+		while (true) {
+			Set<Object> keys = this.keysByTag.get(tag);
+			if (keys == null) {
+				Set<Object> newKeys = new HashSet<Object>();
+				keys = this.keysByTag.putIfAbsent(tag, newKeys);
+				if (keys == null) {
+					keys = newKeys;
+				}
+			}
+			synchronized (keys) {
+				// retry if the set was dropped concurrently for being empty
+				if (this.keysByTag.get(tag) == keys) {
+					keys.add(key);
+					return;
+				}
+			}
+		}
+	}
+
+	private void removeKey(String tag, Object key) {
+		Set<Object> keys = this.keysByTag.get(tag);
+		if (keys != null) {
+			synchronized (keys) {
+				keys.remove(key);
+				if (keys.isEmpty()) {
+					this.keysByTag.remove(tag, keys);
+				}
+			}
+		}
+	}
+
+}
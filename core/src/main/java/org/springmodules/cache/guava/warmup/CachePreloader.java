@@ -0,0 +1,36 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.warmup;
+
+import java.util.Map;
+
+/**
+ * Strategy loading the entries a cache is warmed up with.
+ * @author Omar Irbouh
+ * @since 1.0
+ * @see CacheWarmer
+ */
+public interface CachePreloader {
+
+	/**
+	 * Load the entries to put into the cache, keyed as the cache operations key them; for
+	 * instance, users keyed by user name for a cache filled by a method taking a user name.
+	 * @return the entries to cache, by key
+	 * @throws Exception if the entries cannot be loaded
+	 */
+	Map<?, ?> preload() throws Exception;
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.warmup;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.util.Assert;
+import org.springmodules.cache.guava.GuavaCache;
+import org.springmodules.cache.guava.GuavaCaches;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warms caches up in parallel when the application context is refreshed, running the
+ * {@link CachePreloader} of each cache on an executor.
+ * <p>The warmer becomes {@link #isReady() ready} once every preloader has completed,
+ * successfully or not, so that readiness checks can keep production traffic away from cold
+ * caches. The number of entries and the duration of the warm-up of each cache are logged,
+ * and exposed by {@link #getDurations()}.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class CacheWarmer implements ApplicationListener<ContextRefreshedEvent>, InitializingBean, DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(CacheWarmer.class);
+
+	private CacheManager cacheManager;
+
+	private Map<String, CachePreloader> preloaders = Collections.emptyMap();
+
+	private ExecutorService executor;
+
+	private boolean ownExecutor;
+
+	private final AtomicBoolean started = new AtomicBoolean();
+
+	private volatile CountDownLatch pending = new CountDownLatch(0);
+
+	private final Map<String, Long> durations = new ConcurrentHashMap<String, Long>();
+
+	public void setCacheManager(CacheManager cacheManager) {
+		this.cacheManager = cacheManager;
+	}
+
+	/**
+	 * Set the preloaders, keyed by the name of the cache they warm up.
+	 */
+	public void setPreloaders(Map<String, CachePreloader> preloaders) {
+		this.preloaders = new LinkedHashMap<String, CachePreloader>(preloaders);
+		this.pending = new CountDownLatch(preloaders.size());
+	}
+
+	/**
+	 * Set the executor running the preloaders. By default, a pool of daemon threads sized to
+	 * the number of processors is used for the duration of the warm-up.
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		Assert.notNull(this.cacheManager, "'cacheManager' is required");
+	}
+
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		warmUp();
+	}
+
+	/**
+	 * Start warming the caches up, unless already started.
+	 */
+	public void warmUp() {
+		if (!this.started.compareAndSet(false, true)) {
+			return;
+		}
+		if (this.preloaders.isEmpty()) {
+			return;
+		}
+		if (this.executor == null) {
+			int threads = Math.min(this.preloaders.size(), Runtime.getRuntime().availableProcessors());
+			this.executor = Executors.newFixedThreadPool(threads,
+					new ThreadFactoryBuilder().setNameFormat("cache-warmup-%d").setDaemon(true).build());
+			this.ownExecutor = true;
+		}
+		logger.info("Warming up caches " + this.preloaders.keySet());
+		final Stopwatch stopwatch = new Stopwatch().start();
+		final AtomicInteger remaining = new AtomicInteger(this.preloaders.size());
+		for (final Map.Entry<String, CachePreloader> entry : this.preloaders.entrySet()) {
+			this.executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						warmUp(entry.getKey(), entry.getValue());
+					}
+					finally {
+						pending.countDown();
+						if (remaining.decrementAndGet() == 0) {
+							logger.info("Warmed up caches in " + stopwatch.elapsed(TimeUnit.MILLISECONDS) + " ms");
+							if (ownExecutor) {
+								executor.shutdown();
+							}
+						}
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Return whether every cache has been warmed up.
+	 */
+	public boolean isReady() {
+		return this.pending.getCount() == 0;
+	}
+
+	/**
+	 * Wait for every cache to be warmed up.
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
+	 * @return {@code true} if the caches are warmed up, {@code false} if the timeout elapsed
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+		return this.pending.await(timeout, unit);
+	}
+
+	/**
+	 * Return the duration, in milliseconds, of the warm-up of each cache warmed up so far.
+	 */
+	public Map<String, Long> getDurations() {
+		return Collections.unmodifiableMap(this.durations);
+	}
+
+	@Override
+	public void destroy() {
+		if (this.ownExecutor) {
+			this.executor.shutdownNow();
+		}
+	}
+
+	private void warmUp(String cacheName, CachePreloader preloader) {
+		Stopwatch stopwatch = new Stopwatch().start();
+		try {
+			Cache cache = this.cacheManager.getCache(cacheName);
+			Assert.notNull(cache, "No cache named [" + cacheName + "]");
+			Map<?, ?> entries = preloader.preload();
+			GuavaCache guavaCache = GuavaCaches.unwrap(cache);
+			if (guavaCache != null) {
+				guavaCache.putAll(entries);
+			}
+			else {
+				for (Map.Entry<?, ?> entry : entries.entrySet()) {
+					cache.put(entry.getKey(), entry.getValue());
+				}
+			}
+			long duration = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+			this.durations.put(cacheName, duration);
+			logger.info("Warmed up cache [" + cacheName + "] with " + entries.size() + " entries in " + duration + " ms");
+		}
+		catch (Exception ex) {
+			logger.warn("Unable to warm up cache [" + cacheName + "]", ex);
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.weigher;
+
+import com.google.common.cache.Weigher;
+import org.springframework.cache.Cache.ValueWrapper;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * {@link Weigher} weighing cache entries by the number of elements of their value:
+ * the size of collections and maps, the length of arrays, and 1 for any other value.
+ * <p>Values held in {@link ValueWrapper}s by the native cache are unwrapped first.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class CollectionSizeWeigher implements Weigher<Object, Object> {
+
+	@Override
+	public int weigh(Object key, Object value) {
+		Object target = (value instanceof ValueWrapper ? ((ValueWrapper) value).get() : value);
+		int size = 1;
+		if (target instanceof Collection) {
+			size = ((Collection<?>) target).size();
+		}
+		else if (target instanceof Map) {
+			size = ((Map<?, ?>) target).size();
+		}
+		else if (target instanceof Object[]) {
+			size = ((Object[]) target).length;
+		}
+		return Math.max(1, size);
+	}
+
+}
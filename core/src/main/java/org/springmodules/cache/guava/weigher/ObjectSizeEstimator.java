@@ -0,0 +1,215 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.weigher;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates the heap retained by object graphs, walking references reflectively.
+ * <p>Shallow sizes are computed from the fields of each class, assuming a 64-bit JVM with
+ * compressed references (12 bytes object headers, 16 bytes array headers, 4 bytes
+ * references, 8 bytes alignment), or are obtained from an {@link Instrumentation} when
+ * one is available (e.g. from a Java agent). Each object reachable from the root is
+ * counted once; classes and enum constants are considered shared and are not counted.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class ObjectSizeEstimator {
+
+	static final int OBJECT_HEADER = 12;
+
+	static final int ARRAY_HEADER = 16;
+
+	static final int REFERENCE = 4;
+
+	static final int ALIGNMENT = 8;
+
+	private static final Field[] NO_FIELDS = new Field[0];
+
+	private final Instrumentation instrumentation;
+
+	private final Map<Class<?>, ClassLayout> layouts = new ConcurrentHashMap<Class<?>, ClassLayout>();
+
+	/**
+	 * Create a new ObjectSizeEstimator computing shallow sizes from class layouts.
+	 */
+	public ObjectSizeEstimator() {
+		this(null);
+	}
+
+	/**
+	 * Create a new ObjectSizeEstimator.
+	 * @param instrumentation the instrumentation providing shallow sizes, or {@code null}
+	 * to compute them from class layouts
+	 */
+	public ObjectSizeEstimator(Instrumentation instrumentation) {
+		this.instrumentation = instrumentation;
+	}
+
+	/**
+	 * Return the estimated size, in bytes, of the objects reachable from the given root.
+	 * @param root the root object, may be {@code null}
+	 * @return the estimated deep size
+	 */
+	public long deepSizeOf(Object root) {
+		if (root == null || isShared(root)) {
+			return 0;
+		}
+		Map<Object, Object> visited = new IdentityHashMap<Object, Object>();
+		Deque<Object> pending = new ArrayDeque<Object>();
+		visited.put(root, root);
+		pending.push(root);
+		long size = 0;
+		while (!pending.isEmpty()) {
+			Object current = pending.pop();
+			size += shallowSizeOf(current);
+			Class<?> type = current.getClass();
+			if (type.isArray()) {
+				if (!type.getComponentType().isPrimitive()) {
+					for (Object element : (Object[]) current) {
+						push(element, visited, pending);
+					}
+				}
+			}
+			else {
+				for (Field field : layout(type).referenceFields) {
+					push(readField(field, current), visited, pending);
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Return the estimated size, in bytes, of the given object, not including the
+	 * objects it references.
+	 * @param object the object
+	 * @return the estimated shallow size
+	 */
+	public long shallowSizeOf(Object object) {
+		if (this.instrumentation != null) {
+			return this.instrumentation.getObjectSize(object);
+		}
+		Class<?> type = object.getClass();
+		if (type.isArray()) {
+			Class<?> componentType = type.getComponentType();
+			int elementSize = (componentType.isPrimitive() ? primitiveSize(componentType) : REFERENCE);
+			return align(ARRAY_HEADER + (long) Array.getLength(object) * elementSize);
+		}
+		return layout(type).shallowSize;
+	}
+
+	private void push(Object object, Map<Object, Object> visited, Deque<Object> pending) {
+		if (object != null && !isShared(object) && visited.put(object, object) == null) {
+			pending.push(object);
+		}
+	}
+
+	private boolean isShared(Object object) {
+		return (object instanceof Class || object instanceof Enum);
+	}
+
+	private Object readField(Field field, Object target) {
+		try {
+			return field.get(target);
+		}
+		catch (IllegalAccessException ex) {
+			return null;
+		}
+	}
+
+	private ClassLayout layout(Class<?> type) {
+		ClassLayout layout = this.layouts.get(type);
+		if (layout == null) {
+			layout = new ClassLayout(type);
+			this.layouts.put(type, layout);
+		}
+		return layout;
+	}
+
+	static long align(long size) {
+		return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+
+	static int primitiveSize(Class<?> type) {
+		if (type == long.class || type == double.class) {
+			return 8;
+		}
+		if (type == int.class || type == float.class) {
+			return 4;
+		}
+		if (type == short.class || type == char.class) {
+			return 2;
+		}
+		return 1;
+	}
+
+	/**
+	 * Shallow size and accessible reference fields of a class.
+	 */
+	private static final class ClassLayout {
+
+		final long shallowSize;
+
+		final Field[] referenceFields;
+
+		ClassLayout(Class<?> type) {
+			long size = OBJECT_HEADER;
+			List<Field> fields = new ArrayList<Field>();
+			for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+				for (Field field : current.getDeclaredFields()) {
+					if (Modifier.isStatic(field.getModifiers())) {
+						continue;
+					}
+					if (field.getType().isPrimitive()) {
+						size += primitiveSize(field.getType());
+					}
+					else {
+						size += REFERENCE;
+						if (makeAccessible(field)) {
+							fields.add(field);
+						}
+					}
+				}
+			}
+			this.shallowSize = align(size);
+			this.referenceFields = fields.toArray(NO_FIELDS);
+		}
+
+		private static boolean makeAccessible(Field field) {
+			try {
+				field.setAccessible(true);
+				return true;
+			}
+			catch (RuntimeException ex) {
+				// not accessible (e.g. security manager): the referenced object is not counted
+				return false;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.weigher;
+
+import com.google.common.cache.Weigher;
+import org.springframework.cache.Cache.ValueWrapper;
+
+import java.lang.instrument.Instrumentation;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link Weigher} estimating the heap retained by cache entries, in bytes, so that
+ * {@code maximumWeight} bounds the heap used by a cache.
+ * <p>The weight of an entry is the {@link ObjectSizeEstimator#deepSizeOf deep size} of its
+ * key and of its value, computed once when the entry is added. Values changed after being
+ * cached are not weighed again.
+ * <p>Values held in {@link ValueWrapper}s by the native cache are unwrapped first: besides
+ * the value, wrappers may reference cache internals, such as the other timers of a timer
+ * wheel bucket, that must neither be weighed nor walked outside of their own locking.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class ObjectSizeWeigher implements Weigher<Object, Object> {
+
+	private final ObjectSizeEstimator estimator;
+
+	/**
+	 * Create a new ObjectSizeWeigher computing sizes reflectively.
+	 */
+	public ObjectSizeWeigher() {
+		this(new ObjectSizeEstimator());
+	}
+
+	/**
+	 * Create a new ObjectSizeWeigher obtaining shallow sizes from the given instrumentation.
+	 * @param instrumentation the instrumentation, typically obtained by a Java agent
+	 */
+	public ObjectSizeWeigher(Instrumentation instrumentation) {
+		this(new ObjectSizeEstimator(checkNotNull(instrumentation, "instrumentation is required")));
+	}
+
+	/**
+	 * Create a new ObjectSizeWeigher.
+	 * @param estimator the estimator computing sizes
+	 */
+	public ObjectSizeWeigher(ObjectSizeEstimator estimator) {
+		this.estimator = checkNotNull(estimator, "estimator is required");
+	}
+
+	@Override
+	public int weigh(Object key, Object value) {
+		Object target = (value instanceof ValueWrapper ? ((ValueWrapper) value).get() : value);
+		long size = this.estimator.deepSizeOf(key) + this.estimator.deepSizeOf(target);
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(1, size));
+	}
+
+}
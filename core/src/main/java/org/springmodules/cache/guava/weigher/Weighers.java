@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.weigher;
+
+import com.google.common.cache.Weigher;
+
+/**
+ * Static factory of the built-in {@link Weigher}s, by name.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public abstract class Weighers {
+
+	/**
+	 * Name of the {@link ObjectSizeWeigher}: weights are estimated sizes in bytes.
+	 */
+	public static final String OBJECT_SIZE = "objectSize";
+
+	/**
+	 * Name of the {@link CollectionSizeWeigher}: weights are numbers of elements.
+	 */
+	public static final String COLLECTION_SIZE = "collectionSize";
+
+	/**
+	 * Return a new instance of the built-in weigher with the given name.
+	 * @param name either {@value #OBJECT_SIZE} or {@value #COLLECTION_SIZE}
+	 * @return the weigher
+	 * @throws IllegalArgumentException if no weigher has the given name
+	 */
+	public static Weigher<Object, Object> forName(String name) {
+		if (OBJECT_SIZE.equals(name)) {
+			return new ObjectSizeWeigher();
+		}
+		if (COLLECTION_SIZE.equals(name)) {
+			return new CollectionSizeWeigher();
+		}
+		throw new IllegalArgumentException("unknown weigher [" + name + "], expected one of ["
+				+ OBJECT_SIZE + ", " + COLLECTION_SIZE + "]");
+	}
+
+}
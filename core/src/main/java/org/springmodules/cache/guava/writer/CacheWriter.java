@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.writer;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Strategy writing the entries of a
+ * {@link org.springmodules.cache.guava.WriteBehindGuavaCache WriteBehindGuavaCache} to the
+ * underlying store, in batches, from the background thread of a {@link WriteBehindQueue}.
+ * <p>Each batch holds the latest operation per key: the entries put since the previous batch,
+ * and the keys evicted since then. Implementations should write each batch in one round trip,
+ * typically a JDBC batch update.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public interface CacheWriter {
+
+	/**
+	 * Write the given entries to the store, inserting or updating them.
+	 * @param entries the entries to write, in put order; values may be {@code null}
+	 */
+	void writeAll(Map<Object, Object> entries);
+
+	/**
+	 * Delete the entries of the given keys from the store.
+	 * @param keys the keys of the entries to delete, in eviction order
+	 */
+	void deleteAll(Collection<Object> keys);
+
+}
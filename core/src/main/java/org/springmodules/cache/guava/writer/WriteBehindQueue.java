@@ -0,0 +1,378 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.writer;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Queue of pending writes handed in batches to a {@link CacheWriter} by a background thread.
+ * <p>Writes are coalesced per key: writing a key that is already pending replaces its pending
+ * value, or its pending deletion, so that the store only sees the latest operation. A batch
+ * is written as soon as {@code batchSize} keys are pending, or once the oldest pending write
+ * is {@code delay} old. When {@code capacity} keys are pending, writers of other keys block
+ * until the background thread has taken the next batch.
+ * <p>The writes of a batch failing to be written are queued again, unless a later write of
+ * their key is pending, and retried with the next batch. Writes still failing after
+ * {@code maxRetries} retries are logged and discarded: the cache still holds their values,
+ * but the store does not. {@link #close() Closing} the queue writes all pending writes
+ * before returning.
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class WriteBehindQueue {
+
+	private static final Log logger = LogFactory.getLog(WriteBehindQueue.class);
+
+	private static final Object DELETED = new Object();
+
+	private final String name;
+
+	private final CacheWriter writer;
+
+	private final int batchSize;
+
+	private final long delayNanos;
+
+	private final int capacity;
+
+	private final int maxRetries;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition notFull = this.lock.newCondition();
+
+	private final Condition due = this.lock.newCondition();
+
+	private final Condition written = this.lock.newCondition();
+
+	private final LinkedHashMap<Object, Object> pending = new LinkedHashMap<Object, Object>();
+
+	private final Map<Object, Integer> retries = new HashMap<Object, Integer>();
+
+	private long oldestWriteNanos;
+
+	private int flushRequests;
+
+	private boolean writing;
+
+	private boolean closed;
+
+	private final Thread thread;
+
+	/**
+	 * Create a new WriteBehindQueue retrying failed writes 3 times, and start its background thread.
+	 * @param name the name of the queue, typically the name of the cache
+	 * @param writer the writer of the batches
+	 * @param batchSize the maximum number of keys per batch
+	 * @param delay the maximum time a write stays pending
+	 * @param unit the unit of {@code delay}
+	 * @param capacity the maximum number of pending keys, at least {@code batchSize}
+	 */
+	public WriteBehindQueue(String name, CacheWriter writer, int batchSize, long delay, TimeUnit unit, int capacity) {
+		this(name, writer, batchSize, delay, unit, capacity, 3);
+	}
+
+	/**
+	 * Create a new WriteBehindQueue and start its background thread.
+	 * @param name the name of the queue, typically the name of the cache
+	 * @param writer the writer of the batches
+	 * @param batchSize the maximum number of keys per batch
+	 * @param delay the maximum time a write stays pending
+	 * @param unit the unit of {@code delay}
+	 * @param capacity the maximum number of pending keys, at least {@code batchSize}
+	 * @param maxRetries the number of times a failed write is retried before being discarded
+	 */
+	public WriteBehindQueue(String name, CacheWriter writer, int batchSize, long delay, TimeUnit unit, int capacity,
+							int maxRetries) {
+		checkArgument(batchSize > 0, "batchSize must be positive");
+		checkArgument(capacity >= batchSize, "capacity must be at least batchSize");
+		checkArgument(maxRetries >= 0, "maxRetries must not be negative");
+		this.name = checkNotNull(name, "name is required");
+		this.writer = checkNotNull(writer, "writer is required");
+		this.batchSize = batchSize;
+		this.delayNanos = unit.toNanos(delay);
+		this.capacity = capacity;
+		this.maxRetries = maxRetries;
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeBatches();
+			}
+		}, "write-behind-" + name);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	public CacheWriter getWriter() {
+		return this.writer;
+	}
+
+	/**
+	 * Queue the writing of the given entry, blocking while the queue is full.
+	 * @throws IllegalStateException if the queue is closed
+	 */
+	public void write(Object key, Object value) {
+		enqueue(key, value);
+	}
+
+	/**
+	 * Queue the deletion of the entry of the given key, blocking while the queue is full.
+	 * @throws IllegalStateException if the queue is closed
+	 */
+	public void delete(Object key) {
+		enqueue(key, DELETED);
+	}
+
+	private void enqueue(Object key, Object operation) {
+		checkNotNull(key, "key is required");
+		this.lock.lock();
+		try {
+			checkState(!this.closed, "Write-behind queue [%s] is closed", this.name);
+			while (this.pending.size() >= this.capacity && !this.pending.containsKey(key)) {
+				this.notFull.awaitUninterruptibly();
+				checkState(!this.closed, "Write-behind queue [%s] is closed", this.name);
+			}
+			boolean first = this.pending.isEmpty();
+			if (first) {
+				this.oldestWriteNanos = System.nanoTime();
+			}
+			this.pending.put(key, operation);
+			this.retries.remove(key);
+			// the background thread waits without timeout while no write is pending
+			if (first || this.pending.size() >= this.batchSize) {
+				this.due.signal();
+			}
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Return the number of keys waiting to be written.
+	 */
+	public int size() {
+		this.lock.lock();
+		try {
+			return this.pending.size();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Write all the pending writes, blocking until the store has received them, or until
+	 * they are discarded after failing {@code maxRetries} retries.
+	 */
+	public void flush() {
+		this.lock.lock();
+		try {
+			this.flushRequests++;
+			this.due.signal();
+			while (!this.pending.isEmpty() || this.writing) {
+				this.written.awaitUninterruptibly();
+			}
+			this.flushRequests--;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Write all the pending writes and stop the background thread. Later writes are rejected.
+	 */
+	public void close() {
+		this.lock.lock();
+		try {
+			this.closed = true;
+			this.due.signal();
+			this.notFull.signalAll();
+		}
+		finally {
+			this.lock.unlock();
+		}
+		Uninterruptibles.joinUninterruptibly(this.thread);
+	}
+
+	private void writeBatches() {
+		List<Map.Entry<Object, Object>> batch;
+		while ((batch = awaitBatch()) != null) {
+			Throwable failure = null;
+			try {
+				writeBatch(batch);
+			}
+			catch (Throwable ex) {
+				// keep the thread alive: a dead writer thread would block every later flush
+				failure = ex;
+			}
+			finally {
+				this.lock.lock();
+				try {
+					if (failure != null) {
+						retry(batch, failure);
+					}
+					else {
+						this.retries.keySet().removeAll(keys(batch));
+					}
+					this.writing = false;
+					this.written.signalAll();
+				}
+				finally {
+					this.lock.unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Queue the writes of the given failed batch again, except the ones superseded by a
+	 * pending write of their key, and the ones already retried {@code maxRetries} times.
+	 */
+	private void retry(List<Map.Entry<Object, Object>> batch, Throwable failure) {
+		if (this.pending.isEmpty()) {
+			this.oldestWriteNanos = System.nanoTime();
+		}
+		int retried = 0;
+		int discarded = 0;
+		for (Map.Entry<Object, Object> operation : batch) {
+			Object key = operation.getKey();
+			if (this.pending.containsKey(key)) {
+				continue;
+			}
+			Integer count = this.retries.get(key);
+			int attempt = (count != null ? count + 1 : 1);
+			if (attempt > this.maxRetries) {
+				this.retries.remove(key);
+				discarded++;
+			}
+			else {
+				this.retries.put(key, attempt);
+				this.pending.put(key, operation.getValue());
+				retried++;
+			}
+		}
+		if (retried > 0) {
+			logger.warn("Unable to write " + batch.size() + " entries of write-behind queue [" + this.name
+					+ "], retrying " + retried + " of them", failure);
+		}
+		if (discarded > 0) {
+			logger.error("Discarding " + discarded + " entries of write-behind queue [" + this.name + "] after "
+					+ this.maxRetries + " retries", failure);
+		}
+	}
+
+	private static List<Object> keys(List<Map.Entry<Object, Object>> batch) {
+		List<Object> keys = new ArrayList<Object>(batch.size());
+		for (Map.Entry<Object, Object> operation : batch) {
+			keys.add(operation.getKey());
+		}
+		return keys;
+	}
+
+	/**
+	 * Wait until a batch is due and take it from the pending writes, or return {@code null}
+	 * once the queue is closed and all its writes are written.
+	 */
+	private List<Map.Entry<Object, Object>> awaitBatch() {
+		this.lock.lock();
+		try {
+			long remainingNanos;
+			while ((remainingNanos = remainingNanos()) > 0) {
+				if (this.closed) {
+					return null;
+				}
+				try {
+					if (remainingNanos == Long.MAX_VALUE) {
+						this.due.await();
+					}
+					else {
+						this.due.awaitNanos(remainingNanos);
+					}
+				}
+				catch (InterruptedException ex) {
+					// the queue is stopped by closing it only
+				}
+			}
+			List<Map.Entry<Object, Object>> batch = new ArrayList<Map.Entry<Object, Object>>(
+					Math.min(this.batchSize, this.pending.size()));
+			for (Iterator<Map.Entry<Object, Object>> it = this.pending.entrySet().iterator();
+				 it.hasNext() && batch.size() < this.batchSize; ) {
+				Map.Entry<Object, Object> entry = it.next();
+				batch.add(new AbstractMap.SimpleImmutableEntry<Object, Object>(entry));
+				it.remove();
+			}
+			this.writing = true;
+			this.notFull.signalAll();
+			return batch;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Return the time until the next batch is due, {@code 0} if it is due now, or
+	 * {@link Long#MAX_VALUE} if no write is pending.
+	 */
+	private long remainingNanos() {
+		if (this.pending.isEmpty()) {
+			return Long.MAX_VALUE;
+		}
+		if (this.pending.size() >= this.batchSize || this.flushRequests > 0 || this.closed) {
+			return 0;
+		}
+		return Math.max(0, this.oldestWriteNanos + this.delayNanos - System.nanoTime());
+	}
+
+	private void writeBatch(List<Map.Entry<Object, Object>> batch) {
+		List<Object> deletedKeys = new ArrayList<Object>();
+		Map<Object, Object> entries = new LinkedHashMap<Object, Object>();
+		for (Map.Entry<Object, Object> operation : batch) {
+			if (operation.getValue() == DELETED) {
+				deletedKeys.add(operation.getKey());
+			}
+			else {
+				entries.put(operation.getKey(), operation.getValue());
+			}
+		}
+		if (!deletedKeys.isEmpty()) {
+			this.writer.deleteAll(deletedKeys);
+		}
+		if (!entries.isEmpty()) {
+			this.writer.writeAll(entries);
+		}
+	}
+
+}
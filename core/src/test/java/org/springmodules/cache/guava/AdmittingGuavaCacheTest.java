@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.springmodules.cache.guava.admission.TinyLfuAdmissionPolicy;
+
+import java.util.concurrent.Callable;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class AdmittingGuavaCacheTest {
+
+	private static final int MAXIMUM_SIZE = 10;
+
+	private AdmittingGuavaCache cache;
+
+	@Before
+	public void setUp() {
+		cache = new AdmittingGuavaCache("admitting", CacheBuilder.newBuilder().maximumSize(MAXIMUM_SIZE)
+				.concurrencyLevel(1), false, new TinyLfuAdmissionPolicy(MAXIMUM_SIZE));
+	}
+
+	@Test
+	public void testScanDoesNotEvictFrequentEntries() {
+		for (int round = 0; round < 3; round++) {
+			for (int i = 0; i < MAXIMUM_SIZE; i++) {
+				if (cache.get("hot" + i) == null) {
+					cache.put("hot" + i, i);
+				}
+			}
+		}
+		for (int i = 0; i < 100; i++) {
+			if (cache.get("scan" + i) == null) {
+				cache.put("scan" + i, i);
+			}
+		}
+
+		int hot = 0;
+		for (int i = 0; i < MAXIMUM_SIZE; i++) {
+			if (cache.getNativeCache().getIfPresent("hot" + i) != null) {
+				hot++;
+			}
+		}
+		assertThat(hot).isGreaterThanOrEqualTo(MAXIMUM_SIZE - 2);
+	}
+
+	@Test
+	public void testPutAdmittedUntilFirstEviction() {
+		for (int i = 0; i < MAXIMUM_SIZE; i++) {
+			cache.put(i, i);
+		}
+		assertThat(cache.getNativeCache().size()).isEqualTo(MAXIMUM_SIZE);
+	}
+
+	@Test
+	public void testUpdateAlwaysAdmitted() {
+		fillAndEvict();
+		cache.put("key0", "updated");
+		assertThat(cache.get("key0").get()).isEqualTo("updated");
+	}
+
+	@Test
+	public void testPutAllFiltersColdEntries() {
+		fillAndEvict();
+		cache.putAll(ImmutableMap.of("cold", "value"));
+		assertThat(cache.get("cold")).isNull();
+	}
+
+	@Test
+	public void testLoadedValueAlwaysAdmitted() {
+		fillAndEvict();
+		Object value = cache.get("loaded", new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return "value";
+			}
+		});
+		assertThat(value).isEqualTo("value");
+		assertThat(cache.getNativeCache().getIfPresent("loaded")).isEqualTo("value");
+	}
+
+	@Test
+	public void testPutIfAbsentAlwaysAdmitted() {
+		fillAndEvict();
+		assertThat(cache.putIfAbsent("absent", "value")).isNull();
+		assertThat(cache.getNativeCache().getIfPresent("absent")).isEqualTo("value");
+	}
+
+	@Test
+	public void testPutAdmittedAfterClear() {
+		fillAndEvict();
+		cache.clear();
+
+		for (int i = 0; i < 5; i++) {
+			cache.put("new" + i, i);
+		}
+		assertThat(cache.getNativeCache().size()).isEqualTo(5);
+	}
+
+	@Test
+	public void testPutAdmittedAfterEvict() {
+		fillAndEvict();
+		cache.evict(cache.getNativeCache().asMap().keySet().iterator().next());
+
+		cache.put("new", "value");
+		assertThat(cache.get("new").get()).isEqualTo("value");
+	}
+
+	/**
+	 * Fill the cache with frequently accessed entries, then evict one of them.
+	 */
+	private void fillAndEvict() {
+		for (int i = 0; i <= MAXIMUM_SIZE; i++) {
+			for (int j = 0; j < 3; j++) {
+				cache.get("key" + i);
+			}
+			cache.put("key" + i, i);
+		}
+		assertThat(cache.getNativeCache().size()).isEqualTo(MAXIMUM_SIZE);
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import org.junit.Test;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class CacheRestorationTest {
+
+	private final GuavaCache cache = new GuavaCache("cache");
+
+	@Test
+	public void testRestoreKeepsCachedValues() {
+		cache.put("key", "cached");
+		CacheRestoration restoration = cache.startRestoration();
+
+		assertThat(restoration.restore("key", "restored")).isFalse();
+		assertThat(restoration.restore("other", "restored")).isTrue();
+		assertThat(cache.get("key").get()).isEqualTo("cached");
+		assertThat(cache.get("other").get()).isEqualTo("restored");
+	}
+
+	@Test
+	public void testEvictedKeysAreNotRestored() {
+		CacheRestoration restoration = cache.startRestoration();
+		cache.evict("key1");
+		cache.evictAll(newArrayList("key2"));
+
+		assertThat(restoration.restore("key1", "stale")).isFalse();
+		assertThat(restoration.restore("key2", "stale")).isFalse();
+		assertThat(cache.get("key1")).isNull();
+		assertThat(cache.get("key2")).isNull();
+	}
+
+	@Test
+	public void testNothingRestoredOnceCleared() {
+		CacheRestoration restoration = cache.startRestoration();
+		cache.clear();
+
+		assertThat(restoration.isCleared()).isTrue();
+		assertThat(restoration.restore("key", "stale")).isFalse();
+		assertThat(cache.get("key")).isNull();
+	}
+
+	@Test
+	public void testEvictionsNotRecordedOnceClosed() {
+		CacheRestoration restoration = cache.startRestoration();
+		restoration.close();
+		cache.evict("key");
+
+		assertThat(restoration.restore("key", "value")).isTrue();
+	}
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+@SuppressWarnings("unchecked")
+public class CollectionPatchTest {
+
+	private static final Predicate<Object> SAME_INITIAL = new Predicate<Object>() {
+		@Override
+		public boolean apply(Object input) {
+			return ((String) input).charAt(0) == 'b';
+		}
+	};
+
+	@Test
+	public void testAddFirst() {
+		Object patched = CollectionPatch.addFirst("a").apply(ImmutableList.of("b", "c"));
+
+		assertThat((List<Object>) patched).containsExactly("a", "b", "c");
+	}
+
+	@Test
+	public void testAddLast() {
+		Object patched = CollectionPatch.addLast("c").apply(ImmutableList.of("a", "b"));
+
+		assertThat((List<Object>) patched).containsExactly("a", "b", "c");
+	}
+
+	@Test
+	public void testAddReplacesMatchingElement() {
+		Object patched = new CollectionPatch(CollectionPatch.Operation.ADD_FIRST, "b-2", SAME_INITIAL)
+				.apply(ImmutableList.of("a-1", "b-1"));
+
+		assertThat((List<Object>) patched).containsExactly("b-2", "a-1");
+	}
+
+	@Test
+	public void testReplace() {
+		Object patched = new CollectionPatch(CollectionPatch.Operation.REPLACE, "b-2", SAME_INITIAL)
+				.apply(ImmutableList.of("a-1", "b-1", "c-1"));
+
+		assertThat((List<Object>) patched).containsExactly("a-1", "b-2", "c-1");
+	}
+
+	@Test
+	public void testReplaceWithoutMatchEvicts() {
+		assertThat(CollectionPatch.replace("d").apply(ImmutableList.of("a", "b"))).isNull();
+	}
+
+	@Test
+	public void testRemove() {
+		Object patched = CollectionPatch.remove("b").apply(ImmutableList.of("a", "b", "c"));
+
+		assertThat((List<Object>) patched).containsExactly("a", "c");
+	}
+
+	@Test
+	public void testSourceCollectionIsNotModified() {
+		List<String> source = ImmutableList.of("a", "b");
+		Object patched = CollectionPatch.remove("a").apply(source);
+
+		assertThat(patched).isNotSameAs(source);
+		assertThat(source).containsExactly("a", "b");
+	}
+
+	@Test
+	public void testSet() {
+		Object patched = CollectionPatch.addLast("a").apply(ImmutableSet.of("a", "b"));
+
+		assertThat(patched).isInstanceOf(Set.class);
+		assertThat((Collection<Object>) patched).containsExactly("b", "a");
+	}
+
+	@Test
+	public void testNonCollectionValueEvicts() {
+		assertThat(CollectionPatch.addFirst("a").apply("value")).isNull();
+	}
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import com.google.common.base.Functions;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.springmodules.cache.guava.expiry.Expiry;
+import org.springmodules.cache.guava.weigher.Weighers;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class ExpiringGuavaCacheTest {
+
+	/**
+	 * Entries live as many seconds as their value.
+	 */
+	private static final Expiry VALUE_SECONDS = new Expiry() {
+		@Override
+		public long expireAfterWrite(Object key, Object value) {
+			return (value instanceof Integer ? TimeUnit.SECONDS.toNanos((Integer) value) : Long.MAX_VALUE);
+		}
+	};
+
+	private final FakeTicker ticker = new FakeTicker();
+
+	private final ExpiringGuavaCache cache = new ExpiringGuavaCache("name", CacheBuilder.newBuilder(), true,
+			VALUE_SECONDS, ticker);
+
+	@Test
+	public void testExpiry() {
+		cache.put("short", 5);
+		cache.put("long", 60);
+		cache.put("never", "value");
+
+		ticker.advance(10, TimeUnit.SECONDS);
+		assertThat(cache.get("short")).isNull();
+		assertThat(cache.get("long").get()).isEqualTo(60);
+
+		ticker.advance(1, TimeUnit.DAYS);
+		assertThat(cache.get("long")).isNull();
+		assertThat(cache.get("never").get()).isEqualTo("value");
+	}
+
+	@Test
+	public void testPutWithTimeToLive() {
+		cache.put("key", "value", 30, TimeUnit.SECONDS);
+
+		ticker.advance(20, TimeUnit.SECONDS);
+		assertThat(cache.get("key").get()).isEqualTo("value");
+		ticker.advance(20, TimeUnit.SECONDS);
+		assertThat(cache.get("key")).isNull();
+	}
+
+	@Test
+	public void testExpiredEntriesAreRemovedByTimerWheel() {
+		for (int i = 0; i < 100; i++) {
+			cache.put("key" + i, 1 + (i % 10));
+		}
+		cache.put("never", "value");
+		assertThat(cache.getScheduledCount()).isEqualTo(100);
+
+		ticker.advance(5500, TimeUnit.MILLISECONDS);
+		cache.cleanUp();
+		assertThat(cache.getNativeCache().size()).isEqualTo(51);
+		assertThat(cache.getScheduledCount()).isEqualTo(50);
+
+		ticker.advance(10, TimeUnit.SECONDS);
+		cache.put("trigger", "value");
+		assertThat(cache.getNativeCache().asMap().keySet()).containsOnly("never", "trigger");
+		assertThat(cache.getScheduledCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void testRemovedEntriesAreDescheduled() {
+		cache.put("replaced", 5);
+		cache.put("replaced", 10);
+		cache.put("evicted", 5);
+		cache.evict("evicted");
+		cache.putAll(ImmutableMap.of("key1", 5, "key2", 5));
+		assertThat(cache.getScheduledCount()).isEqualTo(3);
+
+		cache.clear();
+		assertThat(cache.getScheduledCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void testPeek() {
+		cache.put("key", 5);
+		assertThat(cache.peek("key").get()).isEqualTo(5);
+
+		ticker.advance(10, TimeUnit.SECONDS);
+		assertThat(cache.peek("key")).isNull();
+	}
+
+	@Test
+	public void testMergeReschedulesEntry() {
+		cache.put("key", 5);
+
+		cache.merge("key", Functions.constant(60));
+		assertThat(cache.getScheduledCount()).isEqualTo(1);
+		ticker.advance(10, TimeUnit.SECONDS);
+		assertThat(cache.get("key").get()).isEqualTo(60);
+
+		cache.merge("key", Functions.constant(null));
+		assertThat(cache.get("key")).isNull();
+		assertThat(cache.getScheduledCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void testSizeEvictedEntriesAreDescheduled() {
+		ExpiringGuavaCache bounded = new ExpiringGuavaCache("name", CacheBuilder.newBuilder().maximumSize(1), true,
+				VALUE_SECONDS, ticker);
+		bounded.put("key1", 5);
+		bounded.put("key2", 5);
+
+		assertThat(bounded.getNativeCache().size()).isEqualTo(1);
+		assertThat(bounded.getScheduledCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testGetWithValueLoader() {
+		Callable<Object> loader = new Callable<Object>() {
+			@Override
+			public Object call() {
+				return 5;
+			}
+		};
+		assertThat(cache.get("key", loader)).isEqualTo(5);
+		assertThat(cache.getScheduledCount()).isEqualTo(1);
+
+		ticker.advance(10, TimeUnit.SECONDS);
+		assertThat(cache.get("key")).isNull();
+	}
+
+	@Test
+	public void testBulkOperations() {
+		cache.putAll(ImmutableMap.of("short", 5, "long", 60));
+		ticker.advance(10, TimeUnit.SECONDS);
+
+		BulkGetResult result = cache.getAll(newArrayList("short", "long", "missing"));
+		assertThat(result.getHits()).isEqualTo(ImmutableMap.<Object, Object>of("long", 60));
+		assertThat(result.getMissingKeys()).containsOnly("short", "missing");
+
+		assertThat(cache.putIfAbsent("short", 5)).isNull();
+		assertThat(cache.putIfAbsent("short", 6).get()).isEqualTo(5);
+		assertThat(cache.getScheduledCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void testNullValues() {
+		cache.put("key", null);
+		assertThat(cache.get("key")).isNotNull();
+		assertThat(cache.get("key").get()).isNull();
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testDisallowNullValues() {
+		new ExpiringGuavaCache("name", CacheBuilder.newBuilder(), false, VALUE_SECONDS).put("key", null);
+	}
+
+	@Test
+	public void testFactoryBeanAndManagerCreateExpiringCaches() throws Exception {
+		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
+		factoryBean.setExpiry(VALUE_SECONDS);
+		factoryBean.afterPropertiesSet();
+		assertThat(factoryBean.getObject()).isInstanceOf(ExpiringGuavaCache.class);
+
+		GuavaCacheManager manager = new GuavaCacheManager();
+		manager.setSpec("maximumSize=10");
+		manager.setExpiry(VALUE_SECONDS);
+		manager.afterPropertiesSet();
+		assertThat(manager.getCache("cache1")).isInstanceOf(ExpiringGuavaCache.class);
+		assertThat(manager.getCache("cache2")).isInstanceOf(ExpiringGuavaCache.class);
+	}
+
+	@Test
+	public void testObjectSizeWeigherWeighsValuesOnly() throws Exception {
+		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
+		factoryBean.setSpec("maximumWeight=1000000");
+		factoryBean.setWeigherName(Weighers.OBJECT_SIZE);
+		factoryBean.setExpiry(new Expiry() {
+			@Override
+			public long expireAfterWrite(Object key, Object value) {
+				return TimeUnit.MINUTES.toNanos(10);
+			}
+		});
+		factoryBean.afterPropertiesSet();
+		GuavaCache weighed = factoryBean.getObject();
+
+		// timers sharing a wheel bucket are not weighed along with each value
+		for (int i = 0; i < 2000; i++) {
+			weighed.put("key" + i, "value" + i);
+		}
+		assertThat(weighed.getNativeCache().size()).isEqualTo(2000);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFactoryBeanRejectsExpiryWithOffHeapTier() throws Exception {
+		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
+		factoryBean.setSpec("maximumSize=10");
+		factoryBean.setExpiry(VALUE_SECONDS);
+		factoryBean.setOffHeapCapacity(1024);
+		factoryBean.afterPropertiesSet();
+	}
+
+	private static class FakeTicker extends Ticker {
+
+		private final AtomicLong nanos = new AtomicLong();
+
+		@Override
+		public long read() {
+			return nanos.get();
+		}
+
+		void advance(long time, TimeUnit unit) {
+			nanos.addAndGet(unit.toNanos(time));
+		}
+
+	}
+
+}
@@ -15,7 +15,22 @@
  */
 package org.springmodules.cache.guava;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springmodules.cache.guava.admission.TinyLfuAdmissionPolicy;
+import org.springmodules.cache.guava.codec.SerializationCodec;
+import org.springmodules.cache.guava.writer.CacheWriter;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static org.fest.assertions.api.Assertions.assertThat;
 
@@ -25,6 +40,9 @@ import static org.fest.assertions.api.Assertions.assertThat;
  */
 public class GuavaCacheFactoryBeanTest {
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Test
 	public void testDefaultConfig() throws Exception {
 		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
@@ -62,6 +80,235 @@ public class GuavaCacheFactoryBeanTest {
 		assertThat(cache.get("key").get()).isNull();
 	}
 
+	@Test
+	public void testStoreValueWrappers() throws Exception {
+		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
+		factoryBean.setStoreValueWrappers(true);
+		factoryBean.afterPropertiesSet();
+		GuavaCache cache = factoryBean.getObject();
+
+		assertThat(cache.isStoreValueWrappers()).isTrue();
+		cache.put("key", "value");
+		assertThat(cache.get("key")).isSameAs(cache.get("key"));
+	}
+
+	@Test
+	public void testExpectedWritersLeavesSpecConcurrencyLevel() throws Exception {
+		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
+		factoryBean.setSpec("maximumSize=2,concurrencyLevel=1");
+		factoryBean.setExpectedWriters(64);
+		factoryBean.afterPropertiesSet();
+		GuavaCache cache = factoryBean.getObject();
+
+		cache.put("key1", "value1");
+		cache.put("key2", "value2");
+		cache.put("key3", "value3");
+		assertThat(cache.getNativeCache().size()).isEqualTo(2);
+	}
+
+	@Test
+	public void testNullValueSpec() throws Exception {
+		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
+		factoryBean.setSpec("maximumSize=1");
+		factoryBean.setNullValueSpec("maximumSize=10,expireAfterWrite=1m");
+		factoryBean.afterPropertiesSet();
+		GuavaCache cache = factoryBean.getObject();
+
+		cache.put("key", "value");
+		cache.put("unknown1", null);
+		cache.put("unknown2", null);
+		assertThat(cache.get("key").get()).isEqualTo("value");
+		assertThat(cache.getNullValueStore().size()).isEqualTo(2);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullValueSpecRequiresNullValues() throws Exception {
+		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
+		factoryBean.setAllowNullValues(false);
+		factoryBean.setNullValueSpec("expireAfterWrite=1m");
+		factoryBean.afterPropertiesSet();
+	}
+
+	@Test
+	public void testTinyLfuAdmission() throws Exception {
+		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
+		factoryBean.setSpec("maximumSize=10");
+		factoryBean.setTinyLfuAdmission(true);
+		factoryBean.afterPropertiesSet();
+		GuavaCache cache = factoryBean.getObject();
+
+		assertThat(cache).isInstanceOf(AdmittingGuavaCache.class);
+		assertThat(((AdmittingGuavaCache) cache).getAdmissionPolicy()).isInstanceOf(TinyLfuAdmissionPolicy.class);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTinyLfuAdmissionRequiresMaximumSize() throws Exception {
+		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
+		factoryBean.setSpec("expireAfterWrite=1m");
+		factoryBean.setTinyLfuAdmission(true);
+		factoryBean.afterPropertiesSet();
+	}
+
+	@Test
+	public void testCacheWriter() throws Exception {
+		final Map<Object, Object> store = new HashMap<Object, Object>();
+		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
+		factoryBean.setCacheWriter(new CacheWriter() {
+			@Override
+			public void writeAll(Map<Object, Object> entries) {
+				store.putAll(entries);
+			}
+
+			@Override
+			public void deleteAll(Collection<Object> keys) {
+				store.keySet().removeAll(keys);
+			}
+		});
+		factoryBean.setWriteDelay(TimeUnit.HOURS.toMillis(1));
+		factoryBean.afterPropertiesSet();
+		GuavaCache cache = factoryBean.getObject();
+
+		assertThat(cache).isInstanceOf(WriteBehindGuavaCache.class);
+		cache.put("key", "value");
+		assertThat(store).isEmpty();
+
+		// pending writes are written on shutdown
+		factoryBean.destroy();
+		assertThat(store).containsKey("key");
+	}
+
+	@Test
+	public void testWeigherName() throws Exception {
+		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
+		factoryBean.setSpec("maximumWeight=10,concurrencyLevel=1");
+		factoryBean.setWeigherName("collectionSize");
+		factoryBean.afterPropertiesSet();
+		GuavaCache cache = factoryBean.getObject();
+
+		cache.put("key1", ImmutableList.of(1, 2, 3, 4, 5, 6));
+		cache.put("key2", ImmutableList.of(1, 2, 3));
+		assertThat(cache.getNativeCache().size()).isEqualTo(2);
+		cache.put("key3", ImmutableList.of(1, 2, 3));
+		assertThat(cache.get("key1")).isNull();
+		assertThat(cache.getNativeCache().size()).isEqualTo(2);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWeigherRequiresMaximumWeight() throws Exception {
+		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
+		factoryBean.setSpec("maximumSize=10");
+		factoryBean.setWeigherName("collectionSize");
+		factoryBean.afterPropertiesSet();
+	}
+
+	@Test
+	public void testValueCodec() throws Exception {
+		SerializationCodec codec = new SerializationCodec();
+		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
+		factoryBean.setValueCodec(codec);
+		factoryBean.afterPropertiesSet();
+		GuavaCache cache = factoryBean.getObject();
+
+		assertThat(cache.getValueCodec()).isSameAs(codec);
+		cache.put("key", "value");
+		assertThat(cache.getNativeCache().getIfPresent("key")).isInstanceOf(byte[].class);
+		assertThat(cache.get("key").get()).isEqualTo("value");
+	}
+
+	@Test
+	public void testOffHeapCapacity() throws Exception {
+		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
+		factoryBean.setSpec("maximumSize=1");
+		factoryBean.setOffHeapCapacity(1024 * 1024);
+		factoryBean.afterPropertiesSet();
+		GuavaCache cache = factoryBean.getObject();
+
+		assertThat(cache).isInstanceOf(TieredGuavaCache.class);
+		assertThat(((TieredGuavaCache) cache).getOffHeapStore().getCapacity()).isEqualTo(1024 * 1024);
+		cache.put("key1", "value1");
+		cache.put("key2", "value2");
+		assertThat(cache.get("key1").get()).isEqualTo("value1");
+	}
+
+	@Test
+	public void testStatisticsMBean() throws Exception {
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
+		factoryBean.setBeanName("cacheName");
+		factoryBean.setRecordStats(true);
+		factoryBean.setMbeanServer(server);
+		factoryBean.setMbeanDomain("test");
+		factoryBean.afterPropertiesSet();
+		GuavaCache cache = factoryBean.getObject();
+
+		cache.get("key");
+		assertThat(cache.getStats().missCount()).isEqualTo(1);
+
+		ObjectName objectName = new ObjectName("test:type=GuavaCache,name=\"cacheName\"");
+		assertThat(server.getAttribute(objectName, "MissCount")).isEqualTo(1L);
+
+		factoryBean.destroy();
+		assertThat(server.isRegistered(objectName)).isFalse();
+	}
+
+	@Test
+	public void testTagExpression() throws Exception {
+		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
+		factoryBean.setTagExpression("'user:' + #key");
+		factoryBean.afterPropertiesSet();
+
+		GuavaCache cache = factoryBean.getObject();
+		assertThat(cache).isInstanceOf(TaggedGuavaCache.class);
+		cache.put("alice", "Alice");
+		((TaggedGuavaCache) cache).evictByTag("user:alice");
+		assertThat(cache.get("alice")).isNull();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTagExpressionWithOffHeapCapacity() throws Exception {
+		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
+		factoryBean.setSpec("maximumSize=10");
+		factoryBean.setTagExpression("'user:' + #key");
+		factoryBean.setOffHeapCapacity(1024 * 1024);
+		factoryBean.afterPropertiesSet();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testStoreValueWrappersWithCacheWriter() throws Exception {
+		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
+		factoryBean.setCacheWriter(new CacheWriter() {
+			@Override
+			public void writeAll(Map<Object, Object> entries) {
+			}
+
+			@Override
+			public void deleteAll(Collection<Object> keys) {
+			}
+		});
+		factoryBean.setStoreValueWrappers(true);
+		factoryBean.afterPropertiesSet();
+	}
+
+	@Test
+	public void testSnapshot() throws Exception {
+		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
+		factoryBean.setName("cache");
+		factoryBean.setSnapshotDirectory(folder.getRoot());
+		factoryBean.afterPropertiesSet();
+		factoryBean.getObject().put("key", "value");
+		factoryBean.destroy();
+		assertThat(folder.getRoot().list()).containsOnly("cache.snapshot");
+
+		GuavaCacheFactoryBean restarted = new GuavaCacheFactoryBean();
+		restarted.setName("cache");
+		restarted.setSnapshotDirectory(folder.getRoot());
+		restarted.afterPropertiesSet();
+		for (int i = 0; i < 50 && folder.getRoot().list().length > 0; i++) {
+			Uninterruptibles.sleepUninterruptibly(20, TimeUnit.MILLISECONDS);
+		}
+		assertThat(restarted.getObject().get("key").get()).isEqualTo("value");
+	}
+
 	@Test
 	public void testSingleton() throws Exception {
 		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
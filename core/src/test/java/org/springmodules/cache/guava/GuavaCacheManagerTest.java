@@ -16,12 +16,26 @@
 package org.springmodules.cache.guava;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.cache.Cache;
 
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import static com.google.common.collect.Lists.newArrayList;
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.fest.assertions.api.Assertions.extractProperty;
 
@@ -31,6 +45,9 @@ import static org.fest.assertions.api.Assertions.extractProperty;
  */
 public class GuavaCacheManagerTest {
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Test
 	public void testGetNamesStaticCaches() {
 		Collection<GuavaCache> caches = ImmutableList.of(
@@ -114,4 +131,314 @@ public class GuavaCacheManagerTest {
 		assertThat(cache.getNativeCache().size()).isZero();
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testTransactionAwareStaticCaches() {
+		GuavaCache cache = new GuavaCache("cache1");
+		GuavaCacheManager manager = new GuavaCacheManager();
+		manager.setCaches(ImmutableList.of(cache));
+		manager.setTransactionAware(true);
+		manager.afterPropertiesSet();
+
+		assertThat(manager.getCache("cache1")).isInstanceOf(TransactionAwareGuavaCache.class);
+		assertThat(GuavaCaches.unwrap(manager.getCache("cache1"))).isSameAs(cache);
+	}
+
+	@Test
+	public void testGetCacheDynamicCachesPerCacheSpecs() {
+		GuavaCacheManager manager = new GuavaCacheManager();
+		manager.setSpec("maximumSize=4");
+		manager.setSpecs(ImmutableMap.of(
+				"users-cache", "maximumSize=1",
+				"posts-*", "maximumSize=2",
+				"*-cache", "maximumSize=3"
+		));
+		manager.afterPropertiesSet();
+
+		assertThat(manager.resolveSpec("users-cache")).isEqualTo("maximumSize=1");
+		assertThat(manager.resolveSpec("posts-cache")).isEqualTo("maximumSize=2");
+		assertThat(manager.resolveSpec("other-cache")).isEqualTo("maximumSize=3");
+		assertThat(manager.resolveSpec("cache")).isEqualTo("maximumSize=4");
+
+		assertThat(fill((GuavaCache) manager.getCache("users-cache"))).isEqualTo(1);
+		assertThat(fill((GuavaCache) manager.getCache("posts-cache"))).isEqualTo(2);
+		assertThat(fill((GuavaCache) manager.getCache("posts-archive"))).isEqualTo(2);
+		assertThat(fill((GuavaCache) manager.getCache("other-cache"))).isEqualTo(3);
+		assertThat(fill((GuavaCache) manager.getCache("cache"))).isEqualTo(4);
+	}
+
+	private static long fill(GuavaCache cache) {
+		for (int i = 0; i < 10; i++) {
+			cache.put("key" + i, "value" + i);
+		}
+		return cache.getNativeCache().size();
+	}
+
+	@Test
+	public void testGetCacheDynamicCachesConcurrently() throws Exception {
+		final GuavaCacheManager manager = new GuavaCacheManager();
+		manager.afterPropertiesSet();
+
+		final int cacheCount = 1000;
+		final CountDownLatch start = new CountDownLatch(1);
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Cache[]>> results = newArrayList();
+			for (int i = 0; i < threads; i++) {
+				results.add(executor.submit(new Callable<Cache[]>() {
+					@Override
+					public Cache[] call() throws Exception {
+						start.await();
+						Cache[] caches = new Cache[cacheCount];
+						for (int j = 0; j < cacheCount; j++) {
+							caches[j] = manager.getCache("cache" + j);
+						}
+						return caches;
+					}
+				}));
+			}
+			start.countDown();
+
+			Cache[] expected = results.get(0).get();
+			for (Future<Cache[]> result : results) {
+				Cache[] caches = result.get();
+				for (int j = 0; j < cacheCount; j++) {
+					assertThat(caches[j]).isSameAs(expected[j]);
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(manager.getCacheNames()).hasSize(cacheCount);
+	}
+
+	@Test
+	public void testTransactionAwareDynamicCaches() {
+		GuavaCacheManager manager = new GuavaCacheManager();
+		manager.setTransactionAware(true);
+		manager.afterPropertiesSet();
+
+		Cache cache = manager.getCache("cache1");
+		assertThat(cache).isInstanceOf(TransactionAwareGuavaCache.class);
+		assertThat(manager.getCache("cache1")).isSameAs(cache);
+	}
+
+	@Test
+	public void testNearCaches() {
+		GuavaCache staticCache = new GuavaCache("static");
+		GuavaCacheManager manager = new GuavaCacheManager();
+		manager.setCaches(ImmutableList.of(staticCache));
+		manager.setTransactionAware(true);
+		manager.setNearCacheSize(8);
+		manager.afterPropertiesSet();
+
+		for (String name : ImmutableList.of("static", "dynamic")) {
+			Cache cache = manager.getCache(name);
+			assertThat(cache).isInstanceOf(TransactionAwareGuavaCache.class);
+			assertThat(((TransactionAwareGuavaCache) cache).getTargetCache()).isInstanceOf(NearCache.class);
+			assertThat(GuavaCaches.unwrap(cache)).isNotNull();
+		}
+		assertThat(GuavaCaches.unwrap(manager.getCache("static"))).isSameAs(staticCache);
+	}
+
+	@Test
+	public void testEvictByTag() {
+		GuavaCacheManager manager = new GuavaCacheManager();
+		manager.setSpec("maximumSize=10");
+		manager.setTagExpression("'user:' + #key");
+		manager.afterPropertiesSet();
+
+		Cache users = manager.getCache("users");
+		Cache posts = manager.getCache("posts");
+		assertThat(GuavaCaches.unwrap(users)).isInstanceOf(TaggedGuavaCache.class);
+		users.put("alice", "Alice");
+		users.put("bob", "Bob");
+		posts.put("alice", ImmutableList.of("post"));
+
+		manager.evictByTag("user:alice");
+
+		assertThat(users.get("alice")).isNull();
+		assertThat(posts.get("alice")).isNull();
+		assertThat(users.get("bob")).isNotNull();
+	}
+
+	@Test
+	public void testEvictByTagInvalidatesNearCaches() {
+		GuavaCacheManager manager = new GuavaCacheManager();
+		manager.setSpec("maximumSize=10");
+		manager.setTagExpression("'user:' + #key");
+		manager.setNearCacheSize(8);
+		manager.afterPropertiesSet();
+
+		Cache users = manager.getCache("users");
+		users.put("alice", "Alice");
+		assertThat(users.get("alice").get()).isEqualTo("Alice");
+
+		manager.evictByTag("user:alice");
+
+		assertThat(users.get("alice")).isNull();
+	}
+
+	@Test
+	public void testSnapshots() {
+		GuavaCacheManager manager = new GuavaCacheManager();
+		manager.setCaches(ImmutableList.of(new GuavaCache("static")));
+		manager.setSnapshotDirectory(folder.getRoot());
+		manager.afterPropertiesSet();
+		manager.getCache("static").put("key", "static-value");
+		manager.getCache("dynamic").put("key", "dynamic-value");
+		manager.destroy();
+
+		// restored in the background
+		GuavaCacheManager restarted = new GuavaCacheManager();
+		restarted.setCaches(ImmutableList.of(new GuavaCache("static")));
+		restarted.setSnapshotDirectory(folder.getRoot());
+		restarted.afterPropertiesSet();
+		Cache staticCache = restarted.getCache("static");
+		Cache dynamicCache = restarted.getCache("dynamic");
+		for (int i = 0; i < 50 && folder.getRoot().list().length > 0; i++) {
+			Uninterruptibles.sleepUninterruptibly(20, TimeUnit.MILLISECONDS);
+		}
+		assertThat(staticCache.get("key").get()).isEqualTo("static-value");
+		assertThat(dynamicCache.get("key").get()).isEqualTo("dynamic-value");
+	}
+
+	@Test
+	public void testStatisticsMBeans() throws Exception {
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+		GuavaCacheManager manager = new GuavaCacheManager();
+		manager.setCaches(ImmutableList.of(new GuavaCache("static")));
+		manager.setRecordStats(true);
+		manager.setMbeanServer(server);
+		manager.afterPropertiesSet();
+
+		ObjectName staticName = new ObjectName("org.springmodules.cache.guava:type=GuavaCache,name=\"static\"");
+		ObjectName dynamicName = new ObjectName("org.springmodules.cache.guava:type=GuavaCache,name=\"dynamic\"");
+		assertThat(server.isRegistered(staticName)).isTrue();
+		assertThat(server.isRegistered(dynamicName)).isFalse();
+
+		Cache cache = manager.getCache("dynamic");
+		assertThat(manager.getCache("dynamic")).isSameAs(cache);
+		assertThat(server.isRegistered(dynamicName)).isTrue();
+
+		cache.put("key", "value");
+		cache.get("key");
+		cache.get("missing");
+		assertThat(server.getAttribute(dynamicName, "HitCount")).isEqualTo(1L);
+		assertThat(server.getAttribute(dynamicName, "MissCount")).isEqualTo(1L);
+
+		manager.destroy();
+		assertThat(server.isRegistered(staticName)).isFalse();
+		assertThat(server.isRegistered(dynamicName)).isFalse();
+	}
+
+	@Test
+	public void testLatencyMBeans() throws Exception {
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+		GuavaCacheManager manager = new GuavaCacheManager();
+		manager.setTransactionAware(true);
+		manager.setRecordLatency(true);
+		manager.setMbeanServer(server);
+		manager.afterPropertiesSet();
+
+		Cache cache = manager.getCache("cache1");
+		assertThat(cache).isInstanceOf(InstrumentedCache.class);
+		assertThat(((InstrumentedCache) cache).getTargetCache()).isInstanceOf(TransactionAwareGuavaCache.class);
+		assertThat(GuavaCaches.unwrap(cache)).isNotNull();
+
+		cache.put("key", "value");
+		ObjectName latencyName = new ObjectName("org.springmodules.cache.guava:type=CacheLatency,name=\"cache1\"");
+		assertThat(server.getAttribute(latencyName, "PutCount")).isEqualTo(1L);
+		assertThat(server.isRegistered(new ObjectName("org.springmodules.cache.guava:type=GuavaCache,name=\"cache1\""))).isTrue();
+
+		manager.destroy();
+		assertThat(server.isRegistered(latencyName)).isFalse();
+	}
+
+	@Test
+	public void testWeigherAppliesToMaximumWeightSpecs() {
+		GuavaCacheManager manager = new GuavaCacheManager();
+		manager.setSpec("maximumSize=2");
+		manager.setSpecs(ImmutableMap.of("weighed", "maximumWeight=10,concurrencyLevel=1"));
+		manager.setWeigherName("collectionSize");
+		manager.afterPropertiesSet();
+
+		Cache weighed = manager.getCache("weighed");
+		weighed.put("key1", ImmutableList.of(1, 2, 3, 4, 5, 6));
+		weighed.put("key2", ImmutableList.of(1, 2, 3, 4, 5, 6));
+		assertThat(((GuavaCache) weighed).getNativeCache().size()).isEqualTo(1);
+
+		Cache sized = manager.getCache("sized");
+		sized.put("key1", ImmutableList.of(1, 2, 3, 4, 5, 6));
+		sized.put("key2", ImmutableList.of(1, 2, 3, 4, 5, 6));
+		assertThat(((GuavaCache) sized).getNativeCache().size()).isEqualTo(2);
+	}
+
+	@Test
+	public void testExpectedWritersLeavesSpecConcurrencyLevel() {
+		GuavaCacheManager manager = new GuavaCacheManager();
+		manager.setSpec("maximumSize=2");
+		manager.setSpecs(ImmutableMap.of("pinned", "maximumSize=2,concurrencyLevel=1"));
+		manager.setExpectedWriters(64);
+		manager.afterPropertiesSet();
+
+		for (String name : ImmutableList.of("pinned", "derived")) {
+			Cache cache = manager.getCache(name);
+			cache.put("key1", "value1");
+			cache.put("key2", "value2");
+			cache.put("key3", "value3");
+			assertThat(((GuavaCache) cache).getNativeCache().size()).isEqualTo(2);
+		}
+	}
+
+	@Test
+	public void testNullValueSpec() {
+		GuavaCacheManager manager = new GuavaCacheManager();
+		manager.setSpec("maximumSize=1");
+		manager.setNullValueSpec("maximumSize=10,expireAfterWrite=1m");
+		manager.afterPropertiesSet();
+
+		Cache cache = manager.getCache("cache");
+		cache.put("key", "value");
+		cache.put("unknown", null);
+		assertThat(cache.get("key").get()).isEqualTo("value");
+		assertThat(cache.get("unknown").get()).isNull();
+		assertThat(((GuavaCache) cache).getNullValueStore().size()).isEqualTo(1);
+	}
+
+	@Test
+	public void testNullValueStoreRecordsStats() {
+		GuavaCacheManager manager = new GuavaCacheManager();
+		manager.setNullValueSpec("maximumSize=10");
+		manager.setRecordStats(true);
+		manager.afterPropertiesSet();
+
+		GuavaCache cache = (GuavaCache) manager.getCache("cache");
+		cache.put("unknown", null);
+		cache.get("unknown");
+		assertThat(cache.getNullValueStore().stats().hitCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testTinyLfuAdmissionAppliesToMaximumSizeSpecs() {
+		GuavaCacheManager manager = new GuavaCacheManager();
+		manager.setSpec("maximumSize=10");
+		manager.setSpecs(ImmutableMap.of("unbounded", "expireAfterWrite=1m"));
+		manager.setTinyLfuAdmission(true);
+		manager.afterPropertiesSet();
+
+		assertThat(manager.getCache("bounded")).isInstanceOf(AdmittingGuavaCache.class);
+		assertThat(manager.getCache("unbounded")).isNotInstanceOf(AdmittingGuavaCache.class);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testStoreValueWrappersWithTagExpression() {
+		GuavaCacheManager manager = new GuavaCacheManager();
+		manager.setTagExpression("'user:' + #key");
+		manager.setStoreValueWrappers(true);
+		manager.afterPropertiesSet();
+	}
+
+}
@@ -15,16 +15,35 @@
  */
 package org.springmodules.cache.guava;
 
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheBuilderSpec;
 import org.junit.Test;
 import org.springframework.cache.Cache;
+import org.springframework.core.serializer.support.SerializationFailedException;
+import org.springmodules.cache.guava.codec.SerializationCodec;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.util.concurrent.Uninterruptibles.sleepUninterruptibly;
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
 /**
  * @author Omar Irbouh
@@ -63,6 +82,58 @@ public class GuavaCacheTest {
 		assertThat(cache.get("key")).isNull();
 	}
 
+	@Test
+	public void testPeek() {
+		GuavaCache cache = new GuavaCache("name", CacheBuilder.newBuilder().recordStats(), true);
+		cache.put("key", "value");
+		cache.put("null", null);
+
+		assertThat(cache.peek("key").get()).isEqualTo("value");
+		assertThat(cache.peek("null").get()).isNull();
+		assertThat(cache.peek("absent")).isNull();
+		assertThat(cache.getStats().requestCount()).isZero();
+	}
+
+	@Test
+	public void testMerge() {
+		GuavaCache cache = new GuavaCache("name");
+		cache.put("key", 1);
+
+		Cache.ValueWrapper merged = cache.merge("key", new Function<Object, Object>() {
+			@Override
+			public Object apply(Object input) {
+				return (Integer) input + 1;
+			}
+		});
+		assertThat(merged.get()).isEqualTo(2);
+		assertThat(cache.get("key").get()).isEqualTo(2);
+	}
+
+	@Test
+	public void testMergeAbsent() {
+		GuavaCache cache = new GuavaCache("name");
+
+		assertThat(cache.merge("key", Functions.constant("value"))).isNull();
+		assertThat(cache.get("key")).isNull();
+	}
+
+	@Test
+	public void testMergeToNullEvicts() {
+		GuavaCache cache = new GuavaCache("name");
+		cache.put("key", "value");
+
+		assertThat(cache.merge("key", Functions.constant(null))).isNull();
+		assertThat(cache.get("key")).isNull();
+	}
+
+	@Test
+	public void testMergeNullValue() {
+		GuavaCache cache = new GuavaCache("name");
+		cache.put("key", null);
+
+		assertThat(cache.merge("key", Functions.constant("value")).get()).isEqualTo("value");
+	}
+
 	@Test
 	public void testPut() {
 		GuavaCache cache = new GuavaCache("name");
@@ -127,4 +198,350 @@ public class GuavaCacheTest {
 		assertThat(cache.get("key")).isNull();
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testNullValueWrapperIsShared() {
+		Cache cache = new GuavaCache("name", true);
+		cache.put("key1", null);
+		cache.put("key2", null);
+
+		assertThat(cache.get("key1")).isSameAs(cache.get("key2"));
+	}
+
+	@Test
+	public void testStoreValueWrappers() {
+		GuavaCache cache = new GuavaCache("name", CacheBuilder.newBuilder(), true, true);
+		cache.put("key", "value");
+		cache.put("null", null);
+
+		assertThat(cache.isStoreValueWrappers()).isTrue();
+		assertThat(cache.getNativeCache().getIfPresent("key")).isInstanceOf(Cache.ValueWrapper.class);
+		assertThat(cache.get("key").get()).isEqualTo("value");
+		assertThat(cache.get("key")).isSameAs(cache.get("key"));
+		assertThat(cache.get("null").get()).isNull();
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testStoreValueWrappersDisallowNullValues() {
+		GuavaCache cache = new GuavaCache("name", CacheBuilder.newBuilder(), false, true);
+
+		cache.put("key", null);
+	}
+
+	@Test
+	public void testGetHitDoesNotAllocate() {
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+		assumeTrue(allocationMXBean.isThreadAllocatedMemorySupported());
+		allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+
+		GuavaCache cache = new GuavaCache("name", CacheBuilder.newBuilder(), true, true);
+		Object key = "key";
+		cache.put(key, "value");
+
+		int iterations = 100000;
+		long threadId = Thread.currentThread().getId();
+		Object last = null;
+		// warm up
+		for (int i = 0; i < iterations; i++) {
+			last = cache.get(key);
+		}
+		long before = allocationMXBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < iterations; i++) {
+			last = cache.get(key);
+		}
+		long allocated = allocationMXBean.getThreadAllocatedBytes(threadId) - before;
+
+		assertThat(last).isNotNull();
+		// tolerate the measurement overhead, but not one object per hit
+		assertThat(allocated / iterations).isZero();
+	}
+
+	@Test
+	public void testGetWithValueLoader() {
+		GuavaCache cache = new GuavaCache("name");
+		cache.put("key", "value");
+
+		assertThat(cache.get("key", new Callable<String>() {
+			@Override
+			public String call() {
+				throw new AssertionError("should not be invoked");
+			}
+		})).isEqualTo("value");
+
+		assertThat(cache.get("other", new Callable<String>() {
+			@Override
+			public String call() {
+				return "loaded";
+			}
+		})).isEqualTo("loaded");
+		assertThat(cache.get("other").get()).isEqualTo("loaded");
+	}
+
+	@Test
+	public void testGetWithValueLoaderNullValue() {
+		Callable<Object> nullLoader = new Callable<Object>() {
+			@Override
+			public Object call() {
+				return null;
+			}
+		};
+
+		GuavaCache allowNulls = new GuavaCache("name", true);
+		assertThat(allowNulls.get("key", nullLoader)).isNull();
+		assertThat(allowNulls.get("key")).isNotNull();
+
+		GuavaCache disallowNulls = new GuavaCache("name", false);
+		assertThat(disallowNulls.get("key", nullLoader)).isNull();
+		assertThat(disallowNulls.get("key")).isNull();
+	}
+
+	@Test
+	public void testGetWithValueLoaderFailure() {
+		GuavaCache cache = new GuavaCache("name");
+		final IllegalStateException failure = new IllegalStateException();
+		try {
+			cache.get("key", new Callable<Object>() {
+				@Override
+				public Object call() {
+					throw failure;
+				}
+			});
+			fail("expected exception");
+		}
+		catch (GuavaCache.ValueRetrievalException ex) {
+			assertThat(ex.getKey()).isEqualTo("key");
+			assertThat(ex.getCause()).isSameAs(failure);
+		}
+		assertThat(cache.get("key")).isNull();
+	}
+
+	@Test
+	public void testGetWithValueLoaderSharesConcurrentLoads() throws Exception {
+		final GuavaCache cache = new GuavaCache("name");
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			Callable<Object> caller = new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					start.await();
+					return cache.get("key", new Callable<Object>() {
+						@Override
+						public Object call() {
+							loads.incrementAndGet();
+							sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
+							return "value";
+						}
+					});
+				}
+			};
+			Future<?>[] results = new Future<?>[threads];
+			for (int i = 0; i < threads; i++) {
+				results[i] = executor.submit(caller);
+			}
+			start.countDown();
+			for (Future<?> result : results) {
+				assertThat(result.get()).isEqualTo("value");
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(loads.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void testStoreByValue() {
+		GuavaCache cache = new GuavaCache("name", CacheBuilder.newBuilder(), true, new SerializationCodec());
+		List<String> value = new ArrayList<String>();
+		value.add("value1");
+
+		cache.put("key", value);
+		value.add("value2");
+		assertThat(cache.getNativeCache().getIfPresent("key")).isInstanceOf(byte[].class);
+
+		@SuppressWarnings("unchecked")
+		List<String> cached = (List<String>) cache.get("key").get();
+		assertThat(cached).containsExactly("value1");
+		cached.add("value3");
+		assertThat(cache.get("key").get()).isEqualTo(cached.subList(0, 1));
+		assertThat(cache.get("key").get()).isNotSameAs(cache.get("key").get());
+
+		cache.put("null", null);
+		assertThat(cache.get("null").get()).isNull();
+	}
+
+	@Test
+	public void testStoreByValueWithValueLoader() {
+		GuavaCache cache = new GuavaCache("name", CacheBuilder.newBuilder(), true, new SerializationCodec());
+		final List<String> value = new ArrayList<String>();
+		value.add("value1");
+
+		List<String> loaded = cache.get("key", new Callable<List<String>>() {
+			@Override
+			public List<String> call() throws Exception {
+				return value;
+			}
+		});
+		assertThat(loaded).isEqualTo(value).isNotSameAs(value);
+		assertThat(cache.getNativeCache().getIfPresent("key")).isInstanceOf(byte[].class);
+	}
+
+	@Test(expected = SerializationFailedException.class)
+	public void testStoreByValueNotSerializable() {
+		GuavaCache cache = new GuavaCache("name", CacheBuilder.newBuilder(), true, new SerializationCodec());
+		cache.put("key", new Object());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testStoreByValueWithStoreValueWrappers() {
+		new GuavaCache("name", CacheBuilder.newBuilder().build(), true, true, new SerializationCodec());
+	}
+
+	@Test
+	public void testGetAll() {
+		GuavaCache cache = new GuavaCache("name");
+		cache.put("key1", "value1");
+		cache.put("key2", null);
+		cache.put("key4", "value4");
+
+		BulkGetResult result = cache.getAll(newArrayList("key4", "key1", "key2", "key3", "key5", "key1"));
+
+		assertThat(result.getHits().keySet()).containsExactly("key4", "key1", "key2");
+		assertThat(result.getHits().get("key1")).isEqualTo("value1");
+		assertThat(result.getHits().get("key2")).isNull();
+		assertThat(result.getMissingKeys()).containsExactly("key3", "key5");
+		assertThat(result.isComplete()).isFalse();
+		assertThat(cache.getAll(newArrayList("key1")).isComplete()).isTrue();
+	}
+
+	@Test
+	public void testGetAllStoreValueWrappers() {
+		GuavaCache cache = new GuavaCache("name", CacheBuilder.newBuilder(), true, true);
+		cache.put("key1", "value1");
+
+		BulkGetResult result = cache.getAll(newArrayList("key1", "key2"));
+		assertThat(result.getHits().get("key1")).isEqualTo("value1");
+		assertThat(result.getMissingKeys()).containsOnly("key2");
+	}
+
+	@Test
+	public void testPutIfAbsent() {
+		GuavaCache cache = new GuavaCache("name");
+
+		assertThat(cache.putIfAbsent("key1", "value1")).isNull();
+		assertThat(cache.putIfAbsent("key1", "other").get()).isEqualTo("value1");
+		assertThat(cache.putIfAbsent("key2", null)).isNull();
+		assertThat(cache.putIfAbsent("key2", "other").get()).isNull();
+		assertThat(cache.get("key1").get()).isEqualTo("value1");
+	}
+
+	@Test
+	public void testPutAll() {
+		GuavaCache cache = new GuavaCache("name", CacheBuilder.newBuilder(), true, new SerializationCodec());
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		values.put("key1", "value1");
+		values.put("key2", null);
+
+		cache.putAll(values);
+
+		assertThat(cache.get("key1").get()).isEqualTo("value1");
+		assertThat(cache.get("key2").get()).isNull();
+		assertThat(cache.getNativeCache().size()).isEqualTo(2);
+	}
+
+	@Test
+	public void testEvictAll() {
+		GuavaCache cache = new GuavaCache("name");
+		cache.put("key1", "value1");
+		cache.put("key2", "value2");
+		cache.put("key3", "value3");
+
+		cache.evictAll(newArrayList("key1", "key3", "key4"));
+
+		assertThat(cache.get("key1")).isNull();
+		assertThat(cache.get("key2").get()).isEqualTo("value2");
+		assertThat(cache.get("key3")).isNull();
+	}
+
+	@Test
+	public void testNullValueStoreKeepsValues() {
+		GuavaCache cache = new GuavaCache("name", CacheBuilder.newBuilder().maximumSize(1),
+				CacheBuilder.newBuilder().maximumSize(2), false);
+		cache.put("key", "value");
+		cache.put("unknown1", null);
+		cache.put("unknown2", null);
+		cache.put("unknown3", null);
+
+		assertThat(cache.get("key").get()).isEqualTo("value");
+		assertThat(cache.get("unknown3").get()).isNull();
+		assertThat(cache.getNativeCache().size()).isEqualTo(1);
+		assertThat(cache.getNullValueStore().size()).isEqualTo(2);
+	}
+
+	@Test
+	public void testNullValueStoreReplacedByValue() {
+		GuavaCache cache = new GuavaCache("name", CacheBuilder.newBuilder(), CacheBuilder.newBuilder(), false);
+		cache.put("key", null);
+		cache.put("key", "value");
+		assertThat(cache.get("key").get()).isEqualTo("value");
+		assertThat(cache.getNullValueStore().size()).isEqualTo(0);
+
+		cache.put("key", null);
+		assertThat(cache.get("key").get()).isNull();
+		assertThat(cache.getNativeCache().size()).isEqualTo(0);
+	}
+
+	@Test
+	public void testNullValueStoreWithValueLoader() {
+		final AtomicInteger calls = new AtomicInteger();
+		Callable<Object> nullLoader = new Callable<Object>() {
+			@Override
+			public Object call() {
+				calls.incrementAndGet();
+				return null;
+			}
+		};
+
+		GuavaCache cache = new GuavaCache("name", CacheBuilder.newBuilder(), CacheBuilder.newBuilder(), false);
+		assertThat(cache.get("key", nullLoader)).isNull();
+		assertThat(cache.get("key", nullLoader)).isNull();
+		assertThat(calls.get()).isEqualTo(1);
+		assertThat(cache.getNullValueStore().size()).isEqualTo(1);
+		assertThat(cache.getNativeCache().size()).isEqualTo(0);
+	}
+
+	@Test
+	public void testNullValueStoreBulkOperations() {
+		GuavaCache cache = new GuavaCache("name", CacheBuilder.newBuilder(), CacheBuilder.newBuilder(), true);
+		Map<Object, Object> values = new LinkedHashMap<Object, Object>();
+		values.put("key1", "value1");
+		values.put("key2", null);
+		cache.putAll(values);
+
+		BulkGetResult result = cache.getAll(newArrayList("key1", "key2", "key3"));
+		assertThat(result.getHits()).hasSize(2);
+		assertThat(result.getHits().get("key1")).isEqualTo("value1");
+		assertThat(result.getHits().containsKey("key2")).isTrue();
+		assertThat(result.getMissingKeys()).containsOnly("key3");
+
+		assertThat(cache.putIfAbsent("key2", "value2").get()).isNull();
+		cache.evictAll(newArrayList("key1", "key2"));
+		assertThat(cache.get("key2")).isNull();
+		assertThat(cache.putIfAbsent("key2", null)).isNull();
+		assertThat(cache.putIfAbsent("key2", null)).isNotNull();
+
+		cache.clear();
+		assertThat(cache.get("key2")).isNull();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullValueStoreRequiresNullValues() {
+		new GuavaCache("name", CacheBuilder.newBuilder().build(), CacheBuilder.newBuilder().build(), false, false, null);
+	}
+
+}
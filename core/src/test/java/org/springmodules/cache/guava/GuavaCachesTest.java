@@ -0,0 +1,71 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class GuavaCachesTest {
+
+	private final int processors = Runtime.getRuntime().availableProcessors();
+
+	@Test
+	public void testConcurrencyLevelDefaultsToProcessors() {
+		assertThat(GuavaCaches.concurrencyLevel(0)).isEqualTo(Math.max(GuavaCaches.DEFAULT_CONCURRENCY_LEVEL, processors));
+	}
+
+	@Test
+	public void testConcurrencyLevelBoundedByProcessors() {
+		assertThat(GuavaCaches.concurrencyLevel(processors * 8)).isEqualTo(GuavaCaches.concurrencyLevel(0));
+	}
+
+	@Test
+	public void testConcurrencyLevelNotBelowGuavaDefault() {
+		assertThat(GuavaCaches.concurrencyLevel(1)).isEqualTo(GuavaCaches.DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	@Test
+	public void testHasOption() {
+		assertThat(GuavaCaches.hasOption("maximumSize=10, concurrencyLevel=8", "concurrencyLevel")).isTrue();
+		assertThat(GuavaCaches.hasOption("maximumSize=10,softValues", "softValues")).isTrue();
+		assertThat(GuavaCaches.hasOption("maximumSize=10", "maximumWeight")).isFalse();
+		assertThat(GuavaCaches.hasOption(null, "maximumSize")).isFalse();
+	}
+
+	@Test
+	public void testGetOption() {
+		assertThat(GuavaCaches.getOption("maximumSize = 10, concurrencyLevel=8", "maximumSize")).isEqualTo("10");
+		assertThat(GuavaCaches.getOption("maximumSize=10,softValues", "softValues")).isEmpty();
+		assertThat(GuavaCaches.getOption("maximumSize=10", "maximumWeight")).isNull();
+	}
+
+	@Test
+	public void testGetDurationNanos() {
+		assertThat(GuavaCaches.getDurationNanos("maximumSize=10,expireAfterWrite=10m", "expireAfterWrite"))
+				.isEqualTo(TimeUnit.MINUTES.toNanos(10));
+		assertThat(GuavaCaches.getDurationNanos("expireAfterAccess = 2d", "expireAfterAccess"))
+				.isEqualTo(TimeUnit.DAYS.toNanos(2));
+		assertThat(GuavaCaches.getDurationNanos("maximumSize=10", "expireAfterWrite")).isZero();
+	}
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import org.junit.Test;
+import org.springmodules.cache.guava.jmx.GuavaCacheMBeanRegistrar;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class InstrumentedCacheTest {
+
+	@Test
+	public void testDelegation() {
+		GuavaCache target = new GuavaCache("cache");
+		InstrumentedCache cache = new InstrumentedCache(target);
+
+		assertThat(cache.getName()).isEqualTo("cache");
+		assertThat(cache.getNativeCache()).isSameAs(target.getNativeCache());
+		assertThat(GuavaCaches.unwrap(cache)).isSameAs(target);
+
+		cache.put("key1", "value1");
+		cache.put("key2", "value2");
+		assertThat(cache.get("key1").get()).isEqualTo("value1");
+		cache.evict("key1");
+		assertThat(cache.get("key1")).isNull();
+		cache.clear();
+		assertThat(target.get("key2")).isNull();
+	}
+
+	@Test
+	public void testLatencies() {
+		InstrumentedCache cache = new InstrumentedCache(new GuavaCache("cache"));
+
+		cache.put("key", "value");
+		cache.get("key");
+		cache.get("missing");
+		cache.evict("key");
+
+		assertThat(cache.getGetLatency().snapshot().getCount()).isEqualTo(2);
+		assertThat(cache.getPutLatency().snapshot().getCount()).isEqualTo(1);
+		assertThat(cache.getEvictLatency().snapshot().getCount()).isEqualTo(1);
+		assertThat(cache.getPutLatency().snapshot().getMax()).isGreaterThan(0);
+
+		cache.resetLatencies();
+		assertThat(cache.getGetLatency().snapshot().getCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void testLatencyMBean() throws Exception {
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+		GuavaCacheMBeanRegistrar registrar = new GuavaCacheMBeanRegistrar();
+		registrar.setServer(server);
+		InstrumentedCache cache = new InstrumentedCache(new GuavaCache("cache"));
+
+		ObjectName objectName = registrar.registerLatency(cache);
+		assertThat(objectName.toString()).isEqualTo("org.springmodules.cache.guava:name=\"cache\",type=CacheLatency");
+
+		cache.put("key", "value");
+		cache.get("key");
+		assertThat(server.getAttribute(objectName, "GetCount")).isEqualTo(1L);
+		assertThat(server.getAttribute(objectName, "PutCount")).isEqualTo(1L);
+		assertThat((Long) server.getAttribute(objectName, "PutP999"))
+				.isEqualTo(cache.getPutLatency().snapshot().getP999());
+
+		server.invoke(objectName, "reset", null, null);
+		assertThat(server.getAttribute(objectName, "GetCount")).isEqualTo(0L);
+	}
+
+	@Test
+	public void testLatencySnapshot() throws Exception {
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+		GuavaCacheMBeanRegistrar registrar = new GuavaCacheMBeanRegistrar();
+		registrar.setServer(server);
+		InstrumentedCache cache = new InstrumentedCache(new GuavaCache("cache"));
+
+		ObjectName objectName = registrar.registerLatency(cache);
+		cache.put("key", "value");
+		cache.get("key");
+		cache.get("other");
+
+		CompositeData snapshot = (CompositeData) server.getAttribute(objectName, "Snapshot");
+		CompositeData get = (CompositeData) snapshot.get("get");
+		CompositeData put = (CompositeData) snapshot.get("put");
+		CompositeData evict = (CompositeData) snapshot.get("evict");
+		assertThat(get.get("count")).isEqualTo(2L);
+		assertThat((Long) get.get("max")).isEqualTo(cache.getGetLatency().snapshot().getMax());
+		assertThat((Long) get.get("p50")).isLessThanOrEqualTo((Long) get.get("p99"));
+		assertThat(put.get("count")).isEqualTo(1L);
+		assertThat(put.get("mean")).isEqualTo(cache.getPutLatency().snapshot().getMean());
+		assertThat(evict.get("count")).isEqualTo(0L);
+	}
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import com.google.common.base.Functions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class NearCacheTest {
+
+	private final GuavaCache target = new GuavaCache("cache", CacheBuilder.newBuilder().recordStats(), true);
+
+	@Test
+	public void testDelegation() {
+		NearCache cache = new NearCache(target, 16);
+
+		assertThat(cache.getName()).isEqualTo("cache");
+		assertThat(cache.getNativeCache()).isSameAs(target.getNativeCache());
+		assertThat(GuavaCaches.unwrap(cache)).isSameAs(target);
+
+		cache.put("key1", "value1");
+		cache.put("key2", null);
+		assertThat(cache.get("key1").get()).isEqualTo("value1");
+		assertThat(cache.get("key2").get()).isNull();
+		assertThat(cache.get("missing")).isNull();
+		cache.evict("key1");
+		assertThat(cache.get("key1")).isNull();
+		cache.clear();
+		assertThat(cache.get("key2")).isNull();
+	}
+
+	@Test
+	public void testRepeatedLookupsAreLocal() {
+		NearCache cache = new NearCache(target, 16);
+		cache.put("key", "value");
+
+		for (int i = 0; i < 10; i++) {
+			assertThat(cache.get("key").get()).isEqualTo("value");
+		}
+		assertThat(target.getStats().hitCount()).isEqualTo(1);
+
+		// misses are not kept
+		cache.get("missing");
+		cache.get("missing");
+		assertThat(target.getStats().missCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void testDirectInvalidationsInvalidateLocalEntries() {
+		NearCache cache = new NearCache(target, 16);
+		cache.put("key1", "value1");
+		cache.put("key2", "value2");
+		cache.put("key3", "value3");
+		assertThat(cache.get("key1").get()).isEqualTo("value1");
+		assertThat(cache.get("key2").get()).isEqualTo("value2");
+		assertThat(cache.get("key3").get()).isEqualTo("value3");
+
+		target.evict("key1");
+		assertThat(cache.get("key1")).isNull();
+		target.merge("key2", Functions.constant("merged"));
+		assertThat(cache.get("key2").get()).isEqualTo("merged");
+		target.clear();
+		assertThat(cache.get("key3")).isNull();
+	}
+
+	@Test
+	public void testModificationsInvalidateLocalEntries() throws Exception {
+		final NearCache cache = new NearCache(target, 16);
+		cache.put("key", "value");
+		assertThat(cache.get("key").get()).isEqualTo("value");
+
+		// modified by another thread
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			executor.submit(new Callable<Object>() {
+				@Override
+				public Object call() {
+					cache.put("key", "other");
+					return null;
+				}
+			}).get();
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		assertThat(cache.get("key").get()).isEqualTo("other");
+
+		cache.evict("key");
+		assertThat(cache.get("key")).isNull();
+	}
+
+	@Test
+	public void testPutOfAbsentKeyKeepsLocalEntries() {
+		NearCache cache = new NearCache(target, 16);
+		cache.put("key1", "value1");
+		cache.get("key1");
+
+		// modified behind the near cache
+		target.put("key1", "other");
+		cache.put("key2", "value2");
+		assertThat(cache.get("key1").get()).isEqualTo("value1");
+
+		cache.put("key2", "other");
+		assertThat(cache.get("key1").get()).isEqualTo("other");
+		assertThat(cache.get("key2").get()).isEqualTo("other");
+	}
+
+	@Test
+	public void testBulkOperationsInvalidateLocalEntries() {
+		NearCache cache = new NearCache(target, 16);
+		cache.put("key1", "value1");
+		cache.put("key2", "value2");
+		cache.get("key1");
+		cache.get("key2");
+
+		cache.putAll(ImmutableMap.of("key1", "other"));
+		assertThat(cache.get("key1").get()).isEqualTo("other");
+
+		cache.evictAll(ImmutableList.of("key1", "key2"));
+		assertThat(cache.get("key1")).isNull();
+		assertThat(cache.get("key2")).isNull();
+	}
+
+	@Test
+	public void testLocalEntriesAreBounded() {
+		NearCache cache = new NearCache(target, 2);
+		cache.put("key1", "value1");
+		cache.put("key2", "value2");
+		cache.put("key3", "value3");
+
+		cache.get("key1");
+		cache.get("key2");
+		cache.get("key3");
+		// key1 was the least recently read
+		cache.get("key1");
+		cache.get("key3");
+		assertThat(target.getStats().hitCount()).isEqualTo(4);
+	}
+
+	@Test
+	public void testClearLocal() {
+		NearCache cache = new NearCache(target, 16);
+		cache.put("key", "value");
+		cache.get("key");
+
+		// modified behind the near cache
+		target.put("key", "other");
+		assertThat(cache.get("key").get()).isEqualTo("value");
+
+		cache.clearLocal();
+		assertThat(cache.get("key").get()).isEqualTo("other");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMaximumSize() {
+		new NearCache(target, 0);
+	}
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.util.concurrent.Uninterruptibles.awaitUninterruptibly;
+import static com.google.common.util.concurrent.Uninterruptibles.sleepUninterruptibly;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class RefreshingGuavaCacheTest {
+
+	private final FakeTicker ticker = new FakeTicker();
+
+	private ExecutorService executor;
+
+	private RefreshingGuavaCache cache;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newSingleThreadExecutor();
+		CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+				.refreshAfterWrite(1, TimeUnit.MINUTES)
+				.ticker(ticker);
+		cache = new RefreshingGuavaCache("name", builder, true, executor);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testStaleEntryIsReloadedInBackground() throws Exception {
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch reloadStarted = new CountDownLatch(1);
+		final CountDownLatch reloadAllowed = new CountDownLatch(1);
+		Callable<String> loader = new Callable<String>() {
+			@Override
+			public String call() {
+				int load = loads.incrementAndGet();
+				if (load > 1) {
+					reloadStarted.countDown();
+					awaitUninterruptibly(reloadAllowed);
+				}
+				return "value-" + load;
+			}
+		};
+
+		assertThat(cache.get("key", loader)).isEqualTo("value-1");
+
+		ticker.advance(2, TimeUnit.MINUTES);
+
+		// stale read triggers the reload but keeps serving the old value
+		assertThat(cache.get("key").get()).isEqualTo("value-1");
+		awaitUninterruptibly(reloadStarted);
+		assertThat(cache.get("key").get()).isEqualTo("value-1");
+
+		reloadAllowed.countDown();
+		for (int i = 0; i < 50 && "value-1".equals(cache.get("key").get()); i++) {
+			sleepUninterruptibly(20, TimeUnit.MILLISECONDS);
+		}
+		assertThat(cache.get("key").get()).isEqualTo("value-2");
+		assertThat(loads.get()).isEqualTo(2);
+	}
+
+	@Test
+	public void testPutEntryIsKept() {
+		cache.put("key", "value");
+
+		ticker.advance(2, TimeUnit.MINUTES);
+
+		assertThat(cache.get("key").get()).isEqualTo("value");
+		assertThat(cache.get("key").get()).isEqualTo("value");
+	}
+
+	@Test
+	public void testPutOfLoadedValueKeepsLoader() {
+		final AtomicInteger loads = new AtomicInteger();
+		final Object value = new Object();
+		cache.get("key", new Callable<Object>() {
+			@Override
+			public Object call() {
+				loads.incrementAndGet();
+				return value;
+			}
+		});
+		cache.put("key", value);
+
+		ticker.advance(2, TimeUnit.MINUTES);
+		cache.get("key");
+		for (int i = 0; i < 50 && loads.get() < 2; i++) {
+			sleepUninterruptibly(20, TimeUnit.MILLISECONDS);
+		}
+		assertThat(loads.get()).isEqualTo(2);
+	}
+
+	@Test
+	public void testLoaderDoesNotSeeOrReplaceItsKey() {
+		final AtomicInteger loads = new AtomicInteger();
+		Callable<Object> loader = new Callable<Object>() {
+			@Override
+			public Object call() {
+				// nested cache advice misses, then puts the value it loaded
+				assertThat(cache.get("key")).isNull();
+				String value = "value-" + loads.incrementAndGet();
+				cache.put("key", value);
+				return value;
+			}
+		};
+		assertThat(cache.get("key", loader)).isEqualTo("value-1");
+
+		ticker.advance(2, TimeUnit.MINUTES);
+		cache.get("key");
+		for (int i = 0; i < 50 && !"value-2".equals(cache.get("key").get()); i++) {
+			sleepUninterruptibly(20, TimeUnit.MILLISECONDS);
+		}
+		assertThat(cache.get("key").get()).isEqualTo("value-2");
+	}
+
+	@Test
+	public void testBulkOperations() {
+		final Object value = new Object();
+		cache.get("key1", new Callable<Object>() {
+			@Override
+			public Object call() {
+				return value;
+			}
+		});
+		cache.putAll(ImmutableMap.of("key1", value, "key2", "value2"));
+
+		BulkGetResult result = cache.getAll(ImmutableList.of("key1", "key2", "key3"));
+		assertThat(result.getHits()).isEqualTo(ImmutableMap.<Object, Object>of("key1", value, "key2", "value2"));
+		assertThat(result.getMissingKeys()).containsOnly("key3");
+
+		cache.evictAll(ImmutableList.of("key1", "key2"));
+		assertThat(cache.getNativeCache().size()).isEqualTo(0);
+	}
+
+	@Test
+	public void testNullValues() {
+		cache.put("key", null);
+
+		assertThat(cache.get("key")).isNotNull();
+		assertThat(cache.get("key").get()).isNull();
+	}
+
+	@Test
+	public void testNullValueStoreExpiresNullValues() {
+		RefreshingGuavaCache separate = new RefreshingGuavaCache("name",
+				CacheBuilder.newBuilder().refreshAfterWrite(1, TimeUnit.MINUTES).ticker(ticker),
+				CacheBuilder.newBuilder().expireAfterWrite(10, TimeUnit.SECONDS).ticker(ticker), executor);
+		separate.put("key", "value");
+		separate.put("unknown", null);
+		assertThat(separate.get("unknown").get()).isNull();
+		assertThat(separate.getNativeCache().size()).isEqualTo(1);
+
+		ticker.advance(20, TimeUnit.SECONDS);
+		assertThat(separate.get("unknown")).isNull();
+		assertThat(separate.get("key").get()).isEqualTo("value");
+	}
+
+	@Test
+	public void testFactoryBeanAndManagerCreateRefreshingCaches() throws Exception {
+		GuavaCacheFactoryBean factoryBean = new GuavaCacheFactoryBean();
+		factoryBean.setSpec("refreshAfterWrite=1m");
+		factoryBean.setReloadExecutor(executor);
+		factoryBean.afterPropertiesSet();
+		assertThat(factoryBean.getObject()).isInstanceOf(RefreshingGuavaCache.class);
+
+		GuavaCacheManager manager = new GuavaCacheManager();
+		manager.setSpec("refreshAfterWrite=1m");
+		manager.setReloadExecutor(executor);
+		manager.afterPropertiesSet();
+		assertThat(manager.getCache("cache")).isInstanceOf(RefreshingGuavaCache.class);
+	}
+
+	private static class FakeTicker extends Ticker {
+
+		private final AtomicLong nanos = new AtomicLong();
+
+		@Override
+		public long read() {
+			return nanos.get();
+		}
+
+		void advance(long time, TimeUnit unit) {
+			nanos.addAndGet(unit.toNanos(time));
+		}
+
+	}
+
+}
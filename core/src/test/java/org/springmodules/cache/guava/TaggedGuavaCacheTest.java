@@ -0,0 +1,181 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import com.google.common.base.Functions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Test;
+import org.springmodules.cache.guava.tag.EntryTagger;
+import org.springmodules.cache.guava.tag.ExpressionEntryTagger;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class TaggedGuavaCacheTest {
+
+	@Test
+	public void testEvictByTag() {
+		TaggedGuavaCache cache = new TaggedGuavaCache("cache", CacheBuilder.newBuilder(), true, null);
+		cache.put("alice-profile", "profile", ImmutableList.of("user:alice"));
+		cache.put("alice-posts", "posts", ImmutableList.of("user:alice", "posts"));
+		cache.put("bob-posts", "posts", ImmutableList.of("user:bob", "posts"));
+		cache.put("untagged", "value");
+
+		cache.evictByTag("user:alice");
+
+		assertThat(cache.get("alice-profile")).isNull();
+		assertThat(cache.get("alice-posts")).isNull();
+		assertThat(cache.get("bob-posts")).isNotNull();
+		assertThat(cache.get("untagged")).isNotNull();
+		assertThat(cache.getTagIndex().getKeys("posts")).containsOnly("bob-posts");
+		assertThat(cache.getTagIndex().getKeys("user:alice")).isEmpty();
+	}
+
+	@Test
+	public void testEntryTagger() {
+		TaggedGuavaCache cache = new TaggedGuavaCache("cache", CacheBuilder.newBuilder(), true,
+				new ExpressionEntryTagger("'user:' + #key"));
+		cache.put("alice", "Alice");
+		cache.putAll(ImmutableMap.of("bob", "Bob"));
+		cache.putIfAbsent("carol", "Carol");
+		cache.get("dave", new Callable<Object>() {
+			@Override
+			public Object call() {
+				return "Dave";
+			}
+		});
+
+		assertThat(cache.getTagIndex().getTags("alice")).containsOnly("user:alice");
+		assertThat(cache.getTagIndex().getTags("bob")).containsOnly("user:bob");
+		assertThat(cache.getTagIndex().getTags("carol")).containsOnly("user:carol");
+		assertThat(cache.getTagIndex().getTags("dave")).containsOnly("user:dave");
+
+		cache.evictByTag("user:bob");
+		assertThat(cache.get("bob")).isNull();
+		assertThat(cache.get("alice")).isNotNull();
+	}
+
+	@Test
+	public void testRemovedEntriesLeaveTheIndex() {
+		TaggedGuavaCache cache = new TaggedGuavaCache("cache", CacheBuilder.newBuilder().maximumSize(2), true, null);
+		cache.put("key1", "value1", ImmutableList.of("tag1"));
+		cache.put("key2", "value2", ImmutableList.of("tag2"));
+		cache.evict("key1");
+		assertThat(cache.getTagIndex().getKeys("tag1")).isEmpty();
+
+		// evicted for size
+		cache.put("key3", "value3", ImmutableList.of("tag3"));
+		cache.put("key4", "value4", ImmutableList.of("tag4"));
+		cache.getNativeCache().cleanUp();
+		assertThat(cache.getTagIndex().size()).isEqualTo(2);
+
+		cache.clear();
+		assertThat(cache.getTagIndex().size()).isZero();
+	}
+
+	@Test
+	public void testReplacedEntriesKeepTheirNewTags() {
+		TaggedGuavaCache cache = new TaggedGuavaCache("cache", CacheBuilder.newBuilder(), true, null);
+		cache.put("key", "value1", ImmutableList.of("tag1"));
+		cache.put("key", "value2", ImmutableList.of("tag2"));
+
+		assertThat(cache.getTagIndex().getKeys("tag1")).isEmpty();
+		assertThat(cache.getTagIndex().getKeys("tag2")).containsOnly("key");
+	}
+
+	@Test
+	public void testMergeRacingWithPutKeepsTagsOfCachedValue() throws Exception {
+		final BlockingTagger tagger = new BlockingTagger("merged");
+		final TaggedGuavaCache cache = new TaggedGuavaCache("cache", CacheBuilder.newBuilder(), false, tagger);
+		cache.put("key", "value");
+
+		Thread merging = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				cache.merge("key", Functions.constant("merged"));
+			}
+		});
+		merging.start();
+		tagger.tagging.await();
+		cache.put("key", "other");
+		tagger.release.countDown();
+		merging.join();
+
+		assertThat(cache.getTagIndex().getTags("key")).containsOnly("tag:other");
+		cache.evictByTag("tag:other");
+		assertThat(cache.get("key")).isNull();
+		assertThat(cache.getTagIndex().size()).isZero();
+	}
+
+	@Test
+	public void testPutIfAbsentRacingWithEvictLeavesNoTags() throws Exception {
+		final BlockingTagger tagger = new BlockingTagger("value");
+		final TaggedGuavaCache cache = new TaggedGuavaCache("cache", CacheBuilder.newBuilder(), false, tagger);
+
+		Thread putting = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				cache.putIfAbsent("key", "value");
+			}
+		});
+		putting.start();
+		tagger.tagging.await();
+		cache.evict("key");
+		tagger.release.countDown();
+		putting.join();
+
+		assertThat(cache.get("key")).isNull();
+		assertThat(cache.getTagIndex().getTags("key")).isEmpty();
+		assertThat(cache.getTagIndex().size()).isZero();
+	}
+
+	/**
+	 * Tagger tagging entries by value, blocking while tagging the given value.
+	 */
+	private static class BlockingTagger implements EntryTagger {
+
+		final CountDownLatch tagging = new CountDownLatch(1);
+
+		final CountDownLatch release = new CountDownLatch(1);
+
+		private final Object blockingValue;
+
+		BlockingTagger(Object blockingValue) {
+			this.blockingValue = blockingValue;
+		}
+
+		@Override
+		public Collection<String> getTags(Object key, Object value) {
+			if (blockingValue.equals(value) && tagging.getCount() > 0) {
+				tagging.countDown();
+				Uninterruptibles.awaitUninterruptibly(release);
+			}
+			return ImmutableList.of("tag:" + value);
+		}
+
+	}
+
+}
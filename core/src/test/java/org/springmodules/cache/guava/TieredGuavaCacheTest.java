@@ -0,0 +1,340 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Before;
+import org.junit.Test;
+import org.springmodules.cache.guava.offheap.OffHeapStore;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class TieredGuavaCacheTest {
+
+	private OffHeapStore offHeapStore;
+
+	private TieredGuavaCache cache;
+
+	@Before
+	public void setUp() {
+		offHeapStore = new OffHeapStore(64 * 1024);
+		cache = new TieredGuavaCache("cache", CacheBuilder.newBuilder().maximumSize(2), true, offHeapStore);
+	}
+
+	@Test
+	public void testEvictedEntriesAreDemoted() {
+		cache.put("key1", "value1");
+		cache.put("key2", "value2");
+		cache.put("key3", "value3");
+
+		assertThat(cache.getNativeCache().size()).isEqualTo(2);
+		assertThat(offHeapStore.size()).isEqualTo(1);
+		assertThat(cache.get("key1").get()).isEqualTo("value1");
+		assertThat(cache.get("key2").get()).isEqualTo("value2");
+		assertThat(cache.get("key3").get()).isEqualTo("value3");
+	}
+
+	@Test
+	public void testHitPromotes() {
+		cache.put("key1", "value1");
+		cache.put("key2", "value2");
+		cache.put("key3", "value3");
+		String demoted = (offHeapStore.get("key1") != null ? "key1" : "key2");
+
+		assertThat(cache.get(demoted).get()).isEqualTo("value" + demoted.charAt(3));
+		assertThat(cache.getNativeCache().getIfPresent(demoted)).isNotNull();
+		// room was made in the native cache by demoting another entry
+		assertThat(offHeapStore.get(demoted)).isNull();
+		assertThat(offHeapStore.size()).isEqualTo(1);
+	}
+
+	@Test
+	public void testGetWithValueLoaderPromotes() {
+		cache.put("key1", "value1");
+		cache.put("key2", "value2");
+		cache.put("key3", "value3");
+		String demoted = (offHeapStore.get("key1") != null ? "key1" : "key2");
+
+		String value = cache.get(demoted, new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				throw new IllegalStateException("should not be called");
+			}
+		});
+		assertThat(value).isEqualTo("value" + demoted.charAt(3));
+	}
+
+	@Test
+	public void testPutReplacesDemotedEntry() {
+		cache.put("key1", "value1");
+		cache.put("key2", "value2");
+		cache.put("key3", "value3");
+		String demoted = (offHeapStore.get("key1") != null ? "key1" : "key2");
+
+		cache.put(demoted, "newValue");
+		assertThat(offHeapStore.get(demoted)).isNull();
+		assertThat(cache.get(demoted).get()).isEqualTo("newValue");
+	}
+
+	@Test
+	public void testEvictAndClear() {
+		cache.put("key1", "value1");
+		cache.put("key2", "value2");
+		cache.put("key3", "value3");
+
+		cache.evict("key1");
+		cache.evict("key2");
+		assertThat(cache.get("key1")).isNull();
+		assertThat(cache.get("key2")).isNull();
+
+		cache.put("key4", "value4");
+		cache.put("key5", "value5");
+		cache.clear();
+		assertThat(cache.getNativeCache().size()).isEqualTo(0);
+		assertThat(offHeapStore.size()).isEqualTo(0);
+	}
+
+	@Test
+	public void testNullValues() {
+		cache.put("key1", null);
+		cache.put("key2", "value2");
+		cache.put("key3", "value3");
+		cache.put("key4", "value4");
+
+		assertThat(cache.get("key1")).isNotNull();
+		assertThat(cache.get("key1").get()).isNull();
+	}
+
+	@Test
+	public void testNotSerializableValuesAreDropped() {
+		Object value = new Object();
+		cache.put("key1", value);
+		cache.put("key2", "value2");
+		cache.put("key3", "value3");
+
+		assertThat(offHeapStore.size()).isEqualTo(0);
+		assertThat(cache.getNativeCache().size()).isEqualTo(2);
+	}
+
+	@Test
+	public void testBulkOperations() {
+		cache.put("key1", "value1");
+		cache.put("key2", "value2");
+		cache.put("key3", "value3");
+		assertThat(offHeapStore.size()).isEqualTo(1);
+
+		BulkGetResult result = cache.getAll(newArrayList("key1", "key2", "key3", "key4"));
+		assertThat(result.getHits().keySet()).containsExactly("key1", "key2", "key3");
+		assertThat(result.getMissingKeys()).containsOnly("key4");
+
+		cache.evictAll(newArrayList("key1", "key2", "key3"));
+		assertThat(cache.getAll(newArrayList("key1", "key2", "key3")).getHits()).isEmpty();
+		assertThat(offHeapStore.size()).isEqualTo(0);
+
+		Map<String, String> values = newHashMap();
+		values.put("key1", "value1");
+		values.put("key2", "value2");
+		values.put("key3", "value3");
+		cache.putAll(values);
+		String demoted = (offHeapStore.get("key1") != null ? "key1" : offHeapStore.get("key2") != null ? "key2" : "key3");
+		values.clear();
+		values.put(demoted, "newValue");
+		cache.putAll(values);
+		assertThat(offHeapStore.get(demoted)).isNull();
+		assertThat(cache.get(demoted).get()).isEqualTo("newValue");
+	}
+
+	@Test
+	public void testDemotedEntriesExpire() {
+		FakeTicker ticker = new FakeTicker();
+		TieredGuavaCache expiring = new TieredGuavaCache("cache", CacheBuilder.newBuilder().maximumSize(1)
+				.expireAfterWrite(10, TimeUnit.MINUTES).ticker(ticker), true, offHeapStore, null,
+				TimeUnit.MINUTES.toNanos(10), 0, ticker);
+		expiring.put("key1", "value1");
+		ticker.advance(5, TimeUnit.MINUTES);
+		expiring.put("key2", "value2");
+		assertThat(offHeapStore.size()).isEqualTo(1);
+
+		ticker.advance(4, TimeUnit.MINUTES);
+		assertThat(expiring.get("key1").get()).isEqualTo("value1");
+
+		// key2 is demoted in turn, then key1 again, past its write deadline
+		assertThat(expiring.get("key2").get()).isEqualTo("value2");
+		ticker.advance(2, TimeUnit.MINUTES);
+		assertThat(expiring.get("key1")).isNull();
+	}
+
+	@Test
+	public void testLateDemotionAfterEvictIsDropped() throws Exception {
+		assertLateDemotionIsDropped(new Runnable() {
+			@Override
+			public void run() {
+				cache.evict("key1");
+			}
+		});
+	}
+
+	@Test
+	public void testLateDemotionAfterClearIsDropped() throws Exception {
+		assertLateDemotionIsDropped(new Runnable() {
+			@Override
+			public void run() {
+				cache.clear();
+			}
+		});
+	}
+
+	@Test
+	public void testPromotionRacingWithEvictIsDropped() throws Exception {
+		assertPromotionRacingWithInvalidationIsDropped(new Runnable() {
+			@Override
+			public void run() {
+				cache.evict("key1");
+			}
+		});
+	}
+
+	@Test
+	public void testPromotionRacingWithClearIsDropped() throws Exception {
+		assertPromotionRacingWithInvalidationIsDropped(new Runnable() {
+			@Override
+			public void run() {
+				cache.clear();
+			}
+		});
+	}
+
+	/**
+	 * Promote key1 on another thread, and run the given invalidation once the off-heap copy
+	 * of key1 is taken, before it is written to the native cache.
+	 */
+	private void assertPromotionRacingWithInvalidationIsDropped(Runnable invalidation) throws Exception {
+		final BlockingTicker ticker = new BlockingTicker();
+		cache = new TieredGuavaCache("cache", CacheBuilder.newBuilder().maximumSize(1), true, offHeapStore,
+				null, 0, 0, ticker);
+		cache.put("key1", "value1");
+		cache.put("key2", "value2");
+		assertThat(offHeapStore.get("key1")).isNotNull();
+
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				ticker.blockFirstRead();
+				cache.get("key1");
+			}
+		});
+		reader.start();
+		assertThat(ticker.blocked.await(10, TimeUnit.SECONDS)).isTrue();
+		invalidation.run();
+		ticker.released.countDown();
+		reader.join();
+
+		assertThat(cache.get("key1")).isNull();
+	}
+
+	/**
+	 * Evict key1 for size on another thread, and run the given invalidation while the
+	 * demotion of key1 is delivered.
+	 */
+	private void assertLateDemotionIsDropped(Runnable invalidation) throws Exception {
+		final BlockingTicker ticker = new BlockingTicker();
+		cache = new TieredGuavaCache("cache", CacheBuilder.newBuilder().maximumSize(1), true, offHeapStore,
+				null, 0, 0, ticker);
+		cache.put("key1", "value1");
+
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				ticker.blockSecondRead();
+				cache.put("key2", "value2");
+			}
+		});
+		writer.start();
+		assertThat(ticker.blocked.await(10, TimeUnit.SECONDS)).isTrue();
+		invalidation.run();
+		ticker.released.countDown();
+		writer.join();
+
+		assertThat(offHeapStore.get("key1")).isNull();
+		assertThat(cache.get("key1")).isNull();
+	}
+
+	private static class FakeTicker extends Ticker {
+
+		private final AtomicLong nanos = new AtomicLong();
+
+		@Override
+		public long read() {
+			return nanos.get();
+		}
+
+		void advance(long duration, TimeUnit unit) {
+			nanos.addAndGet(unit.toNanos(duration));
+		}
+
+	}
+
+	/**
+	 * Ticker blocking the first read of a thread, made when promoting an entry, or its second
+	 * read, made by the removal listener once the thread has stamped its value and evicted
+	 * another entry.
+	 */
+	private static class BlockingTicker extends Ticker {
+
+		private final ThreadLocal<Integer> reads = new ThreadLocal<Integer>();
+
+		private final CountDownLatch blocked = new CountDownLatch(1);
+
+		private final CountDownLatch released = new CountDownLatch(1);
+
+		void blockFirstRead() {
+			reads.set(1);
+		}
+
+		void blockSecondRead() {
+			reads.set(0);
+		}
+
+		@Override
+		public long read() {
+			Integer count = reads.get();
+			if (count != null) {
+				reads.set(count + 1);
+				if (count == 1) {
+					blocked.countDown();
+					Uninterruptibles.awaitUninterruptibly(released);
+				}
+			}
+			return System.nanoTime();
+		}
+
+	}
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class TransactionAwareGuavaCacheTest {
+
+	private final List<Object> evictAllCalls = Lists.newArrayList();
+
+	private final GuavaCache target = new GuavaCache("cache") {
+		@Override
+		public void evictAll(Iterable<?> keys) {
+			evictAllCalls.add(Lists.newArrayList(keys));
+			super.evictAll(keys);
+		}
+	};
+
+	private final TransactionAwareGuavaCache cache = new TransactionAwareGuavaCache(target);
+
+	@Before
+	public void setUp() {
+		TransactionSynchronizationManager.initSynchronization();
+	}
+
+	@After
+	public void tearDown() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	@Test
+	public void testEvictionsAreBatchedAtCommit() {
+		target.put("key1", "value1");
+		target.put("key2", "value2");
+		target.put("key3", "value3");
+
+		cache.evict("key1");
+		cache.evict("key2");
+		cache.evict("key1");
+		assertThat(target.get("key1")).isNotNull();
+		assertThat(TransactionSynchronizationManager.getSynchronizations()).hasSize(1);
+
+		commit();
+
+		assertThat(TransactionSynchronizationManager.hasResource(cache)).isFalse();
+		assertThat(evictAllCalls).containsExactly(Lists.newArrayList("key1", "key2"));
+		assertThat(target.get("key1")).isNull();
+		assertThat(target.get("key2")).isNull();
+		assertThat(target.get("key3")).isNotNull();
+	}
+
+	@Test
+	public void testLastOperationPerKeyWins() {
+		target.put("key2", "value2");
+
+		cache.put("key1", "value1");
+		cache.evict("key1");
+		cache.evict("key2");
+		cache.put("key2", "other");
+		assertThat(target.get("key2").get()).isEqualTo("value2");
+
+		commit();
+
+		assertThat(target.get("key1")).isNull();
+		assertThat(target.get("key2").get()).isEqualTo("other");
+	}
+
+	@Test
+	public void testRollbackDiscardsOperations() {
+		target.put("key", "value");
+		cache.evict("key");
+		cache.put("other", "value");
+
+		List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+		TransactionSynchronizationManager.clearSynchronization();
+		TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, TransactionSynchronization.STATUS_ROLLED_BACK);
+
+		assertThat(TransactionSynchronizationManager.hasResource(cache)).isFalse();
+		assertThat(target.get("key").get()).isEqualTo("value");
+		assertThat(target.get("other")).isNull();
+	}
+
+	@Test
+	public void testRequiresNewTransactionAppliesItsOwnOperations() {
+		TransactionSynchronizationManager.clearSynchronization();
+		target.put("key", "v1");
+
+		final TransactionTemplate outer = new TransactionTemplate(new SuspendingTransactionManager());
+		final TransactionTemplate inner = new TransactionTemplate(outer.getTransactionManager());
+		inner.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+		outer.execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				cache.put("other", "value");
+				inner.execute(new TransactionCallbackWithoutResult() {
+					@Override
+					protected void doInTransactionWithoutResult(TransactionStatus status) {
+						cache.evict("key");
+					}
+				});
+				// the inner transaction committed its eviction
+				assertThat(target.get("key")).isNull();
+				status.setRollbackOnly();
+			}
+		});
+
+		assertThat(target.get("key")).isNull();
+		assertThat(target.get("other")).isNull();
+	}
+
+	@Test
+	public void testNoTransaction() {
+		TransactionSynchronizationManager.clearSynchronization();
+
+		cache.put("key", "value");
+		assertThat(cache.get("key").get()).isEqualTo("value");
+		cache.evict("key");
+		assertThat(cache.get("key")).isNull();
+		assertThat(GuavaCaches.unwrap(cache)).isSameAs(target);
+	}
+
+	@Test
+	public void testNearCacheTarget() {
+		NearCache nearCache = new NearCache(target, 16);
+		TransactionAwareGuavaCache cache = new TransactionAwareGuavaCache(nearCache);
+		target.put("key", "value");
+		assertThat(cache.get("key").get()).isEqualTo("value");
+
+		cache.evict("key");
+		commit();
+
+		assertThat(evictAllCalls).hasSize(1);
+		assertThat(cache.get("key")).isNull();
+	}
+
+	private void commit() {
+		List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+		TransactionSynchronizationManager.clearSynchronization();
+		TransactionSynchronizationUtils.invokeAfterCommit(synchronizations);
+		TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, TransactionSynchronization.STATUS_COMMITTED);
+	}
+
+	/**
+	 * Resource-less transaction manager supporting the suspension of transactions.
+	 */
+	@SuppressWarnings("serial")
+	private static class SuspendingTransactionManager extends AbstractPlatformTransactionManager {
+
+		private int depth;
+
+		@Override
+		protected Object doGetTransaction() {
+			return new Object();
+		}
+
+		@Override
+		protected boolean isExistingTransaction(Object transaction) {
+			return depth > 0;
+		}
+
+		@Override
+		protected void doBegin(Object transaction, TransactionDefinition definition) {
+			depth++;
+		}
+
+		@Override
+		protected Object doSuspend(Object transaction) {
+			return transaction;
+		}
+
+		@Override
+		protected void doResume(Object transaction, Object suspendedResources) {
+		}
+
+		@Override
+		protected void doCommit(DefaultTransactionStatus status) {
+		}
+
+		@Override
+		protected void doRollback(DefaultTransactionStatus status) {
+		}
+
+		@Override
+		protected void doCleanupAfterCompletion(Object transaction) {
+			depth--;
+		}
+
+	}
+
+}
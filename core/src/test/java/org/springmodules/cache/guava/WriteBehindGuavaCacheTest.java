@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springmodules.cache.guava.writer.CacheWriter;
+import org.springmodules.cache.guava.writer.WriteBehindQueue;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class WriteBehindGuavaCacheTest {
+
+	private final Map<Object, Object> store = new LinkedHashMap<Object, Object>();
+
+	private final Set<Object> deletedKeys = new LinkedHashSet<Object>();
+
+	private WriteBehindGuavaCache cache;
+
+	@Before
+	public void setUp() {
+		CacheWriter writer = new CacheWriter() {
+			@Override
+			public void writeAll(Map<Object, Object> entries) {
+				store.putAll(entries);
+			}
+
+			@Override
+			public void deleteAll(Collection<Object> keys) {
+				store.keySet().removeAll(keys);
+				deletedKeys.addAll(keys);
+			}
+		};
+		cache = new WriteBehindGuavaCache("writeBehind", CacheBuilder.newBuilder(), true,
+				new WriteBehindQueue("writeBehind", writer, 10, 1, TimeUnit.HOURS, 100));
+	}
+
+	@After
+	public void tearDown() {
+		cache.close();
+	}
+
+	@Test
+	public void testPutIsWrittenBehind() {
+		cache.put("key", "value");
+		assertThat(cache.get("key").get()).isEqualTo("value");
+		assertThat(store).isEmpty();
+
+		cache.flush();
+		assertThat(store).isEqualTo(ImmutableMap.<Object, Object>of("key", "value"));
+	}
+
+	@Test
+	public void testPutAllIsWrittenBehind() {
+		cache.putAll(ImmutableMap.of("key1", "value1", "key2", "value2"));
+
+		cache.flush();
+		assertThat(store).isEqualTo(ImmutableMap.<Object, Object>of("key1", "value1", "key2", "value2"));
+	}
+
+	@Test
+	public void testEvictIsWrittenBehind() {
+		cache.put("key1", "value1");
+		cache.put("key2", "value2");
+		cache.flush();
+
+		cache.evict("key1");
+		cache.evictAll(ImmutableList.of("key2"));
+		assertThat(cache.get("key1")).isNull();
+
+		cache.flush();
+		assertThat(store).isEmpty();
+		assertThat(deletedKeys).containsOnly("key1", "key2");
+	}
+
+	@Test
+	public void testLoadedValuesAreNotWritten() {
+		cache.putIfAbsent("restored", "value");
+		cache.get("loaded", new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return "value";
+			}
+		});
+		cache.clear();
+
+		cache.flush();
+		assertThat(store).isEmpty();
+		assertThat(deletedKeys).isEmpty();
+	}
+
+	@Test
+	public void testCloseWritesPendingWrites() {
+		cache.put("key", "value");
+
+		cache.close();
+		assertThat(store).isEqualTo(ImmutableMap.<Object, Object>of("key", "value"));
+	}
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.admission;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class FrequencySketchTest {
+
+	@Test
+	public void testIncrement() {
+		FrequencySketch sketch = new FrequencySketch(512);
+		assertThat(sketch.frequency("key")).isEqualTo(0);
+
+		sketch.increment("key");
+		sketch.increment("key");
+		assertThat(sketch.frequency("key")).isEqualTo(2);
+		assertThat(sketch.frequency("other")).isEqualTo(0);
+	}
+
+	@Test
+	public void testFrequencySaturates() {
+		FrequencySketch sketch = new FrequencySketch(512);
+		for (int i = 0; i < 20; i++) {
+			sketch.increment("key");
+		}
+		assertThat(sketch.frequency("key")).isEqualTo(15);
+	}
+
+	@Test
+	public void testResetHalvesFrequencies() {
+		FrequencySketch sketch = new FrequencySketch(64);
+		for (int i = 0; i < 10; i++) {
+			sketch.increment("key");
+		}
+		// reaching the sample size of 640 accesses ages the sketch
+		for (int i = 0; i < 630; i++) {
+			sketch.increment(i);
+		}
+		assertThat(sketch.frequency("key")).isLessThan(10);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNonPositiveMaximumSize() {
+		new FrequencySketch(0);
+	}
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.codec;
+
+import com.google.common.base.Strings;
+import org.junit.Test;
+import org.springframework.core.serializer.support.SerializationFailedException;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class DeflatingCodecTest {
+
+	private final DeflatingCodec codec = new DeflatingCodec();
+
+	@Test
+	public void testRoundTrip() {
+		List<String> value = newArrayList();
+		for (int i = 0; i < 100; i++) {
+			value.add(Strings.repeat("content " + i + " ", 20));
+		}
+
+		byte[] encoded = codec.encode(value);
+		assertThat(encoded.length).isLessThan(new SerializationCodec().encode(value).length / 4);
+		assertThat(codec.decode(encoded)).isEqualTo(value);
+	}
+
+	@Test
+	public void testRoundTripSmallValue() {
+		assertThat(codec.decode(codec.encode("value"))).isEqualTo("value");
+	}
+
+	@Test(expected = SerializationFailedException.class)
+	public void testDecodeTruncated() {
+		byte[] encoded = codec.encode(Strings.repeat("value", 100));
+		codec.decode(Arrays.copyOf(encoded, encoded.length / 2));
+	}
+
+	@Test(expected = SerializationFailedException.class)
+	public void testDecodeInvalid() {
+		codec.decode(new byte[] {1, 2, 3});
+	}
+
+}
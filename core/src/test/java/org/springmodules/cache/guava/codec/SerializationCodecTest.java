@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.codec;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import org.springframework.core.serializer.support.SerializationFailedException;
+
+import java.util.Date;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class SerializationCodecTest {
+
+	private final SerializationCodec codec = new SerializationCodec();
+
+	@Test
+	public void testRoundTrip() {
+		Object value = Lists.<Object>newArrayList("value", 1, new Date(0));
+
+		Object decoded = codec.decode(codec.encode(value));
+		assertThat(decoded).isEqualTo(value).isNotSameAs(value);
+	}
+
+	@Test(expected = SerializationFailedException.class)
+	public void testEncodeNotSerializable() {
+		codec.encode(new Object());
+	}
+
+	@Test(expected = SerializationFailedException.class)
+	public void testDecodeInvalid() {
+		codec.decode(new byte[] {1, 2, 3});
+	}
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.expiry;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class TimerWheelTest {
+
+	private static final long START = TimeUnit.DAYS.toNanos(365);
+
+	private final TimerWheel<TimerWheel.Timer> timerWheel = new TimerWheel<TimerWheel.Timer>(START);
+
+	@Test
+	public void testAdvanceExpiresDueTimers() {
+		TimerWheel.Timer seconds = schedule(5, TimeUnit.SECONDS);
+		TimerWheel.Timer minutes = schedule(5, TimeUnit.MINUTES);
+		TimerWheel.Timer hours = schedule(5, TimeUnit.HOURS);
+		TimerWheel.Timer days = schedule(5, TimeUnit.DAYS);
+		TimerWheel.Timer weeks = schedule(30, TimeUnit.DAYS);
+		assertThat(timerWheel.size()).isEqualTo(5);
+
+		assertThat(advance(4, TimeUnit.SECONDS)).isEmpty();
+		assertThat(advance(10, TimeUnit.SECONDS)).containsOnly(seconds);
+		assertThat(advance(299, TimeUnit.SECONDS)).isEmpty();
+		assertThat(advance(6, TimeUnit.MINUTES)).containsOnly(minutes);
+		assertThat(advance(6, TimeUnit.HOURS)).containsOnly(hours);
+		assertThat(advance(4, TimeUnit.DAYS)).isEmpty();
+		assertThat(advance(6, TimeUnit.DAYS)).containsOnly(days);
+		assertThat(advance(29, TimeUnit.DAYS)).isEmpty();
+		assertThat(advance(31, TimeUnit.DAYS)).containsOnly(weeks);
+		assertThat(timerWheel.size()).isEqualTo(0);
+	}
+
+	@Test
+	public void testDescheduledTimerDoesNotExpire() {
+		TimerWheel.Timer timer = schedule(5, TimeUnit.SECONDS);
+		TimerWheel.Timer other = schedule(5, TimeUnit.SECONDS);
+		timerWheel.deschedule(timer);
+		timerWheel.deschedule(timer);
+
+		assertThat(timerWheel.size()).isEqualTo(1);
+		assertThat(advance(10, TimeUnit.SECONDS)).containsOnly(other);
+	}
+
+	@Test
+	public void testTimerAlreadyDueExpiresOnNextAdvance() {
+		timerWheel.advance(START + TimeUnit.MINUTES.toNanos(5));
+		TimerWheel.Timer timer = new TimerWheel.Timer(START);
+		timerWheel.schedule(timer);
+
+		assertThat(advance(5 * 60 + 2, TimeUnit.SECONDS)).containsOnly(timer);
+	}
+
+	@Test
+	public void testMixedTimeToLive() {
+		Random random = new Random(42);
+		int count = 10000;
+		long[] expirationTimes = new long[count];
+		for (int i = 0; i < count; i++) {
+			expirationTimes[i] = START + (long) (random.nextDouble() * TimeUnit.HOURS.toNanos(48));
+			timerWheel.schedule(new TimerWheel.Timer(expirationTimes[i]));
+		}
+
+		int expiredCount = 0;
+		for (long now = START; now <= START + TimeUnit.HOURS.toNanos(49); now += TimeUnit.SECONDS.toNanos(30)) {
+			for (TimerWheel.Timer timer : timerWheel.advance(now)) {
+				// expired on time: no later than one bucket of the finest wheel
+				assertThat(timer.isExpired(now)).isTrue();
+				assertThat(timer.isExpired(now - TimeUnit.SECONDS.toNanos(32))).isFalse();
+				expiredCount++;
+			}
+		}
+		assertThat(expiredCount).isEqualTo(count);
+		assertThat(timerWheel.size()).isEqualTo(0);
+	}
+
+	private TimerWheel.Timer schedule(long duration, TimeUnit unit) {
+		TimerWheel.Timer timer = new TimerWheel.Timer(START + unit.toNanos(duration));
+		timerWheel.schedule(timer);
+		return timer;
+	}
+
+	private List<TimerWheel.Timer> advance(long duration, TimeUnit unit) {
+		return timerWheel.advance(START + unit.toNanos(duration));
+	}
+
+}
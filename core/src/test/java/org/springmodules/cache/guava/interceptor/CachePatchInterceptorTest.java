@@ -0,0 +1,185 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.interceptor;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springmodules.cache.guava.CollectionPatch;
+import org.springmodules.cache.guava.GuavaCache;
+import org.springmodules.cache.guava.GuavaCacheManager;
+import org.springmodules.cache.guava.annotation.CachePatch;
+import org.springmodules.cache.guava.annotation.GuavaCachingConfiguration;
+
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+@SuppressWarnings("unchecked")
+public class CachePatchInterceptorTest {
+
+	private AnnotationConfigApplicationContext context;
+
+	private Service service;
+
+	private GuavaCache cache;
+
+	@Before
+	public void setUp() {
+		context = new AnnotationConfigApplicationContext(AppConfig.class);
+		service = context.getBean(Service.class);
+		cache = context.getBean(GuavaCache.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.close();
+	}
+
+	@Test
+	public void testAdd() {
+		cache.put("user", ImmutableList.of("b", "c"));
+
+		service.add("user", "a");
+		assertThat((List<Object>) cache.get("user").get()).containsExactly("a", "b", "c");
+	}
+
+	@Test
+	public void testReplaceByMatch() {
+		cache.put("user", ImmutableList.of("a-1", "b-1"));
+
+		service.replace("user", "b-2");
+		assertThat((List<Object>) cache.get("user").get()).containsExactly("a-1", "b-2");
+	}
+
+	@Test
+	public void testRemoveByMatch() {
+		cache.put("user", ImmutableList.of("a-1", "b-1"));
+
+		service.remove("user", "a");
+		assertThat((List<Object>) cache.get("user").get()).containsExactly("b-1");
+	}
+
+	@Test
+	public void testAbsentCollectionIsNotCached() {
+		service.add("user", "a");
+		assertThat(cache.get("user")).isNull();
+	}
+
+	@Test
+	public void testFailedInvocationDoesNotPatch() {
+		cache.put("user", ImmutableList.of("b"));
+
+		try {
+			service.add("user", null);
+		}
+		catch (IllegalArgumentException expected) {
+		}
+		assertThat((List<Object>) cache.get("user").get()).containsExactly("b");
+	}
+
+	@Test
+	public void testPatchAppliedAfterCommit() {
+		cache.put("user", ImmutableList.of("b"));
+
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			service.add("user", "a");
+			assertThat((List<Object>) cache.get("user").get()).containsExactly("b");
+
+			for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+				synchronization.afterCommit();
+			}
+		}
+		finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		assertThat((List<Object>) cache.get("user").get()).containsExactly("a", "b");
+	}
+
+	public interface Service {
+
+		void add(String user, String element);
+
+		void replace(String user, String element);
+
+		void remove(String user, String prefix);
+
+	}
+
+	public static class DefaultService implements Service {
+
+		@Override
+		@CachePatch(value = "cache", key = "#user", operation = CollectionPatch.Operation.ADD_FIRST, element = "#element")
+		public void add(String user, String element) {
+			if (element == null) {
+				throw new IllegalArgumentException("element is required");
+			}
+		}
+
+		@Override
+		@CachePatch(value = "cache", key = "#user", operation = CollectionPatch.Operation.REPLACE,
+				element = "#element", match = "#element.charAt(0) == #root.args[1].charAt(0)")
+		public void replace(String user, String element) {
+		}
+
+		@Override
+		@CachePatch(value = "cache", key = "#user", operation = CollectionPatch.Operation.REMOVE,
+				match = "#element.startsWith(#prefix)")
+		public void remove(String user, String prefix) {
+		}
+
+	}
+
+	@Configuration
+	@EnableCaching
+	@Import(GuavaCachingConfiguration.class)
+	public static class AppConfig {
+
+		@Bean
+		public Service service() {
+			return new DefaultService();
+		}
+
+		@Bean
+		public GuavaCache cache() {
+			return new GuavaCache("cache");
+		}
+
+		@Bean
+		public CacheManager cacheManager() {
+			GuavaCacheManager cacheManager = new GuavaCacheManager();
+			cacheManager.setCaches(ImmutableList.of(cache()));
+			cacheManager.setTransactionAware(true);
+			return cacheManager;
+		}
+
+	}
+
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.interceptor;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import org.springmodules.cache.guava.GuavaCache;
+import org.springmodules.cache.guava.GuavaCacheManager;
+import org.springmodules.cache.guava.annotation.CacheableAll;
+import org.springmodules.cache.guava.annotation.GuavaCachingConfiguration;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class CacheableAllInterceptorTest {
+
+	private AnnotationConfigApplicationContext context;
+
+	private Service service;
+
+	private GuavaCache cache;
+
+	@Before
+	public void setUp() {
+		context = new AnnotationConfigApplicationContext(AppConfig.class);
+		service = context.getBean(Service.class);
+		cache = context.getBean(GuavaCache.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.close();
+	}
+
+	@Test
+	public void testOnlyMissesAreLoaded() {
+		cache.put("b", "cached-b");
+
+		Map<String, String> values = service.loadMap(ImmutableList.of("a", "b", "c", "missing"));
+
+		assertThat(values.keySet()).containsExactly("a", "b", "c");
+		assertThat(values.values()).containsExactly("value-a", "cached-b", "value-c");
+		assertThat(service.invocations()).isEqualTo(ImmutableList.<Collection<String>>of(ImmutableList.of("a", "c", "missing")));
+		assertThat(cache.get("a").get()).isEqualTo("value-a");
+		assertThat(cache.get("missing")).isNull();
+	}
+
+	@Test
+	public void testAllHitsSkipInvocation() {
+		service.loadMap(ImmutableList.of("a", "b"));
+		assertThat(service.loadMap(ImmutableList.of("b", "a")).values()).containsExactly("value-b", "value-a");
+		assertThat(service.invocations()).hasSize(1);
+	}
+
+	@Test
+	public void testCollectionResultKeyedByExpression() {
+		cache.put("key-b", "value-b");
+
+		List<String> values = service.loadList(ImmutableList.of("a", "b", "c"));
+
+		assertThat(values).containsExactly("value-a", "value-b", "value-c");
+		assertThat(service.invocations()).isEqualTo(ImmutableList.<Collection<String>>of(ImmutableList.of("a", "c")));
+		assertThat(cache.get("key-a").get()).isEqualTo("value-a");
+	}
+
+	@Test
+	public void testSetArgumentIsPassedAsSet() {
+		Set<String> values = service.loadSet(ImmutableSet.of("a", "b"));
+
+		assertThat(values).containsOnly("value-a", "value-b");
+		assertThat(service.invocations().get(0)).isInstanceOf(Set.class);
+	}
+
+	@Test
+	public void testConditionNotPassing() {
+		service.loadConditional(ImmutableList.of("a"), false);
+		service.loadConditional(ImmutableList.of("a"), false);
+
+		assertThat(service.invocations()).hasSize(2);
+		assertThat(cache.get("a")).isNull();
+	}
+
+	@Test
+	public void testTransactionAwareCacheStoresAtCommit() {
+		context.close();
+		context = new AnnotationConfigApplicationContext(TransactionAwareConfig.class);
+		service = context.getBean(Service.class);
+		cache = context.getBean(GuavaCache.class);
+
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			service.loadMap(ImmutableList.of("a"));
+			assertThat(cache.get("a")).isNull();
+		}
+		finally {
+			List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+			TransactionSynchronizationManager.clearSynchronization();
+			TransactionSynchronizationUtils.invokeAfterCommit(synchronizations);
+		}
+
+		assertThat(cache.get("a").get()).isEqualTo("value-a");
+	}
+
+	public interface Service {
+
+		Map<String, String> loadMap(Collection<String> keys);
+
+		List<String> loadList(Collection<String> keys);
+
+		Set<String> loadSet(Set<String> keys);
+
+		Map<String, String> loadConditional(Collection<String> keys, boolean cache);
+
+		List<Collection<String>> invocations();
+
+	}
+
+	public static class DefaultService implements Service {
+
+		private final List<Collection<String>> invocations = new ArrayList<Collection<String>>();
+
+		@Override
+		@CacheableAll("cache")
+		public Map<String, String> loadMap(Collection<String> keys) {
+			return load(keys);
+		}
+
+		@Override
+		@CacheableAll(value = "cache", key = "'key-' + #element", resultKey = "#result.substring(6)")
+		public List<String> loadList(Collection<String> keys) {
+			return new ArrayList<String>(load(keys).values());
+		}
+
+		@Override
+		@CacheableAll(value = "cache", resultKey = "#result.substring(6)")
+		public Set<String> loadSet(Set<String> keys) {
+			return ImmutableSet.copyOf(load(keys).values());
+		}
+
+		@Override
+		@CacheableAll(value = "cache", condition = "#cache")
+		public Map<String, String> loadConditional(Collection<String> keys, boolean cache) {
+			return load(keys);
+		}
+
+		private Map<String, String> load(Collection<String> keys) {
+			invocations.add(keys);
+			Map<String, String> values = new LinkedHashMap<String, String>();
+			for (String key : keys) {
+				if (!"missing".equals(key)) {
+					values.put(key, "value-" + key);
+				}
+			}
+			return values;
+		}
+
+		@Override
+		public List<Collection<String>> invocations() {
+			return invocations;
+		}
+
+	}
+
+	@Configuration
+	@EnableCaching
+	@Import(GuavaCachingConfiguration.class)
+	public static class AppConfig {
+
+		@Bean
+		public Service service() {
+			return new DefaultService();
+		}
+
+		@Bean
+		public GuavaCache cache() {
+			return new GuavaCache("cache");
+		}
+
+		@Bean
+		public CacheManager cacheManager() {
+			GuavaCacheManager cacheManager = new GuavaCacheManager();
+			cacheManager.setCaches(ImmutableList.of(cache()));
+			return cacheManager;
+		}
+
+	}
+
+	@Configuration
+	@EnableCaching
+	@Import(GuavaCachingConfiguration.class)
+	public static class TransactionAwareConfig extends AppConfig {
+
+		@Bean
+		@Override
+		public CacheManager cacheManager() {
+			GuavaCacheManager cacheManager = new GuavaCacheManager();
+			cacheManager.setCaches(ImmutableList.of(cache()));
+			cacheManager.setTransactionAware(true);
+			return cacheManager;
+		}
+
+	}
+
+}
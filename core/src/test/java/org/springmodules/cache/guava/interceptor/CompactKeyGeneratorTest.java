@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.interceptor;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class CompactKeyGeneratorTest {
+
+	private final CompactKeyGenerator keyGenerator = new CompactKeyGenerator();
+
+	private final Method method = Object.class.getMethods()[0];
+
+	@Test
+	public void testNoParameters() {
+		assertThat(keyGenerator.generate(this, method)).isSameAs(CompactKey.EMPTY);
+	}
+
+	@Test
+	public void testSingleParameter() {
+		assertThat(keyGenerator.generate(this, method, "alice")).isEqualTo("alice");
+		assertThat(keyGenerator.generate(this, method, (Object) null)).isSameAs(CompactKey.NULL);
+		assertThat(keyGenerator.generate(this, method, (Object) new String[] {"alice"}))
+				.isEqualTo(CompactKey.of((Object) new String[] {"alice"}));
+	}
+
+	@Test
+	public void testSeveralParameters() {
+		assertThat(keyGenerator.generate(this, method, "alice", 1)).isEqualTo(CompactKey.of("alice", 1));
+		assertThat(keyGenerator.generate(this, method, "alice", 1, 2)).isEqualTo(CompactKey.of("alice", 1, 2));
+		assertThat(keyGenerator.generate(this, method, "alice", 1)).isNotEqualTo(keyGenerator.generate(this, method, 1, "alice"));
+	}
+
+}
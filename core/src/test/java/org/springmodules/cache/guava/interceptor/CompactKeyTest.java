@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.interceptor;
+
+import org.junit.Test;
+import org.springmodules.cache.guava.codec.SerializationCodec;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class CompactKeyTest {
+
+	@Test
+	public void testPairKeys() {
+		CompactKey key = CompactKey.of("user", 1);
+
+		assertThat(key).isEqualTo(CompactKey.of("user", 1));
+		assertThat(key.hashCode()).isEqualTo(CompactKey.of("user", 1).hashCode());
+		assertThat(key).isNotEqualTo(CompactKey.of(1, "user"));
+		assertThat(key).isNotEqualTo(CompactKey.of("user", 1L));
+		assertThat(CompactKey.of(null, null)).isEqualTo(CompactKey.of(null, null));
+		assertThat(key.toString()).isEqualTo("[user, 1]");
+	}
+
+	@Test
+	public void testArrayKeys() {
+		CompactKey key = CompactKey.of("user", 1, true);
+
+		assertThat(key).isEqualTo(CompactKey.of("user", 1, true));
+		assertThat(key.hashCode()).isEqualTo(CompactKey.of("user", 1, true).hashCode());
+		assertThat(key).isNotEqualTo(CompactKey.of("user", 1, false));
+		assertThat(CompactKey.of(new int[] {1, 2}, "user")).isEqualTo(CompactKey.of(new int[] {1, 2}, "user"));
+		assertThat(CompactKey.of()).isSameAs(CompactKey.EMPTY);
+	}
+
+	@Test
+	public void testParametersAreCopied() {
+		Object[] params = {"user", 1, true};
+		CompactKey key = CompactKey.of(params);
+		params[0] = "other";
+
+		assertThat(key).isEqualTo(CompactKey.of("user", 1, true));
+	}
+
+	@Test
+	public void testNoHashCollisions() {
+		// DefaultKeyGenerator combines hash codes: both calls share the same key
+		assertThat(CompactKey.of("Aa", "BB")).isNotEqualTo(CompactKey.of("BB", "Aa"));
+		assertThat(CompactKey.of("Aa", 1)).isNotEqualTo(CompactKey.of("BB", 1));
+	}
+
+	@Test
+	public void testSerialization() {
+		SerializationCodec codec = new SerializationCodec();
+		CompactKey pair = CompactKey.of("user", 1);
+		CompactKey array = CompactKey.of("user", 1, true);
+
+		assertThat(codec.decode(codec.encode(pair))).isEqualTo(pair);
+		assertThat(codec.decode(codec.encode(array))).isEqualTo(array);
+		assertThat(codec.decode(codec.encode(CompactKey.EMPTY))).isSameAs(CompactKey.EMPTY);
+	}
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.interceptor;
+
+import com.google.common.collect.ImmutableList;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.cache.Cache;
+import org.springmodules.cache.guava.GuavaCache;
+import org.springmodules.cache.guava.GuavaCacheManager;
+import org.springmodules.cache.guava.GuavaCaches;
+
+import java.util.concurrent.Callable;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class NearCacheScopeInterceptorTest {
+
+	private GuavaCacheManager cacheManager;
+
+	private Cache cache;
+
+	private GuavaCache target;
+
+	@Before
+	public void setUp() {
+		cacheManager = new GuavaCacheManager();
+		cacheManager.setCaches(ImmutableList.of(new GuavaCache("cache")));
+		cacheManager.setNearCacheSize(16);
+		cacheManager.afterPropertiesSet();
+		cache = cacheManager.getCache("cache");
+		target = GuavaCaches.unwrap(cache);
+	}
+
+	@Test
+	public void testLocalEntriesReleasedAfterInvocation() throws Exception {
+		NearCacheScopeInterceptor interceptor = new NearCacheScopeInterceptor();
+		interceptor.setCacheManager(cacheManager);
+		interceptor.afterPropertiesSet();
+
+		cache.put("key", "value");
+		Callable<Object> request = proxy(interceptor, new Callable<Object>() {
+			@Override
+			public Object call() {
+				Object value = cache.get("key").get();
+				// modified behind the near cache
+				target.put("key", "other");
+				assertThat(cache.get("key").get()).isEqualTo(value);
+				return value;
+			}
+		});
+		assertThat(request.call()).isEqualTo("value");
+		assertThat(cache.get("key").get()).isEqualTo("other");
+	}
+
+	@Test
+	public void testNestedInvocationsShareScope() throws Exception {
+		final NearCacheScopeInterceptor interceptor = new NearCacheScopeInterceptor();
+		interceptor.setCacheManager(cacheManager);
+		interceptor.afterPropertiesSet();
+
+		cache.put("key", "value");
+		final Callable<Object> nested = proxy(interceptor, new Callable<Object>() {
+			@Override
+			public Object call() {
+				return cache.get("key").get();
+			}
+		});
+		Callable<Object> request = proxy(interceptor, new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				nested.call();
+				target.put("key", "other");
+				// still served locally once the nested invocation returned
+				return cache.get("key").get();
+			}
+		});
+		assertThat(request.call()).isEqualTo("value");
+		assertThat(cache.get("key").get()).isEqualTo("other");
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Callable<Object> proxy(MethodInterceptor interceptor, Callable<Object> target) {
+		ProxyFactory proxyFactory = new ProxyFactory(target);
+		proxyFactory.addAdvice(interceptor);
+		return (Callable<Object>) proxyFactory.getProxy();
+	}
+
+}
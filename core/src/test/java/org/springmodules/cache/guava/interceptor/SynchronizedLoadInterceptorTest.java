@@ -0,0 +1,316 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.interceptor;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+import org.springmodules.cache.guava.GuavaCache;
+import org.springmodules.cache.guava.GuavaCacheManager;
+import org.springmodules.cache.guava.GuavaCaches;
+import org.springmodules.cache.guava.annotation.GuavaCachingConfiguration;
+import org.springmodules.cache.guava.annotation.SynchronizedLoad;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.util.concurrent.Uninterruptibles.sleepUninterruptibly;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class SynchronizedLoadInterceptorTest {
+
+	private AnnotationConfigApplicationContext context;
+
+	private Service service;
+
+	private GuavaCache cache;
+
+	@Before
+	public void setUp() {
+		context = new AnnotationConfigApplicationContext(AppConfig.class);
+		service = context.getBean(Service.class);
+		cache = context.getBean(GuavaCache.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.close();
+	}
+
+	@Test
+	public void testConcurrentMissesShareOneInvocation() throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			Callable<String> caller = new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					start.await();
+					return service.load("key");
+				}
+			};
+			Future<?>[] results = new Future<?>[threads];
+			for (int i = 0; i < threads; i++) {
+				results[i] = executor.submit(caller);
+			}
+			start.countDown();
+			for (Future<?> result : results) {
+				assertThat(result.get()).isEqualTo("value-key");
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(service.invocations()).isEqualTo(1);
+		assertThat(cache.get("key").get()).isEqualTo("value-key");
+	}
+
+	@Test
+	public void testExceptionIsPropagated() {
+		try {
+			service.fail("key");
+			fail("expected exception");
+		}
+		catch (IllegalStateException ex) {
+			assertThat(ex.getMessage()).isEqualTo("key");
+		}
+		assertThat(cache.get("key")).isNull();
+	}
+
+	@Test
+	public void testConditionAndUnless() {
+		assertThat(service.conditional("skip")).isEqualTo("value-skip");
+		assertThat(cache.get("skip")).isNull();
+
+		assertThat(service.conditional("veto")).isEqualTo("value-veto");
+		assertThat(cache.get("veto")).isNull();
+
+		assertThat(service.conditional("key")).isEqualTo("value-key");
+		assertThat(cache.get("key").get()).isEqualTo("value-key");
+	}
+
+	@Test
+	public void testRefreshUpdatesValue() {
+		assertRefreshUpdatesValue(RefreshingConfig.class);
+	}
+
+	@Test
+	public void testRefreshUpdatesValueBeforeCacheInterceptor() {
+		assertRefreshUpdatesValue(OuterRefreshingConfig.class);
+	}
+
+	private void assertRefreshUpdatesValue(Class<?> config) {
+		AnnotationConfigApplicationContext refreshing = new AnnotationConfigApplicationContext(config);
+		try {
+			Service service = refreshing.getBean(Service.class);
+			GuavaCache cache = GuavaCaches.unwrap(refreshing.getBean(CacheManager.class).getCache("cache"));
+
+			assertThat(service.version("key")).isEqualTo("value-key-1");
+
+			sleepUninterruptibly(1100, TimeUnit.MILLISECONDS);
+			// stale read triggers the reload through the intercepted method
+			cache.get("key");
+			for (int i = 0; i < 50 && "value-key-1".equals(cache.get("key").get()); i++) {
+				sleepUninterruptibly(20, TimeUnit.MILLISECONDS);
+			}
+			assertThat(cache.get("key").get()).isEqualTo("value-key-2");
+			assertThat(service.version("key")).isEqualTo("value-key-2");
+		}
+		finally {
+			refreshing.close();
+		}
+	}
+
+	public interface Service {
+
+		String load(String key);
+
+		String fail(String key);
+
+		String conditional(String key);
+
+		String version(String key);
+
+		int invocations();
+
+	}
+
+	public static class DefaultService implements Service {
+
+		private final AtomicInteger invocations = new AtomicInteger();
+
+		private final long delay;
+
+		public DefaultService(long delay) {
+			this.delay = delay;
+		}
+
+		@Override
+		@Cacheable("cache")
+		@SynchronizedLoad
+		public String load(String key) {
+			invocations.incrementAndGet();
+			sleepUninterruptibly(delay, TimeUnit.MILLISECONDS);
+			return "value-" + key;
+		}
+
+		@Override
+		@Cacheable("cache")
+		@SynchronizedLoad
+		public String fail(String key) {
+			throw new IllegalStateException(key);
+		}
+
+		@Override
+		@Cacheable(value = "cache", condition = "#key != 'skip'", unless = "#result == 'value-veto'")
+		@SynchronizedLoad
+		public String conditional(String key) {
+			return "value-" + key;
+		}
+
+		@Override
+		@Cacheable("cache")
+		@SynchronizedLoad
+		public String version(String key) {
+			return "value-" + key + "-" + invocations.incrementAndGet();
+		}
+
+		@Override
+		public int invocations() {
+			return invocations.get();
+		}
+
+	}
+
+	@Configuration
+	@EnableCaching
+	@Import(GuavaCachingConfiguration.class)
+	public static class AppConfig {
+
+		@Bean
+		public Service service() {
+			return new DefaultService(200);
+		}
+
+		@Bean
+		public GuavaCache cache() {
+			return new GuavaCache("cache");
+		}
+
+		@Bean
+		public CacheManager cacheManager() {
+			GuavaCacheManager cacheManager = new GuavaCacheManager();
+			cacheManager.setCaches(ImmutableList.of(cache()));
+			return cacheManager;
+		}
+
+	}
+
+	@Configuration
+	@EnableCaching
+	@Import(GuavaCachingConfiguration.class)
+	public static class RefreshingConfig {
+
+		@Bean
+		public Service service() {
+			return new DefaultService(0);
+		}
+
+		@Bean(destroyMethod = "shutdownNow")
+		public ExecutorService reloadExecutor() {
+			return Executors.newSingleThreadExecutor();
+		}
+
+		@Bean
+		public CacheManager cacheManager() {
+			GuavaCacheManager cacheManager = new GuavaCacheManager();
+			cacheManager.setSpec("refreshAfterWrite=1s");
+			cacheManager.setReloadExecutor(reloadExecutor());
+			return cacheManager;
+		}
+
+	}
+
+	/**
+	 * Configuration applying the synchronized load advice before the cache advice.
+	 */
+	@Configuration
+	@EnableCaching
+	public static class OuterRefreshingConfig {
+
+		@Bean
+		public Service service() {
+			return new DefaultService(0);
+		}
+
+		@Bean
+		@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+		public Advisor synchronizedLoadAdvisor() {
+			DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(
+					AnnotationMatchingPointcut.forMethodAnnotation(SynchronizedLoad.class),
+					synchronizedLoadInterceptor());
+			advisor.setOrder(Ordered.HIGHEST_PRECEDENCE);
+			return advisor;
+		}
+
+		@Bean
+		@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+		public SynchronizedLoadInterceptor synchronizedLoadInterceptor() {
+			return new SynchronizedLoadInterceptor();
+		}
+
+		@Bean(destroyMethod = "shutdownNow")
+		public ExecutorService reloadExecutor() {
+			return Executors.newSingleThreadExecutor();
+		}
+
+		@Bean
+		public CacheManager cacheManager() {
+			GuavaCacheManager cacheManager = new GuavaCacheManager();
+			cacheManager.setSpec("refreshAfterWrite=1s");
+			cacheManager.setReloadExecutor(reloadExecutor());
+			return cacheManager;
+		}
+
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.jmx;
+
+import com.google.common.cache.CacheBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jmx.export.MBeanExportException;
+import org.springmodules.cache.guava.GuavaCache;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.util.concurrent.Callable;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class GuavaCacheStatisticsTest {
+
+	private MBeanServer server;
+
+	private GuavaCache cache;
+
+	@Before
+	public void setUp() {
+		server = MBeanServerFactory.newMBeanServer();
+		cache = new GuavaCache("cache", CacheBuilder.newBuilder().maximumSize(2).recordStats(), true);
+	}
+
+	@Test
+	public void testStatistics() {
+		GuavaCacheStatistics statistics = new GuavaCacheStatistics(cache);
+
+		cache.put("key1", "value1");
+		cache.get("key1");
+		cache.get("key2");
+		cache.get("key3", new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return "value3";
+			}
+		});
+		cache.put("key4", "value4");
+		statistics.cleanUp();
+
+		assertThat(statistics.getName()).isEqualTo("cache");
+		assertThat(statistics.getHitCount()).isEqualTo(1);
+		assertThat(statistics.getMissCount()).isEqualTo(2);
+		assertThat(statistics.getRequestCount()).isEqualTo(3);
+		assertThat(statistics.getLoadSuccessCount()).isEqualTo(1);
+		assertThat(statistics.getAverageLoadPenalty()).isGreaterThan(0);
+		assertThat(statistics.getEvictionCount()).isEqualTo(1);
+		assertThat(statistics.getEstimatedSize()).isEqualTo(2);
+
+		statistics.invalidateAll();
+		assertThat(statistics.getEstimatedSize()).isEqualTo(0);
+	}
+
+	@Test
+	public void testNullValueStatistics() {
+		GuavaCache nullValueCache = new GuavaCache("cache", CacheBuilder.newBuilder().recordStats(),
+				CacheBuilder.newBuilder().maximumSize(1).recordStats(), false);
+		GuavaCacheStatistics statistics = new GuavaCacheStatistics(nullValueCache);
+
+		nullValueCache.put("key1", null);
+		nullValueCache.put("key2", null);
+		nullValueCache.get("key2");
+		nullValueCache.get("key3");
+		statistics.cleanUp();
+
+		assertThat(statistics.getNullValueEstimatedSize()).isEqualTo(1);
+		assertThat(statistics.getNullValueHitCount()).isEqualTo(1);
+		assertThat(statistics.getNullValueMissCount()).isEqualTo(1);
+		assertThat(statistics.getNullValueEvictionCount()).isEqualTo(1);
+		assertThat(statistics.getEstimatedSize()).isEqualTo(0);
+	}
+
+	@Test
+	public void testNullValueStatisticsWithoutNullValueStore() {
+		GuavaCacheStatistics statistics = new GuavaCacheStatistics(cache);
+
+		cache.put("key", null);
+		cache.get("key");
+
+		assertThat(statistics.getNullValueEstimatedSize()).isEqualTo(0);
+		assertThat(statistics.getNullValueHitCount()).isEqualTo(0);
+		assertThat(statistics.getHitCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testRegisterCache() throws Exception {
+		GuavaCacheMBeanRegistrar registrar = new GuavaCacheMBeanRegistrar();
+		registrar.setServer(server);
+
+		ObjectName objectName = registrar.registerCache(cache);
+		assertThat(objectName.toString()).isEqualTo("org.springmodules.cache.guava:name=\"cache\",type=GuavaCache");
+
+		cache.put("key", "value");
+		cache.get("key");
+		assertThat(server.getAttribute(objectName, "HitCount")).isEqualTo(1L);
+		assertThat(server.getAttribute(objectName, "EstimatedSize")).isEqualTo(1L);
+
+		server.invoke(objectName, "invalidateAll", null, null);
+		assertThat(cache.get("key")).isNull();
+
+		registrar.unregisterCaches();
+		assertThat(server.isRegistered(objectName)).isFalse();
+	}
+
+	@Test(expected = MBeanExportException.class)
+	public void testRegisterCacheTwice() {
+		GuavaCacheMBeanRegistrar registrar = new GuavaCacheMBeanRegistrar();
+		registrar.setServer(server);
+
+		registrar.registerCache(cache);
+		registrar.registerCache(cache);
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets() {
+		for (long value = 0; value < 100000; value++) {
+			int index = LatencyHistogram.bucketIndex(value);
+			long highest = LatencyHistogram.highestValue(index);
+			assertThat(highest).isGreaterThanOrEqualTo(value);
+			// relative error is bounded by the sub-bucket precision
+			assertThat(highest - value).isLessThanOrEqualTo(value / LatencyHistogram.SUB_BUCKET_COUNT);
+			assertThat(LatencyHistogram.bucketIndex(highest)).isEqualTo(index);
+		}
+		assertThat(LatencyHistogram.bucketIndex(Long.MAX_VALUE)).isEqualTo(LatencyHistogram.BUCKET_COUNT - 1);
+		assertThat(LatencyHistogram.highestValue(LatencyHistogram.BUCKET_COUNT - 1)).isEqualTo(Long.MAX_VALUE);
+	}
+
+	@Test
+	public void testEmptySnapshot() {
+		LatencySnapshot snapshot = new LatencyHistogram().snapshot();
+
+		assertThat(snapshot.getCount()).isEqualTo(0);
+		assertThat(snapshot.getMean()).isEqualTo(0.0);
+		assertThat(snapshot.getP99()).isEqualTo(0);
+		assertThat(snapshot.getMax()).isEqualTo(0);
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram(4);
+		for (long value = 1; value <= 1000; value++) {
+			histogram.record(value * 1000);
+		}
+		histogram.record(-1);
+
+		LatencySnapshot snapshot = histogram.snapshot();
+		assertThat(snapshot.getCount()).isEqualTo(1001);
+		assertThat(snapshot.getMax()).isEqualTo(1000000);
+		assertThat(snapshot.getValueAtPercentile(0.0)).isEqualTo(0);
+		assertWithinPrecision(snapshot.getP50(), 500000);
+		assertWithinPrecision(snapshot.getP99(), 990000);
+		assertWithinPrecision(snapshot.getP999(), 1000000);
+		assertThat(snapshot.getValueAtPercentile(100.0)).isEqualTo(1000000);
+
+		histogram.reset();
+		assertThat(histogram.snapshot().getCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void testConcurrentRecording() throws Exception {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		final int threads = 8;
+		final int iterations = 10000;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int i = 0; i < threads; i++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					}
+					catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+					for (int j = 0; j < iterations; j++) {
+						histogram.record(j);
+					}
+				}
+			});
+		}
+		start.countDown();
+		executor.shutdown();
+		assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+		LatencySnapshot snapshot = histogram.snapshot();
+		assertThat(snapshot.getCount()).isEqualTo(threads * iterations);
+		assertThat(snapshot.getMax()).isEqualTo(iterations - 1);
+		assertThat(snapshot.getMean()).isEqualTo((iterations - 1) / 2.0);
+	}
+
+	private static void assertWithinPrecision(long actual, long expected) {
+		assertThat(actual).isGreaterThanOrEqualTo(expected);
+		assertThat(actual).isLessThanOrEqualTo(expected + expected / LatencyHistogram.SUB_BUCKET_COUNT);
+	}
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.offheap;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class OffHeapStoreTest {
+
+	@Test
+	public void testPutGetRemove() {
+		OffHeapStore store = new OffHeapStore(1024, 16, 64);
+
+		assertThat(store.put("key1", bytes(10, 1))).isTrue();
+		assertThat(store.put("key2", bytes(40, 2))).isTrue();
+		assertThat(store.put("empty", new byte[0])).isTrue();
+
+		assertThat(store.size()).isEqualTo(3);
+		assertThat(store.get("key1")).isEqualTo(bytes(10, 1));
+		assertThat(store.get("key2")).isEqualTo(bytes(40, 2));
+		assertThat(store.get("empty")).isEqualTo(new byte[0]);
+		assertThat(store.get("missing")).isNull();
+		assertThat(store.getUsedBytes()).isEqualTo(5 * 16);
+
+		assertThat(store.remove("key2")).isEqualTo(bytes(40, 2));
+		assertThat(store.remove("key2")).isNull();
+		assertThat(store.getUsedBytes()).isEqualTo(2 * 16);
+	}
+
+	@Test
+	public void testReplace() {
+		OffHeapStore store = new OffHeapStore(1024, 16, 64);
+
+		store.put("key", bytes(40, 1));
+		store.put("key", bytes(8, 2));
+
+		assertThat(store.size()).isEqualTo(1);
+		assertThat(store.get("key")).isEqualTo(bytes(8, 2));
+		assertThat(store.getUsedBytes()).isEqualTo(16);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		OffHeapStore store = new OffHeapStore(64, 16, 32);
+
+		store.put("key1", bytes(16, 1));
+		store.put("key2", bytes(16, 2));
+		store.put("key3", bytes(16, 3));
+		store.put("key4", bytes(16, 4));
+		store.get("key1");
+
+		// needs two blocks: evicts key2 then key3
+		store.put("key5", bytes(20, 5));
+
+		assertThat(store.get("key1")).isEqualTo(bytes(16, 1));
+		assertThat(store.get("key2")).isNull();
+		assertThat(store.get("key3")).isNull();
+		assertThat(store.get("key4")).isEqualTo(bytes(16, 4));
+		assertThat(store.get("key5")).isEqualTo(bytes(20, 5));
+		assertThat(store.getEvictionCount()).isEqualTo(2);
+		assertThat(store.getUsedBytes()).isEqualTo(store.getCapacity());
+	}
+
+	@Test
+	public void testValueLargerThanStore() {
+		OffHeapStore store = new OffHeapStore(64, 16, 32);
+		store.put("key", bytes(16, 1));
+
+		assertThat(store.put("key", bytes(65, 2))).isFalse();
+		assertThat(store.get("key")).isNull();
+		assertThat(store.size()).isEqualTo(0);
+	}
+
+	@Test
+	public void testSlabsAllocatedOnDemand() {
+		OffHeapStore store = new OffHeapStore(100, 16, 32);
+		assertThat(store.getCapacity()).isEqualTo(96);
+		assertThat(store.getAllocatedBytes()).isEqualTo(0);
+
+		store.put("key1", bytes(16, 1));
+		assertThat(store.getAllocatedBytes()).isEqualTo(32);
+
+		store.put("key2", bytes(80, 2));
+		assertThat(store.getAllocatedBytes()).isEqualTo(96);
+
+		store.clear();
+		assertThat(store.size()).isEqualTo(0);
+		assertThat(store.getUsedBytes()).isEqualTo(0);
+		assertThat(store.getAllocatedBytes()).isEqualTo(96);
+
+		// blocks are reused
+		store.put("key3", bytes(96, 3));
+		assertThat(store.get("key3")).isEqualTo(bytes(96, 3));
+	}
+
+	private static byte[] bytes(int length, int seed) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) (seed * 31 + i);
+		}
+		return bytes;
+	}
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.snapshot;
+
+import com.google.common.cache.CacheBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springmodules.cache.guava.GuavaCache;
+import org.springmodules.cache.guava.codec.SerializationCodec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Executor;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class CacheSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testWriteAndRestore() throws Exception {
+		GuavaCache cache = new GuavaCache("cache");
+		cache.put("key1", "value1");
+		cache.put(2, null);
+		cache.put("unserializable", new Object());
+
+		CacheSnapshot snapshot = CacheSnapshot.forCache(folder.getRoot(), cache.getName());
+		assertThat(snapshot.write(cache)).isEqualTo(2);
+		assertThat(snapshot.getFile()).exists();
+
+		GuavaCache restored = new GuavaCache("cache");
+		assertThat(snapshot.restore(restored)).isEqualTo(2);
+		assertThat(restored.get("key1").get()).isEqualTo("value1");
+		assertThat(restored.get(2).get()).isNull();
+		assertThat(restored.get("unserializable")).isNull();
+
+		// consumed
+		assertThat(snapshot.getFile()).doesNotExist();
+		assertThat(snapshot.restore(restored)).isZero();
+	}
+
+	@Test
+	public void testRestoreKeepsCachedValues() throws Exception {
+		GuavaCache cache = new GuavaCache("cache");
+		cache.put("key1", "value1");
+		cache.put("key2", "value2");
+		CacheSnapshot snapshot = CacheSnapshot.forCache(folder.getRoot(), cache.getName());
+		snapshot.write(cache);
+
+		GuavaCache restored = new GuavaCache("cache");
+		restored.put("key1", "newer");
+		assertThat(snapshot.restore(restored)).isEqualTo(1);
+		assertThat(restored.get("key1").get()).isEqualTo("newer");
+		assertThat(restored.get("key2").get()).isEqualTo("value2");
+	}
+
+	@Test
+	public void testRestoreSkipsKeysEvictedMeanwhile() throws Exception {
+		GuavaCache cache = new GuavaCache("cache");
+		cache.put("key1", "value1");
+		cache.put("key2", "value2");
+		CacheSnapshot snapshot = CacheSnapshot.forCache(folder.getRoot(), cache.getName());
+		snapshot.write(cache);
+
+		// key2 is evicted while the restore runs, before its entry is read
+		final GuavaCache restored = new GuavaCache("cache");
+		snapshot.setCodec(new SerializationCodec() {
+			@Override
+			public Object decode(byte[] bytes) {
+				restored.evict("key2");
+				return super.decode(bytes);
+			}
+		});
+		assertThat(snapshot.restore(restored)).isEqualTo(1);
+		assertThat(restored.get("key1").get()).isEqualTo("value1");
+		assertThat(restored.get("key2")).isNull();
+	}
+
+	@Test
+	public void testWriteHasNoSideEffects() throws Exception {
+		GuavaCache cache = new GuavaCache("cache", CacheBuilder.newBuilder().recordStats(), true);
+		cache.put("key", "value");
+
+		CacheSnapshot.forCache(folder.getRoot(), cache.getName()).write(cache);
+		assertThat(cache.getStats().requestCount()).isZero();
+	}
+
+	@Test
+	public void testExpiredSnapshotIsDiscarded() throws Exception {
+		GuavaCache cache = new GuavaCache("cache");
+		cache.put("key", "value");
+		CacheSnapshot snapshot = CacheSnapshot.forCache(folder.getRoot(), cache.getName());
+		snapshot.write(cache);
+		Thread.sleep(20);
+
+		snapshot.setMaximumAge(10);
+		GuavaCache restored = new GuavaCache("cache");
+		assertThat(snapshot.restore(restored)).isZero();
+		assertThat(restored.get("key")).isNull();
+		assertThat(snapshot.getFile()).doesNotExist();
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedSnapshot() throws Exception {
+		GuavaCache cache = new GuavaCache("cache");
+		cache.put("key", "value");
+		CacheSnapshot snapshot = CacheSnapshot.forCache(folder.getRoot(), cache.getName());
+		snapshot.write(cache);
+
+		RandomAccessFile file = new RandomAccessFile(snapshot.getFile(), "rw");
+		try {
+			file.setLength(file.length() - 6);
+		}
+		finally {
+			file.close();
+		}
+		snapshot.restore(new GuavaCache("cache"));
+	}
+
+	@Test
+	public void testFileNames() {
+		File file = CacheSnapshot.forCache(folder.getRoot(), "posts/cache:1").getFile();
+		assertThat(file.getName()).isEqualTo("posts_cache_1.snapshot");
+		assertThat(file.getParentFile()).isEqualTo(folder.getRoot());
+	}
+
+	@Test
+	public void testSnapshotStore() {
+		CacheSnapshotStore store = new CacheSnapshotStore();
+		store.setRestoreExecutor(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				command.run();
+			}
+		});
+		GuavaCache cache = new GuavaCache("cache");
+		cache.put("key", "value");
+
+		// no directory: nothing written
+		store.write(cache);
+		assertThat(folder.getRoot().list()).isEmpty();
+
+		store.setDirectory(new File(folder.getRoot(), "snapshots"));
+		store.write(cache);
+		GuavaCache restored = new GuavaCache("cache");
+		store.restore(restored);
+		assertThat(restored.get("key").get()).isEqualTo("value");
+	}
+
+}
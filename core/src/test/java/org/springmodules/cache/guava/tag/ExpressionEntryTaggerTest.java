@@ -0,0 +1,47 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.tag;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class ExpressionEntryTaggerTest {
+
+	@Test
+	public void testSingleTag() {
+		EntryTagger tagger = new ExpressionEntryTagger("'user:' + #key");
+		assertThat(tagger.getTags("alice", null)).containsExactly("user:alice");
+	}
+
+	@Test
+	public void testCollectionOfTags() {
+		EntryTagger tagger = new ExpressionEntryTagger("{'user:' + #key, 'country:' + #value['country']}");
+		assertThat(tagger.getTags("alice", ImmutableMap.of("country", "ca"))).containsExactly("user:alice", "country:ca");
+	}
+
+	@Test
+	public void testNoTag() {
+		EntryTagger tagger = new ExpressionEntryTagger("#value != null ? 'user:' + #key : null");
+		assertThat(tagger.getTags("alice", null)).isEmpty();
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.tag;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class TagIndexTest {
+
+	@Test
+	public void testIndex() {
+		TagIndex index = new TagIndex();
+		index.index("key1", ImmutableList.of("tag1", "tag2"));
+		index.index("key2", ImmutableList.of("tag2"));
+
+		assertThat(index.getKeys("tag1")).containsOnly("key1");
+		assertThat(index.getKeys("tag2")).containsOnly("key1", "key2");
+		assertThat(index.getTags("key1")).containsOnly("tag1", "tag2");
+		assertThat(index.getKeys("missing")).isEmpty();
+		assertThat(index.size()).isEqualTo(2);
+	}
+
+	@Test
+	public void testReindexReplacesTags() {
+		TagIndex index = new TagIndex();
+		index.index("key", ImmutableList.of("tag1", "tag2"));
+		index.index("key", ImmutableList.of("tag2", "tag3"));
+
+		assertThat(index.getKeys("tag1")).isEmpty();
+		assertThat(index.getTags("key")).containsOnly("tag2", "tag3");
+
+		index.index("key", ImmutableList.<String>of());
+		assertThat(index.getTags("key")).isEmpty();
+		assertThat(index.size()).isZero();
+	}
+
+	@Test
+	public void testUnindexDropsEmptyTags() {
+		TagIndex index = new TagIndex();
+		index.index("key1", ImmutableList.of("tag"));
+		index.index("key2", ImmutableList.of("tag"));
+
+		index.unindex("key1");
+		assertThat(index.getKeys("tag")).containsOnly("key2");
+		index.unindex("key2");
+		assertThat(index.size()).isZero();
+		index.unindex("missing");
+	}
+
+}
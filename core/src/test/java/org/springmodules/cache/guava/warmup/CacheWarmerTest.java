@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.warmup;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springmodules.cache.guava.GuavaCacheManager;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class CacheWarmerTest {
+
+	@Test
+	public void testWarmUp() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		GuavaCacheManager cacheManager = new GuavaCacheManager();
+		cacheManager.afterPropertiesSet();
+
+		CacheWarmer warmer = new CacheWarmer();
+		warmer.setCacheManager(cacheManager);
+		warmer.setPreloaders(ImmutableMap.<String, CachePreloader>of(
+				"users", new CachePreloader() {
+					@Override
+					public Map<?, ?> preload() throws Exception {
+						release.await();
+						return ImmutableMap.of("taha", "Taha", "adam", "Adam");
+					}
+				},
+				"posts", new CachePreloader() {
+					@Override
+					public Map<?, ?> preload() {
+						return ImmutableMap.of(1, "post 1");
+					}
+				},
+				"failing", new CachePreloader() {
+					@Override
+					public Map<?, ?> preload() {
+						throw new IllegalStateException("failing");
+					}
+				}));
+		warmer.afterPropertiesSet();
+		assertThat(warmer.isReady()).isFalse();
+
+		warmer.warmUp();
+		assertThat(warmer.awaitReady(50, TimeUnit.MILLISECONDS)).isFalse();
+		release.countDown();
+		assertThat(warmer.awaitReady(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(warmer.isReady()).isTrue();
+
+		assertThat(cacheManager.getCache("users").get("taha").get()).isEqualTo("Taha");
+		assertThat(cacheManager.getCache("posts").get(1).get()).isEqualTo("post 1");
+		assertThat(warmer.getDurations().keySet()).containsOnly("users", "posts");
+		warmer.destroy();
+	}
+
+	@Test
+	public void testWarmUpOtherCaches() throws Exception {
+		ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager();
+		CacheWarmer warmer = new CacheWarmer();
+		warmer.setCacheManager(cacheManager);
+		warmer.setPreloaders(ImmutableMap.<String, CachePreloader>of("cache", new CachePreloader() {
+			@Override
+			public Map<?, ?> preload() {
+				return ImmutableMap.of("key", "value");
+			}
+		}));
+		warmer.afterPropertiesSet();
+
+		warmer.warmUp();
+		// started once
+		warmer.warmUp();
+		assertThat(warmer.awaitReady(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(cacheManager.getCache("cache").get("key").get()).isEqualTo("value");
+	}
+
+	@Test
+	public void testNoPreloaders() {
+		CacheWarmer warmer = new CacheWarmer();
+		warmer.setCacheManager(new ConcurrentMapCacheManager());
+		warmer.afterPropertiesSet();
+		warmer.warmUp();
+		assertThat(warmer.isReady()).isTrue();
+	}
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.weigher;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class ObjectSizeEstimatorTest {
+
+	private final ObjectSizeEstimator estimator = new ObjectSizeEstimator();
+
+	@Test
+	public void testShallowSize() {
+		// header + int + long + reference
+		assertThat(estimator.shallowSizeOf(new Bean(1, 2L, null))).isEqualTo(32);
+		assertThat(estimator.shallowSizeOf(new Object())).isEqualTo(16);
+		assertThat(estimator.shallowSizeOf(new byte[10])).isEqualTo(32);
+		assertThat(estimator.shallowSizeOf(new long[2])).isEqualTo(32);
+		assertThat(estimator.shallowSizeOf(new Object[3])).isEqualTo(32);
+	}
+
+	@Test
+	public void testDeepSize() {
+		assertThat(estimator.deepSizeOf(null)).isEqualTo(0);
+
+		Bean leaf = new Bean(1, 2L, null);
+		Bean root = new Bean(3, 4L, leaf);
+		assertThat(estimator.deepSizeOf(root)).isEqualTo(64);
+	}
+
+	@Test
+	public void testSharedReferencesAreCountedOnce() {
+		Bean leaf = new Bean(1, 2L, null);
+		Object[] array = {leaf, leaf, leaf};
+
+		assertThat(estimator.deepSizeOf(array)).isEqualTo(32 + 32);
+	}
+
+	@Test
+	public void testCycles() {
+		Bean bean = new Bean(1, 2L, null);
+		bean.next = bean;
+
+		assertThat(estimator.deepSizeOf(bean)).isEqualTo(32);
+	}
+
+	@Test
+	public void testClassesAndEnumsAreShared() {
+		assertThat(estimator.deepSizeOf(TimeUnit.SECONDS)).isEqualTo(0);
+		assertThat(estimator.deepSizeOf(new Object[] {String.class, TimeUnit.SECONDS})).isEqualTo(24);
+	}
+
+	@Test
+	public void testSizeGrowsWithCollectionSize() {
+		List<String> small = new ArrayList<String>();
+		List<String> large = new ArrayList<String>();
+		for (int i = 0; i < 100; i++) {
+			large.add("value" + i);
+		}
+		small.add("value");
+
+		assertThat(estimator.deepSizeOf(large)).isGreaterThan(20 * estimator.deepSizeOf(small));
+	}
+
+	@SuppressWarnings("unused")
+	private static class Bean {
+
+		private final int id;
+
+		private final long version;
+
+		private Bean next;
+
+		Bean(int id, long version, Bean next) {
+			this.id = id;
+			this.version = version;
+			this.next = next;
+		}
+
+	}
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.weigher;
+
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.Arrays;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class WeighersTest {
+
+	@Test
+	public void testForName() {
+		assertThat(Weighers.forName(Weighers.OBJECT_SIZE)).isInstanceOf(ObjectSizeWeigher.class);
+		assertThat(Weighers.forName(Weighers.COLLECTION_SIZE)).isInstanceOf(CollectionSizeWeigher.class);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testForUnknownName() {
+		Weighers.forName("unknown");
+	}
+
+	@Test
+	public void testObjectSizeWeigher() {
+		Weigher<Object, Object> weigher = new ObjectSizeWeigher();
+		ObjectSizeEstimator estimator = new ObjectSizeEstimator();
+		byte[] value = new byte[1000];
+
+		assertThat(weigher.weigh("key", value)).isEqualTo((int) (estimator.deepSizeOf("key") + estimator.deepSizeOf(value)));
+		assertThat(weigher.weigh("key", new byte[100000])).isGreaterThan(100000);
+		assertThat(weigher.weigh("key", new SimpleValueWrapper(value))).isEqualTo(weigher.weigh("key", value));
+	}
+
+	@Test
+	public void testCollectionSizeWeigher() {
+		Weigher<Object, Object> weigher = new CollectionSizeWeigher();
+
+		assertThat(weigher.weigh("key", ImmutableList.of(1, 2, 3))).isEqualTo(3);
+		assertThat(weigher.weigh("key", ImmutableMap.of(1, 2))).isEqualTo(1);
+		assertThat(weigher.weigh("key", new String[] {"a", "b"})).isEqualTo(2);
+		assertThat(weigher.weigh("key", new SimpleValueWrapper(Arrays.asList(1, 2, 3, 4)))).isEqualTo(4);
+		assertThat(weigher.weigh("key", ImmutableList.of())).isEqualTo(1);
+		assertThat(weigher.weigh("key", "value")).isEqualTo(1);
+	}
+
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.cache.guava.writer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0
+ */
+public class WriteBehindQueueTest {
+
+	private final RecordingCacheWriter writer = new RecordingCacheWriter();
+
+	private WriteBehindQueue queue;
+
+	@After
+	public void tearDown() {
+		if (queue != null) {
+			queue.close();
+		}
+	}
+
+	@Test
+	public void testFlushCoalescesWrites() {
+		queue = new WriteBehindQueue("test", writer, 10, 1, TimeUnit.HOURS, 10);
+		queue.write("key1", "value1");
+		queue.write("key2", "value2");
+		queue.write("key1", "value3");
+		queue.delete("key3");
+		assertThat(queue.size()).isEqualTo(3);
+
+		queue.flush();
+		assertThat(queue.size()).isZero();
+		assertThat(writer.writes).isEqualTo(
+				ImmutableList.<Map<Object, Object>>of(ImmutableMap.<Object, Object>of("key1", "value3", "key2", "value2")));
+		assertThat(writer.deletes).isEqualTo(ImmutableList.<Collection<Object>>of(ImmutableList.<Object>of("key3")));
+	}
+
+	@Test
+	public void testDeleteReplacesPendingWrite() {
+		queue = new WriteBehindQueue("test", writer, 10, 1, TimeUnit.HOURS, 10);
+		queue.write("key", "value");
+		queue.delete("key");
+
+		queue.flush();
+		assertThat(writer.writes).isEmpty();
+		assertThat(writer.deletes).isEqualTo(ImmutableList.<Collection<Object>>of(ImmutableList.<Object>of("key")));
+	}
+
+	@Test
+	public void testBatchWrittenWhenFull() {
+		queue = new WriteBehindQueue("test", writer, 2, 1, TimeUnit.HOURS, 10);
+		queue.write("key1", "value1");
+		queue.write("key2", "value2");
+		queue.write("key3", "value3");
+
+		writer.awaitWrites(1);
+		assertThat(writer.writes.get(0)).isEqualTo(ImmutableMap.<Object, Object>of("key1", "value1", "key2", "value2"));
+		assertThat(queue.size()).isEqualTo(1);
+	}
+
+	@Test
+	public void testBatchWrittenAfterDelay() {
+		queue = new WriteBehindQueue("test", writer, 10, 50, TimeUnit.MILLISECONDS, 10);
+		queue.write("key", "value");
+
+		writer.awaitWrites(1);
+		assertThat(writer.writes).isEqualTo(
+				ImmutableList.<Map<Object, Object>>of(ImmutableMap.<Object, Object>of("key", "value")));
+	}
+
+	@Test
+	public void testFullQueueBlocksWriters() throws Exception {
+		final CountDownLatch writing = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		queue = new WriteBehindQueue("test", new RecordingCacheWriter() {
+			@Override
+			public void writeAll(Map<Object, Object> entries) {
+				writing.countDown();
+				Uninterruptibles.awaitUninterruptibly(release);
+				super.writeAll(entries);
+			}
+		}, 1, 1, TimeUnit.HOURS, 1);
+		queue.write("key1", "value1");
+		writing.await();
+		queue.write("key2", "value2");
+
+		final AtomicBoolean written = new AtomicBoolean();
+		Thread blocked = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				queue.write("key3", "value3");
+				written.set(true);
+			}
+		});
+		blocked.start();
+		blocked.join(100);
+		assertThat(written.get()).isFalse();
+
+		// writes of a pending key coalesce instead of blocking
+		queue.write("key2", "value4");
+
+		release.countDown();
+		blocked.join();
+		assertThat(written.get()).isTrue();
+	}
+
+	@Test
+	public void testCloseWritesPendingWrites() {
+		queue = new WriteBehindQueue("test", writer, 10, 1, TimeUnit.HOURS, 10);
+		queue.write("key", "value");
+
+		queue.close();
+		assertThat(writer.writes).isEqualTo(
+				ImmutableList.<Map<Object, Object>>of(ImmutableMap.<Object, Object>of("key", "value")));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testWriteAfterClose() {
+		queue = new WriteBehindQueue("test", writer, 10, 1, TimeUnit.HOURS, 10);
+		queue.close();
+		queue.write("key", "value");
+	}
+
+	@Test
+	public void testFailedBatchDoesNotStopQueue() {
+		queue = new WriteBehindQueue("test", new RecordingCacheWriter() {
+			@Override
+			public void writeAll(Map<Object, Object> entries) {
+				if (entries.containsKey("failing")) {
+					throw new IllegalStateException("store unavailable");
+				}
+				super.writeAll(entries);
+			}
+		}, 10, 1, TimeUnit.HOURS, 10);
+		queue.write("failing", "value");
+		queue.flush();
+		queue.write("key", "value");
+		queue.flush();
+		assertThat(((RecordingCacheWriter) queue.getWriter()).writes)
+				.isEqualTo(ImmutableList.<Map<Object, Object>>of(ImmutableMap.<Object, Object>of("key", "value")));
+	}
+
+	@Test
+	public void testFailedBatchErrorDoesNotStopQueue() {
+		queue = new WriteBehindQueue("test", new RecordingCacheWriter() {
+			@Override
+			public void writeAll(Map<Object, Object> entries) {
+				if (entries.containsKey("failing")) {
+					throw new AssertionError("store unavailable");
+				}
+				super.writeAll(entries);
+			}
+		}, 10, 1, TimeUnit.HOURS, 10);
+		queue.write("failing", "value");
+		queue.flush();
+		queue.write("key", "value");
+		queue.flush();
+		assertThat(((RecordingCacheWriter) queue.getWriter()).writes)
+				.isEqualTo(ImmutableList.<Map<Object, Object>>of(ImmutableMap.<Object, Object>of("key", "value")));
+	}
+
+	@Test
+	public void testFailedBatchIsRetried() {
+		final AtomicInteger attempts = new AtomicInteger();
+		queue = new WriteBehindQueue("test", new RecordingCacheWriter() {
+			@Override
+			public void writeAll(Map<Object, Object> entries) {
+				if (attempts.incrementAndGet() == 1) {
+					throw new IllegalStateException("store unavailable");
+				}
+				super.writeAll(entries);
+			}
+		}, 10, 1, TimeUnit.HOURS, 10);
+		queue.write("key", "value");
+		queue.flush();
+		assertThat(attempts.get()).isEqualTo(2);
+		assertThat(((RecordingCacheWriter) queue.getWriter()).writes)
+				.isEqualTo(ImmutableList.<Map<Object, Object>>of(ImmutableMap.<Object, Object>of("key", "value")));
+	}
+
+	@Test
+	public void testFailedBatchIsDiscardedAfterRetries() {
+		final AtomicInteger attempts = new AtomicInteger();
+		queue = new WriteBehindQueue("test", new RecordingCacheWriter() {
+			@Override
+			public void writeAll(Map<Object, Object> entries) {
+				attempts.incrementAndGet();
+				throw new IllegalStateException("store unavailable");
+			}
+		}, 10, 1, TimeUnit.HOURS, 10, 2);
+		queue.write("key", "value");
+		queue.flush();
+		assertThat(attempts.get()).isEqualTo(3);
+		assertThat(queue.size()).isEqualTo(0);
+	}
+
+	@Test
+	public void testFailedWriteSupersededByLaterWrite() {
+		final CountDownLatch failing = new CountDownLatch(1);
+		final CountDownLatch written = new CountDownLatch(1);
+		queue = new WriteBehindQueue("test", new RecordingCacheWriter() {
+			@Override
+			public void writeAll(Map<Object, Object> entries) {
+				if ("old".equals(entries.get("key"))) {
+					failing.countDown();
+					Uninterruptibles.awaitUninterruptibly(written);
+					throw new IllegalStateException("store unavailable");
+				}
+				super.writeAll(entries);
+			}
+		}, 1, 1, TimeUnit.HOURS, 10);
+		queue.write("key", "old");
+		Uninterruptibles.awaitUninterruptibly(failing);
+		queue.write("key", "new");
+		written.countDown();
+		queue.flush();
+		assertThat(((RecordingCacheWriter) queue.getWriter()).writes)
+				.isEqualTo(ImmutableList.<Map<Object, Object>>of(ImmutableMap.<Object, Object>of("key", "new")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCapacityLowerThanBatchSize() {
+		new WriteBehindQueue("test", writer, 10, 1, TimeUnit.HOURS, 5);
+	}
+
+	static class RecordingCacheWriter implements CacheWriter {
+
+		final List<Map<Object, Object>> writes = Collections.synchronizedList(new ArrayList<Map<Object, Object>>());
+
+		final List<Collection<Object>> deletes = Collections.synchronizedList(new ArrayList<Collection<Object>>());
+
+		@Override
+		public void writeAll(Map<Object, Object> entries) {
+			writes.add(entries);
+		}
+
+		@Override
+		public void deleteAll(Collection<Object> keys) {
+			deletes.add(keys);
+		}
+
+		void awaitWrites(int count) {
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (writes.size() < count && System.nanoTime() < deadline) {
+				Uninterruptibles.sleepUninterruptibly(5, TimeUnit.MILLISECONDS);
+			}
+		}
+
+	}
+
+}
@@ -25,12 +25,20 @@ import java.util.Collection;
  */
 public interface PostRepository {
 
+	int nextId();
+
 	void create(Post post);
 
+	void saveAll(Collection<Post> posts);
+
 	void update(Post post);
 
 	void delete(String userName, int id);
 
+	void deleteAll(Collection<Integer> ids);
+
+	Collection<String> findUserNamesByIds(Collection<Integer> ids);
+
 	Collection<Post> findByUserName(String userName);
 
 }
\ No newline at end of file
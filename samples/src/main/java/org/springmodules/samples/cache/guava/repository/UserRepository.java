@@ -29,4 +29,6 @@ public interface UserRepository {
 
 	User findByUserName(String userName);
 
+	Collection<User> findByUserNames(Collection<String> userNames);
+
 }
\ No newline at end of file
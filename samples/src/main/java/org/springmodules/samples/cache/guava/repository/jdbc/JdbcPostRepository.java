@@ -21,13 +21,17 @@ import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.BeanPropertySqlParameterSource;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcDaoSupport;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.core.namedparam.SqlParameterSourceUtils;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Repository;
 import org.springmodules.samples.cache.guava.domain.Post;
 import org.springmodules.samples.cache.guava.repository.PostRepository;
 
 import javax.sql.DataSource;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * @author Omar Irbouh
@@ -36,8 +40,17 @@ import java.util.Collection;
 @Repository
 public class JdbcPostRepository extends NamedParameterJdbcDaoSupport implements PostRepository {
 
+	/**
+	 * Number of ids allocated per value of {@code posts_seq}, its {@code increment by}.
+	 */
+	static final int ID_ALLOCATION_SIZE = 50;
+
 	final RowMapper<Post> postMapper = BeanPropertyRowMapper.newInstance(Post.class);
 	final SimpleJdbcInsert insertPost;
+	final SimpleJdbcInsert insertPostWithId;
+
+	private int nextId;
+	private int maxId;
 
 	@Autowired
 	public JdbcPostRepository(DataSource dataSource) {
@@ -47,6 +60,23 @@ public class JdbcPostRepository extends NamedParameterJdbcDaoSupport implements
 				.withTableName("posts")
 				.usingColumns("user_name", "submit_date", "content")
 				.usingGeneratedKeyColumns("id");
+
+		insertPostWithId = new SimpleJdbcInsert(dataSource)
+				.withTableName("posts")
+				.usingColumns("id", "user_name", "submit_date", "content");
+	}
+
+	/**
+	 * Allocate the id of a new post. Ids are allocated by blocks of {@link #ID_ALLOCATION_SIZE},
+	 * so that assigning ids does not cost a database round trip per post.
+	 */
+	@Override
+	public synchronized int nextId() {
+		if (nextId == maxId) {
+			nextId = getJdbcTemplate().queryForObject("select next value for posts_seq", Integer.class);
+			maxId = nextId + ID_ALLOCATION_SIZE;
+		}
+		return nextId++;
 	}
 
 	@Override
@@ -61,6 +91,35 @@ public class JdbcPostRepository extends NamedParameterJdbcDaoSupport implements
 		post.setId(id.intValue());
 	}
 
+	/**
+	 * Update the given posts in one batch, then insert those that do not exist yet in another.
+	 * The posts must have an id, typically allocated by {@link #nextId()}.
+	 */
+	@Override
+	public void saveAll(Collection<Post> posts) {
+		List<Post> postList = new ArrayList<Post>(posts);
+		int[] updateCounts = getNamedParameterJdbcTemplate()
+				.batchUpdate(
+						"update posts set content = :content where id = :id",
+						SqlParameterSourceUtils.createBatch(postList.toArray())
+				);
+
+		List<SqlParameterSource> inserts = new ArrayList<SqlParameterSource>();
+		for (int i = 0; i < updateCounts.length; i++) {
+			if (updateCounts[i] == 0) {
+				Post post = postList.get(i);
+				inserts.add(new MapSqlParameterSource()
+						.addValue("id", post.getId())
+						.addValue("user_name", post.getUserName())
+						.addValue("submit_date", post.getSubmitDate())
+						.addValue("content", post.getContent()));
+			}
+		}
+		if (!inserts.isEmpty()) {
+			insertPostWithId.executeBatch(inserts.toArray(new SqlParameterSource[inserts.size()]));
+		}
+	}
+
 	@Override
 	public void update(Post post) {
 		getNamedParameterJdbcTemplate()
@@ -81,6 +140,25 @@ public class JdbcPostRepository extends NamedParameterJdbcDaoSupport implements
 				);
 	}
 
+	@Override
+	public void deleteAll(Collection<Integer> ids) {
+		getNamedParameterJdbcTemplate()
+				.update(
+						"delete from posts where id in (:ids)",
+						new MapSqlParameterSource("ids", ids)
+				);
+	}
+
+	@Override
+	public Collection<String> findUserNamesByIds(Collection<Integer> ids) {
+		return getNamedParameterJdbcTemplate()
+				.queryForList(
+						"select distinct user_name from posts where id in (:ids)",
+						new MapSqlParameterSource("ids", ids),
+						String.class
+				);
+	}
+
 	@Override
 	public Collection<Post> findByUserName(String userName) {
 		return getNamedParameterJdbcTemplate()
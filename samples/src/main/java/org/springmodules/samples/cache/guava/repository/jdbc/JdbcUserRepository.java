@@ -26,6 +26,7 @@ import org.springmodules.samples.cache.guava.repository.UserRepository;
 
 import javax.sql.DataSource;
 import java.util.Collection;
+import java.util.Collections;
 
 /**
  * @author Omar Irbouh
@@ -60,4 +61,17 @@ public class JdbcUserRepository extends NamedParameterJdbcDaoSupport implements
 				);
 	}
 
+	@Override
+	public Collection<User> findByUserNames(Collection<String> userNames) {
+		if (userNames.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return getNamedParameterJdbcTemplate()
+				.query(
+						"select * from users where user_name in (:user_names)",
+						new MapSqlParameterSource("user_names", userNames),
+						userMapper
+				);
+	}
+
 }
\ No newline at end of file
@@ -30,6 +30,8 @@ public interface SocialService {
 
 	User findUserByUserName(String userName);
 
+	Collection<User> findUsersByUserNames(Collection<String> userNames);
+
 	Collection<Post> findPostsByUserName(String userName);
 
 	void createPost(Post post);
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.samples.cache.guava.service.impl;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.stereotype.Component;
+import org.springmodules.cache.guava.CollectionPatch;
+import org.springmodules.cache.guava.GuavaCache;
+import org.springmodules.cache.guava.writer.CacheWriter;
+import org.springmodules.samples.cache.guava.domain.Post;
+import org.springmodules.samples.cache.guava.repository.PostRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Writer of {@code post-cache}, holding the posts created, updated and deleted by
+ * {@link SocialServiceImpl} by id: the posts are saved and deleted in JDBC batches, then
+ * replaced in or removed from the {@code posts-cache} entries of their users, as these may
+ * have been reloaded from the database before the posts were written. An entry missing a
+ * saved post is evicted.
+ * @author Omar Irbouh
+ * @since 1.0.0
+ */
+@Component
+public class PostCacheWriter implements CacheWriter {
+
+	final PostRepository postRepository;
+	final GuavaCache postsCache;
+
+	/**
+	 * {@code posts-cache} is injected rather than looked up in the cache manager when writing:
+	 * the pending posts are written while the cache manager is destroyed, when it can no longer
+	 * be looked up.
+	 */
+	@Autowired
+	public PostCacheWriter(PostRepository postRepository, @Qualifier("posts-cache") GuavaCache postsCache) {
+		this.postRepository = checkNotNull(postRepository);
+		this.postsCache = checkNotNull(postsCache);
+	}
+
+	@Override
+	public void writeAll(Map<Object, Object> entries) {
+		List<Post> posts = new ArrayList<Post>(entries.size());
+		for (Object value : entries.values()) {
+			posts.add((Post) value);
+		}
+		postRepository.saveAll(posts);
+
+		for (Post post : posts) {
+			postsCache.merge(post.getUserName(), CollectionPatch.replace(post));
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void deleteAll(Collection<Object> keys) {
+		final Set<Integer> ids = ImmutableSet.copyOf((Collection<Integer>) (Collection<?>) keys);
+		// the user names are read before deleting the posts, to patch the entries of these users only
+		Collection<String> userNames = postRepository.findUserNamesByIds(ids);
+		postRepository.deleteAll(ids);
+
+		Predicate<Object> deleted = new Predicate<Object>() {
+			@Override
+			public boolean apply(Object post) {
+				return ids.contains(((Post) post).getId());
+			}
+		};
+		for (String userName : userNames) {
+			ValueWrapper posts = postsCache.peek(userName);
+			if (posts != null && Iterables.any((Collection<?>) posts.get(), deleted)) {
+				postsCache.merge(userName, new CollectionPatch(CollectionPatch.Operation.REMOVE, null, deleted));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.samples.cache.guava.service.impl;
+
+import org.springframework.stereotype.Component;
+import org.springmodules.cache.guava.expiry.Expiry;
+import org.springmodules.samples.cache.guava.domain.Post;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expiry of {@code posts-cache}, as filled by {@link SocialServiceImpl#findPostsByUserName(String)}:
+ * the posts of a user live longer the older the latest one, a user who posted a day ago being
+ * unlikely to post again within the hour.
+ * @author Omar Irbouh
+ * @since 1.0.0
+ */
+@Component
+public class PostsExpiry implements Expiry {
+
+	static final long MINIMUM_TIME_TO_LIVE = TimeUnit.MINUTES.toNanos(1);
+
+	static final long MAXIMUM_TIME_TO_LIVE = TimeUnit.DAYS.toNanos(1);
+
+	/**
+	 * Ratio of the age of the latest post to the time to live of the posts.
+	 */
+	static final int AGE_RATIO = 24;
+
+	@Override
+	public long expireAfterWrite(Object key, Object value) {
+		long latestSubmitDate = 0;
+		if (value instanceof Collection) {
+			for (Object post : (Collection<?>) value) {
+				if (post instanceof Post && ((Post) post).getSubmitDate() != null) {
+					latestSubmitDate = Math.max(latestSubmitDate, ((Post) post).getSubmitDate().getTime());
+				}
+			}
+		}
+		if (latestSubmitDate == 0) {
+			return MINIMUM_TIME_TO_LIVE;
+		}
+		long age = TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - latestSubmitDate));
+		return Math.max(MINIMUM_TIME_TO_LIVE, Math.min(MAXIMUM_TIME_TO_LIVE, age / AGE_RATIO));
+	}
+
+}
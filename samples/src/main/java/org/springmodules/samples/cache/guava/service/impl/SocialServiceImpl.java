@@ -16,10 +16,15 @@
 package org.springmodules.samples.cache.guava.service.impl;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springmodules.cache.guava.CollectionPatch;
+import org.springmodules.cache.guava.annotation.CachePatch;
+import org.springmodules.cache.guava.annotation.CacheableAll;
+import org.springmodules.cache.guava.annotation.SynchronizedLoad;
 import org.springmodules.samples.cache.guava.domain.Post;
 import org.springmodules.samples.cache.guava.domain.User;
 import org.springmodules.samples.cache.guava.repository.PostRepository;
@@ -27,6 +32,7 @@ import org.springmodules.samples.cache.guava.repository.UserRepository;
 import org.springmodules.samples.cache.guava.service.SocialService;
 
 import java.util.Collection;
+import java.util.Date;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -40,16 +46,30 @@ public class SocialServiceImpl implements SocialService {
 
 	final UserRepository userRepository;
 	final PostRepository postRepository;
+	final Cache postCache;
 
+	/**
+	 * Created, updated and deleted posts are written behind through {@code post-cache},
+	 * saving and deleting them by batches with {@link PostCacheWriter}. The cached posts of their user are patched
+	 * rather than evicted, sparing a reload of all the posts of the user on each change.
+	 * <p>The transactions of the write methods no longer write posts to the database: the
+	 * transaction aware caches defer the changes of {@code post-cache} and {@code posts-cache}
+	 * until commit, and discard them on rollback. Posts are written afterwards, outside of the
+	 * transaction; a post still failing to be written after its retries is lost, although
+	 * {@code posts-cache} serves it until evicted.
+	 */
 	@Autowired
 	public SocialServiceImpl(UserRepository userRepository,
-							 PostRepository postRepository) {
+							 PostRepository postRepository,
+							 CacheManager cacheManager) {
 		this.userRepository = checkNotNull(userRepository);
 		this.postRepository = checkNotNull(postRepository);
+		this.postCache = checkNotNull(cacheManager.getCache("post-cache"));
 	}
 
 	@Override
 	@Cacheable(value = "users-cache", key = "'all-users'")
+	@SynchronizedLoad
 	public Collection<User> findAllUsers() {
 		return userRepository.findAll();
 	}
@@ -60,6 +80,12 @@ public class SocialServiceImpl implements SocialService {
 		return userRepository.findByUserName(checkNotNull(userName));
 	}
 
+	@Override
+	@CacheableAll(value = "users-cache", resultKey = "#result.userName")
+	public Collection<User> findUsersByUserNames(Collection<String> userNames) {
+		return userRepository.findByUserNames(checkNotNull(userNames));
+	}
+
 	@Override
 	@Cacheable(value = "posts-cache")
 	public Collection<Post> findPostsByUserName(String userName) {
@@ -68,23 +94,32 @@ public class SocialServiceImpl implements SocialService {
 
 	@Override
 	@Transactional(readOnly = false)
-	@CacheEvict(value = "posts-cache", key = "#post.userName")
+	@CachePatch(value = "posts-cache", key = "#post.userName", operation = CollectionPatch.Operation.ADD_FIRST,
+			element = "#post")
 	public void createPost(Post post) {
-		postRepository.create(checkNotNull(post));
+		checkNotNull(post);
+		post.setId(postRepository.nextId());
+		if (post.getSubmitDate() == null) {
+			post.setSubmitDate(new Date());
+		}
+		postCache.put(post.getId(), post);
 	}
 
 	@Override
 	@Transactional(readOnly = false)
-	@CacheEvict(value = "posts-cache", key = "#post.userName")
+	@CachePatch(value = "posts-cache", key = "#post.userName", operation = CollectionPatch.Operation.REPLACE,
+			element = "#post")
 	public void updatePost(Post post) {
-		postRepository.update(checkNotNull(post));
+		postCache.put(checkNotNull(post).getId(), post);
 	}
 
 	@Override
 	@Transactional(readOnly = false)
-	@CacheEvict(value = "posts-cache", key = "#userName")
+	@CachePatch(value = "posts-cache", key = "#userName", operation = CollectionPatch.Operation.REMOVE,
+			match = "#element.id == #id")
 	public void deletePost(String userName, int id) {
-		postRepository.delete(checkNotNull(userName), id);
+		checkNotNull(userName);
+		postCache.evict(id);
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.samples.cache.guava.service.impl;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Maps;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springmodules.cache.guava.warmup.CachePreloader;
+import org.springmodules.samples.cache.guava.domain.User;
+import org.springmodules.samples.cache.guava.repository.UserRepository;
+
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Preloads {@code users-cache} with all users, keyed by user name as
+ * {@link SocialServiceImpl#findUserByUserName(String)} caches them.
+ * @author Omar Irbouh
+ * @since 1.0.0
+ */
+@Component
+public class UsersCachePreloader implements CachePreloader {
+
+	final UserRepository userRepository;
+
+	@Autowired
+	public UsersCachePreloader(UserRepository userRepository) {
+		this.userRepository = checkNotNull(userRepository);
+	}
+
+	@Override
+	public Map<?, ?> preload() {
+		return Maps.uniqueIndex(userRepository.findAll(), new Function<User, String>() {
+			@Override
+			public String apply(User user) {
+				return user.getUserName();
+			}
+		});
+	}
+
+}
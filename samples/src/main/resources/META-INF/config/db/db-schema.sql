@@ -5,11 +5,15 @@ create table users (
 );
 alter table users add constraint pk_users primary key (user_name);
 
+-- ids are allocated by blocks of 50, see JdbcPostRepository.nextId()
+create sequence posts_seq start with 1 increment by 50;
+
 create table posts (
-	id				identity		not null,
+	id				int				default (next value for posts_seq) not null,
 	user_name		varchar(25)		not null,
 	submit_date		timestamp		not null default now(),
 	content			varchar(4000)
 );
+alter table posts add constraint pk_posts primary key (id);
 alter table posts add constraint fk_posts_users foreign key (user_name) references users (user_name);
 create index idx_posts_user_name on posts (user_name);
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.samples.cache.guava;
+
+import org.junit.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.core.env.StandardEnvironment;
+import org.springmodules.cache.guava.ExpiringGuavaCache;
+import org.springmodules.cache.guava.GuavaCache;
+import org.springmodules.cache.guava.TieredGuavaCache;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0.0
+ */
+public class ApplicationContextConfigTest {
+
+	@Test
+	public void testPostsExpireByDefault() {
+		assertThat(loadPostsCache()).isInstanceOf(ExpiringGuavaCache.class);
+	}
+
+	@Test
+	public void testPostsMoveOffHeapWithOffHeapProfile() {
+		assertThat(loadPostsCache("off-heap")).isInstanceOf(TieredGuavaCache.class);
+	}
+
+	/**
+	 * Create {@code posts-cache} as configured for the given profiles, without refreshing
+	 * the whole application context.
+	 */
+	private static GuavaCache loadPostsCache(String... profiles) {
+		StandardEnvironment environment = new StandardEnvironment();
+		environment.setActiveProfiles(profiles);
+		DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+		XmlBeanDefinitionReader reader = new XmlBeanDefinitionReader(beanFactory);
+		reader.setEnvironment(environment);
+		reader.loadBeanDefinitions("classpath:/META-INF/config/applicationContext-config.xml");
+		return beanFactory.getBean("posts-cache", GuavaCache.class);
+	}
+
+}
@@ -21,9 +21,11 @@ import org.junit.Test;
 import org.springmodules.samples.cache.guava.domain.Post;
 
 import java.util.Collection;
+import java.util.Date;
 import java.util.Map;
 
 import static com.google.common.collect.Iterables.getOnlyElement;
+import static java.util.Arrays.asList;
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.springmodules.samples.cache.guava.util.SampleConditions.sameAsPost;
 import static org.springmodules.samples.cache.guava.util.SampleTests.newPost;
@@ -69,6 +71,62 @@ public class JdbcPostRepositoryTest extends AbstractJdbcRepositoryTest {
 		assertThat(updatedPost.getContent()).isEqualTo(content);
 	}
 
+	@Test
+	public void testNextId() {
+		int id = postRepository.nextId();
+
+		// ids increase across blocks, skipping the values taken by inserts without id
+		for (int i = 0; i < 2 * JdbcPostRepository.ID_ALLOCATION_SIZE; i++) {
+			int nextId = postRepository.nextId();
+			assertThat(nextId).isGreaterThan(id);
+			id = nextId;
+		}
+	}
+
+	@Test
+	public void testSaveAll() {
+		// update an existing post, insert a new one
+		Post post = Iterables.get(postMap.values(), 0);
+		post.setContent("x-x--- new content ---x-x");
+		Post newPost = newPost("user-3", "content-31");
+		newPost.setId(postRepository.nextId());
+		newPost.setSubmitDate(new Date());
+
+		postRepository.saveAll(asList(post, newPost));
+
+		// verify
+		Map<Integer, Post> posts = helper.loadAllPosts();
+		assertThat(posts).hasSize(postMap.size() + 1);
+		assertThat(posts.get(post.getId()).getContent()).isEqualTo(post.getContent());
+		assertThat(posts.get(newPost.getId())).is(sameAsPost(newPost));
+	}
+
+	@Test
+	public void testDeleteAll() {
+		Collection<Integer> ids = asList(Iterables.get(postMap.values(), 0).getId(),
+				Iterables.get(postMap.values(), 1).getId());
+
+		postRepository.deleteAll(ids);
+
+		// verify
+		Map<Integer, Post> posts = helper.loadAllPosts();
+		assertThat(posts).hasSize(postMap.size() - 2);
+		assertThat(posts.keySet()).doesNotContain(ids.toArray(new Integer[ids.size()]));
+	}
+
+	@Test
+	public void testFindUserNamesByIds() {
+		Post post1 = Iterables.get(postMap.get("user-1"), 0);
+		Post post2 = Iterables.get(postMap.get("user-1"), 1);
+		Post post3 = Iterables.get(postMap.get("user-2"), 0);
+
+		Collection<String> userNames = postRepository.findUserNamesByIds(
+				asList(post1.getId(), post2.getId(), post3.getId(), -1));
+
+		// verify
+		assertThat(userNames).containsOnly("user-1", "user-2").hasSize(2);
+	}
+
 	@Test
 	public void testDelete() {
 		// get first post
@@ -15,6 +15,7 @@
  */
 package org.springmodules.samples.cache.guava.repository.jdbc;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import org.junit.Test;
 import org.springframework.dao.EmptyResultDataAccessException;
@@ -69,6 +70,27 @@ public class JdbcUserRepositoryTest extends AbstractJdbcRepositoryTest {
 		assertThat(user).is(sameAsUser(expected));
 	}
 
+	@Test
+	public void testFindByUserNames() {
+		Collection<String> userNames = ImmutableList.copyOf(userMap.keySet()).subList(0, 2);
+
+		// load users from db, ignoring unknown user names
+		Map<String, User> resultMap = Maps.uniqueIndex(
+				userRepository.findByUserNames(ImmutableList.<String>builder().addAll(userNames).add("|_x_|").build()),
+				userName());
+
+		// verify
+		assertThat(resultMap.keySet()).containsOnly(userNames.toArray(new String[userNames.size()]));
+		for (String userName : userNames) {
+			assertThat(userMap.get(userName)).is(sameAsUser(resultMap.get(userName)));
+		}
+	}
+
+	@Test
+	public void testFindByUserNames_Empty() {
+		assertThat(userRepository.findByUserNames(ImmutableList.<String>of())).isEmpty();
+	}
+
 	@Test(expected = EmptyResultDataAccessException.class)
 	public void testFindByUserName_NotFound() {
 		final String userName = "|_x_|";
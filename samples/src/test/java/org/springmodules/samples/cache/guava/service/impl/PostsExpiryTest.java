@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.samples.cache.guava.service.impl;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.springmodules.samples.cache.guava.domain.Post;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.springmodules.samples.cache.guava.util.SampleTests.newPost;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0.0
+ */
+public class PostsExpiryTest {
+
+	final PostsExpiry expiry = new PostsExpiry();
+
+	@Test
+	public void testOlderPostsLiveLonger() {
+		Post recent = postedAgo(2, TimeUnit.MINUTES);
+		Post dayOld = postedAgo(1, TimeUnit.DAYS);
+
+		assertThat(expiry.expireAfterWrite("taha", ImmutableList.of(recent))).isEqualTo(PostsExpiry.MINIMUM_TIME_TO_LIVE);
+		long timeToLive = expiry.expireAfterWrite("adam", ImmutableList.of(dayOld));
+		assertThat(timeToLive).isGreaterThan(TimeUnit.MINUTES.toNanos(59)).isLessThan(TimeUnit.MINUTES.toNanos(61));
+		assertThat(expiry.expireAfterWrite("omar", ImmutableList.of(postedAgo(365, TimeUnit.DAYS))))
+				.isEqualTo(PostsExpiry.MAXIMUM_TIME_TO_LIVE);
+	}
+
+	@Test
+	public void testLatestPostWins() {
+		assertThat(expiry.expireAfterWrite("taha", ImmutableList.of(postedAgo(30, TimeUnit.DAYS), postedAgo(1, TimeUnit.MINUTES))))
+				.isEqualTo(PostsExpiry.MINIMUM_TIME_TO_LIVE);
+	}
+
+	@Test
+	public void testNoPosts() {
+		assertThat(expiry.expireAfterWrite("taha", Collections.emptyList())).isEqualTo(PostsExpiry.MINIMUM_TIME_TO_LIVE);
+		assertThat(expiry.expireAfterWrite("taha", null)).isEqualTo(PostsExpiry.MINIMUM_TIME_TO_LIVE);
+	}
+
+	private static Post postedAgo(long duration, TimeUnit unit) {
+		Post post = newPost("user", "content");
+		post.setSubmitDate(new Date(System.currentTimeMillis() - unit.toMillis(duration)));
+		return post;
+	}
+
+}
@@ -15,23 +15,28 @@
  */
 package org.springmodules.samples.cache.guava.service.impl;
 
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
-import org.mockito.invocation.InvocationOnMock;
-import org.mockito.stubbing.Answer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springmodules.cache.guava.GuavaCache;
 import org.springmodules.cache.guava.GuavaCacheManager;
+import org.springmodules.cache.guava.WriteBehindGuavaCache;
+import org.springmodules.cache.guava.annotation.GuavaCachingConfiguration;
+import org.springmodules.cache.guava.writer.WriteBehindQueue;
 import org.springmodules.samples.cache.guava.domain.Post;
 import org.springmodules.samples.cache.guava.domain.User;
 import org.springmodules.samples.cache.guava.repository.PostRepository;
@@ -39,12 +44,15 @@ import org.springmodules.samples.cache.guava.repository.UserRepository;
 import org.springmodules.samples.cache.guava.service.SocialService;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.collect.Iterables.limit;
 import static com.google.common.collect.Lists.newArrayList;
 import static org.fest.assertions.api.Assertions.assertThat;
-import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -66,6 +74,9 @@ public class SocialServiceImplCacheTest {
 	@Autowired
 	GuavaCache postsCache;
 
+	@Autowired
+	WriteBehindGuavaCache postCache;
+
 	@Autowired
 	UserRepository userRepository;
 
@@ -80,6 +91,7 @@ public class SocialServiceImplCacheTest {
 		// flush caches
 		usersCache.clear();
 		postsCache.clear();
+		postCache.clear();
 	}
 
 	@After
@@ -128,6 +140,45 @@ public class SocialServiceImplCacheTest {
 		verify(userRepository, times(1)).findByUserName(userName);
 	}
 
+	@Test
+	public void testFindUnknownUserByUserName() {
+		// call the service method few times
+		assertThat(socialService.findUserByUserName("unknown")).isNull();
+		assertThat(socialService.findUserByUserName("unknown")).isNull();
+
+		// verify the miss is cached apart from actual users
+		assertThat(usersCache.get("unknown").get()).isNull();
+		assertThat(usersCache.getNativeCache().size()).isEqualTo(0);
+		assertThat(usersCache.getNullValueStore().size()).isEqualTo(1);
+
+		// verify number of times repository was invoked
+		verify(userRepository, times(1)).findByUserName("unknown");
+	}
+
+	@Test
+	public void testFindUsersByUserNames() {
+		final User taha = newUser("taha", "Taha Irbouh", "taha@irbouh.net");
+		final User adam = newUser("adam", "Adam Irbouh", "adam@irbouh.net");
+
+		// taha is already cached by a single user lookup
+		when(userRepository.findByUserName("taha")).thenReturn(taha);
+		socialService.findUserByUserName("taha");
+
+		// only the misses are loaded from the repository
+		when(userRepository.findByUserNames(ImmutableList.of("adam", "omar"))).thenReturn(newArrayList(adam));
+
+		// call the service method few times
+		assertThat(socialService.findUsersByUserNames(ImmutableList.of("adam", "taha", "omar"))).containsExactly(adam, taha);
+		assertThat(socialService.findUsersByUserNames(ImmutableList.of("taha", "adam"))).containsExactly(taha, adam);
+
+		// verify data is in cache
+		assertThat(usersCache.get("adam").get()).isSameAs(adam);
+		assertThat(usersCache.get("omar")).isNull();
+
+		// verify number of times repository was invoked
+		verify(userRepository, times(1)).findByUserNames(ImmutableList.of("adam", "omar"));
+	}
+
 	@Test
 	@SuppressWarnings("unchecked")
 	public void testFindPostsByUserName() {
@@ -164,26 +215,10 @@ public class SocialServiceImplCacheTest {
 
 		final Post newPost = newPost(userName, "post 4");
 
-		final Collection<Post> postsAfterAdd = newArrayList();
-		postsAfterAdd.addAll(posts);
-		postsAfterAdd.add(newPost);
-
 		// return a clone of the posts
-		when(postRepository.findByUserName(userName))
-				.thenReturn(newArrayList(posts))
-				.thenReturn(newArrayList(postsAfterAdd));
-
-		doAnswer(new Answer() {
-			@Override
-			public Object answer(InvocationOnMock invocation) throws Throwable {
-				// set new post id
-				Post post = (Post) invocation.getArguments()[0];
-				post.setId(posts.size() + 1);
-
-				// stubbed method is void
-				return null;
-			}
-		}).when(postRepository).create(newPost);
+		when(postRepository.findByUserName(userName)).thenReturn(newArrayList(posts));
+
+		when(postRepository.nextId()).thenReturn(posts.size() + 1);
 
 		// load user posts
 		assertThat(socialService.findPostsByUserName(userName)).containsAll(posts);
@@ -194,20 +229,24 @@ public class SocialServiceImplCacheTest {
 		// create new post
 		socialService.createPost(newPost);
 
-		// verify cache was flushed
-		assertThat(postsCache.getNativeCache().size()).isZero();
+		// verify the new post was added to the cached posts, and is written behind
+		assertThat((Iterable<Post>) postsCache.get(userName).get()).containsExactly(
+				newPost, newPostWithId(1, userName, "post 1"), newPostWithId(2, userName, "post 2"),
+				newPostWithId(3, userName, "post 3"));
+		assertThat(postCache.get(newPost.getId()).get()).isSameAs(newPost);
+		verify(postRepository, never()).saveAll(anyCollectionOf(Post.class));
+		postCache.flush();
 
-		// reload user posts
-		assertThat(socialService.findPostsByUserName(userName))
-				.hasSameSizeAs(postsAfterAdd)
-				.containsAll(postsAfterAdd)
-				.contains(newPost);
+		// user posts are served from the patched cache entry
+		assertThat(socialService.findPostsByUserName(userName)).hasSize(4).contains(newPost);
 
 		// verify number of times repository was invoked
-		verify(postRepository, times(1)).create(newPost);
+		verify(postRepository, times(1)).saveAll(ImmutableList.of(newPost));
+		verify(postRepository, times(1)).findByUserName(userName);
 	}
 
 	@Test
+	@SuppressWarnings("unchecked")
 	public void testUpdatePost() {
 		final String userName = "taha";
 		final Collection<Post> posts = newArrayList(
@@ -216,10 +255,7 @@ public class SocialServiceImplCacheTest {
 				newPostWithId(3, userName, "post 3")
 		);
 
-		final Post updatePost = newPostWithId(3, userName, "post 3 - new content");
-
-		final Collection<Post> postsAfterUpdate = newArrayList(limit(posts, 2));
-		postsAfterUpdate.add(updatePost);
+		final Post updatePost = newPostWithId(2, userName, "post 2 - new content");
 
 		when(postRepository.findByUserName(userName)).thenReturn(posts);
 
@@ -232,17 +268,37 @@ public class SocialServiceImplCacheTest {
 		// update post
 		socialService.updatePost(updatePost);
 
-		// verify cache was flushed
-		assertThat(postsCache.getNativeCache().size()).isZero();
+		// verify the post was replaced in place in the cached posts, and is written behind
+		final List<Post> cachedPosts = (List<Post>) postsCache.get(userName).get();
+		assertThat(cachedPosts).hasSameSizeAs(posts);
+		assertThat(cachedPosts.get(1)).isSameAs(updatePost);
+		assertThat(postCache.get(updatePost.getId()).get()).isSameAs(updatePost);
+		postCache.flush();
 
-		// reload user posts
-		assertThat(socialService.findPostsByUserName(userName))
-				.hasSameSizeAs(postsAfterUpdate)
-				.containsAll(postsAfterUpdate)
-				.contains(updatePost);
+		// user posts are served from the patched cache entry
+		assertThat(((List<Post>) socialService.findPostsByUserName(userName)).get(1)).isSameAs(updatePost);
 
 		// verify number of times repository was invoked
-		verify(postRepository, times(1)).update(updatePost);
+		verify(postRepository, times(1)).saveAll(ImmutableList.of(updatePost));
+		verify(postRepository, times(1)).findByUserName(userName);
+	}
+
+	@Test
+	public void testWrittenPostsPatchReloadedPosts() {
+		final String userName = "taha";
+		final Post updatePost = newPostWithId(1, userName, "post 1 - new content");
+		final Post newPost = newPost(userName, "post 2");
+
+		when(postRepository.nextId()).thenReturn(2);
+
+		// posts are written behind, while user posts are reloaded without them
+		socialService.updatePost(updatePost);
+		socialService.createPost(newPost);
+		postsCache.put(userName, newArrayList(newPostWithId(1, userName, "post 1")));
+		postCache.flush();
+
+		// verify the reloaded posts missing a written post were evicted
+		assertThat(postsCache.get(userName)).isNull();
 	}
 
 	@Test
@@ -259,9 +315,7 @@ public class SocialServiceImplCacheTest {
 		final Collection<Post> postsAfterDelete = newArrayList(limit(posts, 2));
 
 		// return a clone of the posts
-		when(postRepository.findByUserName(userName))
-				.thenReturn(newArrayList(posts))
-				.thenReturn(newArrayList(postsAfterDelete));
+		when(postRepository.findByUserName(userName)).thenReturn(newArrayList(posts));
 
 		// load user posts
 		assertThat(socialService.findPostsByUserName(userName)).containsAll(posts);
@@ -269,28 +323,72 @@ public class SocialServiceImplCacheTest {
 		// verify data is in cache
 		assertThat(posts).containsAll((Iterable<? extends Post>) postsCache.get(userName).get());
 
-		// create new post
+		// delete post
 		socialService.deletePost(userName, postId);
 
-		// verify cache was flushed
-		assertThat(postsCache.getNativeCache().size()).isZero();
+		// verify the post was removed from the cached posts
+		assertThat((Iterable<Post>) postsCache.get(userName).get()).containsExactly(
+				postsAfterDelete.toArray(new Post[postsAfterDelete.size()]));
 
-		// reload user posts
+		// user posts are served from the patched cache entry
 		assertThat(socialService.findPostsByUserName(userName))
 				.hasSameSizeAs(postsAfterDelete)
 				.containsAll(postsAfterDelete);
 
+		// the post is deleted behind
+		verify(postRepository, never()).delete(userName, postId);
+		postCache.flush();
+		verify(postRepository, times(1)).deleteAll(ImmutableSet.of(postId));
+
 		// verify number of times repository was invoked
-		verify(postRepository, times(1)).delete(userName, postId);
+		verify(postRepository, times(1)).findByUserName(userName);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testDeletedPostsPatchReloadedPosts() {
+		final String userName = "taha";
+
+		when(postRepository.findUserNamesByIds(ImmutableSet.of(2))).thenReturn(ImmutableList.of(userName));
+
+		// the post is deleted behind, while user posts are reloaded with it
+		socialService.deletePost(userName, 2);
+		postsCache.put(userName, newArrayList(newPostWithId(1, userName, "post 1"), newPostWithId(2, userName, "post 2")));
+		postsCache.put("adam", newArrayList(newPostWithId(3, "adam", "post 3")));
+		postCache.flush();
+
+		// verify the deleted post was removed from the reloaded posts only
+		assertThat((Iterable<Post>) postsCache.get(userName).get()).containsExactly(newPostWithId(1, userName, "post 1"));
+		assertThat((Iterable<Post>) postsCache.get("adam").get()).containsExactly(newPostWithId(3, "adam", "post 3"));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testPendingPostsAreWrittenOnShutdown() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(AppConfig.class);
+		PostRepository postRepository = context.getBean(PostRepository.class);
+		GuavaCache postsCache = context.getBean("postsCache", GuavaCache.class);
+		final String userName = "taha";
+		final Post updatePost = newPostWithId(1, userName, "post 1 - new content");
+
+		// the post is written behind, while user posts are reloaded without it
+		context.getBean(SocialService.class).updatePost(updatePost);
+		postsCache.put(userName, newArrayList(newPostWithId(1, userName, "post 1")));
+		context.close();
+
+		// verify the pending post was saved and patched while the cache manager was destroyed
+		verify(postRepository, times(1)).saveAll(ImmutableList.of(updatePost));
+		assertThat(((List<Post>) postsCache.get(userName).get()).get(0)).isSameAs(updatePost);
 	}
 
 	@Configuration
 	@EnableCaching
+	@Import(GuavaCachingConfiguration.class)
 	public static class AppConfig {
 
 		@Bean
 		public SocialService socialService() {
-			return new SocialServiceImpl(userRepository(), postRepository());
+			return new SocialServiceImpl(userRepository(), postRepository(), cacheManager());
 		}
 
 		@Bean
@@ -306,13 +404,13 @@ public class SocialServiceImplCacheTest {
 		@Bean
 		public CacheManager cacheManager() {
 			GuavaCacheManager manager = new GuavaCacheManager();
-			manager.setCaches(ImmutableList.of(usersCache(), postsCache()));
+			manager.setCaches(ImmutableList.of(usersCache(), postsCache(), postCache()));
 			return manager;
 		}
 
 		@Bean
 		public GuavaCache usersCache() {
-			return new GuavaCache("users-cache");
+			return new GuavaCache("users-cache", CacheBuilder.newBuilder(), CacheBuilder.newBuilder().maximumSize(100), false);
 		}
 
 		@Bean
@@ -320,6 +418,18 @@ public class SocialServiceImplCacheTest {
 			return new GuavaCache("posts-cache");
 		}
 
+		@Bean
+		public WriteBehindGuavaCache postCache() {
+			// pending writes are written when tests flush them
+			return new WriteBehindGuavaCache("post-cache", CacheBuilder.newBuilder(), false,
+					new WriteBehindQueue("post-cache", postCacheWriter(), 100, 1, TimeUnit.HOURS, 100));
+		}
+
+		@Bean
+		public PostCacheWriter postCacheWriter() {
+			return new PostCacheWriter(postRepository(), postsCache());
+		}
+
 	}
 
 }
\ No newline at end of file
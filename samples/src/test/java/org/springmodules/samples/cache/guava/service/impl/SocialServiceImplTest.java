@@ -21,6 +21,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springmodules.samples.cache.guava.domain.Post;
 import org.springmodules.samples.cache.guava.domain.User;
 import org.springmodules.samples.cache.guava.repository.PostRepository;
@@ -30,6 +32,7 @@ import java.util.Collection;
 
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.springmodules.samples.cache.guava.util.SampleTests.newPost;
 import static org.springmodules.samples.cache.guava.util.SampleTests.newUser;
@@ -47,11 +50,18 @@ public class SocialServiceImplTest {
 	@Mock
 	PostRepository postRepository;
 
+	@Mock
+	CacheManager cacheManager;
+
+	@Mock
+	Cache postCache;
+
 	SocialServiceImpl socialService;
 
 	@Before
 	public void setUp() {
-		socialService = new SocialServiceImpl(userRepository, postRepository);
+		given(cacheManager.getCache("post-cache")).willReturn(postCache);
+		socialService = new SocialServiceImpl(userRepository, postRepository, cacheManager);
 	}
 
 	@Test
@@ -101,9 +111,14 @@ public class SocialServiceImplTest {
 	public void testCreatePost() {
 		final Post post = newPost("taha", "post - 1");
 
+		given(postRepository.nextId()).willReturn(7);
+
 		socialService.createPost(post);
 
-		verify(postRepository).create(post);
+		// the post is written behind once its id allocated
+		assertThat(post.getId()).isEqualTo(7);
+		verify(postCache).put(7, post);
+		verify(postRepository, never()).create(post);
 	}
 
 	@Test(expected = NullPointerException.class)
@@ -117,7 +132,9 @@ public class SocialServiceImplTest {
 
 		socialService.updatePost(post);
 
-		verify(postRepository).update(post);
+		// the post is written behind
+		verify(postCache).put(post.getId(), post);
+		verify(postRepository, never()).update(post);
 	}
 
 	@Test(expected = NullPointerException.class)
@@ -132,7 +149,9 @@ public class SocialServiceImplTest {
 
 		socialService.deletePost(userName, id);
 
-		verify(postRepository).delete(userName, id);
+		// the post is deleted behind
+		verify(postCache).evict(id);
+		verify(postRepository, never()).delete(userName, id);
 	}
 
 	@Test(expected = NullPointerException.class)
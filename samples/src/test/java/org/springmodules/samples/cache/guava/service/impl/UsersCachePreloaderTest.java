@@ -0,0 +1,55 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springmodules.samples.cache.guava.service.impl;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springmodules.samples.cache.guava.domain.User;
+import org.springmodules.samples.cache.guava.repository.UserRepository;
+
+import java.util.Map;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.springmodules.samples.cache.guava.util.SampleTests.newUser;
+
+/**
+ * @author Omar Irbouh
+ * @since 1.0.0
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class UsersCachePreloaderTest {
+
+	@Mock
+	UserRepository userRepository;
+
+	@Test
+	public void testPreload() {
+		User taha = newUser("taha", "Taha Irbouh", "taha@irbouh.net");
+		User adam = newUser("adam", "Adam Irbouh", "adam@irbouh.net");
+		given(userRepository.findAll()).willReturn(ImmutableList.of(taha, adam));
+
+		Map<?, ?> users = new UsersCachePreloader(userRepository).preload();
+
+		assertThat(users).hasSize(2);
+		assertThat(users.get("taha")).isSameAs(taha);
+		assertThat(users.get("adam")).isSameAs(adam);
+	}
+
+}